@@ -0,0 +1,42 @@
+package com.fpoly.shared_learning_materials.config;
+
+import com.fpoly.shared_learning_materials.service.AzureBlobStorageService;
+import com.fpoly.shared_learning_materials.service.AzureStorageBackend;
+import com.fpoly.shared_learning_materials.service.LocalStorageBackend;
+import com.fpoly.shared_learning_materials.service.StorageBackend;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+
+import java.nio.file.Paths;
+
+/**
+ * Chọn backend lưu file: profile azure và có AzureBlobStorageService thì dùng Azure Blob,
+ * ngược lại dùng thư mục upload local
+ */
+@Configuration
+public class StorageConfig {
+
+    @Value("${app.upload.dir:src/main/resources/static/uploads/documents}")
+    private String uploadDir;
+
+    @Bean
+    public LocalStorageBackend localStorageBackend() {
+        return new LocalStorageBackend(Paths.get(uploadDir));
+    }
+
+    @Bean
+    @Primary
+    public StorageBackend storageBackend(LocalStorageBackend localStorageBackend, Environment environment,
+            ObjectProvider<AzureBlobStorageService> azureBlobStorageService) {
+        AzureBlobStorageService azure = azureBlobStorageService.getIfAvailable();
+        if (azure == null || !environment.acceptsProfiles(Profiles.of("azure"))) {
+            return localStorageBackend;
+        }
+        return new AzureStorageBackend(azure);
+    }
+}
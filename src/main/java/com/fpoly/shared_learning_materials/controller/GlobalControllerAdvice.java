@@ -1,8 +1,8 @@
 package com.fpoly.shared_learning_materials.controller;
 
 import com.fpoly.shared_learning_materials.domain.User;
-import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.service.NotificationService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -16,7 +16,7 @@ public class GlobalControllerAdvice {
     private NotificationService notificationService;
     
     @Autowired
-    private UserRepository userRepository;
+    private PrincipalCacheService principalCacheService;
 
     @ModelAttribute("unreadNotificationCount")
     public Long getUnreadNotificationCount() {
@@ -27,7 +27,7 @@ public class GlobalControllerAdvice {
                 !authentication.getName().equals("anonymousUser")) {
                 
                 String username = authentication.getName();
-                User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username)
+                User currentUser = principalCacheService.findByUsername(username)
                         .orElse(null);
                 
                 if (currentUser != null) {
@@ -1,6 +1,7 @@
 package com.fpoly.shared_learning_materials.controller;
 
 import com.fpoly.shared_learning_materials.service.AzureBlobStorageService;
+import com.fpoly.shared_learning_materials.service.DocumentAnalyticsService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -25,6 +26,9 @@ public class HealthController {
     @Autowired(required = false)
     private AzureBlobStorageService azureBlobStorageService;
 
+    @Autowired
+    private DocumentAnalyticsService documentAnalyticsService;
+
     @GetMapping("/simple")
     public ResponseEntity<Map<String, Object>> simpleHealthCheck() {
         Map<String, Object> response = new HashMap<>();
@@ -180,4 +184,12 @@ public class HealthController {
             return ResponseEntity.status(500).body(response);
         }
     }
-}
\ No newline at end of file
+
+    @GetMapping("/analytics")
+    public ResponseEntity<Map<String, Object>> analyticsCacheCheck() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("dedupCache", documentAnalyticsService.getDedupCacheStats());
+        response.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -3,8 +3,10 @@ package com.fpoly.shared_learning_materials.controller.admin;
 import com.fpoly.shared_learning_materials.domain.Notification;
 import com.fpoly.shared_learning_materials.domain.User;
 import com.fpoly.shared_learning_materials.service.NotificationService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import jakarta.servlet.http.HttpSession;
 
@@ -16,6 +18,9 @@ public abstract class BaseAdminController {
     protected final NotificationService notificationService;
     protected final UserRepository userRepository;
 
+    @Autowired
+    protected PrincipalCacheService principalCacheService;
+
     @ModelAttribute("notifications")
     public List<Notification> getNotifications(HttpSession session) {
         try {
@@ -25,7 +30,7 @@ public abstract class BaseAdminController {
                 username = "admin"; // Fallback for testing
             }
 
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username)
+            User currentUser = principalCacheService.findByUsername(username)
                     .orElse(null);
 
             List<Notification> notifications;
@@ -65,7 +70,7 @@ public abstract class BaseAdminController {
                 username = "admin"; // Fallback for testing
             }
 
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username)
+            User currentUser = principalCacheService.findByUsername(username)
                     .orElse(null);
 
             if (currentUser != null && "ADMIN".equals(currentUser.getRole())) {
@@ -94,7 +99,7 @@ public abstract class BaseAdminController {
                 username = "admin"; // Fallback for testing
             }
 
-            return userRepository.findByUsernameAndDeletedAtIsNull(username)
+            return principalCacheService.findByUsername(username)
                     .orElse(null);
         } catch (Exception e) {
             return null;
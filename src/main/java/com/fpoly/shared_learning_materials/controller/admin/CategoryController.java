@@ -30,7 +30,6 @@ import jakarta.servlet.http.HttpServletRequest;
 
 import jakarta.validation.Valid;
 
-import com.fpoly.shared_learning_materials.domain.CategoryHierarchy;
 import com.fpoly.shared_learning_materials.domain.User;
 import com.fpoly.shared_learning_materials.dto.CategoryDTO;
 import com.fpoly.shared_learning_materials.dto.CategoryTreeDTO;
@@ -225,7 +224,7 @@ public class CategoryController extends BaseAdminController {
                 .findFirst()
                 .orElseThrow(() -> new IllegalArgumentException("Category not found"));
 
-        Set<Long> descendantIds = getDescendantIds(id);
+        Set<Long> descendantIds = new HashSet<>(categoryService.getDescendantCategoryIds(id));
 
         List<CategoryDTO> availableCategories = categoryService.getAllCategories().stream()
                 .filter(c -> !c.getId().equals(id) && !descendantIds.contains(c.getId()))
@@ -450,23 +449,6 @@ public class CategoryController extends BaseAdminController {
         }
     }
 
-    private Set<Long> getDescendantIds(Long categoryId) {
-        Set<Long> descendantIds = new HashSet<>();
-        collectDescendantIds(categoryId, descendantIds);
-        return descendantIds;
-    }
-
-    private void collectDescendantIds(Long categoryId, Set<Long> descendantIds) {
-        List<CategoryHierarchy> children = categoryHierarchyRepository.findByIdParentId(categoryId);
-        for (CategoryHierarchy child : children) {
-            Long childId = child.getId().getChildId();
-            if (!descendantIds.contains(childId)) {
-                descendantIds.add(childId);
-                collectDescendantIds(childId, descendantIds);
-            }
-        }
-    }
-
     private List<CategoryDTO> buildHierarchicalStructure(List<CategoryDTO> allCategories) {
         List<CategoryDTO> result = new java.util.ArrayList<>();
 
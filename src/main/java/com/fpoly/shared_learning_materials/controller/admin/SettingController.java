@@ -1,22 +1,23 @@
 package com.fpoly.shared_learning_materials.controller.admin;
 
+import com.fpoly.shared_learning_materials.service.DocumentImportService;
 import com.fpoly.shared_learning_materials.service.DocumentService;
 import com.fpoly.shared_learning_materials.service.EmailConfigService;
 import com.fpoly.shared_learning_materials.service.NotificationService;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.domain.User;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
-import java.io.ByteArrayInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -32,6 +33,9 @@ public class SettingController extends BaseAdminController {
     @Autowired
     private EmailConfigService emailConfigService;
 
+    @Autowired
+    private DocumentImportService documentImportService;
+
     public SettingController(NotificationService notificationService, UserRepository userRepository) {
         super(notificationService, userRepository);
     }
@@ -171,101 +175,50 @@ public class SettingController extends BaseAdminController {
         return "redirect:/admin/settings";
     }
 
-    // Export documents as backup
-    // @GetMapping("/backup/export")
-    // public ResponseEntity<InputStreamResource> exportDocuments() {
-    //     try {
-    //         String documentsData = documentService.exportAllDocuments();
-
-    //         LocalDateTime now = LocalDateTime.now();
-    //         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
-    //         String filename = "documents_backup_" + now.format(formatter) + ".json";
-
-    //         ByteArrayInputStream bis = new ByteArrayInputStream(documentsData.getBytes());
-
-    //         // Update backup info
-    //         DateTimeFormatter displayFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-    //         settings.put("lastBackup", now.format(displayFormatter));
-    //         settings.put("backupSize", String.format("%.2f MB", documentsData.length() / 1024.0 / 1024.0));
-
-    //         HttpHeaders headers = new HttpHeaders();
-    //         headers.add("Content-Disposition", "attachment; filename=" + filename);
-
-    //         return ResponseEntity.ok()
-    //                 .headers(headers)
-    //                 .contentType(MediaType.APPLICATION_JSON)
-    //                 .body(new InputStreamResource(bis));
-
-    //     } catch (Exception e) {
-    //         return ResponseEntity.badRequest().build();
-    //     }
-    // // Export documents as backup
-    // @GetMapping("/backup/export")
-    // public ResponseEntity<InputStreamResource> exportDocuments() {
-    // try {
-    // String documentsData = documentService.exportAllDocuments();
-
-    // LocalDateTime now = LocalDateTime.now();
-    // DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
-    // String filename = "documents_backup_" + now.format(formatter) + ".json";
-
-    // ByteArrayInputStream bis = new
-    // ByteArrayInputStream(documentsData.getBytes());
-
-    // // Update backup info
-    // DateTimeFormatter displayFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy
-    // HH:mm");
-    // settings.put("lastBackup", now.format(displayFormatter));
-    // settings.put("backupSize", String.format("%.2f MB", documentsData.length() /
-    // 1024.0 / 1024.0));
-
-    // HttpHeaders headers = new HttpHeaders();
-    // headers.add("Content-Disposition", "attachment; filename=" + filename);
-
-    // return ResponseEntity.ok()
-    // .headers(headers)
-    // .contentType(MediaType.APPLICATION_JSON)
-    // .body(new InputStreamResource(bis));
-
-    // } catch (Exception e) {
-    // return ResponseEntity.badRequest().build();
-    // }
-    // }
-
-    // // Import documents from backup
-    // @PostMapping("/backup/import")
-    // public String importDocuments(@RequestParam("backupFile") MultipartFile file,
-    //         RedirectAttributes redirectAttributes) {
-    //     try {
-    //         if (file.isEmpty()) {
-    //             redirectAttributes.addFlashAttribute("error", "Vui lòng chọn file backup!");
-    //             return "redirect:/admin/settings";
-    //         }
-
-    //         String result = documentService.importDocuments(file);
-    //         redirectAttributes.addFlashAttribute("success", "Đã import thành công: " + result);
-    //     } catch (Exception e) {
-    //         redirectAttributes.addFlashAttribute("error", "Có lỗi xảy ra khi import: " + e.getMessage());
-    //     }
-
-    //     return "redirect:/admin/settings";
-    // RedirectAttributes redirectAttributes) {
-    // try {
-    // if (file.isEmpty()) {
-    // redirectAttributes.addFlashAttribute("error", "Vui lòng chọn file backup!");
-    // return "redirect:/admin/settings";
-    // }
-
-    // String result = documentService.importDocuments(file);
-    // redirectAttributes.addFlashAttribute("success", "Đã import thành công: " +
-    // result);
-    // } catch (Exception e) {
-    // redirectAttributes.addFlashAttribute("error", "Có lỗi xảy ra khi import: " +
-    // e.getMessage());
-    // }
-
-    // return "redirect:/admin/settings";
-    // }
+    // Export documents as backup (ghi thẳng JSON vào response theo từng lô)
+    @GetMapping("/backup/export")
+    public void exportDocuments(HttpServletResponse response) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+        String filename = "documents_backup_" + now.format(formatter) + ".json";
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+
+        long backupBytes = documentService.exportAllDocuments(response.getOutputStream());
+
+        // Update backup info
+        DateTimeFormatter displayFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+        settings.put("lastBackup", now.format(displayFormatter));
+        settings.put("backupSize", String.format("%.2f MB", backupBytes / 1024.0 / 1024.0));
+    }
+
+    // Import documents from backup
+    @PostMapping("/backup/import")
+    public String importDocuments(@RequestParam("backupFile") MultipartFile file,
+            RedirectAttributes redirectAttributes) {
+        try {
+            if (file.isEmpty()) {
+                redirectAttributes.addFlashAttribute("error", "Vui lòng chọn file backup!");
+                return "redirect:/admin/settings";
+            }
+
+            String result = documentService.importDocuments(file);
+            redirectAttributes.addFlashAttribute("success", "Đã import thành công: " + result);
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Có lỗi xảy ra khi import: " + e.getMessage());
+        }
+
+        return "redirect:/admin/settings";
+    }
+
+    // Tiến độ import: settings.js gọi định kỳ trong lúc chờ request import ở trên trả về
+    @GetMapping("/backup/import/progress")
+    @ResponseBody
+    public Map<String, Object> importProgress() {
+        return documentImportService.getProgress();
+    }
 
     @PostMapping("/maintenance/toggle")
     public String toggleMaintenance(@RequestParam(defaultValue = "false") boolean maintenanceMode,
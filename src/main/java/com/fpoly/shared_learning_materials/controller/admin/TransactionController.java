@@ -2,6 +2,7 @@ package com.fpoly.shared_learning_materials.controller.admin;
 
 import com.fpoly.shared_learning_materials.domain.Transaction;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
+import com.fpoly.shared_learning_materials.service.ExportService;
 import com.fpoly.shared_learning_materials.service.NotificationService;
 // import com.fpoly.shared_learning_materials.domain.User;
 import com.fpoly.shared_learning_materials.service.TransactionService;
@@ -18,7 +19,10 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.InitBinder;
 
+import jakarta.servlet.http.HttpServletResponse;
+
 import java.beans.PropertyEditorSupport;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -34,6 +38,9 @@ public class TransactionController extends BaseAdminController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ExportService exportService;
+
     public TransactionController(NotificationService notificationService, UserRepository userRepository) {
         super(notificationService, userRepository);
     }
@@ -154,6 +161,37 @@ public class TransactionController extends BaseAdminController {
         return "admin/transactions/index";
     }
 
+    /**
+     * Xuất Excel danh sách giao dịch theo bộ lọc hiện tại
+     */
+    @GetMapping("/export")
+    public void exportTransactions(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String type,
+            HttpServletResponse response) throws IOException {
+        Transaction.TransactionStatus statusEnum = null;
+        Transaction.TransactionType typeEnum = null;
+
+        if (status != null && !status.isEmpty() && !status.equals("all")) {
+            try {
+                statusEnum = Transaction.TransactionStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                statusEnum = null;
+            }
+        }
+
+        if (type != null && !type.isEmpty() && !type.equals("all")) {
+            try {
+                typeEnum = Transaction.TransactionType.valueOf(type.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                typeEnum = null;
+            }
+        }
+
+        exportService.exportTransactions(response, keyword, statusEnum, typeEnum);
+    }
+
     /**
      * Hiển thị form tạo giao dịch mới
      */
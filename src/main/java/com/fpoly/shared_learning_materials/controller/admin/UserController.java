@@ -26,7 +26,7 @@ import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.service.NotificationService;
 import com.fpoly.shared_learning_materials.service.UserService;
 import com.fpoly.shared_learning_materials.util.ImageUtils;
-import com.fpoly.shared_learning_materials.util.UserExcelExporter;
+import com.fpoly.shared_learning_materials.service.ExportService;
 import com.fpoly.shared_learning_materials.service.FileService;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -43,6 +43,9 @@ public class UserController extends BaseAdminController {
 	@Autowired
 	private FileService fileService;
 
+	@Autowired
+	private ExportService exportService;
+
 	public UserController(NotificationService notificationService, UserRepository userRepository) {
 		super(notificationService, userRepository);
 	}
@@ -301,13 +304,7 @@ public class UserController extends BaseAdminController {
 
 	@GetMapping("/export")
 	public void exportUsers(HttpServletResponse response) throws IOException {
-		UserExcelExporter userExcelExporter = new UserExcelExporter();
-		response.setContentType("application/octet-stream");
-		String headerValue = "attachment; filename=users.xlsx";
-		response.setHeader("Content-Disposition", headerValue);
-
-		List<User> users = userService.findAllActiveUsers();
-		userExcelExporter.export(users, response);
+		exportService.exportUsers(response);
 	}
 
 }
@@ -4,6 +4,7 @@ import com.fpoly.shared_learning_materials.domain.Transaction;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.service.WithdrawalService;
 import com.fpoly.shared_learning_materials.service.NotificationService;
+import com.fpoly.shared_learning_materials.service.ExportService;
 import com.fpoly.shared_learning_materials.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -15,6 +16,9 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -34,6 +38,9 @@ public class WithdrawalController extends BaseAdminController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ExportService exportService;
+
     public WithdrawalController(NotificationService notificationService, UserRepository userRepository) {
         super(notificationService, userRepository);
     }
@@ -114,6 +121,27 @@ public class WithdrawalController extends BaseAdminController {
         return "admin/withdrawals/index";
     }
 
+    /**
+     * Xuất Excel danh sách withdrawals theo bộ lọc hiện tại
+     */
+    @GetMapping("/export")
+    public void exportWithdrawals(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String status,
+            HttpServletResponse response) throws IOException {
+        Transaction.TransactionStatus statusEnum = null;
+
+        if (status != null && !status.isEmpty() && !status.equals("all")) {
+            try {
+                statusEnum = Transaction.TransactionStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                statusEnum = null;
+            }
+        }
+
+        exportService.exportWithdrawals(response, keyword, statusEnum);
+    }
+
     /**
      * Hiển thị form tạo withdrawal mới
      */
@@ -35,6 +35,7 @@ import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import com.fpoly.shared_learning_materials.service.CoinPackageService;
 import com.fpoly.shared_learning_materials.service.NotificationService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.domain.User;
 import com.fpoly.shared_learning_materials.domain.Notification;
@@ -87,6 +88,9 @@ public class AccountController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PrincipalCacheService principalCacheService;
+
     @Autowired
     private DocumentRepository documentRepository;
 
@@ -129,7 +133,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
             redirectAttributes.addFlashAttribute("toastType", "error");
@@ -167,7 +171,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -248,7 +252,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -364,7 +368,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -574,7 +578,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
             redirectAttributes.addFlashAttribute("toastType", "error");
@@ -606,7 +610,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return "redirect:/";
         }
@@ -689,7 +693,7 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -773,7 +777,7 @@ public class AccountController {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
             }
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
             }
@@ -830,7 +834,7 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -861,7 +865,7 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -931,7 +935,7 @@ public class AccountController {
     public String security(Model model, Authentication authentication) {
         try {
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username)
+            User currentUser = principalCacheService.findByUsername(username)
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             model.addAttribute("pageTitle", "Bảo mật tài khoản");
@@ -1092,7 +1096,7 @@ public class AccountController {
 
             // Get current user
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username)
+            User currentUser = principalCacheService.findByUsername(username)
                     .orElseThrow(() -> new RuntimeException("User not found"));
 
             // Verify current password
@@ -1181,7 +1185,7 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -1213,7 +1217,7 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -1260,7 +1264,7 @@ public class AccountController {
             if (authentication != null && authentication.isAuthenticated()
                     && !"anonymousUser".equals(authentication.getPrincipal())) {
                 String username = authentication.getName();
-                Optional<User> uByUsername = userRepository.findByUsernameAndDeletedAtIsNull(username);
+                Optional<User> uByUsername = principalCacheService.findByUsername(username);
                 if (uByUsername.isPresent()) {
                     userId = uByUsername.get().getId();
                 }
@@ -1322,7 +1326,7 @@ public class AccountController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
             }
@@ -1408,7 +1412,7 @@ public class AccountController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -1461,7 +1465,7 @@ public class AccountController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
             }
@@ -1574,7 +1578,7 @@ public class AccountController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
             }
@@ -1626,7 +1630,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
             redirectAttributes.addFlashAttribute("toastType", "error");
@@ -1694,7 +1698,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
             redirectAttributes.addFlashAttribute("toastType", "error");
@@ -1752,7 +1756,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -1788,7 +1792,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
@@ -1811,7 +1815,7 @@ public class AccountController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -0,0 +1,156 @@
+package com.fpoly.shared_learning_materials.controller.client;
+
+import com.fpoly.shared_learning_materials.domain.UploadSession;
+import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.dto.DocumentDTO;
+import com.fpoly.shared_learning_materials.service.ChunkedUploadService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * API tải file theo chunk cho wizard đăng tải (có thể tiếp tục khi mất kết nối):
+ * POST /upload/chunked mở phiên, PUT /upload/chunked/{id}/chunks/{index} gửi chunk (thân request là dữ liệu nhị phân,
+ * header X-Chunk-Sha256 là checksum), GET /upload/chunked/{id} xem các chunk đã nhận,
+ * POST /upload/chunked/{id}/complete hoàn tất, DELETE /upload/chunked/{id} hủy
+ */
+@RestController
+@RequestMapping("/upload/chunked")
+public class ChunkedUploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadController.class);
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private PrincipalCacheService principalCacheService;
+
+    @PostMapping
+    public ResponseEntity<?> createSession(
+            @RequestParam("fileName") String fileName,
+            @RequestParam("fileSize") long fileSize,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @RequestParam(value = "chunkSizeKb", required = false) Integer chunkSizeKb,
+            @RequestParam(value = "backend", required = false) String backend) throws IOException {
+        User user = principalCacheService.getCurrentUser();
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        String target = "azure".equalsIgnoreCase(backend) ? UploadSession.BACKEND_AZURE : UploadSession.BACKEND_LOCAL;
+        UploadSession session = chunkedUploadService.createSession(user.getId(), fileName, fileSize, contentType,
+                chunkSizeKb, target);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(chunkedUploadService.getStatus(session.getId(), user.getId()));
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<?> getStatus(@PathVariable String uploadId) {
+        User user = principalCacheService.getCurrentUser();
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(chunkedUploadService.getStatus(uploadId, user.getId()));
+    }
+
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public ResponseEntity<?> putChunk(
+            @PathVariable String uploadId,
+            @PathVariable int index,
+            @RequestHeader(value = "X-Chunk-Sha256", required = false) String checksum,
+            HttpServletRequest request) throws IOException {
+        User user = principalCacheService.getCurrentUser();
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(chunkedUploadService.putChunk(uploadId, user.getId(), index,
+                request.getInputStream(), checksum));
+    }
+
+    /**
+     * Hoàn tất phiên. Với backend LOCAL, file được gắn vào wizard như khi tải lên ở bước 1
+     * và client chuyển sang bước 2; với AZURE trả về URL của blob
+     */
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<?> complete(@PathVariable String uploadId, HttpSession session) throws IOException {
+        User user = principalCacheService.getCurrentUser();
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        ChunkedUploadService.CompletedUpload completed = chunkedUploadService.complete(uploadId, user.getId());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("fileName", completed.fileName());
+        response.put("fileSize", completed.fileSize());
+        if (completed.stagedUpload() != null) {
+            String fileName = completed.fileName();
+            session.setAttribute("uploadStagedFile", completed.stagedUpload());
+            session.setAttribute("fileName", fileName);
+            session.setAttribute("fileSize", completed.fileSize());
+            session.setAttribute("fileType", fileName.substring(fileName.lastIndexOf(".") + 1).toUpperCase());
+            DocumentDTO documentDTO = (DocumentDTO) session.getAttribute("uploadDocumentDTO");
+            if (documentDTO == null) {
+                documentDTO = new DocumentDTO();
+                documentDTO.setCategoryIds(new ArrayList<>());
+                session.setAttribute("uploadDocumentDTO", documentDTO);
+            }
+        } else {
+            response.put("fileUrl", completed.fileUrl());
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> abort(@PathVariable String uploadId) {
+        User user = principalCacheService.getCurrentUser();
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        chunkedUploadService.abort(uploadId, user.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, Object>> handleBadRequest(IllegalArgumentException e) {
+        return error(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, Object>> handleConflict(IllegalStateException e) {
+        return error(HttpStatus.CONFLICT, e.getMessage());
+    }
+
+    @ExceptionHandler(IOException.class)
+    public ResponseEntity<Map<String, Object>> handleIOException(IOException e) {
+        logger.error("Chunked upload failed: {}", e.getMessage(), e);
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "Lỗi khi lưu file: " + e.getMessage());
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("success", false);
+        body.put("message", message);
+        return ResponseEntity.status(status).body(body);
+    }
+}
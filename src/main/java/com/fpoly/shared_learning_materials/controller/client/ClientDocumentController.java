@@ -11,18 +11,18 @@ import com.fpoly.shared_learning_materials.dto.CommentDTO;
 import java.time.LocalDateTime;
 import java.util.List;
 import org.springframework.data.domain.Page;
-import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.repository.DocumentOwnerRepository;
 import com.fpoly.shared_learning_materials.repository.ReportRepository;
 import com.fpoly.shared_learning_materials.service.DocumentService;
 import com.fpoly.shared_learning_materials.service.CommentService;
 import com.fpoly.shared_learning_materials.service.DocumentAnalyticsService;
+import com.fpoly.shared_learning_materials.service.FileServingService;
+import com.fpoly.shared_learning_materials.service.PdfThumbnailService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -48,6 +48,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
 import java.nio.file.Files;
 import java.io.IOException;
@@ -75,7 +76,7 @@ public class ClientDocumentController {
     private DocumentService documentService;
 
     @Autowired
-    private UserRepository userRepository;
+    private PrincipalCacheService principalCacheService;
 
     @Autowired
     private CommentService commentService;
@@ -98,6 +99,12 @@ public class ClientDocumentController {
     @Autowired
     private DocumentRepository documentRepository;
 
+    @Autowired
+    private FileServingService fileServingService;
+
+    @Autowired
+    private PdfThumbnailService pdfThumbnailService;
+
     @Value("${app.uploads.base-path:src/main/resources/static/uploads/documents}")
     private String uploadsBasePath;
 
@@ -132,7 +139,7 @@ public class ClientDocumentController {
         boolean isOwned = false;
         boolean isAdmin = false;
         if (currentUsername != null) {
-            User user = userRepository.findByUsernameAndDeletedAtIsNull(currentUsername).orElse(null);
+            User user = principalCacheService.findByUsername(currentUsername).orElse(null);
             if (user != null) {
                 isAdmin = user.getRole() != null && user.getRole().toUpperCase().contains("ADMIN");
                 Document entity = documentService.findById(id);
@@ -221,7 +228,7 @@ public class ClientDocumentController {
             }
 
             String username = auth.getName();
-            User reporter = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User reporter = principalCacheService.findByUsername(username).orElse(null);
             if (reporter == null) {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                         .body(Map.of("error", "Không tìm thấy thông tin người dùng"));
@@ -264,13 +271,15 @@ public class ClientDocumentController {
         model.addAttribute("documentId", id);
         model.addAttribute("document", document);
         model.addAttribute("relatedDocuments", relatedDocuments);
+        model.addAttribute("thumbnails", pdfThumbnailService.getThumbnailSources(
+                document.getFile() != null ? document.getFile().getId() : null));
 
         boolean isOwned = false;
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
 
         if (auth != null && auth.isAuthenticated() && !"anonymousUser".equals(auth.getPrincipal())) {
             String username = auth.getName();
-            User user = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User user = principalCacheService.findByUsername(username).orElse(null);
             if (user != null) {
                 isOwned = documentOwnerRepository.existsByUserAndDocument(user, document);
             }
@@ -298,7 +307,7 @@ public class ClientDocumentController {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth != null && auth.isAuthenticated() && !("anonymousUser".equals(auth.getPrincipal()))) {
             String username = auth.getName();
-            User u = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User u = principalCacheService.findByUsername(username).orElse(null);
             if (u != null) {
                 boolean isOwner = documentOwnerRepository.existsByUserAndDocument(u, document);
                 boolean isAdmin = u.getRole() != null && u.getRole().toUpperCase().contains("ADMIN");
@@ -329,12 +338,8 @@ public class ClientDocumentController {
             } catch (Exception ignored) {
             }
 
-            String fileName = document.getFile().getFilePath() != null && !document.getFile().getFilePath().isBlank()
-                    ? Paths.get(document.getFile().getFilePath()).getFileName().toString()
-                    : document.getFile().getFileName();
-            String encoded = java.net.URLEncoder.encode(fileName, java.nio.charset.StandardCharsets.UTF_8);
             return ResponseEntity.status(HttpStatus.FOUND)
-                    .header("Location", "/documents/uploads/documents/" + encoded + "?attach=1")
+                    .header("Location", downloadLocation(document))
                     .build();
         }
 
@@ -350,7 +355,7 @@ public class ClientDocumentController {
         }
 
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
             redirectAttributes.addFlashAttribute("toastType", "error");
@@ -370,15 +375,25 @@ public class ClientDocumentController {
         }
 
         // Sau khi mua xong: redirect tới endpoint phục vụ file
-        String fileName = document.getFile().getFilePath() != null && !document.getFile().getFilePath().isBlank()
-                ? Paths.get(document.getFile().getFilePath()).getFileName().toString()
-                : document.getFile().getFileName();
-        String encoded = java.net.URLEncoder.encode(fileName, java.nio.charset.StandardCharsets.UTF_8);
         return ResponseEntity.status(HttpStatus.FOUND)
-                .header("Location", "/documents/uploads/documents/" + encoded + "?attach=1")
+                .header("Location", downloadLocation(document))
                 .build();
     }
 
+    // Endpoint phục vụ file của tài liệu. File trong kho được lưu theo SHA-256 nên tên tải về lấy từ tên file gốc
+    private String downloadLocation(Document document) {
+        String storedName = document.getFile().getFilePath() != null && !document.getFile().getFilePath().isBlank()
+                ? Paths.get(document.getFile().getFilePath()).getFileName().toString()
+                : document.getFile().getFileName();
+        String location = "/documents/uploads/documents/"
+                + java.net.URLEncoder.encode(storedName, java.nio.charset.StandardCharsets.UTF_8) + "?attach=1";
+        String downloadName = document.getFile().getFileName();
+        if (downloadName != null && !downloadName.isBlank() && !downloadName.equals(storedName)) {
+            location += "&name=" + java.net.URLEncoder.encode(downloadName, java.nio.charset.StandardCharsets.UTF_8);
+        }
+        return location;
+    }
+
     /**
      * Tăng lượt xem và redirect về trang chi tiết
      */
@@ -449,58 +464,50 @@ public class ClientDocumentController {
     }
 
     @GetMapping("/uploads/documents/{fileName:.+}")
-    public ResponseEntity<Resource> serveFile(@PathVariable String fileName, HttpServletRequest request) {
-        try {
-            // Decode the filename
-            String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8.toString());
-            logger.info("Serving file: {}", decodedFileName);
-
-            // Construct the file path
-            Path filePath = Paths.get(uploadsBasePath).resolve(decodedFileName);
-            Resource resource = new UrlResource(filePath.toUri());
-
-            // Check if file exists
-            if (resource.exists() && resource.isReadable()) {
-                // Determine content type
-                String contentType = determineContentType(decodedFileName);
-
-                boolean asAttachment = request.getParameter("attach") != null;
-                String disposition = (asAttachment ? "attachment" : "inline") +
-                        "; filename=\"" + decodedFileName + "\"";
-
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, disposition)
-                        .body(resource);
-            } else {
-                logger.warn("File not found or not readable: {}", filePath);
-                return ResponseEntity.notFound().build();
-            }
-        } catch (Exception e) {
-            logger.error("Error serving file: {}", fileName, e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public void serveFile(@PathVariable String fileName,
+            @RequestParam(value = "name", required = false) String downloadName,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8.toString());
+        logger.debug("Serving file: {}", decodedFileName);
+
+        boolean asAttachment = request.getParameter("attach") != null;
+        String displayName = downloadName != null && !downloadName.isBlank()
+                ? downloadName.replaceAll("[\"\\r\\n]", "")
+                : decodedFileName;
+        String disposition = (asAttachment ? "attachment" : "inline") +
+                "; filename=\"" + displayName + "\"";
+        serveUploadedFile(decodedFileName, disposition, request, response);
     }
 
     @GetMapping("/file/{fileName:.+}")
-    public ResponseEntity<Resource> serveDocumentFile(@PathVariable String fileName) {
+    public void serveDocumentFile(@PathVariable String fileName, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8.toString());
+        serveUploadedFile(decodedFileName, "inline; filename=\"" + decodedFileName + "\"", request, response);
+    }
+
+    // Hỗ trợ Range/ETag/304 để trình xem PDF chỉ tải phần cần thiết
+    private void serveUploadedFile(String decodedFileName, String disposition, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Path basePath = Paths.get(uploadsBasePath).toAbsolutePath().normalize();
+        Path filePath = basePath.resolve(decodedFileName).normalize();
+        if (!filePath.startsWith(basePath)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
         try {
-            String decodedFileName = URLDecoder.decode(fileName, StandardCharsets.UTF_8.toString());
-            Path filePath = Paths.get(uploadsBasePath).resolve(decodedFileName);
-            Resource resource = new UrlResource(filePath.toUri());
-            if (resource.exists() && resource.isReadable()) {
-                String contentType = determineContentType(decodedFileName);
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + decodedFileName + "\"")
-                        .body(resource);
-            } else {
+            String contentType = determineContentType(decodedFileName);
+            if (!fileServingService.serve(filePath, contentType, disposition, request, response)) {
                 logger.warn("File not found or not readable: {}", filePath);
-                return ResponseEntity.notFound().build();
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        } catch (IOException e) {
+            logger.error("Error serving file: {}", decodedFileName, e);
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             }
-        } catch (Exception e) {
-            logger.error("Error serving file: {}", fileName, e);
-            return ResponseEntity.internalServerError().build();
         }
     }
 
@@ -657,7 +664,7 @@ public class ClientDocumentController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
                 redirectAttributes.addFlashAttribute("toastType", "error");
@@ -705,7 +712,7 @@ public class ClientDocumentController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
                 redirectAttributes.addFlashAttribute("toastType", "error");
@@ -764,7 +771,7 @@ public class ClientDocumentController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
                 redirectAttributes.addFlashAttribute("toastType", "error");
@@ -825,7 +832,7 @@ public class ClientDocumentController {
             }
 
             String username = authentication.getName();
-            User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            User currentUser = principalCacheService.findByUsername(username).orElse(null);
             if (currentUser == null) {
                 redirectAttributes.addFlashAttribute("toastMessage", "Không tìm thấy thông tin người dùng");
                 redirectAttributes.addFlashAttribute("toastType", "error");
@@ -934,7 +941,7 @@ public class ClientDocumentController {
                     .body(java.util.Map.of("success", false, "message", "Vui lòng đăng nhập"));
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(java.util.Map.of("success", false, "message", "Không tìm thấy người dùng"));
@@ -970,7 +977,7 @@ public class ClientDocumentController {
                     .body(java.util.Map.of("success", false, "message", "Vui lòng đăng nhập"));
         }
         String username = authentication.getName();
-        User currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+        User currentUser = principalCacheService.findByUsername(username).orElse(null);
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(java.util.Map.of("success", false, "message", "Không tìm thấy người dùng"));
@@ -21,6 +21,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Slice;
 
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -43,6 +44,8 @@ import com.fpoly.shared_learning_materials.domain.User;
 import com.fpoly.shared_learning_materials.service.DocumentService;
 import com.fpoly.shared_learning_materials.service.FavoriteService;
 import com.fpoly.shared_learning_materials.service.NotificationService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
+import com.fpoly.shared_learning_materials.service.SearchFacetService;
 import com.fpoly.shared_learning_materials.dto.CategoryDTO;
 import com.fpoly.shared_learning_materials.dto.CategoryTreeDTO;
 import com.fpoly.shared_learning_materials.dto.DocumentDTO;
@@ -51,10 +54,10 @@ import com.fpoly.shared_learning_materials.repository.DocumentOwnerRepository;
 import com.fpoly.shared_learning_materials.repository.DocumentRepository;
 import com.fpoly.shared_learning_materials.repository.FavoriteRepository;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
-import com.fpoly.shared_learning_materials.repository.DocumentCategoryRepository;
 import com.fpoly.shared_learning_materials.service.CategoryService;
 import com.fpoly.shared_learning_materials.service.DocumentNotificationService;
 import com.fpoly.shared_learning_materials.service.TagService;
+import com.fpoly.shared_learning_materials.service.UploadStagingService;
 
 import jakarta.servlet.http.HttpSession;
 import java.util.*;
@@ -72,14 +75,14 @@ public class ClientPageController {
     private UserRepository userRepository;
 
     @Autowired
-    private DocumentRepository documentRepository;
+    private PrincipalCacheService principalCacheService;
 
     @Autowired
-    private FavoriteRepository favoriteRepository;
+    private DocumentRepository documentRepository;
 
     @Autowired
+    private FavoriteRepository favoriteRepository;
 
-    private DocumentCategoryRepository documentCategoryRepository;
     @Autowired
     private DocumentOwnerRepository documentOwnerRepository;
 
@@ -95,6 +98,12 @@ public class ClientPageController {
     @Autowired
     private FavoriteService favoriteService;
 
+    @Autowired
+    private SearchFacetService searchFacetService;
+
+    @Autowired
+    private UploadStagingService uploadStagingService;
+
     @GetMapping("/about")
     public String about(Model model) {
         model.addAttribute("pageTitle", "Về chúng tôi");
@@ -117,6 +126,7 @@ public class ClientPageController {
         // Danh sách danh mục sẽ hiển thị trong category-grid
         List<CategoryTreeDTO> displayCategories = new ArrayList<>();
         String selectedCategoryName = null;
+        List<CategoryTreeDTO> selectedCategoryPath = new ArrayList<>();
 
         // Lấy danh mục con cho từng danh mục gốc để hiển thị trong subcategories
         Map<Long, List<CategoryTreeDTO>> subcategoriesMap = new HashMap<>();
@@ -140,31 +150,12 @@ public class ClientPageController {
 
         // Tạo map để lưu số lượng tài liệu cho mỗi category (bao gồm cả danh mục cha và
         // con)
-        Map<Long, Long> categoryDocumentCounts = new HashMap<>();
-        try {
-            // Lấy tất cả category IDs (bao gồm cả root categories và subcategories)
-            List<Long> allCategoryIds = new ArrayList<>();
-
-            // Thêm root category IDs
-            allCategoryIds.addAll(rootCategories.stream().map(CategoryDTO::getId).collect(Collectors.toList()));
-
-            // Thêm subcategory IDs
-            for (List<CategoryTreeDTO> subcategories : subcategoriesMap.values()) {
-                allCategoryIds.addAll(subcategories.stream().map(CategoryTreeDTO::getId).collect(Collectors.toList()));
-            }
-
-            // Đếm số lượng tài liệu cho tất cả categories trong một query
-            List<Object[]> categoryCountResults = documentCategoryRepository
-                    .countDocumentsByCategoryIds(allCategoryIds);
-            for (Object[] result : categoryCountResults) {
-                Long categoryId = (Long) result[0];
-                Long count = (Long) result[1];
-                categoryDocumentCounts.put(categoryId, count);
-            }
-
-        } catch (Exception e) {
-            System.err.println("Error loading category document counts: " + e.getMessage());
+        List<Long> allCategoryIds = new ArrayList<>();
+        allCategoryIds.addAll(rootCategories.stream().map(CategoryDTO::getId).collect(Collectors.toList()));
+        for (List<CategoryTreeDTO> subcategories : subcategoriesMap.values()) {
+            allCategoryIds.addAll(subcategories.stream().map(CategoryTreeDTO::getId).collect(Collectors.toList()));
         }
+        Map<Long, Long> categoryDocumentCounts = categoryService.getDocumentCounts(allCategoryIds);
 
         // Lấy danh sách tag nổi bật
         Page<TagDTO> popularTagsPage = tagService.getAllTags(0, 20, "popular");
@@ -179,6 +170,7 @@ public class ClientPageController {
 
             if (selectedCategory != null) {
                 selectedCategoryName = selectedCategory.getName();
+                selectedCategoryPath = categoryService.getCategoryPath(selectedCategory.getId());
                 // Lấy danh mục con của danh mục được chọn
                 displayCategories = categoryService.getSubcategoriesTree(selectedCategory.getId());
 
@@ -253,6 +245,9 @@ public class ClientPageController {
         model.addAttribute("pageTitle", "Danh mục tài liệu");
         model.addAttribute("selectedCategory", category);
         model.addAttribute("selectedCategoryName", selectedCategoryName);
+        model.addAttribute("selectedCategoryPath", selectedCategoryPath);
+        model.addAttribute("selectedRootCategory",
+                selectedCategoryPath.isEmpty() ? null : selectedCategoryPath.get(0).getSlug());
         model.addAttribute("rootCategories", rootCategories);
         model.addAttribute("subcategoriesMap", subcategoriesMap);
         model.addAttribute("displayCategories", displayCategories);
@@ -275,6 +270,7 @@ public class ClientPageController {
             @RequestParam(required = false) String time,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String after,
             Model model, RedirectAttributes redirectAttributes) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
@@ -283,17 +279,25 @@ public class ClientPageController {
         if (authentication != null && authentication.isAuthenticated()
                 && !("anonymousUser".equals(authentication.getPrincipal()))) {
             String username = authentication.getName();
-            currentUser = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+            currentUser = principalCacheService.findByUsername(username).orElse(null);
         }
 
         Pageable pageable = PageRequest.of(page, size);
 
         // Nếu không có từ khóa tìm kiếm, hiển thị tài liệu phổ biến và mới nhất
-        Page<DocumentDTO> searchResults;
+        Slice<DocumentDTO> searchResults;
+        long totalResults;
         if (q == null || q.trim().isEmpty()) {
-            // Hiển thị tài liệu phổ biến và mới nhất
-            searchResults = documentService.getPopularAndRecentDocuments(pageable);
+            // Hiển thị tài liệu phổ biến và mới nhất (có "after" thì phân trang keyset, không có số trang)
+            boolean cursorPage = after != null && !after.isBlank();
+            DocumentService.PopularDocumentsPage popular = cursorPage
+                    ? documentService.getPopularDocumentsAfter(after, size)
+                    : documentService.getPopularAndRecentDocuments(pageable);
+            searchResults = popular.documents();
+            totalResults = popular.total();
             model.addAttribute("isDefaultView", true);
+            model.addAttribute("cursorPage", cursorPage);
+            model.addAttribute("nextCursor", popular.nextCursor());
         } else {
             // Tìm kiếm theo từ khóa và bộ lọc
             Page<Document> documentPage = documentService.searchDocuments(q, category, format, price, rating, time,
@@ -304,10 +308,14 @@ public class ClientPageController {
                     .collect(Collectors.toList());
 
             searchResults = new PageImpl<>(dtoList, pageable, documentPage.getTotalElements());
+            totalResults = documentPage.getTotalElements();
             model.addAttribute("isDefaultView", false);
+            model.addAttribute("cursorPage", false);
         }
 
         model.addAttribute("searchResults", searchResults);
+        model.addAttribute("totalResults", totalResults);
+        model.addAttribute("size", size);
         model.addAttribute("query", q);
         model.addAttribute("category", category);
         model.addAttribute("format", format);
@@ -321,30 +329,18 @@ public class ClientPageController {
         }
         model.addAttribute("favoriteDocIds", favoriteDocIds);
 
-        // Theo định dạng
-        Map<String, Long> formatCounts = documentService.countFormats(q);
-        model.addAttribute("formatCounts", formatCounts);
-
-        // Theo danh mục (slug)
-        Map<String, Long> categoryCounts = documentService.countDocumentsPerCategorySlug();
-        model.addAttribute("categoryCounts", categoryCounts);
+        // Đếm facet cho bộ lọc (định dạng, danh mục, giá, thời gian, đánh giá) trong một lượt
+        SearchFacetService.SearchFacets facets = searchFacetService.getFacets(q);
+        model.addAttribute("formatCounts", facets.formatCounts());
+        model.addAttribute("categoryCounts", facets.categoryCounts());
+        model.addAttribute("priceCounts", facets.priceCounts());
+        model.addAttribute("timeCounts", facets.timeCounts());
+        model.addAttribute("ratingCounts", facets.ratingCounts());
 
         // Thêm danh sách danh mục để render bộ lọc (slug, name)
         List<CategoryDTO> categories = categoryService.getActiveCategories();
         model.addAttribute("categories", categories);
 
-        // Theo giá
-        Map<String, Long> priceCounts = documentService.countByPrice(q);
-        model.addAttribute("priceCounts", priceCounts);
-
-        // Theo thời gian
-        Map<String, Long> timeCounts = documentService.countByTime(q);
-        model.addAttribute("timeCounts", timeCounts);
-
-        // Theo đánh giá
-        Map<String, Long> ratingCounts = documentService.countByRating(q);
-        model.addAttribute("ratingCounts", ratingCounts);
-
         return "client/search";
     }
 
@@ -371,7 +367,7 @@ public class ClientPageController {
 
     @PostMapping("/upload/step1")
     public String processStep1(
-            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "file", required = false) MultipartFile file,
             HttpSession session,
             RedirectAttributes redirectAttributes,
             Model model) {
@@ -389,34 +385,37 @@ public class ClientPageController {
             return "redirect:/upload";
         }
 
-        // Kiểm tra file
-        if (file == null || file.isEmpty()) {
+        // Kiểm tra file; file đã tải lên theo chunk (/upload/chunked) thì đã nằm sẵn trong session
+        boolean chunkedUploaded = (file == null || file.isEmpty()) && session.getAttribute("fileName") != null
+                && uploadStagingService.exists(
+                        (UploadStagingService.StagedUpload) session.getAttribute("uploadStagedFile"));
+        if (!chunkedUploaded && (file == null || file.isEmpty())) {
             redirectAttributes.addFlashAttribute("error", "Vui lòng chọn file để tải lên");
             return "redirect:/upload";
         }
 
         // Kiểm tra kích thước file (50MB theo yêu cầu)
-        if (file.getSize() > 50 * 1024 * 1024) {
+        if (!chunkedUploaded && file.getSize() > 50 * 1024 * 1024) {
             redirectAttributes.addFlashAttribute("error", "Kích thước file vượt quá 50MB");
             return "redirect:/upload";
         }
 
         // Kiểm tra định dạng file
-        String fileName = file.getOriginalFilename();
+        String fileName = chunkedUploaded ? (String) session.getAttribute("fileName") : file.getOriginalFilename();
         if (fileName != null && !fileName.matches(".*\\.(pdf|doc|docx|ppt|pptx|xls|xlsx)$")) {
             redirectAttributes.addFlashAttribute("error",
                     "Định dạng file không được hỗ trợ. Hỗ trợ: PDF, DOC, DOCX, PPT, PPTX, XLS, XLSX");
             return "redirect:/upload";
         }
 
-        // Lưu nội dung file dưới dạng byte array
-        byte[] fileContent;
+        // Ghi file xuống vùng staging, session chỉ giữ handle (file cũ của lần chọn trước bị xóa khi bị ghi đè)
         try {
-            fileContent = file.getInputStream().readAllBytes();
-            session.setAttribute("uploadFileContent", fileContent);
-            session.setAttribute("fileName", fileName);
-            session.setAttribute("fileSize", file.getSize());
-            session.setAttribute("fileType", fileName.substring(fileName.lastIndexOf(".") + 1).toUpperCase());
+            if (!chunkedUploaded) {
+                session.setAttribute("uploadStagedFile", uploadStagingService.stage(file));
+                session.setAttribute("fileName", fileName);
+                session.setAttribute("fileSize", file.getSize());
+                session.setAttribute("fileType", fileName.substring(fileName.lastIndexOf(".") + 1).toUpperCase());
+            }
         } catch (IOException e) {
             redirectAttributes.addFlashAttribute("error", "Lỗi khi đọc file: " + e.getMessage());
             return "redirect:/upload";
@@ -583,9 +582,10 @@ public class ClientPageController {
 
         // Lấy dữ liệu từ session
         DocumentDTO documentDTO = (DocumentDTO) session.getAttribute("uploadDocumentDTO");
-        byte[] fileContent = (byte[]) session.getAttribute("uploadFileContent");
+        UploadStagingService.StagedUpload stagedFile = (UploadStagingService.StagedUpload) session
+                .getAttribute("uploadStagedFile");
         String fileName = (String) session.getAttribute("fileName");
-        if (documentDTO == null || fileContent == null || fileName == null) {
+        if (documentDTO == null || !uploadStagingService.exists(stagedFile) || fileName == null) {
             redirectAttributes.addFlashAttribute("error", "Dữ liệu tài liệu hoặc file không tồn tại");
             return "redirect:/upload";
         }
@@ -603,7 +603,7 @@ public class ClientPageController {
         System.out.println("CategoryIds: " + documentDTO.getCategoryIds());
         System.out.println("TagNames: " + documentDTO.getTagNames());
         System.out.println("UserId: " + currentUser.get().getId());
-        System.out.println("File size: " + fileContent.length);
+        System.out.println("File size: " + stagedFile.getSize());
         documentDTO.setVisibility(accessType.equals("premium") ? "premium" : "public");
         if (accessType.equals("premium") && price != null) {
             documentDTO.setPrice(new BigDecimal(price));
@@ -615,7 +615,7 @@ public class ClientPageController {
         try {
             // Gọi service để lưu tài liệu
             DocumentDTO createdDocument = documentService.createDocument(
-                    documentDTO, fileContent, fileName, documentDTO.getCategoryIds(), documentDTO.getTagNames(),
+                    documentDTO, stagedFile, documentDTO.getCategoryIds(), documentDTO.getTagNames(),
                     currentUser.get().getId());
             // Tạo notification cho admin khi có document mới
             try {
@@ -641,7 +641,7 @@ public class ClientPageController {
 
             // Xóa dữ liệu tạm
             session.removeAttribute("uploadDocumentDTO");
-            session.removeAttribute("uploadFileContent");
+            session.removeAttribute("uploadStagedFile");
             session.removeAttribute("fileName");
             session.removeAttribute("fileSize");
             session.removeAttribute("fileType");
@@ -661,7 +661,7 @@ public class ClientPageController {
     @PostMapping("/upload/reset")
     public String resetUpload(HttpSession session, RedirectAttributes redirectAttributes) {
         session.removeAttribute("uploadDocumentDTO");
-        session.removeAttribute("uploadFile");
+        session.removeAttribute("uploadStagedFile");
         session.removeAttribute("fileName");
         session.removeAttribute("fileSize");
         session.removeAttribute("fileType");
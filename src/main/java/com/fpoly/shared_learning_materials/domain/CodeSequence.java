@@ -0,0 +1,37 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bộ đếm dùng chung để sinh mã (giao dịch, rút tiền...). Mỗi node xin một khối số liên tiếp
+ * bằng cách tăng nextValue trong transaction có khóa, sau đó cấp mã trong bộ nhớ.
+ */
+@Entity
+@Table(name = "code_sequences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CodeSequence {
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+
+    // Số đầu tiên chưa được cấp cho node nào
+    @Column(name = "next_value", nullable = false)
+    private Long nextValue;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
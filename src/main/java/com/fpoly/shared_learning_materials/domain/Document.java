@@ -11,7 +11,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+		// Phục vụ xếp hạng phổ biến với phân trang keyset (status, deleted_at, điểm giảm dần, id giảm dần)
+		@Index(name = "idx_documents_popularity", columnList = "status, deleted_at, popularity_score DESC, id DESC")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -49,6 +52,10 @@ public class Document {
 	@Column(name = "views_count")
 	private Long viewsCount = 0L;
 
+	// Điểm phổ biến = lượt xem + lượt tải, lưu sẵn để sắp xếp/phân trang bằng index
+	@Column(name = "popularity_score")
+	private Long popularityScore = 0L;
+
 	@Column(name = "created_at")
 	private LocalDateTime createdAt;
 
@@ -84,11 +91,17 @@ public class Document {
 	protected void onCreate() {
 		createdAt = LocalDateTime.now();
 		updatedAt = LocalDateTime.now();
+		popularityScore = computePopularityScore();
 	}
 
 	@PreUpdate
 	protected void onUpdate() {
 		updatedAt = LocalDateTime.now();
+		popularityScore = computePopularityScore();
+	}
+
+	private Long computePopularityScore() {
+		return (viewsCount != null ? viewsCount : 0L) + (downloadsCount != null ? downloadsCount : 0L);
 	}
 
 	public enum DocumentStatus {
@@ -179,6 +192,14 @@ public class Document {
 		this.viewsCount = viewsCount;
 	}
 
+	public Long getPopularityScore() {
+		return popularityScore;
+	}
+
+	public void setPopularityScore(Long popularityScore) {
+		this.popularityScore = popularityScore;
+	}
+
 	public LocalDateTime getCreatedAt() {
 		return createdAt;
 	}
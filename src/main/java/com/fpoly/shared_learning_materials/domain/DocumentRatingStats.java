@@ -0,0 +1,72 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Tổng hợp đánh giá của một tài liệu (số đánh giá, tổng điểm, số lượng từng mức 1-5 sao),
+ * cập nhật tăng dần khi bình luận được thêm/ẩn/hiện/xóa thay vì quét lại bảng comments
+ */
+@Entity
+@Table(name = "document_rating_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentRatingStats {
+
+    @Id
+    @Column(name = "document_id")
+    private Long documentId;
+
+    // Số bình luận đang hiển thị (kể cả bình luận không chấm điểm)
+    @Column(name = "rating_count", nullable = false)
+    private Long ratingCount = 0L;
+
+    @Column(name = "rating_sum", nullable = false)
+    private Long ratingSum = 0L;
+
+    @Column(name = "star1_count", nullable = false)
+    private Long star1Count = 0L;
+
+    @Column(name = "star2_count", nullable = false)
+    private Long star2Count = 0L;
+
+    @Column(name = "star3_count", nullable = false)
+    private Long star3Count = 0L;
+
+    @Column(name = "star4_count", nullable = false)
+    private Long star4Count = 0L;
+
+    @Column(name = "star5_count", nullable = false)
+    private Long star5Count = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public long getStarCount(int star) {
+        switch (star) {
+            case 1:
+                return star1Count;
+            case 2:
+                return star2Count;
+            case 3:
+                return star3Count;
+            case 4:
+                return star4Count;
+            case 5:
+                return star5Count;
+            default:
+                return 0L;
+        }
+    }
+}
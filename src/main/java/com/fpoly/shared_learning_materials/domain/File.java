@@ -35,6 +35,11 @@ public class File {
     @Column(name = "checksum", length = 255)
     private String checksum;
 
+    // Nội dung dùng chung (content-addressed); null với file lưu theo cách cũ (tên file theo thời gian tải lên)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_id")
+    private FileBlob blob;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "uploaded_by")
     private User uploadedBy;
@@ -118,6 +123,14 @@ public class File {
 		this.checksum = checksum;
 	}
 
+	public FileBlob getBlob() {
+		return blob;
+	}
+
+	public void setBlob(FileBlob blob) {
+		this.blob = blob;
+	}
+
 	public User getUploadedBy() {
 		return uploadedBy;
 	}
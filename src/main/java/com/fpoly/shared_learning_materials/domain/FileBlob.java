@@ -0,0 +1,56 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Nội dung file lưu theo SHA-256 (content-addressed): nhiều File có cùng nội dung dùng chung một blob trên đĩa.
+ * refCount là số File đang trỏ tới blob; về 0 thì blob và file vật lý bị xóa
+ */
+@Entity
+@Table(name = "file_blobs", indexes = {
+        @Index(name = "idx_file_blobs_ref_count", columnList = "ref_count")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sha256", length = 64, nullable = false)
+    private String sha256;
+
+    // Tên file trong thư mục tài liệu: <sha256>.<phần mở rộng>
+    @Column(name = "storage_name", length = 100, nullable = false, unique = true)
+    private String storageName;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 0;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,63 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Trạng thái của bản tin tài liệu mới: mốc (high-water mark) là id tài liệu lớn nhất đã gửi,
+ * tiến độ của lượt đang chạy (để chạy tiếp sau khi ứng dụng dừng giữa chừng) và số liệu lượt gần nhất.
+ */
+@Entity
+@Table(name = "notification_digest_states")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationDigestState {
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+
+    // Tài liệu có id <= mốc này đã được đưa vào bản tin
+    @Column(name = "last_document_id", nullable = false)
+    private Long lastDocumentId = 0L;
+
+    @Column(name = "last_run_at")
+    private LocalDateTime lastRunAt;
+
+    // Lượt đang chạy: tài liệu trong (lastDocumentId, runUpToDocumentId], tạo sau runSince; null = không có lượt dở
+    @Column(name = "run_up_to_document_id")
+    private Long runUpToDocumentId;
+
+    @Column(name = "run_since")
+    private LocalDateTime runSince;
+
+    // Id người nhận cuối cùng đã ghi email trong lượt đang chạy
+    @Column(name = "run_user_cursor")
+    private Long runUserCursor;
+
+    @Column(name = "last_documents_scanned")
+    private Integer lastDocumentsScanned = 0;
+
+    @Column(name = "last_recipients")
+    private Integer lastRecipients = 0;
+
+    @Column(name = "last_emails_queued")
+    private Integer lastEmailsQueued = 0;
+
+    @Column(name = "last_duration_ms")
+    private Long lastDurationMs = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
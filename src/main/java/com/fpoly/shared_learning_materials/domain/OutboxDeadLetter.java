@@ -0,0 +1,62 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện outbox đã hết số lần thử mà vẫn gửi lỗi; giữ lại để kiểm tra và gửi lại thủ công
+ */
+@Entity
+@Table(name = "outbox_dead_letters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_id")
+    private Long eventId;
+
+    @Column(name = "event_type", length = 20, nullable = false)
+    private String eventType;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "recipient", length = 255)
+    private String recipient;
+
+    @Column(name = "subject", columnDefinition = "nvarchar(500)")
+    private String subject;
+
+    @Column(name = "body", columnDefinition = "nvarchar(max)")
+    private String body;
+
+    @Column(name = "notification_type", length = 50)
+    private String notificationType;
+
+    @Column(name = "attempts")
+    private Integer attempts;
+
+    @Column(name = "last_error", columnDefinition = "nvarchar(1000)")
+    private String lastError;
+
+    // Thời điểm sự kiện gốc được tạo
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "failed_at")
+    private LocalDateTime failedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        failedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,77 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện chờ gửi (thông báo trong hệ thống hoặc email), ghi cùng transaction với nghiệp vụ phát sinh
+ * và được OutboxService gửi ở nền sau khi commit. Sự kiện gửi thành công bị xóa khỏi bảng.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_events_due", columnList = "status, next_attempt_at, id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+
+    public static final String TYPE_NOTIFICATION = "NOTIFICATION";
+    public static final String TYPE_EMAIL = "EMAIL";
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_SENDING = "SENDING";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_type", length = 20, nullable = false)
+    private String eventType;
+
+    // Người nhận thông báo (NOTIFICATION)
+    @Column(name = "user_id")
+    private Long userId;
+
+    // Địa chỉ nhận (EMAIL)
+    @Column(name = "recipient", length = 255)
+    private String recipient;
+
+    // Tiêu đề thông báo / subject email
+    @Column(name = "subject", columnDefinition = "nvarchar(500)")
+    private String subject;
+
+    @Column(name = "body", columnDefinition = "nvarchar(max)")
+    private String body;
+
+    // Loại thông báo ('transaction', 'payout', ...)
+    @Column(name = "notification_type", length = 50)
+    private String notificationType;
+
+    @Column(name = "status", length = 20, nullable = false)
+    private String status = STATUS_PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", columnDefinition = "nvarchar(1000)")
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Chunk đã nhận đủ và đúng checksum của một phiên tải lên
+ */
+@Entity
+@Table(name = "upload_chunks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadChunk {
+
+    @EmbeddedId
+    private UploadChunkId id;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    // SHA-256 (hex) của nội dung chunk
+    @Column(name = "checksum", length = 64, nullable = false)
+    private String checksum;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,22 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadChunkId implements Serializable {
+
+    @Column(name = "session_id", length = 36)
+    private String sessionId;
+
+    @Column(name = "chunk_index")
+    private Integer chunkIndex;
+}
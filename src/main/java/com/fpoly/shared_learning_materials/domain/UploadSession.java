@@ -0,0 +1,83 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Phiên tải lên theo từng phần (chunk); id của phiên cũng là mã để client tiếp tục tải khi bị ngắt kết nối
+ */
+@Entity
+@Table(name = "upload_sessions", indexes = {
+        @Index(name = "idx_upload_sessions_updated_at", columnList = "updated_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    public static final String BACKEND_LOCAL = "LOCAL";
+    public static final String BACKEND_AZURE = "AZURE";
+
+    public static final String STATUS_UPLOADING = "UPLOADING";
+    public static final String STATUS_COMPLETING = "COMPLETING";
+
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "file_name", nullable = false, columnDefinition = "nvarchar(500)")
+    private String fileName;
+
+    @Column(name = "content_type", length = 255)
+    private String contentType;
+
+    @Column(name = "file_size", nullable = false)
+    private Long fileSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+
+    @Column(name = "total_chunks", nullable = false)
+    private Integer totalChunks;
+
+    @Column(name = "backend", length = 10, nullable = false)
+    private String backend;
+
+    // Tên blob trên Azure (chỉ dùng với backend AZURE)
+    @Column(name = "blob_name", columnDefinition = "nvarchar(500)")
+    private String blobName;
+
+    @Column(name = "status", length = 20, nullable = false)
+    private String status = STATUS_UPLOADING;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Kích thước của chunk thứ index (chunk cuối có thể ngắn hơn)
+     */
+    public long getChunkLength(int index) {
+        return Math.min((long) chunkSize, fileSize - (long) index * chunkSize);
+    }
+}
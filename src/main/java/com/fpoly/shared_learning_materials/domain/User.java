@@ -98,7 +98,9 @@ public class User {
     @Column(name = "role", length = 50)
     private String role = "user";
 
-    @Column(name = "coin_balance")
+    // Không ghi khi save entity: số dư chỉ đổi qua CoinBalanceService (UPDATE cộng/trừ nguyên tử),
+    // để một bản User cũ được save lại không ghi đè giao dịch xu đồng thời
+    @Column(name = "coin_balance", updatable = false)
     private BigDecimal coinBalance = BigDecimal.ZERO;
 
     @Column(name = "total_spent", precision = 18, scale = 2)
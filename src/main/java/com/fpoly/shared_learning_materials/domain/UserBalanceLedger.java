@@ -0,0 +1,102 @@
+package com.fpoly.shared_learning_materials.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Sổ cái số dư của một người dùng: tổng nạp, tổng chi mua tài liệu và tổng rút theo từng trạng thái.
+ * Được cộng/trừ trong cùng transaction với giao dịch gốc để trang tài khoản chỉ cần đọc một dòng theo khóa chính
+ */
+@Entity
+@Table(name = "user_balance_ledgers")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserBalanceLedger {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    // Tổng xu đã nạp (coinsReceived của giao dịch nạp COMPLETED)
+    @Column(name = "total_recharge", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalRecharge = BigDecimal.ZERO;
+
+    // Tổng xu đã chi mua tài liệu (chi tiết 'document' của giao dịch COMPLETED)
+    @Column(name = "total_spent", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalSpent = BigDecimal.ZERO;
+
+    @Column(name = "withdrawal_completed", nullable = false, precision = 15, scale = 2)
+    private BigDecimal withdrawalCompleted = BigDecimal.ZERO;
+
+    @Column(name = "withdrawal_pending", nullable = false, precision = 15, scale = 2)
+    private BigDecimal withdrawalPending = BigDecimal.ZERO;
+
+    @Column(name = "withdrawal_processing", nullable = false, precision = 15, scale = 2)
+    private BigDecimal withdrawalProcessing = BigDecimal.ZERO;
+
+    @Column(name = "withdrawal_failed", nullable = false, precision = 15, scale = 2)
+    private BigDecimal withdrawalFailed = BigDecimal.ZERO;
+
+    @Column(name = "withdrawal_cancelled", nullable = false, precision = 15, scale = 2)
+    private BigDecimal withdrawalCancelled = BigDecimal.ZERO;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    public BigDecimal getWithdrawal(Transaction.TransactionStatus status) {
+        if (status == null) {
+            return BigDecimal.ZERO;
+        }
+        switch (status) {
+            case COMPLETED:
+                return withdrawalCompleted;
+            case PENDING:
+                return withdrawalPending;
+            case PROCESSING:
+                return withdrawalProcessing;
+            case FAILED:
+                return withdrawalFailed;
+            case CANCELLED:
+                return withdrawalCancelled;
+            default:
+                return BigDecimal.ZERO;
+        }
+    }
+
+    public void setWithdrawal(Transaction.TransactionStatus status, BigDecimal amount) {
+        if (status == null) {
+            return;
+        }
+        switch (status) {
+            case COMPLETED:
+                withdrawalCompleted = amount;
+                break;
+            case PENDING:
+                withdrawalPending = amount;
+                break;
+            case PROCESSING:
+                withdrawalProcessing = amount;
+                break;
+            case FAILED:
+                withdrawalFailed = amount;
+                break;
+            case CANCELLED:
+                withdrawalCancelled = amount;
+                break;
+            default:
+                break;
+        }
+    }
+}
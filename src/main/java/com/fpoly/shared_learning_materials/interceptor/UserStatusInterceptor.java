@@ -1,7 +1,7 @@
 package com.fpoly.shared_learning_materials.interceptor;
 
-import com.fpoly.shared_learning_materials.domain.User;
-import com.fpoly.shared_learning_materials.repository.UserRepository;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService;
+import com.fpoly.shared_learning_materials.service.PrincipalCacheService.PrincipalSnapshot;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
@@ -11,13 +11,11 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.time.LocalDateTime;
-
 @Component
 public class UserStatusInterceptor implements HandlerInterceptor {
 
     @Autowired
-    private UserRepository userRepository;
+    private PrincipalCacheService principalCacheService;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
@@ -32,22 +30,22 @@ public class UserStatusInterceptor implements HandlerInterceptor {
             String username = authentication.getName();
 
             try {
-                // Kiểm tra trạng thái user trong database
-                User user = userRepository.findByUsernameAndDeletedAtIsNull(username).orElse(null);
+                // Kiểm tra trạng thái user (cache ngắn hạn, bị xóa khi admin khóa/đổi vai trò)
+                PrincipalSnapshot user = principalCacheService.getSnapshot(username).orElse(null);
 
                 if (user != null) {
                     boolean shouldInvalidateSession = false;
                     String redirectUrl = "/login";
 
                     // Kiểm tra trạng thái tài khoản
-                    if (!"active".equals(user.getStatus())) {
+                    if (!"active".equals(user.status())) {
                         shouldInvalidateSession = true;
                         redirectUrl = "/login?error="
                                 + java.net.URLEncoder.encode("Tài khoản đã bị khóa bởi quản trị viên", "UTF-8");
                     }
 
                     // Kiểm tra khóa tạm thời do nhập sai mật khẩu
-                    if (user.getLockedUntil() != null && user.getLockedUntil().isAfter(LocalDateTime.now())) {
+                    if (user.isLocked()) {
                         shouldInvalidateSession = true;
                         redirectUrl = "/login?error=" + java.net.URLEncoder
                                 .encode("Tài khoản đã bị khóa do nhập sai mật khẩu quá nhiều lần", "UTF-8");
@@ -30,5 +30,10 @@ public interface CategoryHierarchyRepository extends JpaRepository<CategoryHiera
 	    Optional<CategoryHierarchy> findByIdChildId(Long childId);
 	    
 	    List<CategoryHierarchy> findByIdParentId(Long parentId);
-	    
+
+	    /**
+	     * (parentId, childId, createdAt) của mọi quan hệ cha-con
+	     */
+	    @Query("SELECT ch.id.parentId, ch.id.childId, ch.createdAt FROM CategoryHierarchy ch")
+	    List<Object[]> findAllEdges();
 }
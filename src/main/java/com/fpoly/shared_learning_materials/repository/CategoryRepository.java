@@ -1,6 +1,7 @@
 package com.fpoly.shared_learning_materials.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.Optional;
@@ -37,4 +38,12 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
     long countByDeletedAtIsNull();
 
     long countByDeletedAtIsNotNull();
+
+    /**
+     * Cột dùng để dựng cây danh mục trong bộ nhớ: id, name, slug, description, status, sortOrder,
+     * createdBy.id, createdBy.fullName, createdAt, updatedAt, deletedAt
+     */
+    @Query("SELECT c.id, c.name, c.slug, c.description, c.status, c.sortOrder, u.id, u.fullName, "
+            + "c.createdAt, c.updatedAt, c.deletedAt FROM Category c LEFT JOIN c.createdBy u")
+    List<Object[]> findTreeRows();
 }
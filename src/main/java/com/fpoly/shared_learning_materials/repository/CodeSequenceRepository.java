@@ -0,0 +1,21 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.fpoly.shared_learning_materials.domain.CodeSequence;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface CodeSequenceRepository extends JpaRepository<CodeSequence, String> {
+
+        @Lock(LockModeType.PESSIMISTIC_WRITE)
+        @Query("SELECT s FROM CodeSequence s WHERE s.name = :name")
+        Optional<CodeSequence> findByNameForUpdate(@Param("name") String name);
+}
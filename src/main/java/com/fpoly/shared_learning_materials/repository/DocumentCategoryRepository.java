@@ -88,4 +88,27 @@ public interface DocumentCategoryRepository extends JpaRepository<DocumentCatego
 			"WHERE dc.category.id IN :categoryIds " +
 			"GROUP BY dc.category.id")
 	List<Object[]> countDocumentsByCategoryIds(@Param("categoryIds") List<Long> categoryIds);
+
+	/**
+	 * Get (documentId, category slug, category name) for a batch of documents
+	 */
+	@Query("SELECT dc.id.documentId, c.slug, c.name " +
+			"FROM DocumentCategory dc JOIN dc.category c " +
+			"WHERE dc.id.documentId IN :documentIds")
+	List<Object[]> findCategorySlugsAndNamesByDocumentIds(@Param("documentIds") List<Long> documentIds);
+
+	@Query("SELECT dc.id.documentId, dc.id.categoryId FROM DocumentCategory dc WHERE dc.id.documentId IN :documentIds")
+	List<Object[]> findCategoryIdPairsByDocumentIds(@Param("documentIds") List<Long> documentIds);
+
+	/**
+	 * Get (documentId, categoryId) pairs of all non-deleted documents
+	 */
+	@Query("SELECT dc.id.documentId, dc.id.categoryId FROM DocumentCategory dc WHERE dc.document.deletedAt IS NULL")
+	List<Object[]> findActiveDocumentCategoryIdPairs();
+
+	/**
+	 * Get (categoryId, document count) for every category that has documents
+	 */
+	@Query("SELECT dc.id.categoryId, COUNT(dc) FROM DocumentCategory dc GROUP BY dc.id.categoryId")
+	List<Object[]> countDocumentsGroupByCategoryId();
 }
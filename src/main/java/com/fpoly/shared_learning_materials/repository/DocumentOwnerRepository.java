@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.fpoly.shared_learning_materials.domain.Document;
@@ -18,4 +19,14 @@ public interface DocumentOwnerRepository extends JpaRepository<DocumentOwner, Do
     public boolean existsByUserAndDocument(User user, Document document);
      @Query("SELECT COUNT(DISTINCT do.user.id) FROM DocumentOwner do WHERE do.document.deletedAt IS NULL")
     long countDistinctContributors();
+
+    // (documentId, fullName, username) cho một lô tài liệu, chủ sở hữu đầu tiên đứng trước
+    @Query("SELECT do.id.documentId, u.fullName, u.username FROM DocumentOwner do JOIN do.user u " +
+            "WHERE do.id.documentId IN :documentIds ORDER BY do.createdAt ASC")
+    List<Object[]> findOwnerNamesByDocumentIds(@Param("documentIds") List<Long> documentIds);
+
+    // (userId, categoryId) của các danh mục người dùng đã đăng tài liệu
+    @Query("SELECT DISTINCT do.id.userId, dc.id.categoryId FROM DocumentOwner do, DocumentCategory dc " +
+            "WHERE dc.id.documentId = do.id.documentId AND do.id.userId IN :userIds")
+    List<Object[]> findOwnedCategoryIdsByUserIds(@Param("userIds") List<Long> userIds);
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.fpoly.shared_learning_materials.domain.DocumentRatingStats;
+
+@Repository
+public interface DocumentRatingStatsRepository extends JpaRepository<DocumentRatingStats, Long> {
+
+        // Cộng dồn nguyên tử (delta có thể âm khi bình luận bị ẩn/xóa)
+        @Modifying
+        @Query("UPDATE DocumentRatingStats s SET s.ratingCount = s.ratingCount + :countDelta, " +
+                        "s.ratingSum = s.ratingSum + :sumDelta, " +
+                        "s.star1Count = s.star1Count + :star1, s.star2Count = s.star2Count + :star2, " +
+                        "s.star3Count = s.star3Count + :star3, s.star4Count = s.star4Count + :star4, " +
+                        "s.star5Count = s.star5Count + :star5, s.updatedAt = CURRENT_TIMESTAMP " +
+                        "WHERE s.documentId = :documentId")
+        int applyDelta(@Param("documentId") Long documentId,
+                        @Param("countDelta") long countDelta,
+                        @Param("sumDelta") long sumDelta,
+                        @Param("star1") long star1,
+                        @Param("star2") long star2,
+                        @Param("star3") long star3,
+                        @Param("star4") long star4,
+                        @Param("star5") long star5);
+
+        // Tạo dòng rỗng nếu chưa có; MERGE + HOLDLOCK nên hai đánh giá đầu tiên đồng thời không bị trùng khóa
+        @Modifying
+        @Query(value = "MERGE document_rating_stats WITH (HOLDLOCK) AS t " +
+                        "USING (SELECT :documentId AS document_id) AS s ON t.document_id = s.document_id " +
+                        "WHEN NOT MATCHED THEN INSERT (document_id, rating_count, rating_sum, star1_count, " +
+                        "star2_count, star3_count, star4_count, star5_count, updated_at) " +
+                        "VALUES (:documentId, 0, 0, 0, 0, 0, 0, 0, CURRENT_TIMESTAMP);", nativeQuery = true)
+        int insertIfMissing(@Param("documentId") Long documentId);
+
+        // Tính lại từ bảng comments: (documentId, count, sum, 1 sao, ..., 5 sao)
+        @Query("SELECT c.document.id, COUNT(c), COALESCE(SUM(c.rating), 0), " +
+                        "SUM(CASE WHEN c.rating = 1 THEN 1 ELSE 0 END), " +
+                        "SUM(CASE WHEN c.rating = 2 THEN 1 ELSE 0 END), " +
+                        "SUM(CASE WHEN c.rating = 3 THEN 1 ELSE 0 END), " +
+                        "SUM(CASE WHEN c.rating = 4 THEN 1 ELSE 0 END), " +
+                        "SUM(CASE WHEN c.rating = 5 THEN 1 ELSE 0 END) " +
+                        "FROM Comment c WHERE c.status = 'active' AND c.deletedAt IS NULL " +
+                        "GROUP BY c.document.id")
+        List<Object[]> aggregateActiveComments();
+
+        // (documentId, count, sum) của các tài liệu đã có đánh giá
+        @Query("SELECT s.documentId, s.ratingCount, s.ratingSum FROM DocumentRatingStats s WHERE s.ratingCount > 0")
+        List<Object[]> findRatedDocuments();
+}
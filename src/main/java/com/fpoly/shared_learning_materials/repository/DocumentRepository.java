@@ -1,6 +1,7 @@
 package com.fpoly.shared_learning_materials.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,12 +31,29 @@ public interface DocumentRepository extends JpaRepository<Document, Long>, JpaSp
 
         List<Document> findByCreatedAtBetweenAndDeletedAtIsNull(LocalDateTime start, LocalDateTime end);
 
+        // Bản tin tài liệu mới: tài liệu sau mốc id (tăng dần), không quá cũ
+        @Query("SELECT d FROM Document d WHERE d.id > :afterId AND d.id <= :upToId " +
+                        "AND d.createdAt >= :since AND d.deletedAt IS NULL ORDER BY d.id ASC")
+        List<Document> findDigestDocuments(@Param("afterId") Long afterId, @Param("upToId") Long upToId,
+                        @Param("since") LocalDateTime since);
+
+        @Query("SELECT MAX(d.id) FROM Document d")
+        Long findMaxId();
+
         long countByStatus(String status);
 
         boolean existsBySlug(String slug);
 
         Optional<Document> findBySlug(String slug);
 
+        // Kiểm tra slug đã tồn tại cho cả một lô (import)
+        @Query("SELECT d.slug FROM Document d WHERE d.slug IN :slugs")
+        List<String> findExistingSlugs(@Param("slugs") Collection<String> slugs);
+
+        // (id, slug) của các tài liệu theo slug
+        @Query("SELECT d.id, d.slug FROM Document d WHERE d.slug IN :slugs")
+        List<Object[]> findIdsBySlugs(@Param("slugs") Collection<String> slugs);
+
         Page<Document> findAll(Pageable pageable);
 
         @Query("SELECT d FROM Document d WHERE d.slug = :slug")
@@ -63,13 +81,15 @@ public interface DocumentRepository extends JpaRepository<Document, Long>, JpaSp
         long countByDeletedAtIsNotNull();
 
         // Tăng lượt xem
-        @Query("UPDATE Document d SET d.viewsCount = COALESCE(d.viewsCount, 0) + 1 WHERE d.id = :documentId")
+        @Query("UPDATE Document d SET d.viewsCount = COALESCE(d.viewsCount, 0) + 1, " +
+                        "d.popularityScore = COALESCE(d.popularityScore, 0) + 1 WHERE d.id = :documentId")
         @org.springframework.data.jpa.repository.Modifying
         @org.springframework.transaction.annotation.Transactional
         int incrementViewCount(@Param("documentId") Long documentId);
 
         // Tăng lượt tải
-        @Query("UPDATE Document d SET d.downloadsCount = COALESCE(d.downloadsCount, 0) + 1 WHERE d.id = :documentId")
+        @Query("UPDATE Document d SET d.downloadsCount = COALESCE(d.downloadsCount, 0) + 1, " +
+                        "d.popularityScore = COALESCE(d.popularityScore, 0) + 1 WHERE d.id = :documentId")
         @org.springframework.data.jpa.repository.Modifying
         @org.springframework.transaction.annotation.Transactional
         int incrementDownloadCount(@Param("documentId") Long documentId);
@@ -120,4 +140,37 @@ public interface DocumentRepository extends JpaRepository<Document, Long>, JpaSp
         // Lấy tài liệu theo status và chưa bị xóa, sắp xếp theo thời gian tạo giảm dần
         List<Document> findByStatusAndDeletedAtIsNullOrderByCreatedAtDesc(String status);
 
+        long countByStatusAndDeletedAtIsNull(String status);
+
+        // Xếp hạng phổ biến: id tăng theo thời gian tạo nên "id giảm dần" = "mới hơn trước"
+        @Query("SELECT d FROM Document d LEFT JOIN FETCH d.file " +
+                        "WHERE d.status = :status AND d.deletedAt IS NULL " +
+                        "ORDER BY d.popularityScore DESC, d.id DESC")
+        List<Document> findByPopularity(@Param("status") String status, Pageable pageable);
+
+        // Trang tiếp theo theo keyset: chỉ lấy các bản ghi đứng sau (score, id) cuối cùng của trang trước
+        @Query("SELECT d FROM Document d LEFT JOIN FETCH d.file " +
+                        "WHERE d.status = :status AND d.deletedAt IS NULL " +
+                        "AND (d.popularityScore < :score OR (d.popularityScore = :score AND d.id < :id)) " +
+                        "ORDER BY d.popularityScore DESC, d.id DESC")
+        List<Document> findByPopularityAfter(@Param("status") String status,
+                        @Param("score") Long score,
+                        @Param("id") Long id,
+                        Pageable pageable);
+
+        // Đọc tuần tự theo id (keyset) kèm file, dùng khi dựng lại search index
+        @Query("SELECT d FROM Document d LEFT JOIN FETCH d.file WHERE d.id > :afterId ORDER BY d.id ASC")
+        List<Document> findBatchWithFileAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+        // Một lô export JSON dạng cột (không nạp entity vào persistence context): id, title, description, slug,
+        // price, status, visibility, viewsCount, downloadsCount, createdAt, updatedAt,
+        // file.id, file.fileName, file.fileSize, file.fileType, file.mimeType
+        @Query("SELECT d.id, d.title, d.description, d.slug, d.price, d.status, d.visibility, d.viewsCount, " +
+                        "d.downloadsCount, d.createdAt, d.updatedAt, f.id, f.fileName, f.fileSize, f.fileType, f.mimeType " +
+                        "FROM Document d LEFT JOIN d.file f WHERE d.id > :afterId ORDER BY d.id ASC")
+        List<Object[]> findExportRowsAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+        @Query("SELECT d.id FROM Document d WHERE d.deletedAt IS NULL")
+        List<Long> findActiveDocumentIds();
+
 }
@@ -41,4 +41,10 @@ public interface DocumentTagRepository extends JpaRepository<DocumentTag, Docume
 
     @Query("SELECT dt FROM DocumentTag dt WHERE dt.id.documentId IN :documentIds")
     List<DocumentTag> findByDocumentIdIn(@Param("documentIds") List<Long> documentIds);
+
+    @Query("SELECT dt.id.documentId, t.name FROM DocumentTag dt JOIN dt.tag t WHERE dt.id.documentId IN :documentIds")
+    List<Object[]> findTagNamesByDocumentIds(@Param("documentIds") List<Long> documentIds);
+
+    @Query("SELECT dt.id.documentId, dt.id.tagId FROM DocumentTag dt WHERE dt.document.deletedAt IS NULL")
+    List<Object[]> findActiveDocumentTagIdPairs();
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.fpoly.shared_learning_materials.repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -22,4 +23,9 @@ public interface FavoriteRepository extends JpaRepository<Favorite, Long>, JpaSp
 
         @Query("SELECT COUNT(f) FROM Favorite f WHERE f.user = :user")
         long countByUser(@Param("user") User user);
+
+        // (userId, categoryId) của các danh mục có tài liệu người dùng đã yêu thích
+        @Query("SELECT DISTINCT f.user.id, dc.id.categoryId FROM Favorite f, DocumentCategory dc " +
+                        "WHERE dc.id.documentId = f.document.id AND f.user.id IN :userIds")
+        List<Object[]> findFavoriteCategoryIdsByUserIds(@Param("userIds") List<Long> userIds);
 }
@@ -0,0 +1,40 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fpoly.shared_learning_materials.domain.FileBlob;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, Long> {
+
+        Optional<FileBlob> findByStorageName(String storageName);
+
+        @Query("SELECT b FROM FileBlob b WHERE b.refCount <= 0 ORDER BY b.id")
+        List<FileBlob> findUnreferenced(Pageable pageable);
+
+        // Trả về 0 nếu blob vừa bị thu gom
+        @Modifying
+        @Transactional
+        @Query("UPDATE FileBlob b SET b.refCount = b.refCount + 1, b.updatedAt = CURRENT_TIMESTAMP WHERE b.id = :id")
+        int incrementRefCount(@Param("id") Long id);
+
+        @Modifying
+        @Transactional
+        @Query("UPDATE FileBlob b SET b.refCount = b.refCount - 1, b.updatedAt = CURRENT_TIMESTAMP WHERE b.id = :id")
+        int decrementRefCount(@Param("id") Long id);
+
+        // Chỉ xóa khi vẫn không còn tham chiếu (có thể vừa được dùng lại bởi một lần tải lên trùng nội dung)
+        @Modifying
+        @Transactional
+        @Query("DELETE FROM FileBlob b WHERE b.id = :id AND b.refCount <= 0")
+        int deleteIfUnreferenced(@Param("id") Long id);
+}
@@ -0,0 +1,10 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.fpoly.shared_learning_materials.domain.NotificationDigestState;
+
+@Repository
+public interface NotificationDigestStateRepository extends JpaRepository<NotificationDigestState, String> {
+}
@@ -0,0 +1,46 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fpoly.shared_learning_materials.domain.OutboxEvent;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+        // Sự kiện đến hạn gửi, cũ nhất trước
+        @Query("SELECT e FROM OutboxEvent e WHERE e.status = 'PENDING' AND e.nextAttemptAt <= :now ORDER BY e.id")
+        List<OutboxEvent> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+        long countByStatus(String status);
+
+        // Nhận sự kiện (PENDING -> SENDING); trả về 0 nếu node khác đã nhận
+        @Modifying
+        @Transactional
+        @Query("UPDATE OutboxEvent e SET e.status = 'SENDING', e.attempts = e.attempts + 1 " +
+                        "WHERE e.id = :id AND e.status = 'PENDING'")
+        int claim(@Param("id") Long id);
+
+        // Gửi lỗi: đưa về hàng đợi và hẹn lần thử sau
+        @Modifying
+        @Transactional
+        @Query("UPDATE OutboxEvent e SET e.status = 'PENDING', e.nextAttemptAt = :nextAttemptAt, " +
+                        "e.lastError = :lastError WHERE e.id = :id")
+        int reschedule(@Param("id") Long id,
+                        @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                        @Param("lastError") String lastError);
+
+        // Sự kiện đang gửi khi ứng dụng dừng thì đưa về hàng đợi
+        @Modifying
+        @Transactional
+        @Query("UPDATE OutboxEvent e SET e.status = 'PENDING' WHERE e.status = 'SENDING'")
+        int requeueSending();
+}
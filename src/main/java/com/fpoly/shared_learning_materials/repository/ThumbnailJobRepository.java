@@ -0,0 +1,53 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fpoly.shared_learning_materials.domain.ThumbnailJob;
+
+@Repository
+public interface ThumbnailJobRepository extends JpaRepository<ThumbnailJob, Long> {
+
+        List<ThumbnailJob> findByStatusOrderByIdAsc(String status, Pageable pageable);
+
+        long countByStatus(String status);
+
+        // Nhận job (PENDING -> RUNNING); trả về 0 nếu job đã được worker khác nhận
+        @Modifying
+        @Transactional
+        @Query("UPDATE ThumbnailJob j SET j.status = 'RUNNING', j.attempts = j.attempts + 1, " +
+                        "j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id AND j.status = 'PENDING'")
+        int claim(@Param("id") Long id);
+
+        @Modifying
+        @Transactional
+        @Query("UPDATE ThumbnailJob j SET j.status = :status, j.pagesRendered = :pagesRendered, " +
+                        "j.lastError = :lastError, j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id")
+        int finish(@Param("id") Long id,
+                        @Param("status") String status,
+                        @Param("pagesRendered") Integer pagesRendered,
+                        @Param("lastError") String lastError);
+
+        // Pool từ chối job vừa nhận: trả về hàng đợi và hoàn lại lượt thử đã tính khi claim
+        @Modifying
+        @Transactional
+        @Query("UPDATE ThumbnailJob j SET j.status = 'PENDING', j.attempts = j.attempts - 1, " +
+                        "j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id AND j.status = 'RUNNING'")
+        int release(@Param("id") Long id);
+
+        // Job RUNNING không cập nhật từ trước staleBefore (node xử lý đã dừng giữa chừng) thì đưa về hàng đợi;
+        // job mà node khác còn đang chạy không bị lấy lại
+        @Modifying
+        @Transactional
+        @Query("UPDATE ThumbnailJob j SET j.status = 'PENDING', j.updatedAt = CURRENT_TIMESTAMP " +
+                        "WHERE j.status = 'RUNNING' AND j.updatedAt < :staleBefore")
+        int requeueStale(@Param("staleBefore") LocalDateTime staleBefore);
+}
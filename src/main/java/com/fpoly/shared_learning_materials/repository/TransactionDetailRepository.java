@@ -42,6 +42,12 @@ public interface TransactionDetailRepository extends JpaRepository<TransactionDe
         @Query("SELECT CASE WHEN COUNT(td) > 0 THEN true ELSE false END FROM TransactionDetail td WHERE td.detailType = 'document' AND td.referenceId = :documentId AND td.transaction.user = :user AND td.transaction.status = 'COMPLETED'")
         boolean existsCompletedDocumentPurchase(@Param("user") User user, @Param("documentId") Long documentId);
 
+        // (userId, categoryId) của các danh mục có tài liệu người dùng đã mua
+        @Query("SELECT DISTINCT td.transaction.user.id, dc.id.categoryId FROM TransactionDetail td, DocumentCategory dc " +
+                        "WHERE td.detailType = 'document' AND dc.id.documentId = td.referenceId " +
+                        "AND td.transaction.status = 'COMPLETED' AND td.transaction.user.id IN :userIds")
+        List<Object[]> findPurchasedCategoryIdsByUserIds(@Param("userIds") List<Long> userIds);
+
         @Query("SELECT td FROM TransactionDetail td WHERE td.detailType = 'document' AND td.referenceId = :documentId AND td.transaction.user = :user ORDER BY td.createdAt DESC")
         List<TransactionDetail> findDocumentPurchaseHistory(@Param("user") User user,
                         @Param("documentId") Long documentId,
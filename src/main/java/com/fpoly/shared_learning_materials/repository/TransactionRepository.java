@@ -1,10 +1,12 @@
 package com.fpoly.shared_learning_materials.repository;
 
 import com.fpoly.shared_learning_materials.domain.Transaction;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -22,6 +24,18 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
         // Kiểm tra mã giao dịch có tồn tại không
         boolean existsByCodeAndDeletedAtIsNull(String code);
 
+        // Số lớn nhất sau tiền tố trong các mã (kể cả đã xóa, bỏ qua mã có phần sau tiền tố không phải số),
+        // dùng một lần để khởi tạo bộ đếm sinh mã; so sánh theo giá trị số nên không phụ thuộc độ rộng mã
+        @Query(value = "SELECT MAX(TRY_CAST(SUBSTRING(code, LEN(:prefix) + 1, 38) AS DECIMAL(38, 0))) " +
+                        "FROM transactions WHERE code LIKE :prefix + '%'", nativeQuery = true)
+        BigDecimal findMaxCodeNumber(@Param("prefix") String prefix);
+
+        // Người dùng của giao dịch đang lưu trong database; không flush trước khi đọc
+        // để vẫn thấy giá trị cũ khi entity đã bị sửa trong persistence context
+        @Query("SELECT t.user.id FROM Transaction t WHERE t.id = :id")
+        @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "COMMIT"))
+        Long findStoredUserIdById(@Param("id") Long id);
+
         // Lấy tất cả giao dịch chưa bị xóa với phân trang
         Page<Transaction> findByDeletedAtIsNull(Pageable pageable);
 
@@ -47,6 +61,21 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
                         @Param("type") Transaction.TransactionType type,
                         Pageable pageable);
 
+        // Xuất Excel: (id, code, type, status, amount, paymentMethod, fullName, email, createdAt, notes)
+        // theo trang keyset id tăng dần, cùng bộ lọc với màn hình danh sách
+        @Query("SELECT t.id, t.code, t.type, t.status, t.amount, t.paymentMethod, u.fullName, u.email, " +
+                        "t.createdAt, t.notes FROM Transaction t JOIN t.user u " +
+                        "WHERE t.deletedAt IS NULL AND t.id > :afterId " +
+                        "AND (:keyword IS NULL OR t.code LIKE %:keyword% OR u.fullName LIKE %:keyword%) " +
+                        "AND (:status IS NULL OR t.status = :status) " +
+                        "AND (:type IS NULL OR t.type = :type) " +
+                        "ORDER BY t.id ASC")
+        List<Object[]> findExportRowsAfter(@Param("afterId") Long afterId,
+                        @Param("keyword") String keyword,
+                        @Param("status") Transaction.TransactionStatus status,
+                        @Param("type") Transaction.TransactionType type,
+                        Pageable pageable);
+
         // Lọc theo khoảng thời gian
         @Query("SELECT t FROM Transaction t WHERE t.deletedAt IS NULL " +
                         "AND t.createdAt BETWEEN :startDate AND :endDate")
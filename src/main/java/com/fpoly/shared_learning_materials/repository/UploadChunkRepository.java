@@ -0,0 +1,25 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fpoly.shared_learning_materials.domain.UploadChunk;
+import com.fpoly.shared_learning_materials.domain.UploadChunkId;
+
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, UploadChunkId> {
+
+        @Query("SELECT c.id.chunkIndex FROM UploadChunk c WHERE c.id.sessionId = :sessionId ORDER BY c.id.chunkIndex")
+        List<Integer> findChunkIndexes(@Param("sessionId") String sessionId);
+
+        @Modifying
+        @Transactional
+        @Query("DELETE FROM UploadChunk c WHERE c.id.sessionId = :sessionId")
+        int deleteBySessionId(@Param("sessionId") String sessionId);
+}
@@ -0,0 +1,35 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fpoly.shared_learning_materials.domain.UploadSession;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+        Optional<UploadSession> findByIdAndUserId(String id, Long userId);
+
+        List<UploadSession> findByUpdatedAtBefore(LocalDateTime cutoff);
+
+        // Cập nhật thời điểm hoạt động cuối (phiên còn đang được tải thì không bị dọn)
+        @Modifying
+        @Transactional
+        @Query("UPDATE UploadSession s SET s.updatedAt = CURRENT_TIMESTAMP WHERE s.id = :id")
+        int touch(@Param("id") String id);
+
+        // Chuyển trạng thái; trả về 0 nếu phiên không còn ở trạng thái from (vd. đang được hoàn tất bởi request khác)
+        @Modifying
+        @Transactional
+        @Query("UPDATE UploadSession s SET s.status = :to, s.updatedAt = CURRENT_TIMESTAMP " +
+                        "WHERE s.id = :id AND s.status = :from")
+        int transition(@Param("id") String id, @Param("from") String from, @Param("to") String to);
+}
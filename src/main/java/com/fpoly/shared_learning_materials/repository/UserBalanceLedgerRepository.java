@@ -0,0 +1,76 @@
+package com.fpoly.shared_learning_materials.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.fpoly.shared_learning_materials.domain.UserBalanceLedger;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface UserBalanceLedgerRepository extends JpaRepository<UserBalanceLedger, Long> {
+
+        @Lock(LockModeType.PESSIMISTIC_WRITE)
+        @Query("SELECT l FROM UserBalanceLedger l WHERE l.userId = :userId")
+        Optional<UserBalanceLedger> findByUserIdForUpdate(@Param("userId") Long userId);
+
+        // Tạo dòng rỗng nếu chưa có; MERGE + HOLDLOCK nên hai giao dịch đầu tiên đồng thời của cùng người dùng
+        // không cùng INSERT (giao dịch sau chờ rồi thấy dòng đã có) và không bị lỗi trùng khóa
+        @Modifying
+        @Query(value = "MERGE user_balance_ledgers WITH (HOLDLOCK) AS t " +
+                        "USING (SELECT :userId AS user_id) AS s ON t.user_id = s.user_id " +
+                        "WHEN NOT MATCHED THEN INSERT (user_id, total_recharge, total_spent, withdrawal_completed, " +
+                        "withdrawal_pending, withdrawal_processing, withdrawal_failed, withdrawal_cancelled, updated_at) " +
+                        "VALUES (:userId, 0, 0, 0, 0, 0, 0, 0, CURRENT_TIMESTAMP);", nativeQuery = true)
+        int insertIfMissing(@Param("userId") Long userId);
+
+        // Cộng dồn nguyên tử (delta âm khi khoản rút chuyển sang trạng thái khác)
+        @Modifying
+        @Query("UPDATE UserBalanceLedger l SET l.totalRecharge = l.totalRecharge + :recharge, " +
+                        "l.totalSpent = l.totalSpent + :spent, " +
+                        "l.withdrawalCompleted = l.withdrawalCompleted + :completed, " +
+                        "l.withdrawalPending = l.withdrawalPending + :pending, " +
+                        "l.withdrawalProcessing = l.withdrawalProcessing + :processing, " +
+                        "l.withdrawalFailed = l.withdrawalFailed + :failed, " +
+                        "l.withdrawalCancelled = l.withdrawalCancelled + :cancelled, " +
+                        "l.updatedAt = CURRENT_TIMESTAMP " +
+                        "WHERE l.userId = :userId")
+        int applyDelta(@Param("userId") Long userId,
+                        @Param("recharge") BigDecimal recharge,
+                        @Param("spent") BigDecimal spent,
+                        @Param("completed") BigDecimal completed,
+                        @Param("pending") BigDecimal pending,
+                        @Param("processing") BigDecimal processing,
+                        @Param("failed") BigDecimal failed,
+                        @Param("cancelled") BigDecimal cancelled);
+
+        // Phát lại lịch sử, cùng điều kiện với TransactionService.getTotalCoinsPurchasedByUser: (userId, tổng xu nạp)
+        @Query("SELECT td.transaction.user.id, COALESCE(SUM(td.coinsReceived), 0) FROM TransactionDetail td " +
+                        "WHERE td.transaction.status = 'COMPLETED' AND td.coinsReceived IS NOT NULL " +
+                        "AND (:userId IS NULL OR td.transaction.user.id = :userId) " +
+                        "GROUP BY td.transaction.user.id")
+        List<Object[]> sumRechargeByUser(@Param("userId") Long userId);
+
+        // Cùng điều kiện với TransactionService.getTotalCoinsSpentOnDocuments: (userId, tổng xu chi)
+        @Query("SELECT td.transaction.user.id, COALESCE(SUM(td.amount), 0) FROM TransactionDetail td " +
+                        "WHERE td.detailType = 'document' AND td.transaction.status = 'COMPLETED' " +
+                        "AND (:userId IS NULL OR td.transaction.user.id = :userId) " +
+                        "GROUP BY td.transaction.user.id")
+        List<Object[]> sumSpentByUser(@Param("userId") Long userId);
+
+        // Cùng điều kiện với TransactionRepository.sumAmountByUserAndTypeAndStatus: (userId, status, tổng rút)
+        @Query("SELECT t.user.id, t.status, COALESCE(SUM(t.amount), 0) FROM Transaction t " +
+                        "WHERE t.deletedAt IS NULL " +
+                        "AND t.type = com.fpoly.shared_learning_materials.domain.Transaction.TransactionType.WITHDRAWAL " +
+                        "AND (:userId IS NULL OR t.user.id = :userId) " +
+                        "GROUP BY t.user.id, t.status")
+        List<Object[]> sumWithdrawalsByUserAndStatus(@Param("userId") Long userId);
+}
@@ -4,11 +4,13 @@ import com.fpoly.shared_learning_materials.domain.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -92,6 +94,15 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
 
         List<User> findByDeletedAtIsNull();
 
+        // (id, email) của người dùng chưa xóa theo trang keyset id tăng dần (gửi email hàng loạt)
+        @Query("SELECT u.id, u.email FROM User u WHERE u.id > :afterId AND u.deletedAt IS NULL ORDER BY u.id ASC")
+        List<Object[]> findRecipientsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+        // Xuất Excel: (id, fullName, email, phoneNumber, role, status) theo trang keyset id tăng dần
+        @Query("SELECT u.id, u.fullName, u.email, u.phoneNumber, u.role, u.status FROM User u " +
+                        "WHERE u.id > :afterId AND u.deletedAt IS NULL ORDER BY u.id ASC")
+        List<Object[]> findExportRowsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
         @Query("SELECT MONTH(u.createdAt), COUNT(u) " +
                         "FROM User u " +
                         "WHERE u.createdAt IS NOT NULL AND YEAR(u.createdAt) = :year " +
@@ -103,4 +114,17 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
 
         long countByDeletedAtIsNull();
 
+        // Số dư xu chỉ thay đổi qua các câu UPDATE nguyên tử dưới đây (cột coin_balance không updatable)
+        @Modifying
+        @Query("UPDATE User u SET u.coinBalance = COALESCE(u.coinBalance, 0) - :amount " +
+                        "WHERE u.id = :userId AND COALESCE(u.coinBalance, 0) >= :amount")
+        int debitCoins(@Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
+        @Modifying
+        @Query("UPDATE User u SET u.coinBalance = COALESCE(u.coinBalance, 0) + :amount WHERE u.id = :userId")
+        int creditCoins(@Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
+        @Query("SELECT COALESCE(u.coinBalance, 0) FROM User u WHERE u.id = :userId")
+        BigDecimal findCoinBalanceById(@Param("userId") Long userId);
+
 }
\ No newline at end of file
@@ -1,10 +1,13 @@
 package com.fpoly.shared_learning_materials.service;
 
+import com.azure.core.util.BinaryData;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.azure.storage.blob.specialized.BlockBlobClient;
 import com.azure.storage.blob.sas.BlobSasPermission;
 import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
 import lombok.extern.slf4j.Slf4j;
@@ -16,8 +19,12 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -117,6 +124,85 @@ public class AzureBlobStorageService {
         }
     }
 
+    /**
+     * Upload file from a stream without buffering it in memory
+     * 
+     * @param data        stream to upload
+     * @param length      exact number of bytes in the stream
+     * @param fileName    original file name
+     * @param contentType content type
+     * @return Blob URL of uploaded file
+     */
+    public String uploadFile(InputStream data, long length, String fileName, String contentType) throws IOException {
+        try {
+            String uniqueFileName = generateUniqueFileName(fileName);
+            BlobClient blobClient = getContainerClient().getBlobClient(uniqueFileName);
+
+            blobClient.uploadWithResponse(new BlobParallelUploadOptions(BinaryData.fromStream(data, length))
+                    .setHeaders(new BlobHttpHeaders().setContentType(contentType)), null, null);
+
+            log.info("File uploaded successfully: {} ({} bytes)", uniqueFileName, length);
+            return blobClient.getBlobUrl();
+        } catch (Exception e) {
+            log.error("Error uploading file to Azure Blob Storage: {}", e.getMessage(), e);
+            throw new IOException("Failed to upload file to Azure Blob Storage", e);
+        }
+    }
+
+    /**
+     * Reserve a unique blob name for a block (chunked) upload
+     * 
+     * @param originalFileName original file name
+     * @return blob name to pass to stageBlock/commitBlocks
+     */
+    public String newBlobName(String originalFileName) {
+        return generateUniqueFileName(originalFileName);
+    }
+
+    /**
+     * Stage one block of a block blob. Staged blocks are not visible until commitBlocks;
+     * staging the same index again replaces the block, uncommitted blocks are discarded by Azure after 7 days
+     * 
+     * @param blobName blob name from newBlobName
+     * @param index    zero-based block index
+     * @param data     buffer holding the block
+     * @param length   number of bytes of data to stage
+     */
+    public void stageBlock(String blobName, int index, byte[] data, int length) throws IOException {
+        try {
+            getBlockBlobClient(blobName).stageBlock(blockId(index), new ByteArrayInputStream(data, 0, length), length);
+        } catch (Exception e) {
+            log.error("Error staging block {} of {}: {}", index, blobName, e.getMessage(), e);
+            throw new IOException("Failed to stage block to Azure Blob Storage", e);
+        }
+    }
+
+    /**
+     * Commit blocks 0..blockCount-1 in order, assembling the final blob
+     * 
+     * @param blobName    blob name from newBlobName
+     * @param blockCount  number of staged blocks
+     * @param contentType content type
+     * @return Blob URL of the assembled file
+     */
+    public String commitBlocks(String blobName, int blockCount, String contentType) throws IOException {
+        try {
+            List<String> blockIds = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blockIds.add(blockId(i));
+            }
+            BlockBlobClient blockBlobClient = getBlockBlobClient(blobName);
+            blockBlobClient.commitBlockListWithResponse(blockIds, new BlobHttpHeaders().setContentType(contentType),
+                    null, null, null, null, null);
+
+            log.info("Blocks committed successfully: {} ({} blocks)", blobName, blockCount);
+            return blockBlobClient.getBlobUrl();
+        } catch (Exception e) {
+            log.error("Error committing blocks of {}: {}", blobName, e.getMessage(), e);
+            throw new IOException("Failed to commit blocks to Azure Blob Storage", e);
+        }
+    }
+
     /**
      * Download file from Azure Blob Storage
      * 
@@ -252,6 +338,20 @@ public class AzureBlobStorageService {
         return UUID.randomUUID().toString() + extension;
     }
 
+    private BlockBlobClient getBlockBlobClient(String blobName) {
+        return getContainerClient().getBlobClient(blobName).getBlockBlobClient();
+    }
+
+    /**
+     * Block ids of a blob must all have the same length, so the index is zero-padded before encoding
+     * 
+     * @param index zero-based block index
+     * @return base64 block id
+     */
+    static String blockId(int index) {
+        return Base64.getEncoder().encodeToString(String.format("%08d", index).getBytes(StandardCharsets.US_ASCII));
+    }
+
     /**
      * Extract blob name from blob URL
      * 
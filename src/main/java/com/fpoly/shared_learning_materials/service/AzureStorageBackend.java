@@ -0,0 +1,64 @@
+package com.fpoly.shared_learning_materials.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lưu file trên Azure Blob Storage, URL là URL của blob
+ */
+public class AzureStorageBackend implements StorageBackend {
+
+    private final AzureBlobStorageService azureBlobStorageService;
+
+    public AzureStorageBackend(AzureBlobStorageService azureBlobStorageService) {
+        this.azureBlobStorageService = azureBlobStorageService;
+    }
+
+    @Override
+    public String getName() {
+        return "Azure Blob Storage";
+    }
+
+    // Azure (https://...blob.core.windows.net) hoặc Azurite (http://127.0.0.1:10000/...)
+    @Override
+    public boolean handles(String fileUrl) {
+        return fileUrl != null && (fileUrl.contains("blob.core.windows.net") || fileUrl.startsWith("https://")
+                || fileUrl.startsWith("http://"));
+    }
+
+    @Override
+    public String store(InputStream data, long size, String originalFileName, String contentType)
+            throws IOException {
+        return azureBlobStorageService.uploadFile(data, size, originalFileName, contentType);
+    }
+
+    @Override
+    public InputStream open(String fileUrl) throws IOException {
+        return azureBlobStorageService.downloadFile(fileUrl);
+    }
+
+    @Override
+    public boolean delete(String fileUrl) {
+        return azureBlobStorageService.deleteFile(fileUrl);
+    }
+
+    @Override
+    public boolean exists(String fileUrl) {
+        return azureBlobStorageService.fileExists(fileUrl);
+    }
+
+    @Override
+    public long size(String fileUrl) {
+        return azureBlobStorageService.getFileSize(fileUrl);
+    }
+
+    @Override
+    public String secureUrl(String fileUrl, int expirationMinutes) {
+        return azureBlobStorageService.generateSecureDownloadUrl(fileUrl, expirationMinutes);
+    }
+
+    @Override
+    public boolean testConnection() {
+        return azureBlobStorageService.testConnection();
+    }
+}
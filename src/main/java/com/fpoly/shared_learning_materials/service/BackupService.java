@@ -7,25 +7,56 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Service
 @Slf4j
 public class BackupService {
 
+    private static final String BACKUP_PREFIX = "db_backup_";
+    private static final String BACKUP_SUFFIX = ".sql.gz";
+    private static final String LEGACY_BACKUP_SUFFIX = ".sql";
+    private static final String HEADER_MARKER = "Database Backup for Shared Learning Materials";
+    private static final String FOOTER_MARKER = "-- Backup completed";
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    // SQL Server accepts at most 1000 rows in one INSERT ... VALUES
+    private static final int MAX_INSERT_ROWS = 1000;
+
     @Autowired
     private DataSource dataSource;
 
@@ -38,133 +69,316 @@ public class BackupService {
     @Value("${app.backup.dir:backups}")
     private String backupDir;
 
+    @Value("${app.backup.parallelism:3}")
+    private int parallelism;
+
+    @Value("${app.backup.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${app.backup.insert-batch-rows:500}")
+    private int insertBatchRows;
+
+    @Value("${app.backup.upload-block-size-kb:4096}")
+    private int uploadBlockSizeKb;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Table to export, quoted as [schema].[table]
+     */
+    private record TableRef(String schema, String name) {
+
+        String qualifiedName() {
+            return schema != null ? quote(schema) + "." + quote(name) : quote(name);
+        }
+
+        private static String quote(String identifier) {
+            return "[" + identifier.replace("]", "]]") + "]";
+        }
+    }
+
     /**
      * Create database backup (schema and data)
-     * This is a simplified backup for free tier constraints
+     * This is a simplified backup for free tier constraints.
+     * Tables are exported in parallel, each on its own connection, into separate gzip parts
+     * that are concatenated into one multi-member gzip file (db_backup_<timestamp>.sql.gz)
      */
     public boolean createDatabaseBackup() {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("A database backup is already running, skipping");
+            return false;
+        }
+        Path partsDir = null;
         try {
             log.info("Starting database backup...");
+            long startedAt = System.currentTimeMillis();
 
             // Create backup directory
             Path backupPath = Paths.get(backupDir);
-            if (!Files.exists(backupPath)) {
-                Files.createDirectories(backupPath);
-            }
+            Files.createDirectories(backupPath);
 
             // Generate backup filename
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String backupFileName = "db_backup_" + timestamp + ".sql";
+            String backupFileName = BACKUP_PREFIX + timestamp + BACKUP_SUFFIX;
             Path backupFile = backupPath.resolve(backupFileName);
+            partsDir = Files.createTempDirectory(backupPath, "." + BACKUP_PREFIX + timestamp);
 
-            // Create backup file
-            try (Connection connection = dataSource.getConnection();
-                    Statement stmt = connection.createStatement();
-                    FileOutputStream fos = new FileOutputStream(backupFile.toFile())) {
-
-                // Get database metadata
+            // Write backup header and list tables
+            Path headerPart = partsDir.resolve("header" + BACKUP_SUFFIX);
+            List<TableRef> tables;
+            try (Connection connection = dataSource.getConnection()) {
                 DatabaseMetaData metaData = connection.getMetaData();
-
-                // Write backup header
-                String header = String.format(
-                        "-- Database Backup for Shared Learning Materials\n" +
-                                "-- Created: %s\n" +
-                                "-- Database: %s\n" +
-                                "-- Server: %s\n\n",
-                        LocalDateTime.now(),
-                        metaData.getDatabaseProductName(),
-                        metaData.getURL());
-                fos.write(header.getBytes());
-
-                // Get all tables
-                List<String> tables = new ArrayList<>();
-                ResultSet tableRs = metaData.getTables(null, null, "%", new String[] { "TABLE" });
-                while (tableRs.next()) {
-                    tables.add(tableRs.getString("TABLE_NAME"));
+                try (Writer out = openPart(headerPart)) {
+                    out.write(String.format(
+                            "-- " + HEADER_MARKER + "\n" +
+                                    "-- Created: %s\n" +
+                                    "-- Database: %s\n" +
+                                    "-- Server: %s\n\n",
+                            LocalDateTime.now(),
+                            metaData.getDatabaseProductName(),
+                            metaData.getURL()));
                 }
+                tables = listTables(metaData, connection.getCatalog());
+            }
 
-                // Backup each table
-                for (String tableName : tables) {
-                    backupTable(stmt, tableName, fos);
-                }
+            // Backup each table
+            List<Path> parts = new ArrayList<>();
+            parts.add(headerPart);
+            parts.addAll(exportTables(tables, partsDir));
+            Path footerPart = partsDir.resolve("footer" + BACKUP_SUFFIX);
+            try (Writer out = openPart(footerPart)) {
+                out.write("\n" + FOOTER_MARKER + ": " + LocalDateTime.now() + " (" + tables.size() + " tables)\n");
+            }
+            parts.add(footerPart);
 
-                log.info("Database backup completed: {}", backupFile);
+            // Only a complete backup appears under its final name
+            Path assembled = partsDir.resolve(backupFileName);
+            concatenate(parts, assembled);
+            Files.move(assembled, backupFile, StandardCopyOption.ATOMIC_MOVE);
 
-                // Upload to Azure Blob Storage if available
-                if ("azure".equals(activeProfile) && azureBlobStorageService != null) {
-                    uploadBackupToAzure(backupFile);
-                }
+            log.info("Database backup completed: {} ({} tables, {} bytes, {} ms)", backupFile, tables.size(),
+                    Files.size(backupFile), System.currentTimeMillis() - startedAt);
 
-                return true;
+            // Upload to Azure Blob Storage if available
+            if ("azure".equals(activeProfile) && azureBlobStorageService != null) {
+                uploadBackupToAzure(backupFile);
             }
 
+            return true;
+
         } catch (Exception e) {
             log.error("Database backup failed", e);
             return false;
+        } finally {
+            deleteDirectory(partsDir);
+            running.set(false);
+        }
+    }
+
+    /**
+     * List user tables of the current database
+     */
+    private List<TableRef> listTables(DatabaseMetaData metaData, String catalog) throws SQLException {
+        List<TableRef> tables = new ArrayList<>();
+        try (ResultSet tableRs = metaData.getTables(catalog, null, "%", new String[] { "TABLE" })) {
+            while (tableRs.next()) {
+                String schema = tableRs.getString("TABLE_SCHEM");
+                if ("sys".equalsIgnoreCase(schema) || "INFORMATION_SCHEMA".equalsIgnoreCase(schema)) {
+                    continue;
+                }
+                tables.add(new TableRef(schema, tableRs.getString("TABLE_NAME")));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Export tables on a bounded pool, one connection per worker. Returns the parts in table order
+     */
+    private List<Path> exportTables(List<TableRef> tables, Path partsDir) throws Exception {
+        if (tables.isEmpty()) {
+            return List.of();
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, tables.size())),
+                r -> {
+                    Thread thread = new Thread(r, "backup-export-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < tables.size(); i++) {
+                TableRef table = tables.get(i);
+                Path part = partsDir.resolve(String.format("table-%05d", i) + BACKUP_SUFFIX);
+                futures.add(executor.submit(() -> {
+                    backupTable(table, part);
+                    return part;
+                }));
+            }
+            List<Path> parts = new ArrayList<>(futures.size());
+            for (Future<Path> future : futures) {
+                try {
+                    parts.add(future.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            return parts;
+        } finally {
+            executor.shutdownNow();
         }
     }
 
     /**
-     * Backup individual table
+     * Backup individual table: rows are streamed from the result set (fetch size) straight into
+     * a buffered gzip part, batched into multi-row INSERT statements
      */
-    private void backupTable(Statement stmt, String tableName, FileOutputStream fos) throws Exception {
-        log.debug("Backing up table: {}", tableName);
-
-        // Get table structure
-        String createTableSql = getCreateTableSQL(stmt, tableName);
-        fos.write(("\n-- Table: " + tableName + "\n").getBytes());
-        fos.write(createTableSql.getBytes());
-        fos.write(";\n\n".getBytes());
-
-        // Get table data
-        String selectSql = "SELECT * FROM " + tableName;
-        try (ResultSet rs = stmt.executeQuery(selectSql)) {
-            int columnCount = rs.getMetaData().getColumnCount();
-
-            while (rs.next()) {
-                StringBuilder insertSql = new StringBuilder();
-                insertSql.append("INSERT INTO ").append(tableName).append(" VALUES (");
-
-                for (int i = 1; i <= columnCount; i++) {
-                    if (i > 1)
-                        insertSql.append(", ");
-
-                    Object value = rs.getObject(i);
-                    if (value == null) {
-                        insertSql.append("NULL");
-                    } else if (value instanceof String || value instanceof java.sql.Date
-                            || value instanceof java.sql.Timestamp) {
-                        insertSql.append("'").append(value.toString().replace("'", "''")).append("'");
+    private void backupTable(TableRef table, Path part) throws Exception {
+        log.debug("Backing up table: {}", table.qualifiedName());
+        int batchRows = Math.min(Math.max(1, insertBatchRows), MAX_INSERT_ROWS);
+        long rows = 0;
+
+        try (Connection connection = dataSource.getConnection();
+                Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                Writer out = openPart(part)) {
+            stmt.setFetchSize(fetchSize);
+
+            // Get table structure
+            out.write("\n-- Table: " + table.name() + "\n");
+            out.write(getCreateTableSQL(table));
+            out.write(";\n\n");
+
+            // Get table data
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + table.qualifiedName())) {
+                int columnCount = rs.getMetaData().getColumnCount();
+                int rowsInStatement = 0;
+
+                while (rs.next()) {
+                    if (rowsInStatement == 0) {
+                        out.write("INSERT INTO ");
+                        out.write(table.qualifiedName());
+                        out.write(" VALUES\n(");
                     } else {
-                        insertSql.append(value.toString());
+                        out.write(",\n(");
                     }
-                }
+                    for (int i = 1; i <= columnCount; i++) {
+                        if (i > 1) {
+                            out.write(", ");
+                        }
+                        writeValue(out, rs.getObject(i));
+                    }
+                    out.write(')');
 
-                insertSql.append(");\n");
-                fos.write(insertSql.toString().getBytes());
+                    if (++rowsInStatement == batchRows) {
+                        out.write(";\n");
+                        rowsInStatement = 0;
+                    }
+                    rows++;
+                }
+                if (rowsInStatement > 0) {
+                    out.write(";\n");
+                }
             }
         }
+        log.debug("Backed up table {} ({} rows)", table.qualifiedName(), rows);
+    }
+
+    /**
+     * Write a column value as a T-SQL literal
+     */
+    private static void writeValue(Writer out, Object value) throws IOException {
+        if (value == null) {
+            out.write("NULL");
+        } else if (value instanceof BigDecimal decimal) {
+            out.write(decimal.toPlainString());
+        } else if (value instanceof Number) {
+            out.write(value.toString());
+        } else if (value instanceof Boolean bool) {
+            out.write(bool ? "1" : "0");
+        } else if (value instanceof byte[] bytes) {
+            out.write("0x");
+            out.write(HexFormat.of().formatHex(bytes));
+        } else if (value instanceof String string) {
+            out.write("N'");
+            out.write(string.replace("'", "''"));
+            out.write('\'');
+        } else {
+            // Dates, times, timestamps, uniqueidentifier...
+            out.write('\'');
+            out.write(value.toString().replace("'", "''"));
+            out.write('\'');
+        }
     }
 
     /**
      * Get CREATE TABLE SQL for a table
      */
-    private String getCreateTableSQL(Statement stmt, String tableName) throws Exception {
+    private String getCreateTableSQL(TableRef table) {
         // This is a simplified version - in production, you might want to use a more
         // robust approach
-        return "CREATE TABLE " + tableName + " (id INT PRIMARY KEY)"; // Simplified
+        return "CREATE TABLE " + table.name() + " (id INT PRIMARY KEY)"; // Simplified
+    }
+
+    private static Writer openPart(Path part) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(part), IO_BUFFER_SIZE), StandardCharsets.UTF_8),
+                IO_BUFFER_SIZE);
     }
 
     /**
-     * Upload backup to Azure Blob Storage
+     * Concatenated gzip members form a valid gzip file, so parts are joined without recompressing
+     */
+    private static void concatenate(List<Path> parts, Path target) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+            out.force(true);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Could not delete backup part {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not clean up backup parts {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Upload backup to Azure Blob Storage, streaming the file block by block (one block buffer in memory)
      */
     private void uploadBackupToAzure(Path backupFile) {
         try {
-            byte[] backupData = Files.readAllBytes(backupFile);
             String fileName = backupFile.getFileName().toString();
-
-            azureBlobStorageService.uploadFile(backupData, fileName, "application/sql");
-            log.info("Backup uploaded to Azure Blob Storage: {}", fileName);
+            String blobName = azureBlobStorageService.newBlobName(fileName);
+
+            byte[] block = new byte[Math.max(64, uploadBlockSizeKb) * 1024];
+            int blockCount = 0;
+            try (InputStream in = Files.newInputStream(backupFile)) {
+                int read;
+                while ((read = in.readNBytes(block, 0, block.length)) > 0) {
+                    azureBlobStorageService.stageBlock(blobName, blockCount++, block, read);
+                }
+            }
+            azureBlobStorageService.commitBlocks(blobName, blockCount, "application/gzip");
+            log.info("Backup uploaded to Azure Blob Storage: {} ({} blocks)", fileName, blockCount);
 
             // Delete local backup file to save space
             Files.delete(backupFile);
@@ -176,7 +390,8 @@ public class BackupService {
     }
 
     /**
-     * Verify backup integrity
+     * Verify backup integrity. The file is read as a stream; compressed backups must decompress cleanly
+     * and end with the completion marker
      */
     public boolean verifyBackup(String backupFileName) {
         try {
@@ -195,11 +410,33 @@ public class BackupService {
             }
 
             // Check file content (basic validation)
-            String content = Files.readString(backupFile);
-            if (!content.contains("Database Backup for Shared Learning Materials")) {
+            boolean compressed = backupFileName.endsWith(BACKUP_SUFFIX);
+            boolean hasHeader = false;
+            String lastLine = null;
+            InputStream in = Files.newInputStream(backupFile);
+            if (compressed) {
+                in = new GZIPInputStream(in, IO_BUFFER_SIZE);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    IO_BUFFER_SIZE)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!hasHeader && line.contains(HEADER_MARKER)) {
+                        hasHeader = true;
+                    }
+                    if (!line.isEmpty()) {
+                        lastLine = line;
+                    }
+                }
+            }
+            if (!hasHeader) {
                 log.error("Invalid backup file format: {}", backupFileName);
                 return false;
             }
+            if (compressed && (lastLine == null || !lastLine.startsWith(FOOTER_MARKER))) {
+                log.error("Backup file is incomplete: {}", backupFileName);
+                return false;
+            }
 
             log.info("Backup verification successful: {} ({} bytes)", backupFileName, fileSize);
             return true;
@@ -224,7 +461,7 @@ public class BackupService {
             int deletedCount = 0;
 
             File[] backupFiles = backupPath.toFile()
-                    .listFiles((dir, name) -> name.startsWith("db_backup_") && name.endsWith(".sql"));
+                    .listFiles((dir, name) -> isBackupFile(name));
             if (backupFiles != null) {
                 for (File file : backupFiles) {
                     if (file.lastModified() < cutoffDate.toEpochSecond(java.time.ZoneOffset.UTC) * 1000) {
@@ -271,7 +508,7 @@ public class BackupService {
             }
 
             File[] backupFiles = backupPath.toFile()
-                    .listFiles((dir, name) -> name.startsWith("db_backup_") && name.endsWith(".sql"));
+                    .listFiles((dir, name) -> isBackupFile(name));
             if (backupFiles == null) {
                 return new BackupStatistics(0, 0, null);
             }
@@ -298,6 +535,11 @@ public class BackupService {
         }
     }
 
+    private static boolean isBackupFile(String name) {
+        return name.startsWith(BACKUP_PREFIX)
+                && (name.endsWith(BACKUP_SUFFIX) || name.endsWith(LEGACY_BACKUP_SUFFIX));
+    }
+
     /**
      * Backup statistics class
      */
@@ -0,0 +1,286 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Transaction;
+import com.fpoly.shared_learning_materials.domain.UserBalanceLedger;
+import com.fpoly.shared_learning_materials.repository.UserBalanceLedgerRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sổ cái số dư theo người dùng (bảng user_balance_ledgers): tổng nạp, tổng chi và tổng rút theo trạng thái.
+ * Các nghiệp vụ nạp xu, mua tài liệu và rút tiền ghi delta vào đây trong cùng transaction của mình,
+ * nên thống kê dòng tiền chỉ cần đọc một dòng theo khóa chính thay vì bảy truy vấn SUM trên bảng transactions.
+ * Job kiểm tra định kỳ phát lại lịch sử giao dịch và sửa các dòng bị lệch (ví dụ dữ liệu sửa tay trong database).
+ */
+@Service
+public class BalanceLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceLedgerService.class);
+
+    @Value("${app.ledger.verify-interval-hours:24}")
+    private long verifyIntervalHours;
+
+    @Autowired
+    private UserBalanceLedgerRepository userBalanceLedgerRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ScheduledExecutorService verifyExecutor;
+
+    @PostConstruct
+    public void startVerifyScheduler() {
+        if (verifyIntervalHours <= 0) {
+            return;
+        }
+        verifyExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "balance-ledger-verify");
+            thread.setDaemon(true);
+            return thread;
+        });
+        verifyExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                verify();
+            } catch (Exception e) {
+                logger.error("Error verifying balance ledgers", e);
+            }
+        }, verifyIntervalHours, verifyIntervalHours, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    public void shutdownVerifyScheduler() {
+        if (verifyExecutor != null) {
+            verifyExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Lần chạy đầu tiên (bảng trống) thì phát lại toàn bộ lịch sử giao dịch
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            if (userBalanceLedgerRepository.count() == 0) {
+                rebuildAll();
+            }
+        } catch (Exception e) {
+            logger.error("Error initializing balance ledgers", e);
+        }
+    }
+
+    /**
+     * Giao dịch nạp xu vừa chuyển sang COMPLETED
+     */
+    @Transactional
+    public void recordRecharge(Long userId, BigDecimal coinsReceived) {
+        applyDelta(userId, coinsReceived, BigDecimal.ZERO, null, null, null);
+    }
+
+    /**
+     * Giao dịch mua tài liệu bằng xu vừa chuyển sang COMPLETED
+     */
+    @Transactional
+    public void recordDocumentPurchase(Long userId, BigDecimal amount) {
+        applyDelta(userId, BigDecimal.ZERO, amount, null, null, null);
+    }
+
+    /**
+     * Khoản rút chuyển trạng thái: from = null khi vừa tạo, to = null khi bị xóa
+     */
+    @Transactional
+    public void recordWithdrawal(Long userId, BigDecimal amount,
+            Transaction.TransactionStatus from, Transaction.TransactionStatus to) {
+        if (from == to) {
+            return;
+        }
+        applyDelta(userId, BigDecimal.ZERO, BigDecimal.ZERO, amount, from, to);
+    }
+
+    /**
+     * Số liệu của một người dùng (một lần đọc theo khóa chính); chưa có dòng = chưa có giao dịch nào
+     */
+    public UserBalanceLedger getLedger(Long userId) {
+        UserBalanceLedger ledger = userId != null ? userBalanceLedgerRepository.findById(userId).orElse(null) : null;
+        if (ledger == null) {
+            ledger = new UserBalanceLedger();
+            ledger.setUserId(userId);
+        }
+        return ledger;
+    }
+
+    /**
+     * Tính lại dòng của một người dùng từ lịch sử giao dịch (khóa dòng trong lúc tính).
+     * Dùng khi thay đổi không xác định được trạng thái cũ (admin sửa khoản rút) hoặc dòng chưa tồn tại.
+     */
+    @Transactional
+    public void rebuildUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        // Dòng chưa có thì tạo rỗng bằng MERGE (không INSERT trùng khi đồng thời) rồi khóa và tính lại như bình thường
+        UserBalanceLedger ledger = userBalanceLedgerRepository.findByUserIdForUpdate(userId).orElse(null);
+        if (ledger == null) {
+            userBalanceLedgerRepository.insertIfMissing(userId);
+            ledger = userBalanceLedgerRepository.findByUserIdForUpdate(userId).orElseThrow();
+        }
+        UserBalanceLedger expected = replay(userId).get(userId);
+        if (expected == null) {
+            expected = new UserBalanceLedger();
+            expected.setUserId(userId);
+        }
+        copyTotals(expected, ledger);
+        userBalanceLedgerRepository.save(ledger);
+    }
+
+    /**
+     * Xóa và dựng lại toàn bộ sổ cái từ lịch sử giao dịch
+     */
+    public void rebuildAll() {
+        long start = System.currentTimeMillis();
+        Integer count = new TransactionTemplate(transactionManager).execute(status -> {
+            userBalanceLedgerRepository.deleteAllInBatch();
+            List<UserBalanceLedger> rows = new ArrayList<>(replay(null).values());
+            userBalanceLedgerRepository.saveAll(rows);
+            return rows.size();
+        });
+        logger.info("Balance ledgers rebuilt for {} users in {} ms", count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * So sánh sổ cái với lịch sử giao dịch, dựng lại từng dòng bị lệch. Trả về số người dùng đã sửa
+     */
+    public int verify() {
+        Map<Long, UserBalanceLedger> expected = replay(null);
+        List<Long> mismatched = new ArrayList<>();
+        for (UserBalanceLedger ledger : userBalanceLedgerRepository.findAll()) {
+            UserBalanceLedger replayed = expected.remove(ledger.getUserId());
+            if (replayed == null ? !isEmpty(ledger) : !sameTotals(replayed, ledger)) {
+                mismatched.add(ledger.getUserId());
+            }
+        }
+        // Người dùng có lịch sử nhưng chưa có dòng
+        mismatched.addAll(expected.keySet());
+
+        // Mỗi người một transaction ngắn: khóa dòng rồi tính lại, không chặn giao dịch của người khác
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        for (Long userId : mismatched) {
+            template.executeWithoutResult(status -> rebuildUser(userId));
+        }
+        if (!mismatched.isEmpty()) {
+            logger.warn("Balance ledger verification corrected {} users", mismatched.size());
+        }
+        return mismatched.size();
+    }
+
+    private void applyDelta(Long userId, BigDecimal recharge, BigDecimal spent, BigDecimal withdrawal,
+            Transaction.TransactionStatus from, Transaction.TransactionStatus to) {
+        if (userId == null) {
+            return;
+        }
+        Map<Transaction.TransactionStatus, BigDecimal> withdrawals = new HashMap<>();
+        BigDecimal amount = withdrawal != null ? withdrawal : BigDecimal.ZERO;
+        if (from != null) {
+            withdrawals.merge(from, amount.negate(), BigDecimal::add);
+        }
+        if (to != null) {
+            withdrawals.merge(to, amount, BigDecimal::add);
+        }
+
+        int updated = userBalanceLedgerRepository.applyDelta(userId,
+                orZero(recharge), orZero(spent),
+                withdrawals.getOrDefault(Transaction.TransactionStatus.COMPLETED, BigDecimal.ZERO),
+                withdrawals.getOrDefault(Transaction.TransactionStatus.PENDING, BigDecimal.ZERO),
+                withdrawals.getOrDefault(Transaction.TransactionStatus.PROCESSING, BigDecimal.ZERO),
+                withdrawals.getOrDefault(Transaction.TransactionStatus.FAILED, BigDecimal.ZERO),
+                withdrawals.getOrDefault(Transaction.TransactionStatus.CANCELLED, BigDecimal.ZERO));
+        if (updated == 0) {
+            // Chưa có dòng: tính từ lịch sử (đã gồm giao dịch hiện tại vì cùng transaction)
+            rebuildUser(userId);
+        }
+    }
+
+    /**
+     * Phát lại lịch sử giao dịch; userId = null là tất cả người dùng
+     */
+    private Map<Long, UserBalanceLedger> replay(Long userId) {
+        Map<Long, UserBalanceLedger> result = new HashMap<>();
+        for (Object[] row : userBalanceLedgerRepository.sumRechargeByUser(userId)) {
+            ledgerFor(result, (Long) row[0]).setTotalRecharge(toBigDecimal(row[1]));
+        }
+        for (Object[] row : userBalanceLedgerRepository.sumSpentByUser(userId)) {
+            ledgerFor(result, (Long) row[0]).setTotalSpent(toBigDecimal(row[1]));
+        }
+        for (Object[] row : userBalanceLedgerRepository.sumWithdrawalsByUserAndStatus(userId)) {
+            ledgerFor(result, (Long) row[0]).setWithdrawal((Transaction.TransactionStatus) row[1],
+                    toBigDecimal(row[2]));
+        }
+        return result;
+    }
+
+    private UserBalanceLedger ledgerFor(Map<Long, UserBalanceLedger> ledgers, Long userId) {
+        return ledgers.computeIfAbsent(userId, id -> {
+            UserBalanceLedger ledger = new UserBalanceLedger();
+            ledger.setUserId(id);
+            return ledger;
+        });
+    }
+
+    private static void copyTotals(UserBalanceLedger source, UserBalanceLedger target) {
+        target.setTotalRecharge(source.getTotalRecharge());
+        target.setTotalSpent(source.getTotalSpent());
+        for (Transaction.TransactionStatus status : Transaction.TransactionStatus.values()) {
+            target.setWithdrawal(status, source.getWithdrawal(status));
+        }
+    }
+
+    private static boolean sameTotals(UserBalanceLedger a, UserBalanceLedger b) {
+        if (a.getTotalRecharge().compareTo(b.getTotalRecharge()) != 0
+                || a.getTotalSpent().compareTo(b.getTotalSpent()) != 0) {
+            return false;
+        }
+        for (Transaction.TransactionStatus status : Transaction.TransactionStatus.values()) {
+            if (a.getWithdrawal(status).compareTo(b.getWithdrawal(status)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(UserBalanceLedger ledger) {
+        UserBalanceLedger empty = new UserBalanceLedger();
+        return sameTotals(empty, ledger);
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        return BigDecimal.valueOf(((Number) value).longValue());
+    }
+}
@@ -1,16 +1,14 @@
 package com.fpoly.shared_learning_materials.service;
 
 import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.HashSet;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.cache.annotation.Cacheable;
@@ -26,6 +24,7 @@ import com.fpoly.shared_learning_materials.repository.CategoryRepository;
 import com.fpoly.shared_learning_materials.repository.DocumentCategoryRepository;
 import com.fpoly.shared_learning_materials.repository.DocumentTagRepository;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
+import com.fpoly.shared_learning_materials.service.CategoryTreeService.CategoryNode;
 import com.fpoly.shared_learning_materials.domain.DocumentTag;
 import com.fpoly.shared_learning_materials.domain.Tag;
 import com.fpoly.shared_learning_materials.domain.DocumentCategory;
@@ -44,6 +43,10 @@ public class CategoryService {
     private UserRepository userRepository;
     @Autowired
     private DocumentTagRepository documentTagRepository;
+    @Autowired
+    private RelatedDocumentsService relatedDocumentsService;
+    @Autowired
+    private CategoryTreeService categoryTreeService;
 
     @Cacheable(value = "categories", key = "'all'")
     public List<CategoryDTO> getAllCategories() {
@@ -74,102 +77,59 @@ public class CategoryService {
     }
 
     private List<CategoryDTO> getCategoriesByDeletedStatus(Boolean isDeleted) {
-        List<Category> categories;
-
-        if (isDeleted == null) {
-            // Lấy tất cả
-            categories = categoryRepository.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
-        } else if (isDeleted) {
-            // Chỉ lấy đã xóa (deletedAt != null)
-            System.out.println("=== GETTING DELETED CATEGORIES ===");
-            long totalDeletedCount = categoryRepository.countByDeletedAtIsNotNull();
-            System.out.println("Total deleted categories in DB: " + totalDeletedCount);
-
-            categories = categoryRepository.findByDeletedAtIsNotNull(Sort.by(Sort.Direction.DESC, "deletedAt"));
-            System.out.println("Retrieved deleted categories from query: " + categories.size());
-        } else {
-            // Chỉ lấy chưa xóa (deletedAt == null)
-            categories = categoryRepository.findByDeletedAtIsNull(Sort.by(Sort.Direction.DESC, "createdAt"));
-        }
-
-        List<CategoryHierarchy> hierarchies = categoryHierarchyRepository.findAll();
-        System.out.println("Hierarchies loaded: " + hierarchies.size());
-        hierarchies.forEach(h -> System.out.println("Hierarchy: parentId=" + h.getId().getParentId() + ", childId="
-                + h.getId().getChildId() + ", level=" + h.getLevel()));
-
-        // Tính số danh mục con
-        Map<Long, Long> subcategoryCount = hierarchies.stream()
-                .collect(Collectors.groupingBy(h -> h.getId().getParentId(), Collectors.counting()));
-
-        // Lấy ngày tạo từ CategoryHierarchy
-        Map<Long, LocalDateTime> hierarchyCreatedAtMap = hierarchies.stream()
-                .collect(Collectors.toMap(h -> h.getId().getChildId(), CategoryHierarchy::getCreatedAt, (a, b) -> a));
-
-        Map<Long, Long> parentIdMap = hierarchies.stream()
-                .collect(Collectors.toMap(h -> h.getId().getChildId(), h -> h.getId().getParentId(), (a, b) -> {
-
-                    return a;
-                }));
-
-        // Tạo map để lấy tên danh mục cha - cần lấy TẤT CẢ categories để có thể lấy tên
-        // parent
-        List<Category> allCategories = categoryRepository.findAll();
-        Map<Long, String> categoryNameMap = allCategories.stream()
-                .collect(Collectors.toMap(Category::getId, Category::getName));
-
-        System.out.println("Converting " + categories.size() + " categories to DTOs");
-
-        // OPTIMIZATION: Batch load document counts and popular tags
-        List<Long> categoryIds = categories.stream().map(Category::getId).collect(Collectors.toList());
-
-        // Batch load document counts
-        Map<Long, Long> documentCountMap = new HashMap<>();
-        if (!categoryIds.isEmpty()) {
-            List<Object[]> docCountResults = documentCategoryRepository.countDocumentsByCategoryIds(categoryIds);
-            for (Object[] result : docCountResults) {
-                Long catId = (Long) result[0];
-                Long count = (Long) result[1];
-                documentCountMap.put(catId, count);
-            }
-        }
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        List<CategoryNode> categories = filterAndSort(tree.getNodes(), isDeleted);
 
-        // Batch load popular tags
+        // Chỉ còn một truy vấn (batch) cho tag phổ biến, phần còn lại lấy từ cây danh mục trong bộ nhớ
+        List<Long> categoryIds = categories.stream().map(CategoryNode::id).collect(Collectors.toList());
         Map<Long, List<String>> popularTagsMap = getPopularTagsForCategories(categoryIds, 5);
 
-        List<CategoryDTO> result = categories.stream().map(cat -> {
-            CategoryDTO dto = new CategoryDTO();
-            dto.setId(cat.getId());
-            dto.setName(cat.getName());
-            dto.setSlug(cat.getSlug());
-            dto.setDescription(cat.getDescription());
-            dto.setStatus(cat.getStatus());
-            dto.setSortOrder(cat.getSortOrder());
-            dto.setCreatedById(cat.getCreatedBy() != null ? cat.getCreatedBy().getId() : null);
-            dto.setCreatedByName(cat.getCreatedBy() != null
-                    ? userRepository.findById(cat.getCreatedBy().getId()).map(User::getFullName).orElse("Không có")
-                    : "Không có");
-            dto.setCreatedAt(cat.getCreatedAt());
-            dto.setUpdatedAt(cat.getUpdatedAt());
-            dto.setDeletedAt(cat.getDeletedAt());
-            dto.setDocuments(documentCountMap.getOrDefault(cat.getId(), 0L).intValue());
-            dto.setSubcategories(subcategoryCount.getOrDefault(cat.getId(), 0L).intValue());
-            dto.setHierarchyCreatedAt(hierarchyCreatedAtMap.get(cat.getId()));
-            dto.setParentId(parentIdMap.get(cat.getId()));
+        return categories.stream().map(cat -> {
+            CategoryDTO dto = toDTO(cat);
+            dto.setDocuments((int) tree.getDirectDocuments(cat.id()));
+            dto.setSubcategories(tree.getChildCount(cat.id()));
+            dto.setHierarchyCreatedAt(cat.hierarchyCreatedAt());
 
             // Set parent name nếu có parent
-            Long parentId = parentIdMap.get(cat.getId());
+            Long parentId = tree.getParentId(cat.id());
+            dto.setParentId(parentId);
             if (parentId != null) {
-                dto.setParentName(categoryNameMap.get(parentId));
+                dto.setParentName(tree.getNode(parentId).name());
             }
 
             // Set popular tags from batch loaded data
-            dto.setPopularTags(popularTagsMap.getOrDefault(cat.getId(), new ArrayList<>()));
+            dto.setPopularTags(popularTagsMap.getOrDefault(cat.id(), new ArrayList<>()));
 
             return dto;
         }).collect(Collectors.toList());
+    }
 
-        System.out.println("Converted to " + result.size() + " DTOs");
-        return result;
+    // Lọc theo trạng thái xóa; đã xóa thì sắp theo deletedAt, còn lại theo createdAt (mới nhất trước)
+    private List<CategoryNode> filterAndSort(List<CategoryNode> nodes, Boolean isDeleted) {
+        Comparator<LocalDateTime> newestFirst = Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder());
+        Comparator<CategoryNode> order = Boolean.TRUE.equals(isDeleted)
+                ? Comparator.comparing(CategoryNode::deletedAt, newestFirst)
+                : Comparator.comparing(CategoryNode::createdAt, newestFirst);
+        return nodes.stream()
+                .filter(cat -> isDeleted == null || isDeleted == (cat.deletedAt() != null))
+                .sorted(order)
+                .collect(Collectors.toList());
+    }
+
+    private CategoryDTO toDTO(CategoryNode cat) {
+        CategoryDTO dto = new CategoryDTO();
+        dto.setId(cat.id());
+        dto.setName(cat.name());
+        dto.setSlug(cat.slug());
+        dto.setDescription(cat.description());
+        dto.setStatus(cat.status());
+        dto.setSortOrder(cat.sortOrder());
+        dto.setCreatedById(cat.createdById());
+        dto.setCreatedByName(cat.createdByName() != null ? cat.createdByName() : "Không có");
+        dto.setCreatedAt(cat.createdAt());
+        dto.setUpdatedAt(cat.updatedAt());
+        dto.setDeletedAt(cat.deletedAt());
+        return dto;
     }
 
     public CategoryDTO createCategory(CategoryDTO categoryDTO) {
@@ -213,6 +173,7 @@ public class CategoryService {
             hierarchy.setCreatedAt(LocalDateTime.now());
             categoryHierarchyRepository.save(hierarchy);
         }
+        categoryTreeService.rebuildAfterCommit();
 
         // Convert back to DTO
         CategoryDTO resultDTO = new CategoryDTO();
@@ -274,6 +235,7 @@ public class CategoryService {
             hierarchy.setCreatedAt(LocalDateTime.now());
             categoryHierarchyRepository.save(hierarchy);
         }
+        categoryTreeService.rebuildAfterCommit();
 
         CategoryDTO resultDTO = new CategoryDTO();
         resultDTO.setId(category.getId());
@@ -306,19 +268,30 @@ public class CategoryService {
 
         // Soft delete các danh mục con
         softDeleteChildCategories(categoryId);
+        categoryTreeService.rebuildAfterCommit();
     }
 
-    // Soft delete các danh mục con
+    // Soft delete các danh mục con (lấy cả nhánh từ cây trong bộ nhớ, đọc entity một lần)
     private void softDeleteChildCategories(Long parentId) {
-        List<CategoryHierarchy> children = categoryHierarchyRepository.findByIdParentId(parentId);
-        for (CategoryHierarchy child : children) {
-            Long childId = child.getId().getChildId();
-            Category childCategory = categoryRepository.findById(childId).orElse(null);
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        List<Long> descendantIds = tree.getDescendantIds(parentId);
+        if (descendantIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Category> descendants = categoryRepository.findAllById(descendantIds).stream()
+                .collect(Collectors.toMap(Category::getId, c -> c));
+        softDeleteChildren(parentId, tree, descendants, LocalDateTime.now());
+    }
+
+    // Nhánh con đã bị xóa từ trước thì giữ nguyên (không đi tiếp xuống)
+    private void softDeleteChildren(Long parentId, CategoryTreeService.Snapshot tree, Map<Long, Category> descendants,
+            LocalDateTime deletedAt) {
+        for (CategoryNode child : tree.getChildren(parentId)) {
+            Category childCategory = descendants.get(child.id());
             if (childCategory != null && childCategory.getDeletedAt() == null) {
-                childCategory.setDeletedAt(LocalDateTime.now());
+                childCategory.setDeletedAt(deletedAt);
                 categoryRepository.save(childCategory);
-                // Đệ quy xóa các danh mục con của danh mục con này
-                softDeleteChildCategories(childId);
+                softDeleteChildren(child.id(), tree, descendants, deletedAt);
             }
         }
     }
@@ -346,9 +319,11 @@ public class CategoryService {
 
         // Xóa các quan hệ trong DocumentCategory
         documentCategoryRepository.deleteByCategoryId(categoryId);
+        relatedDocumentsService.removeCategory(categoryId);
 
         // Xóa danh mục vĩnh viễn
         categoryRepository.deleteById(categoryId);
+        categoryTreeService.rebuildAfterCommit();
     }
 
     @Transactional
@@ -407,227 +382,103 @@ public class CategoryService {
         category.setDeletedAt(null);
         category.setUpdatedAt(LocalDateTime.now());
         categoryRepository.save(category);
+        categoryTreeService.rebuildAfterCommit();
 
         System.out.println("Successfully restored category: " + category.getName() + " (ID: " + categoryId + ")");
     }
 
     // Method to get only root categories (no parent)
     private List<CategoryDTO> getRootCategoriesByDeletedStatus(Boolean isDeleted) {
-        List<Category> categories;
-
-        if (isDeleted == null) {
-            // Lấy tất cả
-            categories = categoryRepository.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
-        } else if (isDeleted) {
-            // Chỉ lấy đã xóa (deletedAt != null)
-            categories = categoryRepository.findByDeletedAtIsNotNull(Sort.by(Sort.Direction.DESC, "deletedAt"));
-        } else {
-            // Chỉ lấy chưa xóa (deletedAt == null)
-            categories = categoryRepository.findByDeletedAtIsNull(Sort.by(Sort.Direction.DESC, "createdAt"));
-        }
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        List<CategoryNode> rootCategories = filterAndSort(tree.getRoots(), isDeleted);
 
-        List<CategoryHierarchy> hierarchies = categoryHierarchyRepository.findAll();
+        List<Long> rootIds = rootCategories.stream().map(CategoryNode::id).collect(Collectors.toList());
+        Map<Long, List<String>> popularTagsMap = getPopularTagsForCategories(rootIds, 4);
 
-        // Get all child IDs to filter out child categories
-        Set<Long> childIds = hierarchies.stream()
-                .map(h -> h.getId().getChildId())
-                .collect(Collectors.toSet());
-
-        // Filter to get only root categories (categories that are not children)
-        List<Category> rootCategories = categories.stream()
-                .filter(cat -> !childIds.contains(cat.getId()))
-                .collect(Collectors.toList());
-
-        // Tính số danh mục con cho mỗi root category
-        Map<Long, Long> subcategoryCount = hierarchies.stream()
-                .collect(Collectors.groupingBy(h -> h.getId().getParentId(), Collectors.counting()));
-
-        // Tạo map để lấy tên danh mục cha - cần lấy TẤT CẢ categories để có thể lấy tên
-        // parent
-        List<Category> allCategories = categoryRepository.findAll();
-        Map<Long, String> categoryNameMap = allCategories.stream()
-                .collect(Collectors.toMap(Category::getId, Category::getName));
-
-        List<CategoryDTO> result = rootCategories.stream().map(cat -> {
-            CategoryDTO dto = new CategoryDTO();
-            dto.setId(cat.getId());
-            dto.setName(cat.getName());
-            dto.setSlug(cat.getSlug());
-            dto.setDescription(cat.getDescription());
-            dto.setStatus(cat.getStatus());
-            dto.setSortOrder(cat.getSortOrder());
-            dto.setCreatedById(cat.getCreatedBy() != null ? cat.getCreatedBy().getId() : null);
-            dto.setCreatedByName(cat.getCreatedBy() != null
-                    ? userRepository.findById(cat.getCreatedBy().getId()).map(User::getFullName).orElse("Không có")
-                    : "Không có");
-            dto.setCreatedAt(cat.getCreatedAt());
-            dto.setUpdatedAt(cat.getUpdatedAt());
-            dto.setDeletedAt(cat.getDeletedAt());
+        return rootCategories.stream().map(cat -> {
+            CategoryDTO dto = toDTO(cat);
 
             // Đếm documents trong category và subcategories
-            long totalDocuments = countDocumentsInCategoryAndSubcategories(cat.getId(), hierarchies);
-            dto.setDocuments((int) totalDocuments);
+            dto.setDocuments((int) tree.getSubtreeDocuments(cat.id()));
 
-            dto.setSubcategories(subcategoryCount.getOrDefault(cat.getId(), 0L).intValue());
+            dto.setSubcategories(tree.getChildCount(cat.id()));
             dto.setParentId(null); // Root categories have no parent
             dto.setParentName(null);
 
             // Set icon information
-            dto.setIconClass(CategoryIconMapper.getIconClassForCategory(cat.getName()));
-            dto.setIconName(CategoryIconMapper.getIconForCategory(cat.getName()));
+            dto.setIconClass(CategoryIconMapper.getIconClassForCategory(cat.name()));
+            dto.setIconName(CategoryIconMapper.getIconForCategory(cat.name()));
             if ("dynamic-icon".equals(dto.getIconClass())) {
-                dto.setIconStyle(CategoryIconMapper.getDynamicIconStyle(cat.getName()));
+                dto.setIconStyle(CategoryIconMapper.getDynamicIconStyle(cat.name()));
             }
 
-            // Get popular tags for this category
-            List<String> popularTags = getPopularTagsForCategory(cat.getId(), 4);
-            dto.setPopularTags(popularTags);
+            dto.setPopularTags(popularTagsMap.getOrDefault(cat.id(), new ArrayList<>()));
 
             return dto;
         }).collect(Collectors.toList());
-
-        return result;
     }
 
-    // Method to count documents in a category and all its subcategories - OPTIMIZED
-    // VERSION
-    private long countDocumentsInCategoryAndSubcategories(Long categoryId, List<CategoryHierarchy> hierarchies) {
-        // Tìm tất cả subcategories (recursive)
-        Set<Long> allSubcategoryIds = getAllSubcategoryIds(categoryId, hierarchies);
-
-        // Thêm category hiện tại vào danh sách để đếm
-        allSubcategoryIds.add(categoryId);
-
-        // Batch count documents cho tất cả categories trong một lần query
-        if (allSubcategoryIds.isEmpty()) {
-            return 0;
-        }
-
-        List<Object[]> countResults = documentCategoryRepository.countDocumentsByCategoryIds(
-                new ArrayList<>(allSubcategoryIds));
-
-        // Sum up all counts
-        return countResults.stream()
-                .mapToLong(result -> (Long) result[1])
-                .sum();
+    /**
+     * Id của danh mục và toàn bộ danh mục con cháu (không truy vấn database)
+     */
+    public List<Long> getSubtreeCategoryIds(Long categoryId) {
+        return categoryTreeService.getSnapshot().getSubtreeIds(categoryId);
     }
 
-    // Helper method to get all subcategory IDs recursively
-    private Set<Long> getAllSubcategoryIds(Long parentId, List<CategoryHierarchy> hierarchies) {
-        Set<Long> subcategoryIds = new HashSet<>();
-
-        // Tìm direct children
-        List<Long> directChildren = hierarchies.stream()
-                .filter(h -> h.getId().getParentId().equals(parentId))
-                .map(h -> h.getId().getChildId())
-                .collect(Collectors.toList());
-
-        // Thêm direct children
-        subcategoryIds.addAll(directChildren);
+    /**
+     * Id của toàn bộ danh mục con cháu, không gồm chính danh mục
+     */
+    public List<Long> getDescendantCategoryIds(Long categoryId) {
+        return categoryTreeService.getSnapshot().getDescendantIds(categoryId);
+    }
 
-        // Recursively get children of children
-        for (Long childId : directChildren) {
-            subcategoryIds.addAll(getAllSubcategoryIds(childId, hierarchies));
+    /**
+     * Số tài liệu gắn trực tiếp vào từng danh mục (lấy từ cây trong bộ nhớ)
+     */
+    public Map<Long, Long> getDocumentCounts(List<Long> categoryIds) {
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        Map<Long, Long> counts = new HashMap<>();
+        for (Long categoryId : categoryIds) {
+            long count = tree.getDirectDocuments(categoryId);
+            if (count > 0) {
+                counts.put(categoryId, count);
+            }
         }
-
-        return subcategoryIds;
+        return counts;
     }
 
-    @Cacheable(value = "subcategories", key = "#parentId")
-    public List<CategoryTreeDTO> getSubcategoriesTree(Long parentId) {
-        List<CategoryHierarchy> hierarchies = categoryHierarchyRepository.findByIdParentId(parentId);
-        List<Category> allCategories = categoryRepository.findAll();
-        Map<Long, Category> categoryMap = allCategories.stream()
-                .collect(Collectors.toMap(Category::getId, cat -> cat));
-
-        return hierarchies.stream()
-                .map(h -> buildCategoryTree(h.getId().getChildId(), categoryMap))
-                .filter(tree -> tree != null)
+    /**
+     * Đường dẫn từ danh mục gốc tới danh mục (breadcrumb)
+     */
+    public List<CategoryTreeDTO> getCategoryPath(Long categoryId) {
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        return tree.getPath(categoryId).stream()
+                .map(cat -> toTreeNode(cat, tree))
                 .collect(Collectors.toList());
     }
 
-    private CategoryTreeDTO buildCategoryTree(Long categoryId, Map<Long, Category> categoryMap) {
-        Category category = categoryMap.get(categoryId);
-        if (category == null)
-            return null;
-
-        CategoryTreeDTO tree = new CategoryTreeDTO();
-        tree.setId(category.getId());
-        tree.setName(category.getName());
-        tree.setSlug(category.getSlug());
-        tree.setDescription(category.getDescription());
-        tree.setStatus(category.getStatus());
-        tree.setDocuments(documentCategoryRepository.countByCategoryId(category.getId()));
-        tree.setCreatedAt(category.getCreatedAt());
-        tree.setUpdatedAt(category.getUpdatedAt());
-        tree.setDeletedAt(category.getDeletedAt());
-
-        // Get children
-        List<CategoryHierarchy> childHierarchies = categoryHierarchyRepository.findByIdParentId(categoryId);
-        List<CategoryTreeDTO> children = childHierarchies.stream()
-                .map(h -> buildCategoryTree(h.getId().getChildId(), categoryMap))
-                .filter(child -> child != null)
+    public List<CategoryTreeDTO> getSubcategoriesTree(Long parentId) {
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        return tree.getChildren(parentId).stream()
+                .map(child -> buildCategoryTree(child, tree))
                 .collect(Collectors.toList());
-
-        tree.setChildren(children);
-        tree.setSubcategories(children.size());
-
-        return tree;
     }
 
-    @Cacheable(value = "subcategories", key = "'opt_' + #parentId")
-    public List<CategoryTreeDTO> getSubcategoriesTreeOptimized(Long parentId) {
-        List<CategoryHierarchy> hierarchies = categoryHierarchyRepository.findByIdParentId(parentId);
-        List<Category> allCategories = categoryRepository.findAll();
-        Map<Long, Category> categoryMap = allCategories.stream()
-                .collect(Collectors.toMap(Category::getId, cat -> cat));
-
-        // Batch load document counts for all categories
-        List<Long> categoryIds = allCategories.stream().map(Category::getId).collect(Collectors.toList());
-        Map<Long, Long> documentCountMap = new HashMap<>();
-        if (!categoryIds.isEmpty()) {
-            List<Object[]> docCountResults = documentCategoryRepository.countDocumentsByCategoryIds(categoryIds);
-            for (Object[] result : docCountResults) {
-                Long catId = (Long) result[0];
-                Long count = (Long) result[1];
-                documentCountMap.put(catId, count);
-            }
-        }
-
-        return hierarchies.stream()
-                .map(h -> buildCategoryTreeOptimized(h.getId().getChildId(), categoryMap, documentCountMap))
-                .filter(tree -> tree != null)
+    private CategoryTreeDTO buildCategoryTree(CategoryNode category, CategoryTreeService.Snapshot tree) {
+        CategoryTreeDTO node = toTreeNode(category, tree);
+        List<CategoryTreeDTO> children = tree.getChildren(category.id()).stream()
+                .map(child -> buildCategoryTree(child, tree))
                 .collect(Collectors.toList());
+        node.setChildren(children);
+        return node;
     }
 
-    private CategoryTreeDTO buildCategoryTreeOptimized(Long categoryId, Map<Long, Category> categoryMap,
-            Map<Long, Long> documentCountMap) {
-        Category category = categoryMap.get(categoryId);
-        if (category == null)
-            return null;
-
-        CategoryTreeDTO tree = new CategoryTreeDTO();
-        tree.setId(category.getId());
-        tree.setName(category.getName());
-        tree.setSlug(category.getSlug());
-        tree.setDescription(category.getDescription());
-        tree.setStatus(category.getStatus());
-        tree.setDocuments(documentCountMap.getOrDefault(category.getId(), 0L).intValue());
-        tree.setCreatedAt(category.getCreatedAt());
-        tree.setUpdatedAt(category.getUpdatedAt());
-        tree.setDeletedAt(category.getDeletedAt());
-
-        // Get children
-        List<CategoryHierarchy> childHierarchies = categoryHierarchyRepository.findByIdParentId(categoryId);
-        List<CategoryTreeDTO> children = childHierarchies.stream()
-                .map(h -> buildCategoryTreeOptimized(h.getId().getChildId(), categoryMap, documentCountMap))
-                .filter(child -> child != null)
-                .collect(Collectors.toList());
-
-        tree.setChildren(children);
-        tree.setSubcategories(children.size());
-
-        return tree;
+    private CategoryTreeDTO toTreeNode(CategoryNode category, CategoryTreeService.Snapshot tree) {
+        CategoryTreeDTO node = new CategoryTreeDTO(category.id(), category.name(), category.slug(),
+                category.description(), category.status(), (int) tree.getDirectDocuments(category.id()),
+                tree.getChildCount(category.id()), category.createdAt(), category.updatedAt(), category.deletedAt());
+        node.setChildren(new ArrayList<>());
+        return node;
     }
 
     // Helper method to generate slug
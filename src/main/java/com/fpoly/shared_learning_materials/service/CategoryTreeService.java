@@ -0,0 +1,493 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.repository.CategoryHierarchyRepository;
+import com.fpoly.shared_learning_materials.repository.CategoryRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentCategoryRepository;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cây danh mục dựng sẵn trong bộ nhớ (snapshot bất biến) để hiển thị cây, breadcrumb và lọc theo nhánh
+ * mà không truy vấn database.
+ * - Các node xếp theo thứ tự duyệt DFS (pre-order): nhánh con của một node là đoạn [index, end) liên tục,
+ * nên kiểm tra tổ tiên/hậu duệ là O(1) và lấy danh sách hậu duệ là cắt một đoạn mảng
+ * - Số tài liệu của cả nhánh tính bằng tổng tiền tố trên cùng thứ tự đó
+ * Snapshot được dựng lại toàn bộ rồi thay bằng một phép gán nguyên tử sau khi ghi danh mục (sau commit),
+ * và định kỳ để cập nhật số tài liệu.
+ */
+@Service
+public class CategoryTreeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CategoryTreeService.class);
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private CategoryHierarchyRepository categoryHierarchyRepository;
+
+    @Autowired
+    private DocumentCategoryRepository documentCategoryRepository;
+
+    // Chỉ có khi bật caching (profile azure)
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+    private final Object rebuildLock = new Object();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuildQuietly();
+    }
+
+    /**
+     * Làm mới số tài liệu (thay đổi theo tài liệu, không qua CategoryService)
+     */
+    @Scheduled(fixedDelayString = "${app.category-tree.refresh-ms:300000}",
+            initialDelayString = "${app.category-tree.refresh-ms:300000}")
+    public void scheduledRefresh() {
+        rebuildQuietly();
+    }
+
+    /**
+     * Snapshot hiện tại; lần gọi đầu tiên (trước ApplicationReadyEvent) sẽ dựng luôn
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = current.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (rebuildLock) {
+            snapshot = current.get();
+            return snapshot != null ? snapshot : rebuild();
+        }
+    }
+
+    /**
+     * Đọc lại danh mục, quan hệ cha-con và số tài liệu (3 truy vấn) rồi thay snapshot
+     */
+    public Snapshot rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            Snapshot snapshot = Snapshot.build(categoryRepository.findTreeRows(),
+                    categoryHierarchyRepository.findAllEdges(),
+                    documentCategoryRepository.countDocumentsGroupByCategoryId());
+            current.set(snapshot);
+            // Danh sách CategoryDTO cache trong "categories" được dựng từ snapshot cũ
+            Cache categories = cacheManager != null ? cacheManager.getCache("categories") : null;
+            if (categories != null) {
+                categories.clear();
+            }
+            logger.debug("Category tree rebuilt: {} categories in {} ms", snapshot.size(),
+                    System.currentTimeMillis() - start);
+            return snapshot;
+        }
+    }
+
+    // Lỗi khi dựng lại thì giữ snapshot cũ, lần sau sẽ thử lại
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            logger.error("Error rebuilding category tree", e);
+        }
+    }
+
+    /**
+     * Gọi sau khi ghi danh mục/quan hệ cha-con: nếu đang trong transaction thì dựng lại sau commit
+     * (đọc được dữ liệu mới), ngược lại dựng lại ngay
+     */
+    public void rebuildAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuildQuietly();
+                }
+            });
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Thông tin một danh mục trong snapshot
+     */
+    public record CategoryNode(Long id, String name, String slug, String description, String status,
+            Integer sortOrder, Long createdById, String createdByName, LocalDateTime createdAt,
+            LocalDateTime updatedAt, LocalDateTime deletedAt, LocalDateTime hierarchyCreatedAt) {
+    }
+
+    /**
+     * Cây danh mục bất biến. Mọi truy vấn theo id đều O(1) (trừ khi trả về danh sách)
+     */
+    public static final class Snapshot {
+
+        private final CategoryNode[] nodes;
+
+        // id -> vị trí trong thứ tự pre-order, -1 nếu không có
+        private final Long2IntOpenHashMap positions;
+
+        private final Map<String, Integer> slugPositions;
+
+        private final int[] parent;
+
+        // Nhánh con của node i là đoạn [i, end[i])
+        private final int[] end;
+
+        private final int[] depth;
+
+        private final int[][] children;
+
+        private final int[] roots;
+
+        private final long[] directDocuments;
+
+        // documentPrefix[i] = tổng directDocuments[0..i)
+        private final long[] documentPrefix;
+
+        private Snapshot(CategoryNode[] nodes, int[] parent, int[] end, int[] depth, int[][] children,
+                int[] roots, long[] directDocuments) {
+            this.nodes = nodes;
+            this.parent = parent;
+            this.end = end;
+            this.depth = depth;
+            this.children = children;
+            this.roots = roots;
+            this.directDocuments = directDocuments;
+
+            positions = new Long2IntOpenHashMap(nodes.length);
+            positions.defaultReturnValue(-1);
+            slugPositions = new HashMap<>(nodes.length * 2);
+            for (int i = 0; i < nodes.length; i++) {
+                positions.put(nodes[i].id().longValue(), i);
+                if (nodes[i].slug() != null) {
+                    slugPositions.putIfAbsent(nodes[i].slug(), i);
+                }
+            }
+
+            documentPrefix = new long[nodes.length + 1];
+            for (int i = 0; i < nodes.length; i++) {
+                documentPrefix[i + 1] = documentPrefix[i] + directDocuments[i];
+            }
+        }
+
+        /**
+         * Dựng cây từ kết quả của CategoryRepository.findTreeRows, CategoryHierarchyRepository.findAllEdges
+         * và DocumentCategoryRepository.countDocumentsGroupByCategoryId.
+         * Danh mục có nhiều cha chỉ lấy quan hệ đầu tiên; quan hệ tạo vòng bị bỏ qua.
+         */
+        static Snapshot build(List<Object[]> categoryRows, List<Object[]> edges, List<Object[]> documentCounts) {
+            int n = categoryRows.size();
+            Object[][] rows = categoryRows.toArray(new Object[0][]);
+            // Thứ tự ổn định theo id
+            Arrays.sort(rows, (a, b) -> Long.compare((Long) a[0], (Long) b[0]));
+
+            Long2IntOpenHashMap loadIndex = new Long2IntOpenHashMap(n);
+            loadIndex.defaultReturnValue(-1);
+            for (int i = 0; i < n; i++) {
+                loadIndex.put(((Long) rows[i][0]).longValue(), i);
+            }
+
+            int[] loadParent = new int[n];
+            Arrays.fill(loadParent, -1);
+            LocalDateTime[] hierarchyCreatedAt = new LocalDateTime[n];
+            for (Object[] edge : edges) {
+                int p = loadIndex.get(((Long) edge[0]).longValue());
+                int c = loadIndex.get(((Long) edge[1]).longValue());
+                if (p < 0 || c < 0 || p == c || loadParent[c] >= 0) {
+                    continue;
+                }
+                loadParent[c] = p;
+                hierarchyCreatedAt[c] = (LocalDateTime) edge[2];
+            }
+
+            IntArrayList[] loadChildren = new IntArrayList[n];
+            IntArrayList loadRoots = new IntArrayList();
+            for (int i = 0; i < n; i++) {
+                if (loadParent[i] < 0) {
+                    loadRoots.add(i);
+                } else {
+                    if (loadChildren[loadParent[i]] == null) {
+                        loadChildren[loadParent[i]] = new IntArrayList();
+                    }
+                    loadChildren[loadParent[i]].add(i);
+                }
+            }
+
+            Long2LongOpenHashMap countById = new Long2LongOpenHashMap(documentCounts.size());
+            for (Object[] row : documentCounts) {
+                countById.put(((Long) row[0]).longValue(), ((Number) row[1]).longValue());
+            }
+
+            // DFS không đệ quy, gán vị trí pre-order
+            int[] order = new int[n];
+            int[] position = new int[n];
+            Arrays.fill(position, -1);
+            int[] endByLoad = new int[n];
+            int[] depthByLoad = new int[n];
+            boolean[] rootByLoad = new boolean[n];
+            int[] stack = new int[n];
+            int[] cursor = new int[n];
+            int next = 0;
+
+            // Gốc thật trước, sau đó các node còn sót lại (chỉ xảy ra khi quan hệ cha-con tạo vòng)
+            IntArrayList startNodes = new IntArrayList(loadRoots);
+            for (int i = 0; i < n; i++) {
+                startNodes.add(i);
+            }
+            for (int s = 0; s < startNodes.size(); s++) {
+                int root = startNodes.getInt(s);
+                if (position[root] >= 0) {
+                    continue;
+                }
+                rootByLoad[root] = true;
+                int top = 0;
+                stack[0] = root;
+                cursor[0] = 0;
+                position[root] = next;
+                order[next++] = root;
+                depthByLoad[root] = 0;
+                while (top >= 0) {
+                    int node = stack[top];
+                    IntArrayList kids = loadChildren[node];
+                    if (kids != null && cursor[top] < kids.size()) {
+                        int child = kids.getInt(cursor[top]++);
+                        if (position[child] >= 0) {
+                            continue;
+                        }
+                        position[child] = next;
+                        order[next++] = child;
+                        depthByLoad[child] = depthByLoad[node] + 1;
+                        stack[++top] = child;
+                        cursor[top] = 0;
+                    } else {
+                        endByLoad[node] = next;
+                        top--;
+                    }
+                }
+            }
+
+            CategoryNode[] nodes = new CategoryNode[n];
+            int[] parent = new int[n];
+            int[] end = new int[n];
+            int[] depth = new int[n];
+            int[][] children = new int[n][];
+            long[] directDocuments = new long[n];
+            IntArrayList roots = new IntArrayList();
+            for (int i = 0; i < n; i++) {
+                int load = order[i];
+                Object[] row = rows[load];
+                boolean root = rootByLoad[load];
+                nodes[i] = new CategoryNode((Long) row[0], (String) row[1], (String) row[2], (String) row[3],
+                        (String) row[4], (Integer) row[5], (Long) row[6], (String) row[7],
+                        (LocalDateTime) row[8], (LocalDateTime) row[9], (LocalDateTime) row[10],
+                        root ? null : hierarchyCreatedAt[load]);
+                parent[i] = root ? -1 : position[loadParent[load]];
+                end[i] = endByLoad[load];
+                depth[i] = depthByLoad[load];
+                directDocuments[i] = countById.get(((Long) row[0]).longValue());
+                if (root) {
+                    roots.add(i);
+                }
+            }
+            // Con trực tiếp: các node có parent là i, theo thứ tự pre-order
+            int[] childCount = new int[n];
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    childCount[parent[i]]++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                children[i] = new int[childCount[i]];
+                childCount[i] = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    children[parent[i]][childCount[parent[i]]++] = i;
+                }
+            }
+
+            return new Snapshot(nodes, parent, end, depth, children, roots.toIntArray(), directDocuments);
+        }
+
+        public int size() {
+            return nodes.length;
+        }
+
+        public boolean contains(Long id) {
+            return position(id) >= 0;
+        }
+
+        public CategoryNode getNode(Long id) {
+            int i = position(id);
+            return i >= 0 ? nodes[i] : null;
+        }
+
+        public CategoryNode findBySlug(String slug) {
+            Integer i = slug != null ? slugPositions.get(slug) : null;
+            return i != null ? nodes[i] : null;
+        }
+
+        /**
+         * Tất cả danh mục theo thứ tự cây (cha đứng trước các con)
+         */
+        public List<CategoryNode> getNodes() {
+            return Collections.unmodifiableList(Arrays.asList(nodes));
+        }
+
+        public List<CategoryNode> getRoots() {
+            return toNodes(roots);
+        }
+
+        public boolean isRoot(Long id) {
+            int i = position(id);
+            return i >= 0 && parent[i] < 0;
+        }
+
+        public Long getParentId(Long id) {
+            int i = position(id);
+            return i >= 0 && parent[i] >= 0 ? nodes[parent[i]].id() : null;
+        }
+
+        /**
+         * Cấp của danh mục (0 = gốc)
+         */
+        public int getDepth(Long id) {
+            int i = position(id);
+            return i >= 0 ? depth[i] : 0;
+        }
+
+        public List<CategoryNode> getChildren(Long id) {
+            int i = position(id);
+            return i >= 0 ? toNodes(children[i]) : Collections.emptyList();
+        }
+
+        public int getChildCount(Long id) {
+            int i = position(id);
+            return i >= 0 ? children[i].length : 0;
+        }
+
+        /**
+         * descendantId có nằm trong nhánh của ancestorId không (không tính chính nó)
+         */
+        public boolean isDescendant(Long ancestorId, Long descendantId) {
+            int a = position(ancestorId);
+            int d = position(descendantId);
+            return a >= 0 && d > a && d < end[a];
+        }
+
+        /**
+         * Id của mọi hậu duệ (không gồm chính danh mục)
+         */
+        public List<Long> getDescendantIds(Long id) {
+            int i = position(id);
+            return i >= 0 ? idsInRange(i + 1, end[i]) : Collections.emptyList();
+        }
+
+        /**
+         * Id của danh mục và mọi hậu duệ
+         */
+        public List<Long> getSubtreeIds(Long id) {
+            int i = position(id);
+            return i >= 0 ? idsInRange(i, end[i]) : Collections.emptyList();
+        }
+
+        /**
+         * Slug của các danh mục đã chọn cùng mọi danh mục con cháu (lọc theo cả nhánh).
+         * Slug không có trong cây được giữ nguyên
+         */
+        public List<String> expandSubtreeSlugs(List<String> slugs) {
+            Set<String> expanded = new LinkedHashSet<>();
+            for (String slug : slugs) {
+                Integer i = slug != null ? slugPositions.get(slug) : null;
+                if (i == null) {
+                    expanded.add(slug);
+                    continue;
+                }
+                for (int k = i; k < end[i]; k++) {
+                    if (nodes[k].slug() != null) {
+                        expanded.add(nodes[k].slug());
+                    }
+                }
+            }
+            return new ArrayList<>(expanded);
+        }
+
+        /**
+         * Đường dẫn từ gốc tới danh mục (breadcrumb), gồm cả chính danh mục
+         */
+        public List<CategoryNode> getPath(Long id) {
+            int i = position(id);
+            if (i < 0) {
+                return Collections.emptyList();
+            }
+            CategoryNode[] path = new CategoryNode[depth[i] + 1];
+            for (int k = depth[i]; k >= 0 && i >= 0; k--, i = parent[i]) {
+                path[k] = nodes[i];
+            }
+            return Arrays.asList(path);
+        }
+
+        /**
+         * Số liên kết tài liệu gắn trực tiếp vào danh mục
+         */
+        public long getDirectDocuments(Long id) {
+            int i = position(id);
+            return i >= 0 ? directDocuments[i] : 0;
+        }
+
+        /**
+         * Tổng số liên kết tài liệu của danh mục và mọi hậu duệ
+         */
+        public long getSubtreeDocuments(Long id) {
+            int i = position(id);
+            return i >= 0 ? documentPrefix[end[i]] - documentPrefix[i] : 0;
+        }
+
+        private int position(Long id) {
+            return id != null ? positions.get(id.longValue()) : -1;
+        }
+
+        private List<Long> idsInRange(int from, int to) {
+            List<Long> ids = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                ids.add(nodes[i].id());
+            }
+            return ids;
+        }
+
+        private List<CategoryNode> toNodes(int[] indexes) {
+            List<CategoryNode> result = new ArrayList<>(indexes.length);
+            for (int i : indexes) {
+                result.add(nodes[i]);
+            }
+            return result;
+        }
+    }
+}
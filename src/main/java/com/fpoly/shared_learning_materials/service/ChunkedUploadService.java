@@ -0,0 +1,397 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.UploadChunk;
+import com.fpoly.shared_learning_materials.domain.UploadChunkId;
+import com.fpoly.shared_learning_materials.domain.UploadSession;
+import com.fpoly.shared_learning_materials.repository.UploadChunkRepository;
+import com.fpoly.shared_learning_materials.repository.UploadSessionRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Tải file lên theo từng chunk, có thể tiếp tục sau khi mất kết nối:
+ * - Mỗi phiên có id riêng; client hỏi trạng thái để biết chunk nào đã nhận và chỉ gửi lại phần còn thiếu
+ * - Các chunk được gửi song song, không cần theo thứ tự. Với backend LOCAL, file đích được cấp phát trước
+ * đủ kích thước và mỗi chunk ghi thẳng vào đúng vị trí bằng FileChannel (positional write), không có bước ghép file;
+ * với backend AZURE, mỗi chunk là một block được stage, hoàn tất bằng commit block list
+ * - Mỗi chunk được kiểm tra kích thước và SHA-256 trước khi được ghi nhận
+ * Phiên không hoạt động quá TTL bị dọn định kỳ cùng file tạm.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final String PART_SUFFIX = ".part";
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final String ALLOWED_FILE_NAME = ".*\\.(pdf|doc|docx|ppt|pptx|xls|xlsx)$";
+
+    @Value("${app.upload.chunked.dir:upload-staging/chunked}")
+    private String chunkedDir;
+
+    @Value("${app.upload.chunked.chunk-size-kb:5120}")
+    private int defaultChunkSizeKb;
+
+    @Value("${app.upload.chunked.max-chunk-size-kb:16384}")
+    private int maxChunkSizeKb;
+
+    // Cùng giới hạn với bước 1 của wizard đăng tải
+    @Value("${app.upload.max-file-size-mb:50}")
+    private long maxFileSizeMb;
+
+    @Value("${app.upload.chunked.session-ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private UploadChunkRepository uploadChunkRepository;
+
+    @Autowired
+    private UploadStagingService uploadStagingService;
+
+    @Autowired(required = false)
+    private AzureBlobStorageService azureBlobStorageService;
+
+    private Path chunkedPath;
+
+    /**
+     * Chunk vừa được ghi nhận
+     */
+    public record ChunkReceipt(int index, long size, String checksum) {
+    }
+
+    /**
+     * Trạng thái phiên để client tiếp tục tải (chỉ gửi các chunk chưa có trong receivedChunks)
+     */
+    public record UploadStatus(String uploadId, String fileName, long fileSize, int chunkSize, int totalChunks,
+            String backend, String status, List<Integer> receivedChunks) {
+    }
+
+    /**
+     * Kết quả hoàn tất: backend LOCAL trả về file trong vùng staging của wizard, AZURE trả về URL của blob
+     */
+    public record CompletedUpload(String fileName, long fileSize, UploadStagingService.StagedUpload stagedUpload,
+            String fileUrl) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        chunkedPath = Paths.get(chunkedDir).toAbsolutePath().normalize();
+        Files.createDirectories(chunkedPath);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        cleanupExpired();
+    }
+
+    public boolean isAzureAvailable() {
+        return azureBlobStorageService != null;
+    }
+
+    /**
+     * Mở phiên tải lên. Backend LOCAL cấp phát trước file đích đủ kích thước để các chunk ghi song song vào đúng vị trí
+     */
+    public UploadSession createSession(Long userId, String fileName, long fileSize, String contentType,
+            Integer chunkSizeKb, String backend) throws IOException {
+        if (fileName == null || fileName.isBlank() || !fileName.matches(ALLOWED_FILE_NAME)) {
+            throw new IllegalArgumentException(
+                    "Định dạng file không được hỗ trợ. Hỗ trợ: PDF, DOC, DOCX, PPT, PPTX, XLS, XLSX");
+        }
+        if (fileSize <= 0) {
+            throw new IllegalArgumentException("File rỗng");
+        }
+        if (fileSize > maxFileSizeMb * 1024 * 1024) {
+            throw new IllegalArgumentException("Kích thước file vượt quá " + maxFileSizeMb + "MB");
+        }
+        if (UploadSession.BACKEND_AZURE.equals(backend) && !isAzureAvailable()) {
+            throw new IllegalArgumentException("Azure Blob Storage chưa được cấu hình");
+        }
+
+        int requestedKb = chunkSizeKb != null && chunkSizeKb > 0 ? chunkSizeKb : defaultChunkSizeKb;
+        int chunkSize = Math.max(64, Math.min(requestedKb, maxChunkSizeKb)) * 1024;
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUserId(userId);
+        session.setFileName(fileName);
+        session.setContentType(contentType);
+        session.setFileSize(fileSize);
+        session.setChunkSize(chunkSize);
+        session.setTotalChunks((int) ((fileSize + chunkSize - 1) / chunkSize));
+        if (UploadSession.BACKEND_AZURE.equals(backend)) {
+            session.setBackend(UploadSession.BACKEND_AZURE);
+            session.setBlobName(azureBlobStorageService.newBlobName(fileName));
+        } else {
+            session.setBackend(UploadSession.BACKEND_LOCAL);
+            // setLength tạo file thưa (sparse) trên hầu hết hệ thống file, không ghi fileSize byte 0
+            try (RandomAccessFile file = new RandomAccessFile(partPath(session.getId()).toFile(), "rw")) {
+                file.setLength(fileSize);
+            }
+        }
+        session = uploadSessionRepository.save(session);
+        logger.info("Upload session {} created: {} ({} bytes, {} chunks, {})", session.getId(), fileName, fileSize,
+                session.getTotalChunks(), session.getBackend());
+        return session;
+    }
+
+    public UploadStatus getStatus(String uploadId, Long userId) {
+        UploadSession session = getSession(uploadId, userId);
+        return new UploadStatus(session.getId(), session.getFileName(), session.getFileSize(),
+                session.getChunkSize(), session.getTotalChunks(), session.getBackend(), session.getStatus(),
+                uploadChunkRepository.findChunkIndexes(session.getId()));
+    }
+
+    /**
+     * Nhận một chunk. Nội dung phải đúng kích thước của chunk và, nếu client gửi kèm, đúng SHA-256;
+     * chunk sai không được ghi nhận và client gửi lại. Gửi lại chunk đã nhận với cùng checksum thì bỏ qua
+     */
+    public ChunkReceipt putChunk(String uploadId, Long userId, int index, InputStream body, String expectedChecksum)
+            throws IOException {
+        UploadSession session = getSession(uploadId, userId);
+        if (!UploadSession.STATUS_UPLOADING.equals(session.getStatus())) {
+            throw new IllegalStateException("Phiên tải lên đang được hoàn tất");
+        }
+        if (index < 0 || index >= session.getTotalChunks()) {
+            throw new IllegalArgumentException("Chunk " + index + " nằm ngoài phạm vi 0.." + (session.getTotalChunks() - 1));
+        }
+
+        UploadChunkId chunkId = new UploadChunkId(uploadId, index);
+        String expected = expectedChecksum != null && !expectedChecksum.isBlank()
+                ? expectedChecksum.trim().toLowerCase()
+                : null;
+        if (expected != null) {
+            Optional<UploadChunk> existing = uploadChunkRepository.findById(chunkId);
+            if (existing.isPresent() && expected.equals(existing.get().getChecksum())) {
+                return new ChunkReceipt(index, existing.get().getSize(), expected);
+            }
+        }
+
+        long length = session.getChunkLength(index);
+        String checksum;
+        if (UploadSession.BACKEND_AZURE.equals(session.getBackend())) {
+            checksum = stageAzureBlock(session, index, body, length, expected);
+        } else {
+            checksum = writeLocalChunk(session, chunkId, body, length, expected);
+        }
+
+        try {
+            uploadChunkRepository.save(new UploadChunk(chunkId, length, checksum, null));
+        } catch (DataIntegrityViolationException e) {
+            // Cùng chunk được gửi song song hai lần: nội dung đã kiểm tra, bản ghi của request kia là đủ
+            logger.debug("Chunk {} of upload {} already recorded", index, uploadId);
+        }
+        uploadSessionRepository.touch(uploadId);
+        return new ChunkReceipt(index, length, checksum);
+    }
+
+    /**
+     * Hoàn tất phiên khi đã đủ chunk. LOCAL: file đã nằm đúng vị trí, chỉ cần move sang staging của wizard;
+     * AZURE: commit block list theo thứ tự chunk
+     */
+    public CompletedUpload complete(String uploadId, Long userId) throws IOException {
+        UploadSession session = getSession(uploadId, userId);
+        List<Integer> received = uploadChunkRepository.findChunkIndexes(uploadId);
+        if (received.size() < session.getTotalChunks()) {
+            throw new IllegalStateException("Còn thiếu " + (session.getTotalChunks() - received.size())
+                    + " phần của file, hãy tiếp tục tải lên");
+        }
+        if (uploadSessionRepository.transition(uploadId, UploadSession.STATUS_UPLOADING,
+                UploadSession.STATUS_COMPLETING) == 0) {
+            throw new IllegalStateException("Phiên tải lên đang được hoàn tất");
+        }
+
+        CompletedUpload result;
+        try {
+            if (UploadSession.BACKEND_AZURE.equals(session.getBackend())) {
+                String url = azureBlobStorageService.commitBlocks(session.getBlobName(), session.getTotalChunks(),
+                        session.getContentType());
+                result = new CompletedUpload(session.getFileName(), session.getFileSize(), null, url);
+            } else {
+                Path part = partPath(uploadId);
+                if (Files.size(part) != session.getFileSize()) {
+                    throw new IOException("Kích thước file sau khi ghép không khớp");
+                }
+                result = new CompletedUpload(session.getFileName(), session.getFileSize(),
+                        uploadStagingService.stage(part, session.getFileName()), null);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Cho phép thử hoàn tất lại
+            uploadSessionRepository.transition(uploadId, UploadSession.STATUS_COMPLETING,
+                    UploadSession.STATUS_UPLOADING);
+            throw e;
+        }
+
+        deleteSession(uploadId);
+        logger.info("Upload session {} completed: {} ({} bytes)", uploadId, session.getFileName(),
+                session.getFileSize());
+        return result;
+    }
+
+    /**
+     * Hủy phiên và xóa phần đã tải
+     */
+    public void abort(String uploadId, Long userId) {
+        UploadSession session = getSession(uploadId, userId);
+        deleteSession(session.getId());
+        deletePart(session.getId());
+    }
+
+    /**
+     * Dọn các phiên không hoạt động quá TTL và file .part không còn phiên
+     * (block chưa commit trên Azure được Azure tự xóa sau 7 ngày)
+     */
+    @Scheduled(fixedDelayString = "${app.upload.chunked.cleanup-ms:600000}")
+    public void cleanupExpired() {
+        Duration ttl = Duration.ofMinutes(Math.max(1, ttlMinutes));
+        int deleted = 0;
+        try {
+            for (UploadSession session : uploadSessionRepository.findByUpdatedAtBefore(LocalDateTime.now().minus(ttl))) {
+                deleteSession(session.getId());
+                deletePart(session.getId());
+                deleted++;
+            }
+        } catch (Exception e) {
+            logger.error("Error cleaning expired upload sessions", e);
+        }
+
+        Instant cutoff = Instant.now().minus(ttl);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(chunkedPath, "*" + PART_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff) && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not delete expired upload part {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error cleaning chunked upload directory {}", chunkedPath, e);
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} expired chunked uploads", deleted);
+        }
+    }
+
+    private UploadSession getSession(String uploadId, Long userId) {
+        return uploadSessionRepository.findByIdAndUserId(uploadId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Phiên tải lên không tồn tại hoặc đã hết hạn"));
+    }
+
+    // Ghi chunk vào đúng vị trí trong file đích; nhiều request ghi các vùng khác nhau cùng lúc được
+    private String writeLocalChunk(UploadSession session, UploadChunkId chunkId, InputStream body, long length,
+            String expected) throws IOException {
+        MessageDigest digest = sha256();
+        long position = (long) chunkId.getChunkIndex() * session.getChunkSize();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(partPath(session.getId()), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[IO_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (written + read > length) {
+                    throw chunkRejected(session, chunkId, "dài hơn " + length + " byte");
+                }
+                digest.update(buffer, 0, read);
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                while (data.hasRemaining()) {
+                    written += channel.write(data, position + written);
+                }
+            }
+            if (written != length) {
+                throw chunkRejected(session, chunkId, "có " + written + "/" + length + " byte");
+            }
+            String checksum = HexFormat.of().formatHex(digest.digest());
+            if (expected != null && !expected.equals(checksum)) {
+                throw chunkRejected(session, chunkId, "sai checksum");
+            }
+            // Chunk chỉ được ghi nhận khi đã nằm trên đĩa, để trạng thái vẫn đúng nếu máy chủ dừng đột ngột
+            channel.force(false);
+            return checksum;
+        } catch (IOException | RuntimeException e) {
+            // Vùng của chunk có thể đã bị ghi đè một phần: chunk (nếu đã nhận trước đó) phải được gửi lại
+            uploadChunkRepository.deleteById(chunkId);
+            throw e;
+        }
+    }
+
+    // Block chỉ được stage khi đúng kích thước và checksum; chunk tối đa max-chunk-size-kb nên đọc hết vào bộ nhớ
+    private String stageAzureBlock(UploadSession session, int index, InputStream body, long length, String expected)
+            throws IOException {
+        byte[] data = new byte[(int) length];
+        int total = body.readNBytes(data, 0, data.length);
+        UploadChunkId chunkId = new UploadChunkId(session.getId(), index);
+        if (total != length) {
+            throw chunkRejected(session, chunkId, "có " + total + "/" + length + " byte");
+        }
+        if (body.read() != -1) {
+            throw chunkRejected(session, chunkId, "dài hơn " + length + " byte");
+        }
+        String checksum = HexFormat.of().formatHex(sha256().digest(data));
+        if (expected != null && !expected.equals(checksum)) {
+            throw chunkRejected(session, chunkId, "sai checksum");
+        }
+        azureBlobStorageService.stageBlock(session.getBlobName(), index, data, data.length);
+        return checksum;
+    }
+
+    private static IllegalArgumentException chunkRejected(UploadSession session, UploadChunkId chunkId, String reason) {
+        logger.warn("Chunk {} of upload {} rejected: {}", chunkId.getChunkIndex(), session.getId(), reason);
+        return new IllegalArgumentException("Chunk " + chunkId.getChunkIndex() + " " + reason + ", hãy gửi lại");
+    }
+
+    private void deleteSession(String uploadId) {
+        uploadChunkRepository.deleteBySessionId(uploadId);
+        uploadSessionRepository.deleteById(uploadId);
+    }
+
+    private void deletePart(String uploadId) {
+        try {
+            Files.deleteIfExists(partPath(uploadId));
+        } catch (IOException e) {
+            logger.warn("Could not delete upload part {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    private Path partPath(String uploadId) {
+        return chunkedPath.resolve(uploadId + PART_SUFFIX);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
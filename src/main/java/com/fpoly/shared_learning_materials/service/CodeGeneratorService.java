@@ -0,0 +1,119 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.CodeSequence;
+import com.fpoly.shared_learning_materials.repository.CodeSequenceRepository;
+import com.fpoly.shared_learning_materials.repository.TransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sinh mã giao dịch/rút tiền tăng dần, không trùng giữa các node, không cần kiểm tra tồn tại.
+ * Mỗi node xin một khối blockSize số từ bảng code_sequences (transaction riêng, khóa dòng),
+ * rồi cấp từng số trong bộ nhớ; chỉ chạm database khi hết khối.
+ * Số bị bỏ trống khi ứng dụng dừng giữa chừng một khối là chấp nhận được (mã chỉ cần duy nhất).
+ */
+@Service
+public class CodeGeneratorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CodeGeneratorService.class);
+
+    public static final String TRANSACTION_PREFIX = "TXN";
+    public static final String WITHDRAWAL_PREFIX = "WD";
+
+    @Value("${app.codes.block-size:100}")
+    private int blockSize;
+
+    @Autowired
+    private CodeSequenceRepository codeSequenceRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ConcurrentHashMap<String, Block> blocks = new ConcurrentHashMap<>();
+
+    /**
+     * Mã giao dịch dạng TXN000123 (nạp, mua, bán tài liệu, hoàn tiền)
+     */
+    public String nextTransactionCode() {
+        return TRANSACTION_PREFIX + String.format("%06d", next(TRANSACTION_PREFIX));
+    }
+
+    /**
+     * Mã rút tiền dạng WD00000123
+     */
+    public String nextWithdrawalCode() {
+        return WITHDRAWAL_PREFIX + String.format("%08d", next(WITHDRAWAL_PREFIX));
+    }
+
+    private long next(String prefix) {
+        Block block = blocks.computeIfAbsent(prefix, k -> new Block());
+        synchronized (block) {
+            if (block.next >= block.limit) {
+                long start = allocateBlock(prefix);
+                block.next = start;
+                block.limit = start + Math.max(1, blockSize);
+            }
+            return block.next++;
+        }
+    }
+
+    /**
+     * Xin khối [start, start + blockSize) trong transaction riêng (không phụ thuộc transaction của bên gọi)
+     */
+    private long allocateBlock(String prefix) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int size = Math.max(1, blockSize);
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                Long start = template.execute(status -> {
+                    CodeSequence sequence = codeSequenceRepository.findByNameForUpdate(prefix).orElse(null);
+                    if (sequence == null) {
+                        // Lần đầu: bắt đầu sau mã lớn nhất đang có
+                        sequence = new CodeSequence();
+                        sequence.setName(prefix);
+                        sequence.setNextValue(findMaxExistingNumber(prefix) + 1);
+                    }
+                    long value = sequence.getNextValue();
+                    sequence.setNextValue(value + size);
+                    codeSequenceRepository.saveAndFlush(sequence);
+                    return value;
+                });
+                logger.debug("Allocated code block {}[{}, {})", prefix, start, start + size);
+                return start;
+            } catch (DataIntegrityViolationException e) {
+                // Node khác vừa tạo dòng bộ đếm cùng lúc: đọc lại dòng đó
+                if (attempt >= 2) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private long findMaxExistingNumber(String prefix) {
+        BigDecimal max = transactionRepository.findMaxCodeNumber(prefix);
+        if (max == null || max.signum() <= 0) {
+            return 0;
+        }
+        return max.longValue();
+    }
+
+    private static class Block {
+        long next;
+        long limit;
+    }
+}
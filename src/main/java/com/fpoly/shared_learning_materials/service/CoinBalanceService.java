@@ -0,0 +1,137 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Cộng/trừ/chuyển xu giữa người dùng an toàn khi chạy đồng thời:
+ * - Mỗi thay đổi là một câu UPDATE delta trên dòng users (database tự khóa dòng), trừ xu có điều kiện
+ * số dư đủ, nên không có lost update giữa các giao dịch mua cùng lúc của một người mua hay một người bán
+ * - Chuyển xu luôn cập nhật hai dòng theo thứ tự id tăng dần để hai giao dịch ngược chiều không deadlock
+ * - executeWithRetry chạy lại cả transaction (giới hạn số lần) khi database chọn nó làm nạn nhân deadlock
+ * hoặc hết thời gian chờ khóa
+ */
+@Service
+public class CoinBalanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoinBalanceService.class);
+
+    private static final long RETRY_BASE_DELAY_MS = 20;
+
+    @Value("${app.coins.max-attempts:3}")
+    private int maxAttempts;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Trừ xu nếu số dư đủ. Trả về false (không thay đổi gì) khi không đủ số dư
+     */
+    @Transactional
+    public boolean debit(Long userId, BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            return true;
+        }
+        return userRepository.debitCoins(userId, amount) > 0;
+    }
+
+    @Transactional
+    public void credit(Long userId, BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            return;
+        }
+        if (userRepository.creditCoins(userId, amount) == 0) {
+            throw new IllegalStateException("Không tìm thấy người dùng để cộng xu: " + userId);
+        }
+    }
+
+    /**
+     * Trừ debitAmount của người gửi và cộng creditAmount cho người nhận (phần chênh lệch là hoa hồng hệ thống).
+     * Trả về false khi người gửi không đủ số dư; khi đó không dòng nào bị thay đổi
+     */
+    @Transactional
+    public boolean transfer(Long fromUserId, Long toUserId, BigDecimal debitAmount, BigDecimal creditAmount) {
+        if (fromUserId.equals(toUserId)) {
+            // Tự mua tài liệu của mình: chỉ mất phần hoa hồng
+            BigDecimal net = orZero(debitAmount).subtract(orZero(creditAmount));
+            return net.signum() <= 0 ? true : debit(fromUserId, net);
+        }
+
+        // Khóa dòng theo thứ tự id tăng dần
+        if (fromUserId < toUserId) {
+            if (!debit(fromUserId, debitAmount)) {
+                return false;
+            }
+            credit(toUserId, creditAmount);
+            return true;
+        }
+
+        credit(toUserId, creditAmount);
+        if (!debit(fromUserId, debitAmount)) {
+            // Hoàn phần đã cộng (dòng người nhận đang bị khóa bởi chính transaction này)
+            if (orZero(creditAmount).signum() > 0) {
+                userRepository.creditCoins(toUserId, creditAmount.negate());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public BigDecimal getBalance(Long userId) {
+        BigDecimal balance = userRepository.findCoinBalanceById(userId);
+        return balance != null ? balance : BigDecimal.ZERO;
+    }
+
+    /**
+     * Chạy work trong một transaction mới, thử lại khi gặp lỗi tranh chấp khóa (deadlock, lock timeout).
+     * Nếu bên gọi đã có transaction thì chỉ chạy một lần trong transaction đó (không thể chạy lại một phần)
+     */
+    public <T> T executeWithRetry(Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        int attempts = Math.max(1, maxAttempts);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return template.execute(status -> work.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= attempts) {
+                    throw e;
+                }
+                logger.warn("Coin transaction conflict (attempt {}/{}): {}", attempt, attempts, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long delay = RETRY_BASE_DELAY_MS * (1L << (attempt - 1));
+        try {
+            Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
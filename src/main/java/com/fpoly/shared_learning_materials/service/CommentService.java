@@ -15,6 +15,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.fpoly.shared_learning_materials.domain.Comment;
 import com.fpoly.shared_learning_materials.domain.CommentLike;
@@ -43,6 +44,9 @@ public class CommentService {
 	@Autowired
 	private CommentLikeRepository commentLikeRepository;
 
+	@Autowired
+	private RatingAggregateService ratingAggregateService;
+
 	public Page<CommentDTO> getCommentsWithPendingReports(int page, int size) {
 		Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
 
@@ -148,12 +152,15 @@ public class CommentService {
 		return dto;
 	}
 
+	@Transactional
 	public void approveReport(Long commentId) {
 		Comment comment = commentRepository.findById(commentId)
 				.orElseThrow(() -> new RuntimeException("Comment không tồn tại"));
 
+		boolean wasCounted = RatingAggregateService.isCounted(comment);
 		comment.setStatus("inactive");
 		commentRepository.save(comment);
+		updateRatingStats(comment, wasCounted);
 
 		Optional<Report> optReport = reportRepository.findFirstByCommentIdAndStatusOrderByCreatedAtAsc(commentId,
 				"pending");
@@ -165,12 +172,15 @@ public class CommentService {
 		}
 	}
 
+	@Transactional
 	public void rejectReport(Long commentId) {
 		Comment comment = commentRepository.findById(commentId)
 				.orElseThrow(() -> new RuntimeException("Comment không tồn tại"));
 
+		boolean wasCounted = RatingAggregateService.isCounted(comment);
 		comment.setStatus("active");
 		commentRepository.save(comment);
+		updateRatingStats(comment, wasCounted);
 
 		Optional<Report> optReport = reportRepository.findFirstByCommentIdAndStatusOrderByCreatedAtAsc(commentId,
 				"pending");
@@ -182,25 +192,40 @@ public class CommentService {
 		}
 	}
 
+	@Transactional
 	public void hideComment(Long commentId) {
 		Comment c = commentRepository.findById(commentId)
 				.orElseThrow(() -> new RuntimeException("Comment không tồn tại"));
+		boolean wasCounted = RatingAggregateService.isCounted(c);
 		c.setStatus("inactive");
 		commentRepository.save(c);
+		updateRatingStats(c, wasCounted);
 	}
 
+	@Transactional
 	public void showComment(Long commentId) {
 		Comment c = commentRepository.findById(commentId)
 				.orElseThrow(() -> new RuntimeException("Comment không tồn tại"));
+		boolean wasCounted = RatingAggregateService.isCounted(c);
 		c.setStatus("active");
 		commentRepository.save(c);
+		updateRatingStats(c, wasCounted);
 	}
 
+	@Transactional
 	public void deleteComment(Long commentId) {
 		Comment c = commentRepository.findById(commentId)
 				.orElseThrow(() -> new RuntimeException("Comment không tồn tại"));
+		boolean wasCounted = RatingAggregateService.isCounted(c);
 		c.setDeletedAt(LocalDateTime.now());
 		commentRepository.save(c);
+		updateRatingStats(c, wasCounted);
+	}
+
+	// Cập nhật bảng tổng hợp đánh giá khi bình luận chuyển giữa hiển thị/ẩn/xóa
+	private void updateRatingStats(Comment comment, boolean wasCounted) {
+		ratingAggregateService.commentChanged(comment.getDocument().getId(), comment.getRating(), wasCounted,
+				RatingAggregateService.isCounted(comment));
 	}
 
 	// Like/Dislike methods
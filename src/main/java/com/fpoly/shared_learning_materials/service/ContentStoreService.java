@@ -0,0 +1,307 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.config.UploadConfig;
+import com.fpoly.shared_learning_materials.domain.File;
+import com.fpoly.shared_learning_materials.domain.FileBlob;
+import com.fpoly.shared_learning_materials.repository.FileBlobRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Kho file theo nội dung (content-addressed) cho tài liệu:
+ * - SHA-256 được tính ngay khi ghi stream xuống đĩa (file staging của wizard thì đọc lại một lần, không copy)
+ * - File lưu với tên <sha256>.<phần mở rộng> trong thư mục tài liệu; cùng nội dung thì chỉ tăng refCount của blob,
+ * file mới bị bỏ đi (mỗi tài liệu trùng không tốn thêm dung lượng đĩa/backup)
+ * - Xóa tài liệu giảm refCount; blob không còn tham chiếu bị xóa sau khi commit, và được quét lại định kỳ
+ * File tạo trước khi có kho (blob = null) vẫn được xử lý theo đường dẫn như cũ.
+ */
+@Service
+public class ContentStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentStoreService.class);
+
+    private static final int LOCK_STRIPES = 64;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${app.content-store.gc-batch-size:200}")
+    private int gcBatchSize;
+
+    @Autowired
+    private FileBlobRepository fileBlobRepository;
+
+    @Autowired
+    private UploadStagingService uploadStagingService;
+
+    @Autowired
+    private UploadConfig uploadConfig;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Ghi và thu gom cùng một blob không chạy song song (trong một instance)
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private Path storePath;
+
+    public ContentStoreService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Ghi nội dung vào đường dẫn blob (move file tạm/staging)
+    @FunctionalInterface
+    private interface Installer {
+        void install(Path target) throws IOException;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        storePath = Paths.get(uploadConfig.getDocumentsDir()).toAbsolutePath().normalize();
+        Files.createDirectories(storePath);
+    }
+
+    /**
+     * Lưu nội dung từ stream, tính SHA-256 trong lúc ghi. Nội dung đã có thì dùng lại blob cũ
+     */
+    public FileBlob store(InputStream content, String originalFileName) throws IOException {
+        Path temp = storePath.resolve(".incoming-" + UUID.randomUUID() + ".tmp");
+        MessageDigest digest = sha256();
+        long size;
+        try (InputStream in = new DigestInputStream(content, digest)) {
+            size = Files.copy(in, temp);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        try {
+            return store(hash, size, originalFileName, target -> move(temp, target), true);
+        } finally {
+            // Trùng nội dung (hoặc lỗi): file tạm không được dùng
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lưu file ở vùng staging của wizard. Nội dung mới thì file được move vào kho (rollback thì trả về staging);
+     * trùng nội dung thì file staging được bỏ lại và bị xóa khi wizard gỡ nó khỏi session
+     */
+    public FileBlob store(UploadStagingService.StagedUpload stagedUpload) throws IOException {
+        Path source = stagedUpload.getPath();
+        if (!Files.isRegularFile(source)) {
+            throw new IOException("File tạm đã hết hạn, vui lòng tải lên lại");
+        }
+        MessageDigest digest = sha256();
+        try (InputStream in = Files.newInputStream(source)) {
+            byte[] buffer = new byte[IO_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        return store(hash, Files.size(source), stagedUpload.getFileName(),
+                target -> uploadStagingService.moveTo(stagedUpload, target), false);
+    }
+
+    /**
+     * Đường dẫn tương đối lưu trong File.filePath (được phục vụ qua /documents/uploads/documents/{tên})
+     */
+    public String getFilePath(FileBlob blob) {
+        return uploadConfig.getRelativePath(blob.getStorageName());
+    }
+
+    public Path resolve(FileBlob blob) {
+        return storePath.resolve(blob.getStorageName());
+    }
+
+    /**
+     * Bỏ tham chiếu của File tới blob (khi xóa vĩnh viễn hoặc thay file của tài liệu).
+     * Trả về false nếu là file lưu theo cách cũ, khi đó người gọi tự xóa file theo đường dẫn
+     */
+    public boolean release(File file) {
+        FileBlob blob = file.getBlob();
+        if (blob == null) {
+            return false;
+        }
+        file.setBlob(null);
+        fileBlobRepository.decrementRefCount(blob.getId());
+
+        Long blobId = blob.getId();
+        String storageName = blob.getStorageName();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    collect(blobId, storageName);
+                }
+            });
+        } else {
+            collect(blobId, storageName);
+        }
+        return true;
+    }
+
+    /**
+     * Quét các blob không còn tham chiếu (vd. ứng dụng dừng trước khi kịp xóa sau commit)
+     */
+    @Scheduled(fixedDelayString = "${app.content-store.gc-interval-ms:3600000}")
+    public void collectGarbage() {
+        int deleted = 0;
+        try {
+            List<FileBlob> unreferenced = fileBlobRepository.findUnreferenced(PageRequest.of(0, Math.max(1, gcBatchSize)));
+            for (FileBlob blob : unreferenced) {
+                if (collect(blob.getId(), blob.getStorageName())) {
+                    deleted++;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error collecting unreferenced file blobs", e);
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} unreferenced file blobs", deleted);
+        }
+    }
+
+    private FileBlob store(String hash, long size, String originalFileName, Installer installer,
+            boolean deleteOnRollback) throws IOException {
+        String storageName = hash + extension(originalFileName);
+        Path target = storePath.resolve(storageName);
+        synchronized (lockFor(storageName)) {
+            FileBlob blob = fileBlobRepository.findByStorageName(storageName).orElse(null);
+            if (blob != null && fileBlobRepository.incrementRefCount(blob.getId()) == 0) {
+                // Blob vừa bị thu gom giữa lúc đọc và tăng refCount
+                blob = null;
+            }
+            if (blob != null && Files.isRegularFile(target)) {
+                logger.info("Deduplicated upload {} ({} bytes) onto blob {}", originalFileName, size, storageName);
+                return blob;
+            }
+
+            boolean existed = Files.exists(target);
+            installer.install(target);
+            if (blob == null) {
+                blob = new FileBlob();
+                blob.setSha256(hash);
+                blob.setStorageName(storageName);
+                blob.setSize(size);
+                blob.setRefCount(1);
+                blob = fileBlobRepository.save(blob);
+                if (deleteOnRollback && !existed) {
+                    deleteOnRollback(storageName);
+                }
+            }
+            return blob;
+        }
+    }
+
+    // Blob mới bị rollback thì file vừa ghi không có bản ghi nào trỏ tới
+    private void deleteOnRollback(String storageName) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    return;
+                }
+                synchronized (lockFor(storageName)) {
+                    try {
+                        boolean referenced = Boolean.TRUE.equals(requiresNew().execute(
+                                tx -> fileBlobRepository.findByStorageName(storageName).isPresent()));
+                        if (!referenced) {
+                            Files.deleteIfExists(storePath.resolve(storageName));
+                        }
+                    } catch (Exception e) {
+                        logger.warn("Could not clean up blob {} after rollback: {}", storageName, e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    // Xóa blob (bản ghi trước, rồi file) nếu vẫn không còn tham chiếu
+    private boolean collect(Long blobId, String storageName) {
+        synchronized (lockFor(storageName)) {
+            try {
+                Integer deleted = requiresNew().execute(tx -> fileBlobRepository.deleteIfUnreferenced(blobId));
+                if (deleted == null || deleted == 0) {
+                    return false;
+                }
+                Files.deleteIfExists(storePath.resolve(storageName));
+                logger.debug("Deleted unreferenced blob {}", storageName);
+                return true;
+            } catch (Exception e) {
+                logger.warn("Could not delete blob {}: {}", storageName, e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    private TransactionTemplate requiresNew() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
+    private Object lockFor(String storageName) {
+        return locks[Math.floorMod(storageName.hashCode(), LOCK_STRIPES)];
+    }
+
+    // Phần mở rộng giữ lại để xác định content type khi phục vụ file
+    private static String extension(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0 || dot == fileName.length() - 1) {
+            return "";
+        }
+        String extension = fileName.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,10}") ? "." + extension : "";
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,14 +2,31 @@ package com.fpoly.shared_learning_materials.service;
 
 import com.fpoly.shared_learning_materials.domain.Document;
 import com.fpoly.shared_learning_materials.repository.DocumentRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class DocumentAnalyticsService {
@@ -19,13 +36,90 @@ public class DocumentAnalyticsService {
     @Autowired
     private DocumentRepository documentRepository;
 
-    // Cache để tránh spam view/download trong cùng session
-    private final ConcurrentHashMap<String, LocalDateTime> viewCache = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, LocalDateTime> downloadCache = new ConcurrentHashMap<>();
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Ghi trễ (write-behind): gom lượt xem/tải trong bộ nhớ rồi ghi một lần theo chu kỳ
+    @Value("${app.analytics.write-behind.enabled:true}")
+    private boolean writeBehindEnabled;
+
+    @Value("${app.analytics.write-behind.flush-interval-ms:5000}")
+    private long flushIntervalMs;
+
+    private static final String FLUSH_SQL = "UPDATE documents SET views_count = COALESCE(views_count, 0) + ?, "
+            + "downloads_count = COALESCE(downloads_count, 0) + ?, "
+            + "popularity_score = COALESCE(popularity_score, 0) + ? WHERE id = ?";
+
+    // Lượt xem/tải chưa ghi xuống database theo documentId. Entry không bị xóa sau khi flush
+    // (tối đa một entry cho mỗi tài liệu) để tránh mất lượt đếm khi tăng đồng thời với lúc xóa
+    private final ConcurrentHashMap<Long, PendingCounts> pendingCounts = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // Cache để tránh spam view/download trong cùng session.
+    // Key là hash 64-bit của (documentId, sessionId, ip), tự hết hạn sau CACHE_DURATION_MINUTES
+    // và bị giới hạn số entry để không tăng bộ nhớ vô hạn khi bị crawler quét
+    private Cache<Long, Boolean> viewCache;
+    private Cache<Long, Boolean> downloadCache;
 
     // Thời gian cache (5 phút)
     private static final int CACHE_DURATION_MINUTES = 5;
 
+    // Mỗi entry khoảng 80 byte => 200.000 entry ~ 16MB cho mỗi cache
+    @Value("${app.analytics.dedup.max-entries:200000}")
+    private long dedupMaxEntries;
+
+    @PostConstruct
+    public void initDedupCaches() {
+        viewCache = buildDedupCache();
+        downloadCache = buildDedupCache();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, viewCache, "documentViewDedup");
+            CaffeineCacheMetrics.monitor(meterRegistry, downloadCache, "documentDownloadDedup");
+        }
+    }
+
+    private Cache<Long, Boolean> buildDedupCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(dedupMaxEntries)
+                .expireAfterWrite(CACHE_DURATION_MINUTES, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    public void startFlushScheduler() {
+        if (!writeBehindEnabled) {
+            return;
+        }
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "document-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::flushPendingCounts, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+        logger.info("Write-behind document counters enabled, flush interval: {} ms", flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void shutdownFlushScheduler() {
+        if (flushExecutor == null) {
+            return;
+        }
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Ghi nốt phần còn lại trước khi tắt ứng dụng
+        flushPendingCounts();
+    }
+
     /**
      * Tăng lượt xem cho document
      */
@@ -33,16 +127,18 @@ public class DocumentAnalyticsService {
     public boolean incrementViewCount(Long documentId, String sessionId, String ipAddress) {
         try {
             // Tạo cache key
-            String cacheKey = documentId + "_" + sessionId + "_" + ipAddress;
+            long cacheKey = dedupKey(documentId, sessionId, ipAddress);
 
-            // Kiểm tra cache để tránh spam
+            // Kiểm tra cache để tránh spam (đồng thời đánh dấu nếu chưa có)
             if (isCached(cacheKey, viewCache)) {
                 logger.debug("View count request cached for document: {}, session: {}", documentId, sessionId);
                 return false;
             }
 
-            // Cập nhật cache
-            viewCache.put(cacheKey, LocalDateTime.now());
+            if (writeBehindEnabled) {
+                pendingCounts.computeIfAbsent(documentId, id -> new PendingCounts()).views.increment();
+                return true;
+            }
 
             // Tăng view count trong database
             int updatedRows = documentRepository.incrementViewCount(documentId);
@@ -68,16 +164,18 @@ public class DocumentAnalyticsService {
     public boolean incrementDownloadCount(Long documentId, String sessionId, String ipAddress) {
         try {
             // Tạo cache key
-            String cacheKey = documentId + "_" + sessionId + "_" + ipAddress;
+            long cacheKey = dedupKey(documentId, sessionId, ipAddress);
 
-            // Kiểm tra cache để tránh spam
+            // Kiểm tra cache để tránh spam (đồng thời đánh dấu nếu chưa có)
             if (isCached(cacheKey, downloadCache)) {
                 logger.debug("Download count request cached for document: {}, session: {}", documentId, sessionId);
                 return false;
             }
 
-            // Cập nhật cache
-            downloadCache.put(cacheKey, LocalDateTime.now());
+            if (writeBehindEnabled) {
+                pendingCounts.computeIfAbsent(documentId, id -> new PendingCounts()).downloads.increment();
+                return true;
+            }
 
             // Tăng download count trong database
             int updatedRows = documentRepository.incrementDownloadCount(documentId);
@@ -107,10 +205,16 @@ public class DocumentAnalyticsService {
                 return null;
             }
 
+            // Giá trị trong database + phần chưa flush
+            PendingCounts pending = pendingCounts.get(documentId);
+            long pendingViews = pending != null ? pending.views.sum() : 0L;
+            long pendingDownloads = pending != null ? pending.downloads.sum() : 0L;
+
             return DocumentStats.builder()
                     .documentId(documentId)
-                    .viewsCount(document.getViewsCount() != null ? document.getViewsCount() : 0L)
-                    .downloadsCount(document.getDownloadsCount() != null ? document.getDownloadsCount() : 0L)
+                    .viewsCount((document.getViewsCount() != null ? document.getViewsCount() : 0L) + pendingViews)
+                    .downloadsCount((document.getDownloadsCount() != null ? document.getDownloadsCount() : 0L)
+                            + pendingDownloads)
                     .build();
 
         } catch (Exception e) {
@@ -120,38 +224,112 @@ public class DocumentAnalyticsService {
     }
 
     /**
-     * Kiểm tra xem request có bị cache không
+     * Ghi các lượt xem/tải đang chờ xuống database: một câu UPDATE cho mỗi tài liệu,
+     * gửi chung một JDBC batch. Chỉ trừ khỏi bộ đếm sau khi ghi thành công.
      */
-    private boolean isCached(String cacheKey, ConcurrentHashMap<String, LocalDateTime> cache) {
-        LocalDateTime lastRequest = cache.get(cacheKey);
-        if (lastRequest == null) {
-            return false;
+    public synchronized void flushPendingCounts() {
+        List<Long> documentIds = new ArrayList<>();
+        List<Object[]> batchArgs = new ArrayList<>();
+        List<long[]> deltas = new ArrayList<>();
+
+        for (Map.Entry<Long, PendingCounts> entry : pendingCounts.entrySet()) {
+            long views = entry.getValue().views.sum();
+            long downloads = entry.getValue().downloads.sum();
+            if (views == 0 && downloads == 0) {
+                continue;
+            }
+            documentIds.add(entry.getKey());
+            batchArgs.add(new Object[] { views, downloads, views + downloads, entry.getKey() });
+            deltas.add(new long[] { views, downloads });
         }
 
-        // Kiểm tra xem có quá thời gian cache không
-        LocalDateTime cacheExpiry = lastRequest.plusMinutes(CACHE_DURATION_MINUTES);
-        if (LocalDateTime.now().isAfter(cacheExpiry)) {
-            cache.remove(cacheKey);
-            return false;
+        if (batchArgs.isEmpty()) {
+            return;
         }
 
-        return true;
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batchArgs);
+        } catch (Exception e) {
+            logger.error("Error flushing pending view/download counts for {} documents, will retry",
+                    batchArgs.size(), e);
+            return;
+        }
+
+        for (int i = 0; i < documentIds.size(); i++) {
+            PendingCounts pending = pendingCounts.get(documentIds.get(i));
+            pending.views.add(-deltas.get(i)[0]);
+            pending.downloads.add(-deltas.get(i)[1]);
+        }
+        logger.debug("Flushed pending view/download counts for {} documents", documentIds.size());
     }
 
     /**
-     * Dọn dẹp cache định kỳ
+     * Kiểm tra xem request có bị cache không; nếu chưa thì ghi nhận vào cache
      */
-    public void cleanupCache() {
-        LocalDateTime now = LocalDateTime.now();
+    private boolean isCached(long cacheKey, Cache<Long, Boolean> cache) {
+        // getIfPresent để Caffeine ghi nhận hit/miss, putIfAbsent để tránh 2 request đồng thời cùng được đếm
+        if (cache.getIfPresent(cacheKey) != null) {
+            return true;
+        }
+        return cache.asMap().putIfAbsent(cacheKey, Boolean.TRUE) != null;
+    }
 
-        // Dọn view cache
-        viewCache.entrySet().removeIf(entry -> now.isAfter(entry.getValue().plusMinutes(CACHE_DURATION_MINUTES)));
+    /**
+     * Hash 64-bit (FNV-1a) của documentId, sessionId và ip để không phải giữ chuỗi key trong bộ nhớ
+     */
+    private static long dedupKey(Long documentId, String sessionId, String ipAddress) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv1a(hash, String.valueOf(documentId));
+        hash = fnv1a(hash, "_" + sessionId);
+        hash = fnv1a(hash, "_" + ipAddress);
+        return hash;
+    }
 
-        // Dọn download cache
-        downloadCache.entrySet().removeIf(entry -> now.isAfter(entry.getValue().plusMinutes(CACHE_DURATION_MINUTES)));
+    private static long fnv1a(long hash, String value) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Dọn dẹp cache (entry hết hạn vẫn được Caffeine tự dọn khi đọc/ghi)
+     */
+    public void cleanupCache() {
+        viewCache.cleanUp();
+        downloadCache.cleanUp();
 
         logger.debug("Cache cleanup completed. View cache size: {}, Download cache size: {}",
-                viewCache.size(), downloadCache.size());
+                viewCache.estimatedSize(), downloadCache.estimatedSize());
+    }
+
+    /**
+     * Thống kê hit/miss/eviction của cache chống spam để điều chỉnh kích thước
+     */
+    public Map<String, Object> getDedupCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxEntries", dedupMaxEntries);
+        stats.put("expireAfterWriteMinutes", CACHE_DURATION_MINUTES);
+        stats.put("view", toStatsMap(viewCache));
+        stats.put("download", toStatsMap(downloadCache));
+        return stats;
+    }
+
+    private Map<String, Object> toStatsMap(Cache<Long, Boolean> cache) {
+        CacheStats cacheStats = cache.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", cache.estimatedSize());
+        map.put("hits", cacheStats.hitCount());
+        map.put("misses", cacheStats.missCount());
+        map.put("hitRate", cacheStats.hitRate());
+        map.put("evictions", cacheStats.evictionCount());
+        return map;
+    }
+
+    private static class PendingCounts {
+        private final LongAdder views = new LongAdder();
+        private final LongAdder downloads = new LongAdder();
     }
 
     /**
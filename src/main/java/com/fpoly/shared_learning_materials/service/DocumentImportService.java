@@ -0,0 +1,416 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fpoly.shared_learning_materials.domain.Category;
+import com.fpoly.shared_learning_materials.domain.Tag;
+import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.repository.CategoryRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentRepository;
+import com.fpoly.shared_learning_materials.repository.TagRepository;
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import com.fpoly.shared_learning_materials.util.SlugUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Import tài liệu từ file backup (định dạng của exportAllDocuments) theo kiểu streaming:
+ * đọc từng tài liệu bằng Jackson JsonParser, gom thành lô, kiểm tra slug đã tồn tại bằng một truy vấn
+ * cho cả lô rồi ghi bằng JDBC batch (documents, document_categories, document_tags, document_owners)
+ * trong một transaction cho mỗi lô (lô lỗi được ghi lại từng dòng). Tiến độ được cập nhật sau mỗi lô (xem getProgress).
+ */
+@Service
+public class DocumentImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentImportService.class);
+
+    // SQL Server giới hạn 2100 tham số mỗi câu lệnh (IN (...) khi kiểm tra slug)
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final String INSERT_DOCUMENT_SQL = "INSERT INTO documents (title, slug, description, price, "
+            + "status, visibility, downloads_count, views_count, popularity_score, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, 0, 0, 0, ?, ?)";
+
+    private static final String INSERT_DOCUMENT_CATEGORY_SQL = "INSERT INTO document_categories "
+            + "(document_id, category_id, created_at) VALUES (?, ?, ?)";
+
+    private static final String INSERT_DOCUMENT_TAG_SQL = "INSERT INTO document_tags "
+            + "(document_id, tag_id, created_at) VALUES (?, ?, ?)";
+
+    private static final String INSERT_DOCUMENT_OWNER_SQL = "INSERT INTO document_owners "
+            + "(document_id, user_id, ownership_type, created_at) VALUES (?, ?, 'owner', ?)";
+
+    @Value("${app.import.batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DocumentSearchIndexService documentSearchIndexService;
+
+    @Autowired
+    private RelatedDocumentsService relatedDocumentsService;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile ImportProgress progress = new ImportProgress(0L);
+
+    /**
+     * Tiến độ lần import gần nhất (hoặc đang chạy)
+     */
+    public Map<String, Object> getProgress() {
+        return progress.toMap();
+    }
+
+    public String importDocuments(MultipartFile file) throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("File backup trống!");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Đang có một lần import khác chạy, vui lòng thử lại sau!");
+        }
+
+        ImportProgress current = new ImportProgress(file.getSize());
+        progress = current;
+        try (InputStream in = file.getInputStream()) {
+            importStream(in, current);
+            current.finish(null);
+            return String.format("Import hoàn thành: %d tài liệu được import, %d bị bỏ qua",
+                    current.imported, current.skipped);
+        } catch (IOException | RuntimeException e) {
+            current.finish(e.getMessage());
+            throw e;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void importStream(InputStream in, ImportProgress current) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        int effectiveBatchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        ImportContext context = new ImportContext();
+
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("File backup không đúng định dạng!");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!"documents".equals(field) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                List<ImportRow> batch = new ArrayList<>(effectiveBatchSize);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode node = mapper.readTree(parser);
+                    ImportRow row = ImportRow.from(node);
+                    if (row == null) {
+                        current.skipped++;
+                    } else {
+                        batch.add(row);
+                    }
+                    if (batch.size() >= effectiveBatchSize) {
+                        writeBatch(batch, context, current);
+                        batch = new ArrayList<>(effectiveBatchSize);
+                        current.bytesRead = parser.currentLocation().getByteOffset();
+                    }
+                }
+                writeBatch(batch, context, current);
+                current.bytesRead = parser.currentLocation().getByteOffset();
+            }
+        }
+
+        if (current.imported > 0) {
+            // Import hàng loạt: dựng lại chỉ mục một lần thay vì cập nhật từng tài liệu
+            documentSearchIndexService.rebuild();
+            relatedDocumentsService.rebuild();
+        }
+    }
+
+    private void writeBatch(List<ImportRow> batch, ImportContext context, ImportProgress current) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            int[] result = transactionTemplate.execute(status -> insertBatch(batch, context));
+            current.imported += result[0];
+            current.skipped += result[1];
+        } catch (Exception e) {
+            logger.warn("Error importing batch of {} documents, retrying row by row", batch.size(), e);
+            // Tag tạo trong lô lỗi đã bị rollback, không dùng lại id trong cache
+            context.tagIds.clear();
+            // Ghi lại từng tài liệu trong transaction riêng để chỉ bỏ qua các dòng thực sự lỗi
+            for (ImportRow row : batch) {
+                try {
+                    int[] result = transactionTemplate.execute(status -> insertBatch(List.of(row), context));
+                    current.imported += result[0];
+                    current.skipped += result[1];
+                } catch (Exception rowError) {
+                    logger.error("Error importing document with slug {}", row.slug, rowError);
+                    current.skipped++;
+                    context.tagIds.clear();
+                }
+            }
+        }
+        current.processed += batch.size();
+        logger.info("Import progress: {} processed, {} imported, {} skipped",
+                current.processed, current.imported, current.skipped);
+    }
+
+    /**
+     * Ghi một lô trong transaction hiện tại, trả về {số tài liệu import, số bị bỏ qua}
+     */
+    private int[] insertBatch(List<ImportRow> batch, ImportContext context) {
+        // Bỏ các slug đã có trong database hoặc trùng trong cùng lô
+        Set<String> slugs = new HashSet<>();
+        for (ImportRow row : batch) {
+            slugs.add(row.slug);
+        }
+        Set<String> existing = new HashSet<>(documentRepository.findExistingSlugs(slugs));
+
+        Map<String, ImportRow> toInsert = new LinkedHashMap<>();
+        for (ImportRow row : batch) {
+            if (!existing.contains(row.slug)) {
+                toInsert.putIfAbsent(row.slug, row);
+            }
+        }
+        int skipped = batch.size() - toInsert.size();
+        if (toInsert.isEmpty()) {
+            return new int[] { 0, skipped };
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> documentArgs = new ArrayList<>(toInsert.size());
+        for (ImportRow row : toInsert.values()) {
+            documentArgs.add(new Object[] { row.title, row.slug, row.description, row.price,
+                    row.status, row.visibility, now, now });
+        }
+        jdbcTemplate.batchUpdate(INSERT_DOCUMENT_SQL, documentArgs);
+
+        // Lấy id vừa sinh theo slug (slug là duy nhất)
+        Map<String, Long> idsBySlug = new HashMap<>();
+        for (Object[] row : documentRepository.findIdsBySlugs(toInsert.keySet())) {
+            idsBySlug.put((String) row[1], (Long) row[0]);
+        }
+
+        List<Object[]> categoryArgs = new ArrayList<>();
+        List<Object[]> tagArgs = new ArrayList<>();
+        List<Object[]> ownerArgs = new ArrayList<>();
+        for (ImportRow row : toInsert.values()) {
+            Long documentId = idsBySlug.get(row.slug);
+            if (documentId == null) {
+                continue;
+            }
+            Set<Long> categoryIds = new HashSet<>();
+            for (String name : row.categories) {
+                Long categoryId = context.resolveCategory(name);
+                if (categoryId != null && categoryIds.add(categoryId)) {
+                    categoryArgs.add(new Object[] { documentId, categoryId, now });
+                }
+            }
+            Set<Long> tagIds = new HashSet<>();
+            for (String name : row.tags) {
+                Long tagId = context.resolveTag(name);
+                if (tagId != null && tagIds.add(tagId)) {
+                    tagArgs.add(new Object[] { documentId, tagId, now });
+                }
+            }
+            Long ownerId = context.resolveUser(row.authorUsername);
+            if (ownerId != null) {
+                ownerArgs.add(new Object[] { documentId, ownerId, now });
+            }
+        }
+        if (!categoryArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_DOCUMENT_CATEGORY_SQL, categoryArgs);
+        }
+        if (!tagArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_DOCUMENT_TAG_SQL, tagArgs);
+        }
+        if (!ownerArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_DOCUMENT_OWNER_SQL, ownerArgs);
+        }
+
+        return new int[] { idsBySlug.size(), skipped + (toInsert.size() - idsBySlug.size()) };
+    }
+
+    /**
+     * Cache tra cứu danh mục/tag/người dùng theo tên trong suốt một lần import
+     * (số lượng khác nhau nhỏ hơn nhiều so với số tài liệu)
+     */
+    private class ImportContext {
+        private final Map<String, Long> categoryIds = new HashMap<>();
+        private final Map<String, Long> tagIds = new HashMap<>();
+        private final Map<String, Long> userIds = new HashMap<>();
+
+        // Chỉ gắn vào danh mục đã có; danh mục không tồn tại thì bỏ qua
+        Long resolveCategory(String name) {
+            if (categoryIds.containsKey(name)) {
+                return categoryIds.get(name);
+            }
+            Long id = categoryRepository.findByNameAndDeletedAtIsNull(name).map(Category::getId).orElse(null);
+            categoryIds.put(name, id);
+            return id;
+        }
+
+        // Tag chưa có thì tạo mới như khi tạo tài liệu
+        Long resolveTag(String name) {
+            if (tagIds.containsKey(name)) {
+                return tagIds.get(name);
+            }
+            Tag tag = tagRepository.findByName(name).orElse(null);
+            if (tag == null) {
+                String slug = SlugUtils.generateSlug(name);
+                tag = tagRepository.findBySlug(slug).orElse(null);
+                if (tag == null) {
+                    tag = new Tag();
+                    tag.setName(name);
+                    tag.setSlug(slug);
+                    tag = tagRepository.save(tag);
+                }
+            }
+            tagIds.put(name, tag.getId());
+            return tag.getId();
+        }
+
+        Long resolveUser(String username) {
+            if (username == null) {
+                return null;
+            }
+            if (userIds.containsKey(username)) {
+                return userIds.get(username);
+            }
+            Long id = userRepository.findByUsernameAndDeletedAtIsNull(username).map(User::getId).orElse(null);
+            userIds.put(username, id);
+            return id;
+        }
+    }
+
+    private static class ImportRow {
+        String title;
+        String slug;
+        String description;
+        BigDecimal price;
+        String status;
+        String visibility;
+        String authorUsername;
+        List<String> categories = new ArrayList<>();
+        List<String> tags = new ArrayList<>();
+
+        // null nếu thiếu title/slug (không thể import)
+        static ImportRow from(JsonNode node) {
+            String title = text(node, "title");
+            String slug = text(node, "slug");
+            if (title == null || slug == null || slug.isBlank()) {
+                return null;
+            }
+
+            ImportRow row = new ImportRow();
+            row.title = title;
+            row.slug = slug;
+            row.description = text(node, "description");
+            JsonNode price = node.get("price");
+            row.price = price != null && price.isNumber() ? price.decimalValue() : BigDecimal.ZERO;
+            row.status = text(node, "status") != null ? text(node, "status") : "draft";
+            row.visibility = text(node, "visibility") != null ? text(node, "visibility") : "public";
+            row.authorUsername = text(node, "authorUsername");
+            readNames(node.get("categories"), row.categories);
+            readNames(node.get("tags"), row.tags);
+            return row;
+        }
+
+        private static String text(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value != null && !value.isNull() ? value.asText() : null;
+        }
+
+        private static void readNames(JsonNode array, List<String> target) {
+            if (array == null || !array.isArray()) {
+                return;
+            }
+            for (JsonNode item : array) {
+                String name = item.asText().trim();
+                if (!name.isEmpty()) {
+                    target.add(name);
+                }
+            }
+        }
+    }
+
+    private static class ImportProgress {
+        final long totalBytes;
+        final LocalDateTime startedAt = LocalDateTime.now();
+        volatile long bytesRead;
+        volatile int processed;
+        volatile int imported;
+        volatile int skipped;
+        volatile LocalDateTime finishedAt;
+        volatile String error;
+
+        ImportProgress(long totalBytes) {
+            this.totalBytes = totalBytes;
+        }
+
+        void finish(String error) {
+            this.error = error;
+            this.bytesRead = totalBytes;
+            this.finishedAt = LocalDateTime.now();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("running", finishedAt == null && totalBytes > 0);
+            map.put("processed", processed);
+            map.put("imported", imported);
+            map.put("skipped", skipped);
+            map.put("percent", totalBytes > 0 ? Math.min(100, bytesRead * 100 / totalBytes) : 0);
+            map.put("startedAt", startedAt);
+            map.put("finishedAt", finishedAt);
+            map.put("error", error);
+            return map;
+        }
+    }
+}
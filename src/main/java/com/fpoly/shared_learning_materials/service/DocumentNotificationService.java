@@ -1,28 +1,78 @@
 package com.fpoly.shared_learning_materials.service;
 
 import com.fpoly.shared_learning_materials.domain.Document;
-import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.domain.NotificationDigestState;
+import com.fpoly.shared_learning_materials.repository.DocumentCategoryRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentOwnerRepository;
 import com.fpoly.shared_learning_materials.repository.DocumentRepository;
+import com.fpoly.shared_learning_materials.repository.FavoriteRepository;
+import com.fpoly.shared_learning_materials.repository.NotificationDigestStateRepository;
+import com.fpoly.shared_learning_materials.repository.TransactionDetailRepository;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.controller.admin.SettingController;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Service để gửi email thông báo tài liệu mới cho users
- * Chỉ gửi khi có tài liệu mới, theo tần suất hàng ngày/tuần
+ * Chỉ gửi khi có tài liệu mới, theo tần suất hàng ngày/tuần.
+ * Bản tin tính tăng dần từ mốc id tài liệu lưu trong bảng notification_digest_states
+ * và chỉ gửi cho người dùng quan tâm danh mục của tài liệu mới.
  */
 @Service
 public class DocumentNotificationService {
 
+    private static final String DIGEST_STATE = "new_documents";
+
+    // Số nội dung email khác nhau giữ lại trong một lượt (theo danh sách tài liệu phù hợp)
+    private static final int MAX_RENDERED_DIGESTS = 64;
+
+    @Value("${app.digest.recipient-chunk-size:500}")
+    private int recipientChunkSize;
+
+    @Value("${app.digest.include-users-without-interests:true}")
+    private boolean includeUsersWithoutInterests;
+
+    @Autowired
+    private OutboxService outboxService;
+
     @Autowired
-    private EmailConfigService emailConfigService;
+    private NotificationDigestStateRepository digestStateRepository;
+
+    @Autowired
+    private DocumentCategoryRepository documentCategoryRepository;
+
+    @Autowired
+    private FavoriteRepository favoriteRepository;
+
+    @Autowired
+    private TransactionDetailRepository transactionDetailRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
 
     @Autowired
     private DocumentRepository documentRepository;
@@ -31,7 +81,7 @@ public class DocumentNotificationService {
     private UserRepository userRepository;
 
     @Autowired
-    private com.fpoly.shared_learning_materials.repository.DocumentOwnerRepository documentOwnerRepository;
+    private DocumentOwnerRepository documentOwnerRepository;
 
     // Chạy mỗi giờ để kiểm tra
     @Scheduled(fixedRate = 3600000) // 1 hour = 3600000 ms - ENABLED since email is working
@@ -54,10 +104,11 @@ public class DocumentNotificationService {
                 return;
             }
 
-            // Kiểm tra xem có cần gửi email không
-            if (shouldSendNotification(frequency)) {
+            // Kiểm tra xem có cần gửi email không (lượt trước bị dừng giữa chừng thì chạy tiếp ngay)
+            NotificationDigestState state = loadDigestState();
+            if (state.getRunUpToDocumentId() != null || shouldSendNotification(state, frequency)) {
                 System.out.println("Time to check for new documents!");
-                checkAndSendNotifications(frequency);
+                runDigest(state, frequency);
             } else {
                 System.out.println("Not time to send notifications yet...");
             }
@@ -68,125 +119,227 @@ public class DocumentNotificationService {
         }
     }
 
-    private boolean shouldSendNotification(String frequency) {
-        try {
-            String lastSentStr = SettingController.getStringSetting("lastDocumentNotificationSent", "Chưa gửi");
-            
-            if ("Chưa gửi".equals(lastSentStr)) {
-                return true;
-            }
+    private boolean shouldSendNotification(NotificationDigestState state, String frequency) {
+        if (state.getLastRunAt() == null) {
+            return true;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        switch (frequency) {
+            case "daily":
+                return ChronoUnit.HOURS.between(state.getLastRunAt(), now) >= 24;
+            case "weekly":
+                return ChronoUnit.DAYS.between(state.getLastRunAt(), now) >= 7;
+            default:
+                return false;
+        }
+    }
+
+    private NotificationDigestState loadDigestState() {
+        return digestStateRepository.findById(DIGEST_STATE).orElseGet(() -> {
+            NotificationDigestState state = new NotificationDigestState();
+            state.setName(DIGEST_STATE);
+            return state;
+        });
+    }
 
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-            LocalDateTime lastSent = LocalDateTime.parse(lastSentStr, formatter);
+    /**
+     * Một lượt bản tin: chỉ quét tài liệu sau mốc đã lưu, gửi cho người dùng quan tâm danh mục của chúng,
+     * duyệt người nhận theo từng trang. Tiến độ được lưu cùng transaction với email của mỗi trang,
+     * nên ứng dụng dừng giữa chừng thì lượt sau chạy tiếp mà không gửi trùng.
+     */
+    private void runDigest(NotificationDigestState state, String frequency) {
+        long start = System.currentTimeMillis();
+        if (state.getRunUpToDocumentId() == null) {
+            // Lượt mới: chốt phạm vi tài liệu, không lấy tài liệu cũ hơn một kỳ (ví dụ sau thời gian tắt thông báo)
+            Long maxId = documentRepository.findMaxId();
             LocalDateTime now = LocalDateTime.now();
+            state.setRunUpToDocumentId(maxId != null ? maxId : 0L);
+            state.setRunSince("weekly".equals(frequency) ? now.minusWeeks(1) : now.minusDays(1));
+            state.setRunUserCursor(0L);
+            digestStateRepository.save(state);
+        } else {
+            System.out.println("Resuming document digest after user id " + state.getRunUserCursor());
+        }
 
-            switch (frequency) {
-                case "daily":
-                    long hoursSinceLastSent = ChronoUnit.HOURS.between(lastSent, now);
-                    return hoursSinceLastSent >= 24;
-                case "weekly":
-                    long daysSinceLastSent = ChronoUnit.DAYS.between(lastSent, now);
-                    return daysSinceLastSent >= 7;
-                default:
-                    return false;
-            }
+        List<Document> newDocuments = documentRepository.findDigestDocuments(
+                state.getLastDocumentId(), state.getRunUpToDocumentId(), state.getRunSince());
 
-        } catch (Exception e) {
-            System.err.println("Error checking notification timing: " + e.getMessage());
-            return true;
+        DigestRun run = new DigestRun();
+        run.documentsScanned = newDocuments.size();
+        if (newDocuments.isEmpty()) {
+            System.out.println("No new documents found, skipping email...");
+        } else {
+            String subject = "📚 Tài liệu mới trên EduShare - " +
+                           (frequency.equals("daily") ? "Cập nhật hàng ngày" : "Cập nhật hàng tuần");
+            Map<Long, String> authorNames = loadAuthorNames(newDocuments);
+            publishToInterestedUsers(newDocuments, subject,
+                    documents -> generateNewDocumentEmailContent(documents, frequency, authorNames), state, run);
         }
+
+        // Lượt hoàn tất: dời mốc và lưu số liệu
+        state.setLastDocumentId(state.getRunUpToDocumentId());
+        state.setRunUpToDocumentId(null);
+        state.setRunSince(null);
+        state.setRunUserCursor(null);
+        state.setLastRunAt(LocalDateTime.now());
+        state.setLastDocumentsScanned(run.documentsScanned);
+        state.setLastRecipients(run.recipients);
+        state.setLastEmailsQueued(run.emailsQueued);
+        state.setLastDurationMs(System.currentTimeMillis() - start);
+        digestStateRepository.save(state);
+        recordMetrics(run);
+        updateLastNotificationSentTime();
+
+        System.out.println("Document digest: scanned " + run.documentsScanned + " documents, " +
+                run.recipients + " recipients, queued " + run.emailsQueued + " emails in " +
+                state.getLastDurationMs() + " ms");
     }
 
-    private void checkAndSendNotifications(String frequency) {
-        try {
-            // Tính thời gian để tìm tài liệu mới
-            LocalDateTime now = LocalDateTime.now();
-            LocalDateTime fromDate;
-            
-            switch (frequency) {
-                case "daily":
-                    fromDate = now.minusDays(1);
-                    break;
-                case "weekly":
-                    fromDate = now.minusWeeks(1);
-                    break;
-                default:
-                    fromDate = now.minusDays(1);
+    /**
+     * Ghi email vào outbox cho người dùng quan tâm ít nhất một danh mục của các tài liệu.
+     * Người nhận được duyệt theo trang id tăng dần; mỗi người chỉ nhận các tài liệu thuộc danh mục mình quan tâm,
+     * người chưa có lịch sử (yêu thích, mua, đăng tài liệu) nhận toàn bộ nếu bật include-users-without-interests.
+     * Người nhận cùng danh sách tài liệu dùng chung một nội dung email.
+     * state != null: lưu con trỏ người nhận trong cùng transaction với email của trang đó.
+     */
+    private void publishToInterestedUsers(List<Document> documents, String subject,
+            Function<List<Document>, String> renderer, NotificationDigestState state, DigestRun run) {
+        List<Long> documentIds = documents.stream().map(Document::getId).collect(Collectors.toList());
+        Map<Long, Set<Long>> documentCategories = groupPairs(
+                documentCategoryRepository.findCategoryIdPairsByDocumentIds(documentIds));
+
+        Map<List<Long>, String> renderedContent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Long>, String> eldest) {
+                return size() > MAX_RENDERED_DIGESTS;
+            }
+        };
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int chunkSize = Math.max(1, recipientChunkSize);
+        long cursor = state != null && state.getRunUserCursor() != null ? state.getRunUserCursor() : 0L;
+
+        while (true) {
+            List<Object[]> page = userRepository.findRecipientsAfter(cursor, PageRequest.of(0, chunkSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            List<Long> userIds = page.stream().map(row -> (Long) row[0]).collect(Collectors.toList());
+            Map<Long, Set<Long>> interests = loadInterests(userIds);
+
+            // Danh sách id tài liệu phù hợp -> email người nhận
+            Map<List<Long>, List<String>> groups = new LinkedHashMap<>();
+            for (Object[] row : page) {
+                String email = (String) row[1];
+                if (email == null || email.isBlank()) {
+                    continue;
+                }
+                List<Long> matched = matchDocuments(documents, documentCategories, interests.get((Long) row[0]));
+                if (!matched.isEmpty()) {
+                    groups.computeIfAbsent(matched, k -> new ArrayList<>()).add(email);
+                }
             }
 
-            // Tìm tài liệu mới trong khoảng thời gian
-            List<Document> newDocuments = documentRepository.findByCreatedAtBetweenAndDeletedAtIsNull(fromDate, now);
-            
-            if (newDocuments.isEmpty()) {
-                System.out.println("No new documents found, skipping email...");
-                updateLastNotificationSentTime();
-                return;
+            long pageCursor = userIds.get(userIds.size() - 1);
+            Integer queued = transactionTemplate.execute(status -> {
+                int count = 0;
+                for (Map.Entry<List<Long>, List<String>> group : groups.entrySet()) {
+                    String content = renderedContent.computeIfAbsent(group.getKey(),
+                            ids -> renderer.apply(selectDocuments(documents, ids)));
+                    count += outboxService.publishEmails(group.getValue(), subject, content);
+                }
+                if (state != null) {
+                    state.setRunUserCursor(pageCursor);
+                    digestStateRepository.save(state);
+                }
+                return count;
+            });
+
+            run.recipients += groups.values().stream().mapToInt(List::size).sum();
+            run.emailsQueued += queued != null ? queued : 0;
+            cursor = pageCursor;
+            if (page.size() < chunkSize) {
+                break;
             }
+        }
+    }
 
-            System.out.println("Found " + newDocuments.size() + " new documents, sending notifications...");
+    /**
+     * Danh mục người dùng quan tâm: danh mục của tài liệu đã yêu thích, đã mua hoặc đã đăng.
+     * Người dùng không có trong kết quả là chưa có lịch sử nào
+     */
+    private Map<Long, Set<Long>> loadInterests(List<Long> userIds) {
+        Map<Long, Set<Long>> interests = groupPairs(favoriteRepository.findFavoriteCategoryIdsByUserIds(userIds));
+        mergePairs(interests, transactionDetailRepository.findPurchasedCategoryIdsByUserIds(userIds));
+        mergePairs(interests, documentOwnerRepository.findOwnedCategoryIdsByUserIds(userIds));
+        return interests;
+    }
 
-            // Lấy tất cả user active (không bị xóa)
-            List<User> activeUsers = userRepository.findByDeletedAtIsNull();
-            
-            if (activeUsers.isEmpty()) {
-                System.out.println("No active users found");
-                return;
+    private List<Long> matchDocuments(List<Document> documents, Map<Long, Set<Long>> documentCategories,
+            Set<Long> userCategories) {
+        List<Long> matched = new ArrayList<>();
+        if (userCategories == null) {
+            if (includeUsersWithoutInterests) {
+                documents.forEach(doc -> matched.add(doc.getId()));
             }
+            return matched;
+        }
+        for (Document doc : documents) {
+            Set<Long> categories = documentCategories.get(doc.getId());
+            if (categories != null && !Collections.disjoint(categories, userCategories)) {
+                matched.add(doc.getId());
+            }
+        }
+        return matched;
+    }
 
-            // Tạo nội dung email
-            String emailContent = generateNewDocumentEmailContent(newDocuments, frequency);
-            String subject = "📚 Tài liệu mới trên EduShare - " + 
-                           (frequency.equals("daily") ? "Cập nhật hàng ngày" : "Cập nhật hàng tuần");
+    private static List<Document> selectDocuments(List<Document> documents, List<Long> ids) {
+        Set<Long> selected = new HashSet<>(ids);
+        return documents.stream().filter(doc -> selected.contains(doc.getId())).collect(Collectors.toList());
+    }
 
-            // Gửi email cho tất cả users với rate limiting
-            int successCount = 0;
-            int failedCount = 0;
-            int maxEmailsPerBatch = 50; // Giới hạn để tránh Gmail limit
-            
-            for (int i = 0; i < activeUsers.size() && successCount < maxEmailsPerBatch; i++) {
-                User user = activeUsers.get(i);
-                try {
-                    if (user.getEmail() != null && !user.getEmail().trim().isEmpty()) {
-                        boolean sent = emailConfigService.sendHtmlEmail(user.getEmail(), subject, emailContent);
-                        if (sent) {
-                            successCount++;
-                        } else {
-                            failedCount++;
-                        }
-                        
-                        // Thêm delay nhỏ giữa các email để tránh spam
-                        if (i % 10 == 0 && i > 0) {
-                            Thread.sleep(1000); // 1 second delay mỗi 10 emails
-                        }
-                    }
-                } catch (Exception e) {
-                    failedCount++;
-                    System.err.println("Failed to send email to " + user.getEmail() + ": " + e.getMessage());
-                    
-                    // Nếu gặp lỗi Gmail limit, dừng gửi
-                    if (e.getMessage().contains("Daily user sending limit exceeded")) {
-                        System.err.println("Gmail daily limit reached. Stopping email sending.");
-                        break;
-                    }
-                }
-            }
+    private static Map<Long, Set<Long>> groupPairs(List<Object[]> pairs) {
+        Map<Long, Set<Long>> result = new HashMap<>();
+        mergePairs(result, pairs);
+        return result;
+    }
 
-            System.out.println("Email sending completed: " + successCount + " successful, " + failedCount + " failed out of " + activeUsers.size() + " total users");
-            
-            if (successCount < activeUsers.size()) {
-                System.out.println("⚠️ Not all users received emails due to rate limiting or Gmail daily limit");
-            }
-            
-            // Cập nhật thời gian gửi cuối cùng
-            updateLastNotificationSentTime();
+    private static void mergePairs(Map<Long, Set<Long>> target, List<Object[]> pairs) {
+        for (Object[] row : pairs) {
+            target.computeIfAbsent((Long) row[0], k -> new HashSet<>()).add((Long) row[1]);
+        }
+    }
 
+    private Map<Long, String> loadAuthorNames(List<Document> documents) {
+        Map<Long, String> names = new HashMap<>();
+        try {
+            List<Long> documentIds = documents.stream().map(Document::getId).collect(Collectors.toList());
+            // Chủ sở hữu đầu tiên của mỗi tài liệu
+            for (Object[] row : documentOwnerRepository.findOwnerNamesByDocumentIds(documentIds)) {
+                names.putIfAbsent((Long) row[0], row[1] != null ? (String) row[1] : (String) row[2]);
+            }
         } catch (Exception e) {
-            System.err.println("Error sending document notifications: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("Error loading document authors: " + e.getMessage());
+        }
+        return names;
+    }
+
+    private void recordMetrics(DigestRun run) {
+        if (meterRegistry == null) {
+            return;
         }
+        meterRegistry.counter("document.digest.documents.scanned").increment(run.documentsScanned);
+        meterRegistry.counter("document.digest.recipients").increment(run.recipients);
+        meterRegistry.counter("document.digest.emails.queued").increment(run.emailsQueued);
+    }
+
+    private static class DigestRun {
+        int documentsScanned;
+        int recipients;
+        int emailsQueued;
     }
 
-    private String generateNewDocumentEmailContent(List<Document> newDocuments, String frequency) {
+    private String generateNewDocumentEmailContent(List<Document> newDocuments, String frequency,
+            Map<Long, String> authorNames) {
         LocalDateTime now = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         String periodText = frequency.equals("daily") ? "hôm nay" : "tuần này";
@@ -224,7 +377,7 @@ public class DocumentNotificationService {
             
             html.append("<div style='font-size: 12px; color: #888;'>");
             html.append("<span>📅 ").append(doc.getCreatedAt().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))).append("</span>");
-            String authorName = getDocumentAuthorName(doc);
+            String authorName = authorNames.getOrDefault(doc.getId(), "Không xác định");
             html.append(" | <span>👤 ").append(escapeHtml(authorName)).append("</span>");
             html.append("</div>");
             html.append("</div>");
@@ -252,20 +405,6 @@ public class DocumentNotificationService {
                   .replace("'", "&#39;");
     }
 
-    private String getDocumentAuthorName(Document document) {
-        try {
-            List<com.fpoly.shared_learning_materials.domain.DocumentOwner> owners = 
-                documentOwnerRepository.findByDocumentId(document.getId());
-            if (!owners.isEmpty() && owners.get(0).getUser() != null) {
-                com.fpoly.shared_learning_materials.domain.User user = owners.get(0).getUser();
-                return user.getFullName() != null ? user.getFullName() : user.getUsername();
-            }
-            return "Không xác định";
-        } catch (Exception e) {
-            return "Không xác định";
-        }
-    }
-
     private void updateLastNotificationSentTime() {
         try {
             String sentTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"));
@@ -293,28 +432,20 @@ public class DocumentNotificationService {
                 return;
             }
 
-            List<User> activeUsers = userRepository.findByDeletedAtIsNull();
-            if (activeUsers.isEmpty()) {
-                return;
-            }
-
-            String emailContent = generateSingleDocumentEmailContent(newDocument);
             String subject = "📚 Tài liệu mới: " + newDocument.getTitle();
-
-            for (User user : activeUsers) {
-                try {
-                    emailConfigService.sendHtmlEmail(user.getEmail(), subject, emailContent);
-                } catch (Exception e) {
-                    System.err.println("Failed to send immediate notification to " + user.getEmail());
-                }
-            }
+            Map<Long, String> authorNames = loadAuthorNames(List.of(newDocument));
+            DigestRun run = new DigestRun();
+            run.documentsScanned = 1;
+            publishToInterestedUsers(List.of(newDocument), subject,
+                    documents -> generateSingleDocumentEmailContent(newDocument, authorNames), null, run);
+            recordMetrics(run);
 
         } catch (Exception e) {
             System.err.println("Error sending immediate notification: " + e.getMessage());
         }
     }
 
-    private String generateSingleDocumentEmailContent(Document document) {
+    private String generateSingleDocumentEmailContent(Document document, Map<Long, String> authorNames) {
         LocalDateTime now = LocalDateTime.now();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         
@@ -339,7 +470,7 @@ public class DocumentNotificationService {
         
         html.append("<div style='font-size: 14px; color: #888;'>");
         html.append("<p style='margin: 5px 0;'>📅 Thời gian: ").append(document.getCreatedAt().format(formatter)).append("</p>");
-        String authorName = getDocumentAuthorName(document);
+        String authorName = authorNames.getOrDefault(document.getId(), "Không xác định");
         html.append("<p style='margin: 5px 0;'>👤 Người đăng: ").append(escapeHtml(authorName)).append("</p>");
         html.append("</div>");
         html.append("</div>");
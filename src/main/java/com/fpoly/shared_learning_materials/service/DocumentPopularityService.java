@@ -0,0 +1,106 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Document;
+import com.fpoly.shared_learning_materials.repository.DocumentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Xếp hạng tài liệu theo độ phổ biến (lượt xem + lượt tải) bằng cột popularity_score có index.
+ * Thứ tự: điểm giảm dần, cùng điểm thì tài liệu mới hơn (id lớn hơn) trước.
+ * Hỗ trợ phân trang keyset: cursor "score_id" là tài liệu cuối cùng của trang trước.
+ */
+@Service
+public class DocumentPopularityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentPopularityService.class);
+
+    private static final String RANKED_STATUS = "APPROVED";
+
+    // Đồng bộ điểm cho dữ liệu cũ (trước khi có cột) hoặc bị sửa trực tiếp trong database
+    private static final String BACKFILL_SQL = "UPDATE documents "
+            + "SET popularity_score = COALESCE(views_count, 0) + COALESCE(downloads_count, 0) "
+            + "WHERE popularity_score IS NULL "
+            + "OR popularity_score <> COALESCE(views_count, 0) + COALESCE(downloads_count, 0)";
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            int updated = jdbcTemplate.update(BACKFILL_SQL);
+            if (updated > 0) {
+                logger.info("Backfilled popularity score for {} documents", updated);
+            }
+        } catch (Exception e) {
+            logger.error("Error backfilling document popularity scores", e);
+        }
+    }
+
+    /**
+     * Một trang theo số trang (OFFSET ở database, chỉ tải đúng số bản ghi của trang)
+     */
+    public List<Document> getPopularDocuments(Pageable pageable) {
+        return documentRepository.findByPopularity(RANKED_STATUS,
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+    }
+
+    /**
+     * Trang tiếp theo sau cursor (không cần OFFSET); cursor null hoặc sai định dạng = trang đầu.
+     * Lấy dư một bản ghi để biết còn trang sau hay không, phần dư do người gọi bỏ đi
+     */
+    public List<Document> getPopularDocumentsAfter(String cursor, int size) {
+        long[] key = decodeCursor(cursor);
+        Pageable limit = PageRequest.of(0, size + 1);
+        if (key == null) {
+            return documentRepository.findByPopularity(RANKED_STATUS, limit);
+        }
+        return documentRepository.findByPopularityAfter(RANKED_STATUS, key[0], key[1], limit);
+    }
+
+    public long countRankedDocuments() {
+        return documentRepository.countByStatusAndDeletedAtIsNull(RANKED_STATUS);
+    }
+
+    public static String encodeCursor(long score, long id) {
+        return score + "_" + id;
+    }
+
+    /**
+     * Cursor trỏ tới tài liệu cuối của trang (điểm đã lưu + id, đúng khóa sắp xếp của truy vấn)
+     */
+    public static String cursorOf(Document document) {
+        long score = document.getPopularityScore() != null ? document.getPopularityScore() : 0L;
+        return encodeCursor(score, document.getId());
+    }
+
+    private long[] decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        int separator = cursor.indexOf('_');
+        if (separator <= 0) {
+            return null;
+        }
+        try {
+            return new long[] {
+                    Long.parseLong(cursor.substring(0, separator)),
+                    Long.parseLong(cursor.substring(separator + 1)) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -9,12 +9,9 @@ import com.fpoly.shared_learning_materials.domain.User;
 import com.fpoly.shared_learning_materials.repository.DocumentOwnerRepository;
 import com.fpoly.shared_learning_materials.repository.TransactionDetailRepository;
 import com.fpoly.shared_learning_materials.repository.TransactionRepository;
-import com.fpoly.shared_learning_materials.repository.UserRepository;
-import com.fpoly.shared_learning_materials.service.EmailConfigService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -27,11 +24,17 @@ public class DocumentPurchaseService {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private CodeGeneratorService codeGeneratorService;
+
     @Autowired
     private TransactionDetailRepository transactionDetailRepository;
 
     @Autowired
-    private UserRepository userRepository;
+    private BalanceLedgerService balanceLedgerService;
+
+    @Autowired
+    private CoinBalanceService coinBalanceService;
 
     @Autowired
     private DocumentService documentService;
@@ -39,11 +42,8 @@ public class DocumentPurchaseService {
     @Autowired
     private DocumentOwnerRepository documentOwnerRepository;
 
-    @Autowired(required = false)
-    private NotificationService notificationService;
-
-    @Autowired(required = false)
-    private EmailConfigService emailConfigService;
+    @Autowired
+    private OutboxService outboxService;
 
     // Hằng số cho hoa hồng
     private static final BigDecimal COMMISSION_RATE = new BigDecimal("0.15"); // 15%
@@ -55,9 +55,13 @@ public class DocumentPurchaseService {
      * - Nếu có giá > 0 và chưa sở hữu: tạo Transaction DOCUMENT_DOWNLOAD, trừ xu,
      * ghi ownership, tăng download
      * - Chia xu cho người bán (85%) và trừ hoa hồng (15%)
+     * Cả giao dịch được chạy lại (giới hạn số lần) nếu database báo deadlock/hết thời gian chờ khóa
      */
-    @Transactional
     public Transaction processDocumentDownload(User user, Long documentId) {
+        return coinBalanceService.executeWithRetry(() -> purchaseDocument(user, documentId));
+    }
+
+    private Transaction purchaseDocument(User user, Long documentId) {
         Document document = documentService.findById(documentId);
         if (document == null || document.getFile() == null) {
             throw new IllegalArgumentException("Không tìm thấy tài liệu hoặc file không tồn tại");
@@ -110,18 +114,15 @@ public class DocumentPurchaseService {
         txn = transactionRepository.save(txn);
 
         try {
-            // Trừ xu từ người mua
-            user.setCoinBalance(balance.subtract(price));
-            userRepository.save(user);
-
             // Tính toán số xu cho người bán và hoa hồng
             BigDecimal commission = price.multiply(COMMISSION_RATE).setScale(2, RoundingMode.HALF_UP);
             BigDecimal sellerAmount = price.multiply(SELLER_RATE).setScale(2, RoundingMode.HALF_UP);
 
-            // Cộng xu cho người bán
-            BigDecimal sellerBalance = seller.getCoinBalance() != null ? seller.getCoinBalance() : BigDecimal.ZERO;
-            seller.setCoinBalance(sellerBalance.add(sellerAmount));
-            userRepository.save(seller);
+            // Trừ xu người mua và cộng xu người bán bằng UPDATE nguyên tử (số dư đọc ở trên có thể đã cũ)
+            if (!coinBalanceService.transfer(user.getId(), seller.getId(), price, sellerAmount)) {
+                throw new IllegalStateException("Số dư xu không đủ để tải tài liệu này");
+            }
+            user.setCoinBalance(coinBalanceService.getBalance(user.getId()));
 
             // Lưu chi tiết giao dịch cho người mua
             TransactionDetail buyerDetail = new TransactionDetail();
@@ -169,24 +170,23 @@ public class DocumentPurchaseService {
             txn.setStatus(Transaction.TransactionStatus.COMPLETED);
             txn.setUpdatedAt(LocalDateTime.now());
             transactionRepository.save(txn);
+            balanceLedgerService.recordDocumentPurchase(user.getId(), price);
 
-            // Thông báo cho người mua
-            if (notificationService != null) {
-                notificationService.createNotification(user, "Mua tài liệu thành công",
-                        "Bạn đã mua '" + document.getTitle() + "' và bị trừ " + price + " xu.",
-                        "transaction");
-            }
+            // Thông báo cho người mua (thông báo và email được ghi vào outbox, gửi ở nền sau khi commit)
+            outboxService.publishNotification(user, "Mua tài liệu thành công",
+                    "Bạn đã mua '" + document.getTitle() + "' và bị trừ " + price + " xu.",
+                    "transaction");
 
             // Thông báo cho người bán
-            if (notificationService != null && sellerAmount.compareTo(BigDecimal.ZERO) > 0) {
-                notificationService.createNotification(seller, "Tài liệu được mua",
+            if (sellerAmount.compareTo(BigDecimal.ZERO) > 0) {
+                outboxService.publishNotification(seller, "Tài liệu được mua",
                         "Tài liệu '" + document.getTitle() + "' đã được mua thành công. Bạn nhận được " +
                                 sellerAmount + " xu (hoa hồng: " + commission + " xu).",
                         "transaction");
             }
 
             // Gửi email xác nhận cho người mua
-            if (emailConfigService != null && user.getEmail() != null && !user.getEmail().isBlank()) {
+            if (user.getEmail() != null && !user.getEmail().isBlank()) {
                 String subject = "Xác nhận mua tài liệu thành công";
                 String html = "<p>Chào " + (user.getFullName() != null ? user.getFullName() : user.getUsername())
                         + ",</p>"
@@ -194,14 +194,11 @@ public class DocumentPurchaseService {
                         + "<p>Số xu đã trừ: <strong>" + price + " xu</strong>.</p>"
                         + "<p>Mã giao dịch: <strong>" + txn.getCode() + "</strong>.</p>"
                         + "<p>Cảm ơn bạn đã sử dụng EduShare.</p>";
-                try {
-                    emailConfigService.sendHtmlEmail(user.getEmail(), subject, html);
-                } catch (Exception ignore) {
-                }
+                outboxService.publishEmail(user.getEmail(), subject, html);
             }
 
             // Gửi email thông báo cho người bán
-            if (emailConfigService != null && seller.getEmail() != null && !seller.getEmail().isBlank()
+            if (seller.getEmail() != null && !seller.getEmail().isBlank()
                     && sellerAmount.compareTo(BigDecimal.ZERO) > 0) {
                 String subject = "Tài liệu của bạn đã được mua";
                 String html = "<p>Chào " + (seller.getFullName() != null ? seller.getFullName() : seller.getUsername())
@@ -210,24 +207,12 @@ public class DocumentPurchaseService {
                         + "<p>Số xu bạn nhận được: <strong>" + sellerAmount + " xu</strong>.</p>"
                         + "<p>Hoa hồng hệ thống: <strong>" + commission + " xu</strong>.</p>"
                         + "<p>Bạn có thể rút xu hoặc sử dụng để mua tài liệu khác.</p>";
-                try {
-                    emailConfigService.sendHtmlEmail(seller.getEmail(), subject, html);
-                } catch (Exception ignore) {
-                }
+                outboxService.publishEmail(seller.getEmail(), subject, html);
             }
 
             return txn;
         } catch (RuntimeException ex) {
-            // Rollback mềm: đánh dấu FAILED và hoàn xu nếu đã trừ
-            try {
-                // Nếu đã trừ từ người mua, hoàn lại
-                User fresh = userRepository.findById(user.getId()).orElse(user);
-                fresh.setCoinBalance(
-                        (fresh.getCoinBalance() != null ? fresh.getCoinBalance() : BigDecimal.ZERO).add(price));
-                userRepository.save(fresh);
-            } catch (Exception ignore) {
-            }
-
+            // Đánh dấu FAILED; số xu đã chuyển được hoàn nguyên khi transaction rollback
             txn.setStatus(Transaction.TransactionStatus.FAILED);
             txn.setNotes("Error: " + ex.getMessage());
             txn.setUpdatedAt(LocalDateTime.now());
@@ -268,26 +253,10 @@ public class DocumentPurchaseService {
     }
 
     private String generateDocumentDownloadCode() {
-        // Reuse pattern with prefix TXN; could be prefixed DD for clarity
-        String prefix = "TXN";
-        int counter = 1;
-        String code;
-        do {
-            code = prefix + String.format("%06d", counter);
-            counter++;
-        } while (transactionRepository.existsByCodeAndDeletedAtIsNull(code));
-        return code;
+        return codeGeneratorService.nextTransactionCode();
     }
 
     private String generateDocumentSaleCode() {
-        // Prefix TXN for Document Sale (following the pattern)
-        String prefix = "TXN";
-        int counter = 1;
-        String code;
-        do {
-            code = prefix + String.format("%06d", counter);
-            counter++;
-        } while (transactionRepository.existsByCodeAndDeletedAtIsNull(code));
-        return code;
+        return codeGeneratorService.nextTransactionCode();
     }
 }
\ No newline at end of file
@@ -0,0 +1,596 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Document;
+import com.fpoly.shared_learning_materials.repository.DocumentCategoryRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentTagRepository;
+import com.fpoly.shared_learning_materials.util.SearchTextUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index trong bộ nhớ cho trang tìm kiếm tài liệu.
+ * Chỉ chứa tài liệu đang hiển thị công khai (chưa xóa, APPROVED/PUBLISHED, public),
+ * được dựng lại khi khởi động và cập nhật từng tài liệu sau khi transaction commit.
+ */
+@Service
+public class DocumentSearchIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentSearchIndexService.class);
+
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    // Trọng số theo trường: tiêu đề quan trọng nhất, mô tả thấp nhất
+    private static final float TITLE_WEIGHT = 3.0f;
+    private static final float TAG_WEIGHT = 2.0f;
+    private static final float CATEGORY_WEIGHT = 2.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+
+    // Token chỉ khớp tiền tố (vd "java" -> "javascript") được tính điểm thấp hơn khớp chính xác
+    private static final float PREFIX_MATCH_FACTOR = 0.5f;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentCategoryRepository documentCategoryRepository;
+
+    @Autowired
+    private DocumentTagRepository documentTagRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // documentId -> thông tin đã index
+    private final Map<Long, IndexedDocument> documents = new HashMap<>();
+
+    // token -> (documentId -> trọng số). TreeMap để tra cứu theo tiền tố
+    private final TreeMap<String, Map<Long, Float>> postings = new TreeMap<>();
+
+    private volatile boolean ready = false;
+
+    // Tăng mỗi khi index thay đổi; dùng làm một phần của khóa cache kết quả (facet)
+    private final AtomicLong version = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Dựng lại toàn bộ index từ database, đọc theo lô để không giữ cả bảng trong bộ nhớ
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            documents.clear();
+            postings.clear();
+
+            Long afterId = 0L;
+            while (true) {
+                List<Document> batch = documentRepository.findBatchWithFileAfterId(afterId,
+                        PageRequest.of(0, REBUILD_BATCH_SIZE));
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                List<Long> ids = batch.stream().map(Document::getId).collect(Collectors.toList());
+                Map<Long, List<Object[]>> categoryRows = groupByDocumentId(
+                        documentCategoryRepository.findCategorySlugsAndNamesByDocumentIds(ids));
+                Map<Long, List<Object[]>> tagRows = groupByDocumentId(
+                        documentTagRepository.findTagNamesByDocumentIds(ids));
+
+                for (Document document : batch) {
+                    IndexedDocument entry = buildEntry(document,
+                            categoryRows.getOrDefault(document.getId(), Collections.emptyList()),
+                            tagRows.getOrDefault(document.getId(), Collections.emptyList()));
+                    if (entry != null) {
+                        putInternal(entry);
+                    }
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+
+            ready = true;
+            version.incrementAndGet();
+            logger.info("Document search index rebuilt: {} documents, {} tokens in {} ms",
+                    documents.size(), postings.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Error rebuilding document search index, falling back to database search", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index lại một tài liệu. Gọi bên trong transaction ghi tài liệu;
+     * thay đổi chỉ được áp dụng vào index sau khi transaction commit.
+     */
+    public void indexDocument(Long documentId) {
+        try {
+            Document document = documentRepository.findById(documentId).orElse(null);
+            if (document == null) {
+                removeDocument(documentId);
+                return;
+            }
+
+            List<Long> ids = List.of(documentId);
+            IndexedDocument entry = buildEntry(document,
+                    documentCategoryRepository.findCategorySlugsAndNamesByDocumentIds(ids),
+                    documentTagRepository.findTagNamesByDocumentIds(ids));
+
+            runAfterCommit(() -> {
+                if (entry != null) {
+                    put(entry);
+                } else {
+                    remove(documentId);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error indexing document: {}", documentId, e);
+        }
+    }
+
+    public void removeDocument(Long documentId) {
+        runAfterCommit(() -> remove(documentId));
+    }
+
+    /**
+     * Tìm kiếm theo từ khóa và bộ lọc, trả về id tài liệu của trang yêu cầu theo thứ tự xếp hạng.
+     * Mọi token trong từ khóa đều phải khớp (khớp chính xác hoặc theo tiền tố).
+     */
+    public SearchHits search(String q, List<String> categorySlugs, List<String> formats,
+            List<String> priceFilters, String time, Pageable pageable) {
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(SearchTextUtils.tokenize(q)));
+        Set<String> formatFilter = formats == null ? null
+                : formats.stream().map(f -> f.toLowerCase()).collect(Collectors.toSet());
+        LocalDateTime createdAfter = resolveCreatedAfter(time);
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Float> scores = scoreQuery(queryTokens);
+
+            List<IndexedDocument> matches = new ArrayList<>();
+            for (Long id : scores.keySet()) {
+                IndexedDocument document = documents.get(id);
+                if (document != null
+                        && matchesFacets(document, categorySlugs, formatFilter, priceFilters, createdAfter)) {
+                    matches.add(document);
+                }
+            }
+
+            final Map<Long, Float> finalScores = scores;
+            matches.sort(buildComparator(pageable.getSort(), finalScores));
+
+            List<Long> pageIds;
+            if (pageable.isUnpaged()) {
+                pageIds = matches.stream().map(IndexedDocument::getId).collect(Collectors.toList());
+            } else {
+                int from = (int) Math.min(pageable.getOffset(), matches.size());
+                int to = Math.min(from + pageable.getPageSize(), matches.size());
+                pageIds = matches.subList(from, to).stream()
+                        .map(IndexedDocument::getId)
+                        .collect(Collectors.toList());
+            }
+            return new SearchHits(pageIds, matches.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Duyệt một lượt qua các tài liệu khớp từ khóa (không áp dụng bộ lọc) để đếm facet.
+     * Trả về false nếu index chưa sẵn sàng.
+     */
+    public boolean forEachMatch(String q, FacetVisitor visitor) {
+        if (!ready) {
+            return false;
+        }
+        List<String> queryTokens = new ArrayList<>(new LinkedHashSet<>(SearchTextUtils.tokenize(q)));
+        lock.readLock().lock();
+        try {
+            for (Long id : scoreQuery(queryTokens).keySet()) {
+                IndexedDocument document = documents.get(id);
+                if (document != null) {
+                    visitor.visit(document.getId(), document.getFormat(), document.isFree(), document.getCreatedAt(),
+                            document.getCategorySlugs());
+                }
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Điểm của các tài liệu khớp mọi token (không có token thì mọi tài liệu điểm 0). Gọi khi đang giữ read lock
+    private Map<Long, Float> scoreQuery(List<String> queryTokens) {
+        Map<Long, Float> scores;
+        if (queryTokens.isEmpty()) {
+            scores = new HashMap<>();
+            for (Long id : documents.keySet()) {
+                scores.put(id, 0f);
+            }
+            return scores;
+        }
+        scores = null;
+        for (String token : queryTokens) {
+            Map<Long, Float> tokenScores = scoreToken(token);
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                scores.keySet().retainAll(tokenScores.keySet());
+                scores.replaceAll((id, score) -> score + tokenScores.get(id));
+            }
+            if (scores.isEmpty()) {
+                break;
+            }
+        }
+        return scores;
+    }
+
+    private Map<Long, Float> scoreToken(String token) {
+        Map<Long, Float> result = new HashMap<>();
+        int totalDocuments = Math.max(documents.size(), 1);
+
+        for (Map.Entry<String, Map<Long, Float>> entry : postings
+                .subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+            Map<Long, Float> docs = entry.getValue();
+            float idf = (float) Math.log(1.0 + (double) totalDocuments / docs.size());
+            float factor = entry.getKey().equals(token) ? 1.0f : PREFIX_MATCH_FACTOR;
+            for (Map.Entry<Long, Float> posting : docs.entrySet()) {
+                // Nhiều token cùng tiền tố trong một tài liệu chỉ lấy điểm cao nhất
+                result.merge(posting.getKey(), posting.getValue() * idf * factor, Math::max);
+            }
+        }
+        return result;
+    }
+
+    private boolean matchesFacets(IndexedDocument document, List<String> categorySlugs, Set<String> formats,
+            List<String> priceFilters, LocalDateTime createdAfter) {
+        if (categorySlugs != null && !categorySlugs.isEmpty()) {
+            boolean anyCategory = false;
+            for (String slug : categorySlugs) {
+                if (document.getCategorySlugs().contains(slug)) {
+                    anyCategory = true;
+                    break;
+                }
+            }
+            if (!anyCategory) {
+                return false;
+            }
+        }
+
+        if (formats != null && !formats.isEmpty()) {
+            if (document.getFormat() == null || !formats.contains(document.getFormat())) {
+                return false;
+            }
+        }
+
+        if (priceFilters != null && !priceFilters.isEmpty()) {
+            boolean wantFree = priceFilters.contains("free");
+            boolean wantPaid = priceFilters.contains("paid");
+            if (wantFree && !wantPaid && !document.isFree()) {
+                return false;
+            }
+            if (!wantFree && wantPaid && document.isFree()) {
+                return false;
+            }
+        }
+
+        if (createdAfter != null) {
+            if (document.getCreatedAt() == null || document.getCreatedAt().isBefore(createdAfter)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private LocalDateTime resolveCreatedAfter(String time) {
+        if (time == null || time.equals("any")) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        return switch (time) {
+            case "week" -> now.minusDays(7);
+            case "month" -> now.minusDays(30);
+            case "year" -> now.minusYears(1);
+            default -> null;
+        };
+    }
+
+    private Comparator<IndexedDocument> buildComparator(Sort sort, Map<Long, Float> scores) {
+        Comparator<IndexedDocument> byScore = Comparator
+                .comparing((IndexedDocument d) -> scores.getOrDefault(d.getId(), 0f)).reversed();
+        Comparator<IndexedDocument> byPopularity = Comparator
+                .comparingLong((IndexedDocument d) -> d.getViewsCount() + d.getDownloadsCount()).reversed();
+        Comparator<IndexedDocument> byCreatedAt = Comparator.comparing(IndexedDocument::getCreatedAt,
+                Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()));
+
+        Comparator<IndexedDocument> comparator = null;
+        if (sort != null && sort.isSorted()) {
+            for (Sort.Order order : sort) {
+                Comparator<IndexedDocument> field;
+                switch (order.getProperty()) {
+                    case "createdAt":
+                        field = byCreatedAt;
+                        break;
+                    case "price":
+                        field = Comparator.comparing(IndexedDocument::getPrice);
+                        break;
+                    case "title":
+                        field = Comparator.comparing(IndexedDocument::getFoldedTitle);
+                        break;
+                    case "viewsCount":
+                        field = Comparator.comparingLong(IndexedDocument::getViewsCount);
+                        break;
+                    case "downloadsCount":
+                        field = Comparator.comparingLong(IndexedDocument::getDownloadsCount);
+                        break;
+                    default:
+                        // Thuộc tính không được index: giữ thứ tự theo độ liên quan
+                        comparator = comparator == null ? byScore : comparator.thenComparing(byScore);
+                        continue;
+                }
+                if (order.isDescending()) {
+                    field = field.reversed();
+                }
+                comparator = comparator == null ? field : comparator.thenComparing(field);
+            }
+        } else {
+            // Mặc định: độ liên quan, sau đó độ phổ biến, rồi tài liệu mới hơn
+            comparator = byScore.thenComparing(byPopularity).thenComparing(byCreatedAt.reversed());
+        }
+
+        return comparator.thenComparing(Comparator.comparing(IndexedDocument::getId).reversed());
+    }
+
+    private IndexedDocument buildEntry(Document document, List<Object[]> categoryRows, List<Object[]> tagRows) {
+        if (!isSearchable(document)) {
+            return null;
+        }
+
+        Map<String, Float> rawWeights = new HashMap<>();
+        addTokens(rawWeights, document.getTitle(), TITLE_WEIGHT);
+        addTokens(rawWeights, document.getDescription(), DESCRIPTION_WEIGHT);
+
+        Set<String> categorySlugs = new HashSet<>();
+        for (Object[] row : categoryRows) {
+            if (row[1] != null) {
+                categorySlugs.add((String) row[1]);
+            }
+            addTokens(rawWeights, (String) row[2], CATEGORY_WEIGHT);
+        }
+        for (Object[] row : tagRows) {
+            addTokens(rawWeights, (String) row[1], TAG_WEIGHT);
+        }
+
+        // Giảm ảnh hưởng của token lặp lại nhiều lần (log tf)
+        Map<String, Float> termWeights = new HashMap<>();
+        rawWeights.forEach((token, weight) -> termWeights.put(token, (float) (1.0 + Math.log(weight))));
+
+        String format = document.getFile() != null && document.getFile().getFileType() != null
+                ? document.getFile().getFileType().toLowerCase()
+                : null;
+
+        return new IndexedDocument(
+                document.getId(),
+                SearchTextUtils.fold(document.getTitle()),
+                termWeights,
+                categorySlugs,
+                format,
+                document.getPrice() != null ? document.getPrice() : BigDecimal.ZERO,
+                document.getCreatedAt(),
+                document.getViewsCount() != null ? document.getViewsCount() : 0L,
+                document.getDownloadsCount() != null ? document.getDownloadsCount() : 0L);
+    }
+
+    // Cùng điều kiện với buildSearchSpecification trong DocumentService
+    private boolean isSearchable(Document document) {
+        if (document.getDeletedAt() != null || document.getStatus() == null) {
+            return false;
+        }
+        String status = document.getStatus().toUpperCase();
+        return (status.equals("APPROVED") || status.equals("PUBLISHED"))
+                && "public".equals(document.getVisibility());
+    }
+
+    private void addTokens(Map<String, Float> weights, String text, float weight) {
+        for (String token : SearchTextUtils.tokenize(text)) {
+            weights.merge(token, weight, Float::sum);
+        }
+    }
+
+    private Map<Long, List<Object[]>> groupByDocumentId(List<Object[]> rows) {
+        Map<Long, List<Object[]>> grouped = new HashMap<>();
+        for (Object[] row : rows) {
+            grouped.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add(row);
+        }
+        return grouped;
+    }
+
+    private void put(IndexedDocument entry) {
+        lock.writeLock().lock();
+        try {
+            putInternal(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Long documentId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(documentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putInternal(IndexedDocument entry) {
+        removeInternal(entry.getId());
+        version.incrementAndGet();
+        documents.put(entry.getId(), entry);
+        entry.getTermWeights().forEach((token, weight) -> postings
+                .computeIfAbsent(token, k -> new HashMap<>())
+                .put(entry.getId(), weight));
+    }
+
+    private void removeInternal(Long documentId) {
+        IndexedDocument existing = documents.remove(documentId);
+        if (existing == null) {
+            return;
+        }
+        version.incrementAndGet();
+        for (String token : existing.getTermWeights().keySet()) {
+            Map<Long, Float> docs = postings.get(token);
+            if (docs != null) {
+                docs.remove(documentId);
+                if (docs.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Các trường dùng để đếm facet của một tài liệu khớp từ khóa
+     */
+    @FunctionalInterface
+    public interface FacetVisitor {
+        void visit(Long documentId, String format, boolean free, LocalDateTime createdAt, Set<String> categorySlugs);
+    }
+
+    /**
+     * Kết quả tìm kiếm: id tài liệu của trang hiện tại và tổng số kết quả khớp
+     */
+    public static class SearchHits {
+        private final List<Long> documentIds;
+        private final long total;
+
+        public SearchHits(List<Long> documentIds, long total) {
+            this.documentIds = documentIds;
+            this.total = total;
+        }
+
+        public List<Long> getDocumentIds() {
+            return documentIds;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+
+    private static class IndexedDocument {
+        private final Long id;
+        private final String foldedTitle;
+        private final Map<String, Float> termWeights;
+        private final Set<String> categorySlugs;
+        private final String format;
+        private final BigDecimal price;
+        private final LocalDateTime createdAt;
+        private final long viewsCount;
+        private final long downloadsCount;
+
+        IndexedDocument(Long id, String foldedTitle, Map<String, Float> termWeights, Set<String> categorySlugs,
+                String format, BigDecimal price, LocalDateTime createdAt, long viewsCount, long downloadsCount) {
+            this.id = id;
+            this.foldedTitle = foldedTitle;
+            this.termWeights = termWeights;
+            this.categorySlugs = categorySlugs;
+            this.format = format;
+            this.price = price;
+            this.createdAt = createdAt;
+            this.viewsCount = viewsCount;
+            this.downloadsCount = downloadsCount;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        String getFoldedTitle() {
+            return foldedTitle;
+        }
+
+        Map<String, Float> getTermWeights() {
+            return termWeights;
+        }
+
+        Set<String> getCategorySlugs() {
+            return categorySlugs;
+        }
+
+        String getFormat() {
+            return format;
+        }
+
+        BigDecimal getPrice() {
+            return price;
+        }
+
+        boolean isFree() {
+            return price.compareTo(BigDecimal.ZERO) == 0;
+        }
+
+        LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        long getViewsCount() {
+            return viewsCount;
+        }
+
+        long getDownloadsCount() {
+            return downloadsCount;
+        }
+    }
+}
@@ -6,10 +6,16 @@ import com.fpoly.shared_learning_materials.dto.DocumentDTO;
 import com.fpoly.shared_learning_materials.repository.*;
 import com.fpoly.shared_learning_materials.config.UploadConfig;
 import jakarta.transaction.Transactional;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -17,7 +23,11 @@ import org.springframework.data.jpa.domain.Specification;
 import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -72,6 +82,33 @@ public class DocumentService {
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private DocumentSearchIndexService documentSearchIndexService;
+
+    @Autowired
+    private RelatedDocumentsService relatedDocumentsService;
+
+    @Autowired
+    private RatingAggregateService ratingAggregateService;
+
+    @Autowired
+    private DocumentPopularityService documentPopularityService;
+
+    @Autowired
+    private DocumentImportService documentImportService;
+
+    @Autowired
+    private PdfThumbnailService pdfThumbnailService;
+
+    @Autowired
+    private CategoryTreeService categoryTreeService;
+
+    @Autowired
+    private ContentStoreService contentStoreService;
+
+    // Số tài liệu đọc mỗi lô khi export
+    private static final int EXPORT_BATCH_SIZE = 500;
+
     public void save(Document document) {
         documentRepository.save(document);
     }
@@ -198,6 +235,34 @@ public class DocumentService {
 
     // Convert Document entity to DTO
     private DocumentDTO convertToDTO(Document document) {
+        DocumentRatingStats stats = null;
+        try {
+            stats = ratingAggregateService.getStats(document.getId());
+        } catch (Exception e) {
+            System.out.println("Error loading rating stats: " + e.getMessage());
+        }
+        return convertToDTO(document, stats);
+    }
+
+    // Convert một trang tài liệu, lấy tổng hợp đánh giá của cả trang trong một truy vấn
+    private List<DocumentDTO> convertToDTOs(List<Document> documents) {
+        Map<Long, DocumentRatingStats> statsById = new HashMap<>();
+        try {
+            statsById = ratingAggregateService.getStats(documents.stream()
+                    .map(Document::getId)
+                    .collect(Collectors.toList()));
+        } catch (Exception e) {
+            System.out.println("Error loading rating stats: " + e.getMessage());
+        }
+
+        List<DocumentDTO> dtoList = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            dtoList.add(convertToDTO(document, statsById.get(document.getId())));
+        }
+        return dtoList;
+    }
+
+    private DocumentDTO convertToDTO(Document document, DocumentRatingStats stats) {
         DocumentDTO dto = new DocumentDTO();
         dto.setId(document.getId());
         dto.setTitle(document.getTitle());
@@ -231,41 +296,17 @@ public class DocumentService {
             // System.out.println("- File Type: " + document.getFile().getFileType());
         }
 
-        // Calculate average rating and rating distribution
-        try {
-            List<Comment> comments = commentRepository.findByDocumentIdAndStatus(document.getId(), "active");
-            if (!comments.isEmpty()) {
-                // Calculate average rating
-                double totalRating = comments.stream()
-                        .mapToDouble(comment -> comment.getRating() != null ? comment.getRating() : 0.0)
-                        .sum();
-                double averageRating = totalRating / comments.size();
-                dto.setAverageRating(Math.round(averageRating * 10.0) / 10.0); // Round to 1 decimal
-
-                // Calculate rating distribution
-                Map<String, Integer> distribution = new HashMap<>();
-                for (int i = 1; i <= 5; i++) {
-                    final int rating = i;
-                    long count = comments.stream()
-                            .filter(comment -> comment.getRating() != null && comment.getRating() == rating)
-                            .count();
-                    int percentage = (int) Math.round((double) count / comments.size() * 100);
-                    distribution.put(String.valueOf(i), percentage);
-                }
-                dto.setRatingDistribution(distribution);
-            } else {
-                dto.setAverageRating(0.0);
-                dto.setRatingDistribution(new HashMap<>());
-            }
-        } catch (Exception e) {
-            System.out.println("Error calculating ratings: " + e.getMessage());
-            dto.setAverageRating(0.0);
-            dto.setRatingDistribution(new HashMap<>());
-        }
+        applyRatingStats(dto, stats);
 
         return dto;
     }
 
+    // Điểm trung bình và phân bố sao lấy từ bảng tổng hợp thay vì quét bình luận
+    private void applyRatingStats(DocumentDTO dto, DocumentRatingStats stats) {
+        dto.setAverageRating(RatingAggregateService.averageRating(stats));
+        dto.setRatingDistribution(RatingAggregateService.ratingDistribution(stats));
+    }
+
     // Soft delete document
     @Transactional
     public void deleteDocument(Long id) {
@@ -306,6 +347,8 @@ public class DocumentService {
             // Force flush to database
             Document savedDocument = documentRepository.saveAndFlush(document);
             System.out.println("After saveAndFlush - deletedAt: " + savedDocument.getDeletedAt());
+            documentSearchIndexService.removeDocument(id);
+            relatedDocumentsService.removeDocument(id);
 
             // Verify in database with fresh query
             documentRepository.flush();
@@ -347,6 +390,8 @@ public class DocumentService {
             document.setDeletedAt(null);
             document.setStatus("APPROVED"); // Khôi phục status về APPROVED
             documentRepository.save(document);
+            documentSearchIndexService.indexDocument(id);
+            relatedDocumentsService.indexDocument(id);
 
             System.out.println("Document restored successfully - Status: " + document.getStatus());
         } catch (Exception e) {
@@ -415,6 +460,7 @@ public class DocumentService {
                 commentRepository.delete(comment);
                 System.out.println("Deleted comment: " + comment.getId());
             }
+            ratingAggregateService.deleteStats(id);
             System.out.println("Step 4: Completed - Comments deleted");
 
             System.out.println("Step 5: Deleting reports...");
@@ -433,8 +479,10 @@ public class DocumentService {
                 System.out.println("Step 5: No reports to delete or error: " + e.getMessage());
             }
 
-            // Xóa file vật lý nếu có
-            if (document.getFile() != null && document.getFile().getFilePath() != null
+            // Xóa file vật lý nếu có: file trong kho chỉ giảm tham chiếu, blob bị xóa khi không còn tài liệu nào dùng
+            if (document.getFile() != null && contentStoreService.release(document.getFile())) {
+                System.out.println("Step 6: Completed - File blob reference released");
+            } else if (document.getFile() != null && document.getFile().getFilePath() != null
                     && !document.getFile().getFilePath().isEmpty()) {
                 try {
                     System.out.println("Step 6: Deleting physical file...");
@@ -455,6 +503,8 @@ public class DocumentService {
             // Xóa document khỏi database
             documentRepository.delete(document);
             documentRepository.flush();
+            documentSearchIndexService.removeDocument(id);
+            relatedDocumentsService.removeDocument(id);
 
             System.out.println("Step 7: Completed - Document deleted from database");
 
@@ -484,9 +534,7 @@ public class DocumentService {
         // Use the provided Pageable with its sort settings
         Page<Document> deletedDocuments = documentRepository.findByDeletedAtIsNotNull(pageable);
 
-        List<DocumentDTO> dtoList = deletedDocuments.getContent().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        List<DocumentDTO> dtoList = convertToDTOs(deletedDocuments.getContent());
 
         // Set additional fields for each DTO
         for (DocumentDTO dto : dtoList) {
@@ -532,9 +580,7 @@ public class DocumentService {
         List<Document> allDeletedDocuments = documentRepository.findByDeletedAtIsNotNull();
         System.out.println("Retrieved deleted documents from query: " + allDeletedDocuments.size());
 
-        List<DocumentDTO> allDtoList = allDeletedDocuments.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        List<DocumentDTO> allDtoList = convertToDTOs(allDeletedDocuments);
 
         // Set additional fields for each DTO
         for (DocumentDTO dto : allDtoList) {
@@ -588,9 +634,7 @@ public class DocumentService {
             System.out.println("No filters applied and no author sort, using direct database pagination");
             Page<Document> activeDocuments = documentRepository.findByDeletedAtIsNull(pageable);
 
-            List<DocumentDTO> dtoList = activeDocuments.getContent().stream()
-                    .map(this::convertToDTO)
-                    .collect(Collectors.toList());
+            List<DocumentDTO> dtoList = convertToDTOs(activeDocuments.getContent());
 
             // Set additional fields for each DTO
             for (DocumentDTO dto : dtoList) {
@@ -607,9 +651,7 @@ public class DocumentService {
         System.out.println("Filters applied, using in-memory filtering");
         List<Document> allActiveDocuments = documentRepository.findByDeletedAtIsNullOrderByCreatedAtDesc();
 
-        List<DocumentDTO> allDtoList = allActiveDocuments.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        List<DocumentDTO> allDtoList = convertToDTOs(allActiveDocuments);
 
         // Set additional fields for each DTO
         for (DocumentDTO dto : allDtoList) {
@@ -964,9 +1006,7 @@ public class DocumentService {
         // Lấy TẤT CẢ documents (cả active và deleted)
         List<Document> allDocuments = documentRepository.findAll();
 
-        List<DocumentDTO> dtoList = allDocuments.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        List<DocumentDTO> dtoList = convertToDTOs(allDocuments);
 
         // Set additional fields for each DTO
         for (DocumentDTO dto : dtoList) {
@@ -1062,17 +1102,18 @@ public class DocumentService {
                 System.out.println("File size: " + file.getSize());
                 System.out.println("File content type: " + file.getContentType());
 
-                // Create File entity
+                // Create File entity; nội dung lưu theo SHA-256, trùng nội dung thì dùng chung blob
+                FileBlob blob = contentStoreService.store(file.getInputStream(), file.getOriginalFilename());
                 File fileEntity = new File();
-                fileEntity.setFileName(file.getOriginalFilename());
                 fileEntity.setFileSize(file.getSize());
                 fileEntity.setFileType(getFileType(file.getOriginalFilename()));
                 fileEntity.setMimeType(file.getContentType());
-                // Generate unique file path
                 String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-                String filePath = "uploads/documents/" + fileName;
+                String filePath = contentStoreService.getFilePath(blob);
                 fileEntity.setFileName(fileName);
                 fileEntity.setFilePath(filePath);
+                fileEntity.setChecksum(blob.getSha256());
+                fileEntity.setBlob(blob);
 
                 // Save file entity first
                 File savedFile = fileRepository.save(fileEntity);
@@ -1081,25 +1122,9 @@ public class DocumentService {
                 // Set file reference to document
                 document.setFile(savedFile);
 
-                // Save actual file to disk
-                try {
-                    java.nio.file.Path uploadPath = java.nio.file.Paths
-                            .get("src/main/resources/static/uploads/documents");
-                    if (!java.nio.file.Files.exists(uploadPath)) {
-                        java.nio.file.Files.createDirectories(uploadPath);
-                        System.out.println("Created directory: " + uploadPath.toAbsolutePath());
-                    }
-
-                    java.nio.file.Path targetPath = uploadPath.resolve(fileName);
-                    java.nio.file.Files.copy(file.getInputStream(), targetPath,
-                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-
-                    System.out.println("File saved successfully to: " + targetPath.toAbsolutePath());
-                } catch (IOException e) {
-                    System.err.println("Error saving file to disk: " + e.getMessage());
-                    e.printStackTrace();
-                    // File entity is already saved, but physical file failed
-                    // You might want to handle this case (delete file entity or mark as failed)
+                // Tạo thumbnail ở nền, không chờ render
+                if (pdfThumbnailService.isPdf(fileName)) {
+                    pdfThumbnailService.enqueue(savedFile.getId(), contentStoreService.resolve(blob));
                 }
 
                 System.out.println("File metadata saved. Path: " + filePath);
@@ -1172,6 +1197,9 @@ public class DocumentService {
                 System.out.println("Tags assigned: " + tagNames.size());
             }
 
+            documentSearchIndexService.indexDocument(savedDocument.getId());
+            relatedDocumentsService.indexDocument(savedDocument.getId());
+
             // Convert to DTO and return
             DocumentDTO result = convertToDTO(savedDocument);
             result.setCategoryIds(categoryIds);
@@ -1300,40 +1328,32 @@ public class DocumentService {
             if (file != null && !file.isEmpty()) {
                 System.out.println("New file uploaded: " + file.getOriginalFilename());
 
-                // Create new File entity
+                // Create new File entity; nội dung lưu theo SHA-256, trùng nội dung thì dùng chung blob
+                FileBlob blob = contentStoreService.store(file.getInputStream(), file.getOriginalFilename());
                 File fileEntity = new File();
                 fileEntity.setFileName(file.getOriginalFilename());
                 fileEntity.setFileSize(file.getSize());
                 fileEntity.setFileType(getFileType(file.getOriginalFilename()));
                 fileEntity.setMimeType(file.getContentType());
-
-                // Generate unique file path
-                String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-                String filePath = "uploads/documents/" + fileName;
-                fileEntity.setFilePath(filePath);
+                fileEntity.setFilePath(contentStoreService.getFilePath(blob));
+                fileEntity.setChecksum(blob.getSha256());
+                fileEntity.setBlob(blob);
 
                 // Save file entity
                 File savedFile = fileRepository.save(fileEntity);
 
+                // File cũ không còn được tài liệu dùng: bỏ tham chiếu tới blob
+                if (document.getFile() != null) {
+                    contentStoreService.release(document.getFile());
+                }
+
                 // Update document file reference
                 document.setFile(savedFile);
+                System.out.println("New file saved to: " + fileEntity.getFilePath());
 
-                // Save actual file to disk
-                try {
-                    java.nio.file.Path uploadPath = java.nio.file.Paths
-                            .get("src/main/resources/static/uploads/documents");
-                    if (!java.nio.file.Files.exists(uploadPath)) {
-                        java.nio.file.Files.createDirectories(uploadPath);
-                    }
-
-                    java.nio.file.Path targetPath = uploadPath.resolve(fileName);
-                    java.nio.file.Files.copy(file.getInputStream(), targetPath,
-                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-
-                    System.out.println("New file saved to: " + targetPath.toAbsolutePath());
-                } catch (IOException e) {
-                    System.err.println("Error saving new file: " + e.getMessage());
-                    e.printStackTrace();
+                // Tạo thumbnail ở nền, không chờ render
+                if (pdfThumbnailService.isPdf(file.getOriginalFilename())) {
+                    pdfThumbnailService.enqueue(savedFile.getId(), contentStoreService.resolve(blob));
                 }
             }
 
@@ -1400,6 +1420,9 @@ public class DocumentService {
                 System.out.println("Tags updated: " + tagNames.size());
             }
 
+            documentSearchIndexService.indexDocument(savedDocument.getId());
+            relatedDocumentsService.indexDocument(savedDocument.getId());
+
             // Convert to DTO and return
             DocumentDTO result = convertToDTO(savedDocument);
             result.setCategoryIds(categoryIds);
@@ -1582,6 +1605,7 @@ public class DocumentService {
 
             // Save document
             documentRepository.save(document);
+            documentSearchIndexService.indexDocument(documentId);
 
             System.out.println("Document status updated successfully: " + oldStatus + " -> " + newStatus);
 
@@ -1628,6 +1652,7 @@ public class DocumentService {
 
             // Save comment
             Comment savedComment = commentRepository.save(comment);
+            ratingAggregateService.commentAdded(savedComment);
 
             System.out.println("Review submitted successfully with ID: " + savedComment.getId());
 
@@ -1644,6 +1669,23 @@ public class DocumentService {
      * Get related documents based on categories and tags
      */
     public List<DocumentDTO> getRelatedDocuments(Long documentId, int limit) {
+        // Dùng chỉ mục danh mục/tag tính sẵn; chỉ quét toàn bộ khi chỉ mục chưa sẵn sàng
+        if (relatedDocumentsService.isReady()) {
+            try {
+                long[] relatedIds = relatedDocumentsService.getRelatedDocumentIds(documentId, limit);
+                List<Long> ids = Arrays.stream(relatedIds).boxed().collect(Collectors.toList());
+                List<DocumentDTO> related = convertToDTOs(findAllByIdInOrder(ids));
+                for (DocumentDTO dto : related) {
+                    setAdditionalFields(dto);
+                }
+                return related;
+            } catch (Exception e) {
+                System.err.println("Error getting related documents: " + e.getMessage());
+                e.printStackTrace();
+                return new ArrayList<>();
+            }
+        }
+
         try {
             DocumentDTO currentDocument = getDocumentById(documentId);
             if (currentDocument == null) {
@@ -1739,11 +1781,41 @@ public class DocumentService {
             String time,
             Pageable pageable) {
 
+        // Chọn danh mục cha thì lấy cả tài liệu của các danh mục con (khớp với số đếm facet)
+        if (categorySlugs != null && !categorySlugs.isEmpty()) {
+            categorySlugs = categoryTreeService.getSnapshot().expandSubtreeSlugs(categorySlugs);
+        }
+
+        // Dùng search index trong bộ nhớ; chỉ quét database khi index chưa sẵn sàng
+        if (documentSearchIndexService.isReady()) {
+            DocumentSearchIndexService.SearchHits hits = documentSearchIndexService.search(q, categorySlugs, formats,
+                    priceFilters, time, pageable);
+            List<Document> documents = filterByMinRating(findAllByIdInOrder(hits.getDocumentIds()), ratingStr);
+            return new PageImpl<>(documents, pageable, hits.getTotal());
+        }
+
         Specification<Document> spec = buildSearchSpecification(q, categorySlugs, formats, priceFilters, time);
         Page<Document> pageResult = documentRepository.findAll(spec, pageable);
 
-        List<Document> documents = pageResult.getContent();
+        List<Document> documents = filterByMinRating(pageResult.getContent(), ratingStr);
+
+        return new PageImpl<>(documents, pageable, pageResult.getTotalElements());
+    }
+
+    // Load documents by id, keeping the order of the given id list
+    private List<Document> findAllByIdInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Document> byId = documentRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Document::getId, doc -> doc));
+        return ids.stream()
+                .map(byId::get)
+                .filter(doc -> doc != null)
+                .collect(Collectors.toList());
+    }
 
+    private List<Document> filterByMinRating(List<Document> documents, String ratingStr) {
         // Optional: Filter by rating on the current page only (quick win)
         if (ratingStr != null && !ratingStr.equals("any")) {
             try {
@@ -1758,8 +1830,7 @@ public class DocumentService {
                 // ignore invalid rating
             }
         }
-
-        return new PageImpl<>(documents, pageable, pageResult.getTotalElements());
+        return documents;
     }
 
     private Specification<Document> buildSearchSpecification(String q,
@@ -1835,151 +1906,71 @@ public class DocumentService {
         };
     }
 
-    public Map<String, Long> countFormats(String q) {
-        List<Document> documents = documentRepository.findByKeyword(q, Pageable.unpaged()).getContent();
-
-        return documents.stream()
-                .filter(doc -> doc.getFile() != null && doc.getFile().getFileType() != null)
-                .collect(Collectors.groupingBy(
-                        doc -> doc.getFile().getFileType().toLowerCase(),
-                        Collectors.counting()));
-    }
-
-    public Map<String, Long> countDocumentsPerCategorySlug() {
-        List<Document> documents = documentRepository.findAll();
-
-        return documents.stream()
-                .flatMap(doc -> doc.getDocumentCategories().stream())
-                .filter(dc -> dc.getCategory() != null && dc.getCategory().getSlug() != null)
-                .collect(Collectors.groupingBy(
-                        dc -> dc.getCategory().getSlug(),
-                        Collectors.counting()));
-    }
-
-    public Map<String, Long> countByPrice(String q) {
-        List<Document> documents = documentRepository.findByKeyword(q, Pageable.unpaged()).getContent();
-
-        return documents.stream().collect(Collectors.groupingBy(
-                doc -> doc.getPrice().compareTo(BigDecimal.ZERO) == 0 ? "free" : "paid",
-                Collectors.counting()));
-    }
-
-    public Map<String, Long> countByRating(String q) {
-        List<Document> documents = documentRepository.findByKeyword(q, Pageable.unpaged()).getContent();
-
-        List<Long> docIds = documents.stream()
-                .map(Document::getId)
-                .collect(Collectors.toList());
-
-        List<Comment> comments = commentRepository.findByDocumentIdInAndStatus(docIds, "active");
-
-        Map<Long, Double> avgRatings = comments.stream()
-                .collect(Collectors.groupingBy(
-                        c -> c.getDocument().getId(),
-                        Collectors.averagingDouble(c -> c.getRating() != null ? c.getRating() : 0)));
-
-        long count4 = avgRatings.values().stream().filter(r -> r >= 4).count();
-        long count3 = avgRatings.values().stream().filter(r -> r >= 3).count();
-        long countAll = avgRatings.size();
-
-        Map<String, Long> result = new HashMap<>();
-        result.put("4", count4);
-        result.put("3", count3);
-        result.put("any", countAll);
-
-        return result;
-    }
-
-    public Map<String, Long> countByTime(String q) {
-        List<Document> documents = documentRepository.findByKeyword(q, Pageable.unpaged()).getContent();
-
-        LocalDateTime now = LocalDateTime.now();
-
-        long countWeek = documents.stream()
-                .filter(d -> d.getPublishedAt() != null)
-                .filter(d -> d.getPublishedAt().isAfter(now.minusDays(7)))
-                .count();
-
-        long countMonth = documents.stream()
-                .filter(d -> d.getPublishedAt() != null)
-                .filter(d -> d.getPublishedAt().isAfter(now.minusDays(30)))
-                .count();
-
-        long countYear = documents.stream()
-                .filter(d -> d.getPublishedAt() != null)
-                .filter(d -> d.getPublishedAt().isAfter(now.minusYears(1)))
-                .count();
-
-        long countAny = documents.size();
-
-        Map<String, Long> result = new HashMap<>();
-        result.put("week", countWeek);
-        result.put("month", countMonth);
-        result.put("year", countYear);
-        result.put("any", countAny);
-
-        return result;
+    /**
+     * Một trang tài liệu phổ biến: danh sách DTO, tổng số tài liệu được xếp hạng và cursor keyset
+     * của trang kế tiếp (null nếu đã hết)
+     */
+    public record PopularDocumentsPage(Slice<DocumentDTO> documents, long total, String nextCursor) {
     }
 
     /**
      * Lấy tài liệu phổ biến và mới nhất cho trang tìm kiếm mặc định
      * Kết hợp tài liệu có lượt xem/tải cao và tài liệu mới nhất
      */
-    public Page<DocumentDTO> getPopularAndRecentDocuments(Pageable pageable) {
+    public PopularDocumentsPage getPopularAndRecentDocuments(Pageable pageable) {
         try {
             System.out.println("=== GET POPULAR AND RECENT DOCUMENTS ===");
 
-            // Lấy tài liệu có status APPROVED và chưa bị xóa
-            List<Document> allDocuments = documentRepository
-                    .findByStatusAndDeletedAtIsNullOrderByCreatedAtDesc("APPROVED");
-
-            // Sắp xếp theo độ phổ biến (lượt xem + lượt tải) và thời gian tạo
-            List<Document> sortedDocuments = allDocuments.stream()
-                    .sorted((doc1, doc2) -> {
-                        // Tính điểm phổ biến = lượt xem + lượt tải
-                        long popularity1 = (doc1.getViewsCount() != null ? doc1.getViewsCount() : 0) +
-                                (doc1.getDownloadsCount() != null ? doc1.getDownloadsCount() : 0);
-                        long popularity2 = (doc2.getViewsCount() != null ? doc2.getViewsCount() : 0) +
-                                (doc2.getDownloadsCount() != null ? doc2.getDownloadsCount() : 0);
-
-                        // Ưu tiên tài liệu phổ biến trước, sau đó đến tài liệu mới
-                        if (popularity1 != popularity2) {
-                            return Long.compare(popularity2, popularity1); // Giảm dần
-                        } else {
-                            // Nếu độ phổ biến bằng nhau, ưu tiên tài liệu mới hơn
-                            if (doc1.getCreatedAt() != null && doc2.getCreatedAt() != null) {
-                                return doc2.getCreatedAt().compareTo(doc1.getCreatedAt());
-                            }
-                            return 0;
-                        }
-                    })
-                    .collect(Collectors.toList());
-
-            // Convert to DTOs
-            List<DocumentDTO> dtoList = sortedDocuments.stream()
-                    .map(this::convertToDTO)
-                    .collect(Collectors.toList());
-
-            // Set additional fields for each DTO
-            for (DocumentDTO dto : dtoList) {
-                setAdditionalFields(dto);
-            }
-
-            // Áp dụng phân trang
-            int start = (int) pageable.getOffset();
-            int end = Math.min(start + pageable.getPageSize(), dtoList.size());
-            List<DocumentDTO> pagedList = (start <= end) ? dtoList.subList(start, end) : new ArrayList<>();
+            // Sắp xếp theo điểm phổ biến (lượt xem + lượt tải) ngay trong database,
+            // chỉ tải và convert các tài liệu của trang được yêu cầu
+            List<Document> documents = documentPopularityService.getPopularDocuments(pageable);
+            List<DocumentDTO> dtoList = toPopularDTOs(documents);
 
-            System.out.println("Found " + pagedList.size() + " popular and recent documents");
-            return new PageImpl<>(pagedList, pageable, dtoList.size());
+            long total = documentPopularityService.countRankedDocuments();
+            System.out.println("Found " + dtoList.size() + " popular and recent documents");
+            Page<DocumentDTO> page = new PageImpl<>(dtoList, pageable, total);
+            String nextCursor = page.hasNext() && !documents.isEmpty()
+                    ? DocumentPopularityService.cursorOf(documents.get(documents.size() - 1))
+                    : null;
+            return new PopularDocumentsPage(page, total, nextCursor);
 
         } catch (Exception e) {
             System.err.println("Error getting popular and recent documents: " + e.getMessage());
             e.printStackTrace();
-            return new PageImpl<>(new ArrayList<>(), pageable, 0);
+            return new PopularDocumentsPage(new PageImpl<>(new ArrayList<>(), pageable, 0), 0, null);
+        }
+    }
+
+    /**
+     * Như getPopularAndRecentDocuments nhưng phân trang keyset: trả về các tài liệu đứng sau cursor
+     * (nextCursor của trang trước) mà không cần OFFSET. Kết quả là Slice vì trang keyset không có số trang
+     */
+    public PopularDocumentsPage getPopularDocumentsAfter(String cursor, int size) {
+        Pageable pageable = PageRequest.of(0, size);
+        try {
+            List<Document> documents = documentPopularityService.getPopularDocumentsAfter(cursor, size);
+            boolean hasNext = documents.size() > size;
+            if (hasNext) {
+                documents = documents.subList(0, size);
+            }
+            List<DocumentDTO> dtoList = toPopularDTOs(documents);
+            String nextCursor = hasNext ? DocumentPopularityService.cursorOf(documents.get(size - 1)) : null;
+            return new PopularDocumentsPage(new SliceImpl<>(dtoList, pageable, hasNext),
+                    documentPopularityService.countRankedDocuments(), nextCursor);
+        } catch (Exception e) {
+            System.err.println("Error getting popular documents after cursor: " + e.getMessage());
+            return new PopularDocumentsPage(new SliceImpl<>(new ArrayList<>(), pageable, false), 0, null);
         }
     }
 
+    private List<DocumentDTO> toPopularDTOs(List<Document> documents) {
+        List<DocumentDTO> dtoList = convertToDTOs(documents);
+        for (DocumentDTO dto : dtoList) {
+            setAdditionalFields(dto);
+        }
+        return dtoList;
+    }
+
     public List<Document> getRelatedDocuments(Document document, int limit) {
         List<Long> categoryIds = document.getDocumentCategories().stream()
                 .map(dc -> dc.getCategory().getId())
@@ -2005,9 +1996,7 @@ public class DocumentService {
             // Get documents with status APPROVED and not deleted
             Page<Document> featuredDocuments = documentRepository.findFeaturedDocuments("APPROVED", pageRequest);
 
-            List<DocumentDTO> dtoList = featuredDocuments.getContent().stream()
-                    .map(this::convertToDTO)
-                    .collect(Collectors.toList());
+            List<DocumentDTO> dtoList = convertToDTOs(featuredDocuments.getContent());
 
             // Set additional fields for each DTO
             for (DocumentDTO dto : dtoList) {
@@ -2026,70 +2015,9 @@ public class DocumentService {
 
     public String importDocuments(MultipartFile file) {
         try {
-            if (file.isEmpty()) {
-                throw new IllegalArgumentException("File backup trống!");
-            }
-
-            // Read file content
-            String content = new String(file.getBytes());
-
-            // Parse JSON
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            mapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
-
-            com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>> typeRef = new com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>>() {
-            };
-            Map<String, Object> backupData = mapper.readValue(content, typeRef);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> documents = (List<Map<String, Object>>) backupData.get("documents");
-
-            int importedCount = 0;
-            int skippedCount = 0;
-
-            for (Map<String, Object> docData : documents) {
-                try {
-                    // Check if document already exists by slug
-                    String slug = (String) docData.get("slug");
-                    if (slug != null && documentRepository.findBySlug(slug).isPresent()) {
-                        skippedCount++;
-                        continue; // Skip existing documents
-                    }
-
-                    // Create new document (simplified import - without file upload)
-                    Document document = new Document();
-                    document.setTitle((String) docData.get("title"));
-                    document.setDescription((String) docData.get("description"));
-                    document.setSlug(slug);
-
-                    // Handle price
-                    Object priceObj = docData.get("price");
-                    if (priceObj != null) {
-                        if (priceObj instanceof Number) {
-                            document.setPrice(BigDecimal.valueOf(((Number) priceObj).doubleValue()));
-                        }
-                    }
-
-                    document.setStatus((String) docData.get("status"));
-                    document.setVisibility((String) docData.get("visibility"));
-                    document.setViewsCount(0L); // Reset counters for imported docs
-                    document.setDownloadsCount(0L);
-
-                    // Save document
-                    Document savedDoc = documentRepository.save(document);
-                    importedCount++;
-
-                    // Note: Categories, tags, and file associations would need more complex logic
-                    // This is a simplified import focusing on basic document data
-
-                } catch (Exception e) {
-                    System.err.println("Error importing document: " + docData.get("title") + " - " + e.getMessage());
-                    skippedCount++;
-                }
-            }
-
-            return String.format("Import hoàn thành: %d tài liệu được import, %d bị bỏ qua", importedCount,
-                    skippedCount);
-
+            return documentImportService.importDocuments(file);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw e;
         } catch (Exception e) {
             System.err.println("Error importing documents: " + e.getMessage());
             e.printStackTrace();
@@ -2098,75 +2026,150 @@ public class DocumentService {
     }
 
     public String exportAllDocuments() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
-            List<Document> allDocuments = documentRepository.findAll();
-
-            // Convert to a simplified format for export
-            List<Map<String, Object>> exportData = new ArrayList<>();
+            exportAllDocuments(out);
+        } catch (IOException e) {
+            throw new RuntimeException("Lỗi khi export tài liệu: " + e.getMessage());
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
 
-            for (Document doc : allDocuments) {
-                Map<String, Object> docData = new HashMap<>();
-                docData.put("id", doc.getId());
-                docData.put("title", doc.getTitle());
-                docData.put("description", doc.getDescription());
-                docData.put("slug", doc.getSlug());
-                docData.put("price", doc.getPrice());
-                docData.put("status", doc.getStatus());
-                docData.put("visibility", doc.getVisibility());
-                docData.put("viewsCount", doc.getViewsCount());
-                docData.put("downloadsCount", doc.getDownloadsCount());
-                docData.put("createdAt", doc.getCreatedAt());
-                docData.put("updatedAt", doc.getUpdatedAt());
-
-                // Add file info
-                if (doc.getFile() != null) {
-                    Map<String, Object> fileData = new HashMap<>();
-                    fileData.put("fileName", doc.getFile().getFileName());
-                    fileData.put("fileSize", doc.getFile().getFileSize());
-                    fileData.put("fileType", doc.getFile().getFileType());
-                    fileData.put("mimeType", doc.getFile().getMimeType());
-                    docData.put("file", fileData);
+    /**
+     * Ghi toàn bộ tài liệu dạng JSON thẳng vào output stream: đọc theo lô (keyset theo id) dưới dạng cột,
+     * lấy danh mục/tag/tác giả của cả lô bằng 3 truy vấn, ghi xong lô nào thì bỏ lô đó.
+     * Không nạp entity nên persistence context của request (open-in-view) không lớn dần,
+     * bộ nhớ dùng không phụ thuộc số lượng tài liệu. Trả về số byte đã ghi
+     */
+    public long exportAllDocuments(OutputStream out) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        CountingOutputStream counter = new CountingOutputStream(out);
+
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(counter, JsonEncoding.UTF8)) {
+            // Stream do bên gọi quản lý (ví dụ response), không đóng khi ghi xong
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writePOJOField("exportDate", LocalDateTime.now());
+            generator.writeNumberField("totalDocuments", documentRepository.count());
+            generator.writeArrayFieldStart("documents");
+
+            long lastId = 0L;
+            int exported = 0;
+            Pageable batch = PageRequest.of(0, EXPORT_BATCH_SIZE);
+            while (true) {
+                List<Object[]> rows = documentRepository.findExportRowsAfterId(lastId, batch);
+                if (rows.isEmpty()) {
+                    break;
                 }
+                List<Long> ids = rows.stream().map(row -> (Long) row[0]).collect(Collectors.toList());
 
-                // Add categories
-                List<DocumentCategory> categories = documentCategoryRepository.findByDocumentId(doc.getId());
-                List<String> categoryNames = categories.stream()
-                        .map(dc -> dc.getCategory().getName())
-                        .collect(Collectors.toList());
-                docData.put("categories", categoryNames);
-
-                // Add tags
-                List<DocumentTag> tags = documentTagRepository.findByDocumentId(doc.getId());
-                List<String> tagNames = tags.stream()
-                        .map(dt -> dt.getTag().getName())
-                        .collect(Collectors.toList());
-                docData.put("tags", tagNames);
+                Map<Long, List<String>> categoryNames = new HashMap<>();
+                for (Object[] row : documentCategoryRepository.findCategorySlugsAndNamesByDocumentIds(ids)) {
+                    categoryNames.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[2]);
+                }
+                Map<Long, List<String>> tagNames = new HashMap<>();
+                for (Object[] row : documentTagRepository.findTagNamesByDocumentIds(ids)) {
+                    tagNames.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[1]);
+                }
+                Map<Long, Object[]> authors = new HashMap<>();
+                for (Object[] row : documentOwnerRepository.findOwnerNamesByDocumentIds(ids)) {
+                    authors.putIfAbsent((Long) row[0], row);
+                }
 
-                // Add author
-                List<DocumentOwner> owners = documentOwnerRepository.findByDocumentId(doc.getId());
-                if (!owners.isEmpty()) {
-                    docData.put("authorName", owners.get(0).getUser().getFullName());
-                    docData.put("authorUsername", owners.get(0).getUser().getUsername());
+                for (Object[] row : rows) {
+                    Long id = (Long) row[0];
+                    writeExportDocument(generator, row,
+                            categoryNames.getOrDefault(id, Collections.emptyList()),
+                            tagNames.getOrDefault(id, Collections.emptyList()),
+                            authors.get(id));
                 }
+                generator.flush();
 
-                exportData.add(docData);
+                exported += rows.size();
+                lastId = ids.get(ids.size() - 1);
+                if (rows.size() < EXPORT_BATCH_SIZE) {
+                    break;
+                }
             }
 
-            // Convert to JSON string
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            mapper.registerModule(new com.fasterxml.jackson.datatype.jsr310.JavaTimeModule());
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+            System.out.println("Exported " + exported + " documents");
+        }
+        return counter.getCount();
+    }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("exportDate", LocalDateTime.now());
-            result.put("totalDocuments", exportData.size());
-            result.put("documents", exportData);
+    // row theo thứ tự cột của DocumentRepository.findExportRowsAfterId
+    private void writeExportDocument(JsonGenerator generator, Object[] row, List<String> categoryNames,
+            List<String> tagNames, Object[] author) throws IOException {
+        generator.writeStartObject();
+        generator.writePOJOField("id", row[0]);
+        generator.writeStringField("title", (String) row[1]);
+        generator.writeStringField("description", (String) row[2]);
+        generator.writeStringField("slug", (String) row[3]);
+        generator.writePOJOField("price", row[4]);
+        generator.writeStringField("status", (String) row[5]);
+        generator.writeStringField("visibility", (String) row[6]);
+        generator.writePOJOField("viewsCount", row[7]);
+        generator.writePOJOField("downloadsCount", row[8]);
+        generator.writePOJOField("createdAt", row[9]);
+        generator.writePOJOField("updatedAt", row[10]);
+
+        // File info
+        if (row[11] != null) {
+            generator.writeObjectFieldStart("file");
+            generator.writeStringField("fileName", (String) row[12]);
+            generator.writePOJOField("fileSize", row[13]);
+            generator.writeStringField("fileType", (String) row[14]);
+            generator.writeStringField("mimeType", (String) row[15]);
+            generator.writeEndObject();
+        }
+
+        generator.writeArrayFieldStart("categories");
+        for (String name : categoryNames) {
+            generator.writeString(name);
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("tags");
+        for (String name : tagNames) {
+            generator.writeString(name);
+        }
+        generator.writeEndArray();
+
+        // Author
+        if (author != null) {
+            generator.writeStringField("authorName", (String) author[1]);
+            generator.writeStringField("authorUsername", (String) author[2]);
+        }
+        generator.writeEndObject();
+    }
 
-            return mapper.writeValueAsString(result);
+    // Đếm số byte ghi ra (dung lượng file backup hiển thị ở trang cài đặt)
+    private static final class CountingOutputStream extends FilterOutputStream {
 
-        } catch (Exception e) {
-            System.err.println("Error exporting documents: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Lỗi khi export tài liệu: " + e.getMessage());
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
         }
     }
 
@@ -2174,6 +2177,31 @@ public class DocumentService {
     public DocumentDTO createDocument(DocumentDTO documentDTO, byte[] fileContent, String fileName,
             List<Long> categoryIds,
             List<String> tagNames, Long userId) {
+        long fileSize = fileContent != null ? fileContent.length : 0;
+        return createDocument(documentDTO, fileName, fileSize,
+                () -> contentStoreService.store(new java.io.ByteArrayInputStream(fileContent), fileName),
+                categoryIds, tagNames, userId);
+    }
+
+    /**
+     * Tạo tài liệu từ file đã nằm ở vùng staging của wizard đăng tải: file được chuyển (move) vào kho file,
+     * không đọc nội dung vào bộ nhớ
+     */
+    @Transactional
+    public DocumentDTO createDocument(DocumentDTO documentDTO, UploadStagingService.StagedUpload stagedUpload,
+            List<Long> categoryIds, List<String> tagNames, Long userId) {
+        return createDocument(documentDTO, stagedUpload.getFileName(), stagedUpload.getSize(),
+                () -> contentStoreService.store(stagedUpload), categoryIds, tagNames, userId);
+    }
+
+    // Đưa nội dung file vào kho file (ContentStoreService)
+    @FunctionalInterface
+    private interface BlobWriter {
+        FileBlob write() throws IOException;
+    }
+
+    private DocumentDTO createDocument(DocumentDTO documentDTO, String fileName, long fileSize,
+            BlobWriter blobWriter, List<Long> categoryIds, List<String> tagNames, Long userId) {
         System.out.println("=== CREATE DOCUMENT SERVICE ===");
         System.out.println("Creating document: " + documentDTO.getTitle());
 
@@ -2198,34 +2226,32 @@ public class DocumentService {
             document.setSlug(uniqueSlug);
 
             // Handle file upload if provided
-            if (fileContent != null && fileContent.length > 0) {
+            if (fileSize > 0) {
                 System.out.println("File uploaded: " + fileName);
-                System.out.println("File size: " + fileContent.length);
+                System.out.println("File size: " + fileSize);
 
                 // Create File entity
                 File fileEntity = new File();
                 fileEntity.setFileName(fileName);
-                fileEntity.setFileSize((long) fileContent.length);
+                fileEntity.setFileSize(fileSize);
                 fileEntity.setFileType(getFileType(fileName));
                 fileEntity.setMimeType("application/octet-stream"); // Có thể xác định MIME type chính xác hơn
-                String fileNameWithTimestamp = System.currentTimeMillis() + "_" + fileName;
-                String filePath = "uploads/documents/" + fileNameWithTimestamp;
-                fileEntity.setFilePath(filePath);
+                // Nội dung lưu theo SHA-256, trùng nội dung thì dùng chung blob
+                FileBlob blob = blobWriter.write();
+                fileEntity.setFilePath(contentStoreService.getFilePath(blob));
+                fileEntity.setChecksum(blob.getSha256());
+                fileEntity.setBlob(blob);
 
                 // Save file entity first
                 File savedFile = fileRepository.save(fileEntity);
                 System.out.println("File entity saved with ID: " + savedFile.getId());
+                System.out.println("File saved successfully to: " + fileEntity.getFilePath());
+                document.setFile(savedFile);
 
-                // Save actual file to disk
-                java.nio.file.Path uploadPath = java.nio.file.Paths.get("src/main/resources/static/uploads/documents");
-                if (!java.nio.file.Files.exists(uploadPath)) {
-                    java.nio.file.Files.createDirectories(uploadPath);
-                    System.out.println("Created directory: " + uploadPath.toAbsolutePath());
+                // Tạo thumbnail ở nền, không chờ render
+                if (pdfThumbnailService.isPdf(fileName)) {
+                    pdfThumbnailService.enqueue(savedFile.getId(), contentStoreService.resolve(blob));
                 }
-                java.nio.file.Path targetPath = uploadPath.resolve(fileNameWithTimestamp);
-                java.nio.file.Files.write(targetPath, fileContent);
-                System.out.println("File saved successfully to: " + targetPath.toAbsolutePath());
-                document.setFile(savedFile);
             }
 
             // Save document
@@ -2295,6 +2321,9 @@ public class DocumentService {
                 System.out.println("Tags assigned: " + tagNames.size());
             }
 
+            documentSearchIndexService.indexDocument(savedDocument.getId());
+            relatedDocumentsService.indexDocument(savedDocument.getId());
+
             // Convert to DTO and return
             DocumentDTO result = convertToDTO(savedDocument);
             result.setCategoryIds(categoryIds);
@@ -5,13 +5,12 @@ import org.springframework.core.env.ConfigurableEnvironment;
 import org.springframework.core.env.MapPropertySource;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
-import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
-import jakarta.mail.internet.MimeMessage;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class EmailConfigService {
@@ -22,6 +21,9 @@ public class EmailConfigService {
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private MailDeliveryService mailDeliveryService;
+
     /**
      * Cập nhật cấu hình email từ admin settings (bao gồm lưu vào file)
      */
@@ -72,6 +74,9 @@ public class EmailConfigService {
                 props.put("mail.smtp.auth", "true");
                 props.put("mail.smtp.starttls.enable", "true");
 
+                // Kết nối SMTP đang mở trong MailDeliveryService được tạo lại với cấu hình mới
+                mailDeliveryService.reconfigure();
+
                 System.out.println("✅ Email configuration updated (runtime only):");
                 System.out.println("📧 Host: " + smtpHost + ", Port: " + smtpPort + ", User: " + username);
             }
@@ -196,63 +201,55 @@ public class EmailConfigService {
     }
 
     /**
-     * Gửi email với nội dung HTML
+     * Gửi email với nội dung HTML (chờ đến khi SMTP server nhận email)
      */
     public boolean sendHtmlEmail(String to, String subject, String htmlContent) {
-        System.out.println("=== SENDING EMAIL ===");
-        System.out.println("To: " + to);
-        System.out.println("Subject: " + subject);
-        
-        try {
-            // Kiểm tra cấu hình email
-            Map<String, String> config = getCurrentEmailConfig();
-            System.out.println("Email config - Host: " + config.get("host"));
-            System.out.println("Email config - Port: " + config.get("port"));
-            System.out.println("Email config - Username: " + config.get("username"));
-            System.out.println("Email config - Password length: " + (config.get("password") != null ? config.get("password").length() : 0));
-            
-            if (config.get("host") == null || config.get("host").isEmpty()) {
-                System.err.println("❌ Email configuration not found");
-                return false;
-            }
-
-            if (config.get("username") == null || config.get("username").isEmpty()) {
-                System.err.println("❌ Email username not configured");
-                return false;
-            }
-
-            if (config.get("password") == null || config.get("password").isEmpty()) {
-                System.err.println("❌ Email password not configured");
-                return false;
-            }
+        String from = getConfiguredSender();
+        if (from == null) {
+            return false;
+        }
+        boolean sent = mailDeliveryService.send(from, to, subject, htmlContent);
+        if (sent) {
+            System.out.println("✅ Email sent successfully to: " + to);
+        } else {
+            System.err.println("❌ Error sending email to: " + to);
+        }
+        return sent;
+    }
 
-            System.out.println("Creating MimeMessage...");
-            // Tạo message
-            MimeMessage message = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+    /**
+     * Đưa email vào hàng đợi gửi, không chờ; future trả về false nếu chưa cấu hình email
+     */
+    public CompletableFuture<Boolean> sendHtmlEmailAsync(String to, String subject, String htmlContent) {
+        String from = getConfiguredSender();
+        if (from == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return mailDeliveryService.submit(from, to, subject, htmlContent);
+    }
 
-            System.out.println("Setting email properties...");
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true); // true = HTML content
-            helper.setFrom(config.get("username"));
+    /**
+     * Địa chỉ gửi (username SMTP), null nếu cấu hình email chưa đầy đủ
+     */
+    private String getConfiguredSender() {
+        Map<String, String> config = getCurrentEmailConfig();
 
-            System.out.println("Sending email...");
-            // Gửi email
-            mailSender.send(message);
+        if (config.get("host") == null || config.get("host").isEmpty()) {
+            System.err.println("❌ Email configuration not found");
+            return null;
+        }
 
-            System.out.println("✅ Email sent successfully to: " + to);
-            System.out.println("📧 Subject: " + subject);
-            return true;
+        if (config.get("username") == null || config.get("username").isEmpty()) {
+            System.err.println("❌ Email username not configured");
+            return null;
+        }
 
-        } catch (Exception e) {
-            System.err.println("❌ Error sending email: " + e.getMessage());
-            System.err.println("❌ Error class: " + e.getClass().getSimpleName());
-            e.printStackTrace();
-            return false;
-        } finally {
-            System.out.println("=== EMAIL SENDING COMPLETE ===");
+        if (config.get("password") == null || config.get("password").isEmpty()) {
+            System.err.println("❌ Email password not configured");
+            return null;
         }
+
+        return config.get("username");
     }
 
     /**
@@ -0,0 +1,95 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Transaction;
+import com.fpoly.shared_learning_materials.repository.TransactionRepository;
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import com.fpoly.shared_learning_materials.util.StreamingExcelExporter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Xuất Excel cho các màn hình quản trị (người dùng, giao dịch, rút tiền).
+ * Dữ liệu đọc theo lô bằng truy vấn projection (không tạo entity nên persistence context không phình ra)
+ * và ghi qua StreamingExcelExporter, bộ nhớ dùng không phụ thuộc số dòng.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    @Value("${app.export.batch-size:1000}")
+    private int batchSize;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        StreamingExcelExporter<Object[]> exporter = new StreamingExcelExporter<Object[]>("Users")
+                .column("ID", 8, row -> row[0])
+                .column("Họ tên", 30, row -> row[1])
+                .column("Email", 35, row -> row[2])
+                .column("SĐT", 15, row -> row[3])
+                .column("Vai trò", 12, row -> row[4])
+                .column("Trạng thái", 12, row -> row[5]);
+
+        long start = System.currentTimeMillis();
+        int rows = exporter.export(response, "users.xlsx",
+                last -> userRepository.findExportRowsAfter(lastId(last), PageRequest.of(0, batchSize())));
+        logger.info("Exported {} users in {} ms", rows, System.currentTimeMillis() - start);
+    }
+
+    public void exportTransactions(HttpServletResponse response, String keyword,
+            Transaction.TransactionStatus status, Transaction.TransactionType type) throws IOException {
+        long start = System.currentTimeMillis();
+        int rows = exportTransactionRows(response, "Transactions", "transactions_" + LocalDate.now() + ".xlsx",
+                keyword, status, type);
+        logger.info("Exported {} transactions in {} ms", rows, System.currentTimeMillis() - start);
+    }
+
+    public void exportWithdrawals(HttpServletResponse response, String keyword,
+            Transaction.TransactionStatus status) throws IOException {
+        long start = System.currentTimeMillis();
+        int rows = exportTransactionRows(response, "Withdrawals", "withdrawals_" + LocalDate.now() + ".xlsx",
+                keyword, status, Transaction.TransactionType.WITHDRAWAL);
+        logger.info("Exported {} withdrawals in {} ms", rows, System.currentTimeMillis() - start);
+    }
+
+    private int exportTransactionRows(HttpServletResponse response, String sheetName, String fileName,
+            String keyword, Transaction.TransactionStatus status, Transaction.TransactionType type) throws IOException {
+        StreamingExcelExporter<Object[]> exporter = new StreamingExcelExporter<Object[]>(sheetName)
+                .column("ID", 8, row -> row[0])
+                .column("Mã giao dịch", 22, row -> row[1])
+                .column("Loại", 16, row -> row[2] != null ? ((Transaction.TransactionType) row[2]).getDisplayName() : null)
+                .column("Trạng thái", 14, row -> row[3] != null ? ((Transaction.TransactionStatus) row[3]).getDisplayName() : null)
+                .column("Số tiền", 14, row -> row[4])
+                .column("Phương thức", 18, row -> row[5])
+                .column("Người dùng", 28, row -> row[6])
+                .column("Email", 32, row -> row[7])
+                .column("Ngày tạo", 18, row -> row[8])
+                .column("Ghi chú", 50, row -> row[9]);
+
+        String search = keyword != null && !keyword.isBlank() ? keyword.trim() : null;
+        return exporter.export(response, fileName,
+                last -> transactionRepository.findExportRowsAfter(lastId(last), search, status, type,
+                        PageRequest.of(0, batchSize())));
+    }
+
+    private int batchSize() {
+        return Math.max(1, batchSize);
+    }
+
+    private static Long lastId(Object[] lastRow) {
+        return lastRow != null ? (Long) lastRow[0] : 0L;
+    }
+}
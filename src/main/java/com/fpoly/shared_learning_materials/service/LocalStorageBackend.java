@@ -0,0 +1,124 @@
+package com.fpoly.shared_learning_materials.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Lưu file trong thư mục upload local, URL dạng /documents/file/{tên file}.
+ * URL luôn được phân giải trong thư mục gốc (không theo thư mục làm việc của tiến trình)
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalStorageBackend.class);
+
+    static final String URL_PREFIX = "/documents/file/";
+
+    private final Path root;
+
+    public LocalStorageBackend(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String getName() {
+        return "Local Storage";
+    }
+
+    @Override
+    public boolean handles(String fileUrl) {
+        return fileUrl != null && fileUrl.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public String store(InputStream data, long size, String originalFileName, String contentType)
+            throws IOException {
+        Files.createDirectories(root);
+        String fileName = UUID.randomUUID() + extension(originalFileName);
+        long written = Files.copy(data, root.resolve(fileName));
+        logger.info("File uploaded to local storage: {} ({} bytes)", fileName, written);
+        return URL_PREFIX + fileName;
+    }
+
+    @Override
+    public InputStream open(String fileUrl) throws IOException {
+        Path file = resolve(fileUrl);
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("File not found: " + fileUrl);
+        }
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public boolean delete(String fileUrl) {
+        try {
+            boolean deleted = Files.deleteIfExists(resolve(fileUrl));
+            if (deleted) {
+                logger.info("File deleted from local storage: {}", fileUrl);
+            } else {
+                logger.warn("File not found for deletion: {}", fileUrl);
+            }
+            return deleted;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Failed to delete file {} from local storage", fileUrl, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean exists(String fileUrl) {
+        try {
+            return Files.isRegularFile(resolve(fileUrl));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public long size(String fileUrl) {
+        try {
+            Path file = resolve(fileUrl);
+            return Files.isRegularFile(file) ? Files.size(file) : -1;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Error getting size of {}", fileUrl, e);
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean testConnection() {
+        try {
+            Files.createDirectories(root);
+            return Files.isWritable(root);
+        } catch (IOException e) {
+            logger.error("Local storage test failed", e);
+            return false;
+        }
+    }
+
+    // Chỉ lấy tên file cuối URL, không cho thoát ra ngoài thư mục gốc
+    private Path resolve(String fileUrl) {
+        if (fileUrl == null || fileUrl.isBlank()) {
+            throw new IllegalArgumentException("File URL cannot be null or empty");
+        }
+        String fileName = fileUrl.split("\\?")[0];
+        fileName = fileName.substring(fileName.lastIndexOf('/') + 1);
+        Path file = root.resolve(fileName).normalize();
+        if (fileName.isEmpty() || !file.getParent().equals(root)) {
+            throw new IllegalArgumentException("Invalid file URL: " + fileUrl);
+        }
+        return file;
+    }
+
+    private static String extension(String fileName) {
+        if (fileName == null || !fileName.contains(".")) {
+            return "";
+        }
+        return fileName.substring(fileName.lastIndexOf("."));
+    }
+}
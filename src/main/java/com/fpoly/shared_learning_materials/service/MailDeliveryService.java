@@ -0,0 +1,351 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gửi email qua SMTP với hàng đợi giới hạn và nhiều worker song song.
+ * Mỗi worker giữ một kết nối SMTP (Transport) và dùng lại cho nhiều email, chỉ đóng khi rảnh quá lâu,
+ * lỗi hoặc đổi cấu hình; số email mỗi giây tới cùng một SMTP host có thể được giới hạn (token bucket, mặc định tắt).
+ * Nội dung MIME đã mã hóa được cache theo (from, subject, html) nên email hàng loạt cùng nội dung
+ * chỉ render một lần, mỗi người nhận chỉ thay header.
+ */
+@Service
+public class MailDeliveryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailDeliveryService.class);
+
+    @Value("${app.mail.workers:4}")
+    private int workerCount;
+
+    @Value("${app.mail.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // Số email mỗi giây cho một SMTP host (0 = không giới hạn, mặc định); chỉ đặt khi nhà cung cấp SMTP giới hạn tốc độ gửi
+    @Value("${app.mail.rate-per-second:0}")
+    private double ratePerSecond;
+
+    @Value("${app.mail.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+
+    @Value("${app.mail.send-timeout-ms:60000}")
+    private long sendTimeoutMs;
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    private BlockingQueue<MailJob> queue;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running;
+
+    // Tăng mỗi khi cấu hình SMTP đổi: worker đóng kết nối cũ và kết nối lại
+    private final AtomicInteger configVersion = new AtomicInteger();
+
+    private final ConcurrentHashMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+    private final Cache<RenderKey, byte[]> renderedContent = Caffeine.newBuilder()
+            .maximumSize(200)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        running = true;
+        int count = Math.max(1, workerCount);
+        for (int i = 1; i <= count; i++) {
+            Thread thread = new Thread(new Worker(), "mail-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+        logger.info("Mail delivery: {} workers, queue capacity {}, {} msg/s per host",
+                count, queueCapacity, ratePerSecond > 0 ? ratePerSecond : "unlimited");
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.clear();
+    }
+
+    /**
+     * Đưa email vào hàng đợi. Future hoàn thành khi email đã được SMTP server nhận (hoặc lỗi)
+     */
+    public CompletableFuture<Boolean> submit(String from, String to, String subject, String html) {
+        MailJob job = new MailJob(from, to, subject, html);
+        if (!running) {
+            job.future.completeExceptionally(new IllegalStateException("Mail delivery is stopped"));
+        } else if (!queue.offer(job)) {
+            job.future.completeExceptionally(new IllegalStateException("Mail queue is full"));
+        }
+        return job.future;
+    }
+
+    /**
+     * Gửi và chờ kết quả (tối đa send-timeout-ms)
+     */
+    public boolean send(String from, String to, String subject, String html) {
+        try {
+            return submit(from, to, subject, html).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            logger.warn("Email to {} failed: {}", to, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            return false;
+        } catch (TimeoutException e) {
+            logger.warn("Email to {} timed out in delivery queue", to);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Gọi khi cấu hình SMTP thay đổi: kết nối đang mở sẽ được tạo lại với cấu hình mới
+     */
+    public void reconfigure() {
+        configVersion.incrementAndGet();
+        renderedContent.invalidateAll();
+        rateLimiters.clear();
+    }
+
+    public int getQueueSize() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    private MimeMessage buildMessage(Session session, MailJob job) throws Exception {
+        RenderKey key = new RenderKey(job.from, job.subject, job.html);
+        byte[] content = renderedContent.getIfPresent(key);
+        if (content == null) {
+            MimeMessage prototype = new MimeMessage(session);
+            MimeMessageHelper helper = new MimeMessageHelper(prototype, true, "UTF-8");
+            helper.setFrom(job.from);
+            helper.setSubject(job.subject);
+            helper.setText(job.html, true);
+            prototype.saveChanges();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            prototype.writeTo(out);
+            content = out.toByteArray();
+            renderedContent.put(key, content);
+        }
+
+        MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(content));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(job.to));
+        message.setSentDate(new Date());
+        // Message-ID mới cho từng email
+        message.saveChanges();
+        return message;
+    }
+
+    private void acquirePermit(String host) throws InterruptedException {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        rateLimiters.computeIfAbsent(host != null ? host : "", h -> new RateLimiter(ratePerSecond)).acquire();
+    }
+
+    private class Worker implements Runnable {
+
+        private Transport transport;
+
+        private int transportVersion;
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    MailJob job;
+                    try {
+                        job = queue.poll(idleTimeoutMs, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    if (job == null) {
+                        // Rảnh lâu: đóng kết nối để SMTP server không tự cắt
+                        closeTransport();
+                        continue;
+                    }
+                    try {
+                        deliver(job);
+                        job.future.complete(true);
+                    } catch (InterruptedException e) {
+                        job.future.completeExceptionally(e);
+                        break;
+                    } catch (Exception e) {
+                        job.future.completeExceptionally(e);
+                    }
+                }
+            } finally {
+                closeTransport();
+                // Email còn lại trong hàng đợi khi tắt ứng dụng: báo lỗi để bên gọi (outbox) thử lại sau
+                if (!running) {
+                    MailJob job;
+                    while ((job = queue.poll()) != null) {
+                        job.future.completeExceptionally(new IllegalStateException("Mail delivery is stopped"));
+                    }
+                }
+            }
+        }
+
+        private void deliver(MailJob job) throws Exception {
+            if (!(mailSender instanceof JavaMailSenderImpl)) {
+                // Không tự quản lý được kết nối: gửi qua JavaMailSender như bình thường
+                MimeMessage message = mailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+                helper.setFrom(job.from);
+                helper.setTo(job.to);
+                helper.setSubject(job.subject);
+                helper.setText(job.html, true);
+                mailSender.send(message);
+                return;
+            }
+
+            JavaMailSenderImpl sender = (JavaMailSenderImpl) mailSender;
+            MimeMessage message = buildMessage(sender.getSession(), job);
+            acquirePermit(sender.getHost());
+
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    Transport connected = connect(sender);
+                    connected.sendMessage(message, message.getAllRecipients());
+                    return;
+                } catch (SendFailedException e) {
+                    // Địa chỉ người nhận bị từ chối: kết nối vẫn dùng được, không thử lại
+                    throw e;
+                } catch (MessagingException e) {
+                    // Kết nối bị server đóng (timeout, giới hạn số email mỗi kết nối...): mở lại một lần
+                    closeTransport();
+                    if (attempt >= 1) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private Transport connect(JavaMailSenderImpl sender) throws MessagingException {
+            int version = configVersion.get();
+            if (transport != null && transportVersion == version) {
+                return transport;
+            }
+            closeTransport();
+            String protocol = sender.getProtocol();
+            if (protocol == null) {
+                protocol = sender.getSession().getProperty("mail.transport.protocol");
+            }
+            Transport created = sender.getSession().getTransport(
+                    protocol != null ? protocol : JavaMailSenderImpl.DEFAULT_PROTOCOL);
+            // Không cấu hình tài khoản (SMTP nội bộ) thì kết nối không xác thực
+            String username = sender.getUsername() != null && !sender.getUsername().isEmpty() ? sender.getUsername() : null;
+            String password = username != null ? sender.getPassword() : null;
+            created.connect(sender.getHost(), sender.getPort(), username, password);
+            transport = created;
+            transportVersion = version;
+            return created;
+        }
+
+        private void closeTransport() {
+            if (transport == null) {
+                return;
+            }
+            try {
+                transport.close();
+            } catch (Exception ignored) {
+            }
+            transport = null;
+        }
+    }
+
+    private static class MailJob {
+        final String from;
+        final String to;
+        final String subject;
+        final String html;
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        MailJob(String from, String to, String subject, String html) {
+            this.from = from;
+            this.to = to;
+            this.subject = subject;
+            this.html = html;
+        }
+    }
+
+    private record RenderKey(String from, String subject, String html) {
+    }
+
+    /**
+     * Token bucket: cho phép burst bằng số email một giây, sau đó chia đều theo thời gian
+     */
+    private static class RateLimiter {
+        private final double permitsPerSecond;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        RateLimiter(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.capacity = Math.max(1, permitsPerSecond);
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        void acquire() throws InterruptedException {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * permitsPerSecond);
+                lastRefillNanos = now;
+                tokens -= 1;
+                if (tokens >= 0) {
+                    return;
+                }
+                // Đặt trước lượt: chờ đến khi token này được nạp lại
+                waitNanos = (long) (-tokens / permitsPerSecond * 1e9);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.OutboxDeadLetter;
+import com.fpoly.shared_learning_materials.domain.OutboxEvent;
+import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.repository.OutboxDeadLetterRepository;
+import com.fpoly.shared_learning_materials.repository.OutboxEventRepository;
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transactional outbox cho thông báo và email.
+ * Nghiệp vụ (mua tài liệu, nạp xu, duyệt rút tiền...) chỉ ghi sự kiện vào bảng outbox_events trong transaction
+ * của mình; một thread nền gửi sự kiện sau khi commit, theo lô, thử lại với thời gian chờ tăng dần và chuyển
+ * sự kiện lỗi quá số lần thử sang bảng outbox_dead_letters. SMTP chậm không còn giữ khóa database của nghiệp vụ.
+ */
+@Service
+public class OutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    private static final long MAX_RETRY_DELAY_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final long EMAIL_RESULT_TIMEOUT_MINUTES = 5;
+
+    @Value("${app.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.outbox.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${app.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.outbox.retry-base-delay-ms:30000}")
+    private long retryBaseDelayMs;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxDeadLetterRepository outboxDeadLetterRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private EmailConfigService emailConfigService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ScheduledExecutorService dispatcher;
+
+    // Gộp nhiều lần "đánh thức" liên tiếp thành một lượt gửi
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    @PostConstruct
+    public void init() {
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "outbox-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            int requeued = outboxEventRepository.requeueSending();
+            if (requeued > 0) {
+                logger.info("Requeued {} interrupted outbox events", requeued);
+            }
+        } catch (Exception e) {
+            logger.error("Error requeueing outbox events", e);
+        }
+        dispatcher.scheduleWithFixedDelay(this::dispatchDue, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * Ghi thông báo trong hệ thống cho người dùng (gửi sau khi transaction hiện tại commit)
+     */
+    public void publishNotification(User user, String title, String message, String type) {
+        if (user == null || user.getId() == null) {
+            return;
+        }
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(OutboxEvent.TYPE_NOTIFICATION);
+        event.setUserId(user.getId());
+        event.setSubject(title);
+        event.setBody(message);
+        event.setNotificationType(type);
+        outboxEventRepository.save(event);
+        wakeUpAfterCommit();
+    }
+
+    /**
+     * Ghi email HTML chờ gửi (gửi sau khi transaction hiện tại commit)
+     */
+    public void publishEmail(String to, String subject, String html) {
+        if (to == null || to.isBlank()) {
+            return;
+        }
+        outboxEventRepository.save(emailEvent(to, subject, html));
+        wakeUpAfterCommit();
+    }
+
+    /**
+     * Ghi cùng một email cho nhiều người nhận bằng một lần lưu theo lô
+     */
+    public int publishEmails(Collection<String> recipients, String subject, String html) {
+        List<OutboxEvent> events = new ArrayList<>();
+        for (String to : recipients) {
+            if (to != null && !to.isBlank()) {
+                events.add(emailEvent(to, subject, html));
+            }
+        }
+        if (!events.isEmpty()) {
+            outboxEventRepository.saveAll(events);
+            wakeUpAfterCommit();
+        }
+        return events.size();
+    }
+
+    public long countPending() {
+        return outboxEventRepository.countByStatus(OutboxEvent.STATUS_PENDING);
+    }
+
+    private OutboxEvent emailEvent(String to, String subject, String html) {
+        OutboxEvent event = new OutboxEvent();
+        event.setEventType(OutboxEvent.TYPE_EMAIL);
+        event.setRecipient(to.trim());
+        event.setSubject(subject);
+        event.setBody(html);
+        return event;
+    }
+
+    private void wakeUpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            dispatcher.execute(() -> {
+                wakeupPending.set(false);
+                dispatchDue();
+            });
+        }
+    }
+
+    /**
+     * Gửi các sự kiện đến hạn theo lô cho đến khi hết (chỉ chạy trên thread dispatcher)
+     */
+    private void dispatchDue() {
+        try {
+            int size = Math.max(1, batchSize);
+            while (!Thread.currentThread().isInterrupted()) {
+                List<OutboxEvent> due = outboxEventRepository.findDue(LocalDateTime.now(), PageRequest.of(0, size));
+                List<OutboxEvent> notifications = new ArrayList<>();
+                List<OutboxEvent> emails = new ArrayList<>();
+                for (OutboxEvent event : due) {
+                    if (outboxEventRepository.claim(event.getId()) == 0) {
+                        continue;
+                    }
+                    if (OutboxEvent.TYPE_NOTIFICATION.equals(event.getEventType())) {
+                        notifications.add(event);
+                    } else {
+                        emails.add(event);
+                    }
+                }
+
+                deliverNotifications(notifications);
+                deliverEmails(emails);
+
+                if (due.size() < size) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error dispatching outbox events", e);
+        }
+    }
+
+    /**
+     * Thông báo là ghi vào database: tạo thông báo và xóa sự kiện trong cùng một transaction (đúng một lần).
+     * Cả lô lỗi thì gửi lại từng sự kiện để chỉ sự kiện hỏng bị thử lại
+     */
+    private void deliverNotifications(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        try {
+            template.executeWithoutResult(status -> {
+                for (OutboxEvent event : events) {
+                    createNotification(event);
+                }
+                outboxEventRepository.deleteAllByIdInBatch(events.stream().map(OutboxEvent::getId).toList());
+            });
+        } catch (Exception batchError) {
+            for (OutboxEvent event : events) {
+                try {
+                    template.executeWithoutResult(status -> {
+                        createNotification(event);
+                        outboxEventRepository.deleteById(event.getId());
+                    });
+                } catch (Exception e) {
+                    handleFailure(event, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void createNotification(OutboxEvent event) {
+        User user = userRepository.getReferenceById(event.getUserId());
+        notificationService.createNotification(user, event.getSubject(), event.getBody(),
+                event.getNotificationType());
+    }
+
+    /**
+     * Đưa cả lô email vào MailDeliveryService (các worker gửi song song trên kết nối SMTP dùng lại), rồi chờ kết quả
+     */
+    private void deliverEmails(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            CompletableFuture<Boolean> result;
+            try {
+                result = emailConfigService.sendHtmlEmailAsync(event.getRecipient(), event.getSubject(),
+                        event.getBody());
+            } catch (Exception e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+            results.add(result);
+        }
+
+        List<Long> delivered = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            OutboxEvent event = events.get(i);
+            String error = "Email delivery failed";
+            boolean sent;
+            try {
+                sent = Boolean.TRUE.equals(results.get(i).get(EMAIL_RESULT_TIMEOUT_MINUTES, TimeUnit.MINUTES));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                sent = false;
+                error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+            } catch (TimeoutException e) {
+                sent = false;
+                error = "Email delivery timed out";
+            }
+
+            if (sent) {
+                delivered.add(event.getId());
+            } else {
+                handleFailure(event, error);
+            }
+        }
+
+        if (!delivered.isEmpty()) {
+            try {
+                outboxEventRepository.deleteAllByIdInBatch(delivered);
+            } catch (Exception e) {
+                logger.error("Error removing {} delivered outbox events", delivered.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Hẹn thử lại với thời gian chờ tăng gấp đôi mỗi lần; quá số lần thử thì chuyển sang dead-letter
+     */
+    private void handleFailure(OutboxEvent event, String error) {
+        int attempts = (event.getAttempts() != null ? event.getAttempts() : 0) + 1;
+        String lastError = truncate(error);
+        try {
+            if (attempts >= Math.max(1, maxAttempts)) {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    outboxDeadLetterRepository.save(toDeadLetter(event, attempts, lastError));
+                    outboxEventRepository.deleteById(event.getId());
+                });
+                logger.warn("Outbox event {} ({}) moved to dead letters after {} attempts: {}",
+                        event.getId(), event.getEventType(), attempts, lastError);
+                return;
+            }
+
+            long delay = Math.min(MAX_RETRY_DELAY_MS, retryBaseDelayMs * (1L << Math.min(attempts - 1, 20)));
+            outboxEventRepository.reschedule(event.getId(),
+                    LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(delay)), lastError);
+        } catch (Exception e) {
+            logger.error("Error recording outbox failure for event {}", event.getId(), e);
+        }
+    }
+
+    private OutboxDeadLetter toDeadLetter(OutboxEvent event, int attempts, String lastError) {
+        OutboxDeadLetter deadLetter = new OutboxDeadLetter();
+        deadLetter.setEventId(event.getId());
+        deadLetter.setEventType(event.getEventType());
+        deadLetter.setUserId(event.getUserId());
+        deadLetter.setRecipient(event.getRecipient());
+        deadLetter.setSubject(event.getSubject());
+        deadLetter.setBody(event.getBody());
+        deadLetter.setNotificationType(event.getNotificationType());
+        deadLetter.setAttempts(attempts);
+        deadLetter.setLastError(lastError);
+        deadLetter.setCreatedAt(event.getCreatedAt());
+        return deadLetter;
+    }
+
+    private static String truncate(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.length() > 1000 ? value.substring(0, 1000) : value;
+    }
+}
@@ -1,29 +1,375 @@
 package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.ThumbnailJob;
+import com.fpoly.shared_learning_materials.repository.ThumbnailJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Tạo thumbnail cho file PDF ở nền sau khi upload.
+ * Job được lưu trong bảng thumbnail_jobs (không mất khi khởi động lại), xử lý bởi pool worker
+ * theo số core; số trang PDF render đồng thời bị giới hạn thêm theo bộ nhớ heap.
+ * Mỗi trang được render một lần ở độ rộng lớn nhất rồi thu nhỏ ra các kích thước còn lại (JPEG, và WebP
+ * nếu JVM có ImageIO writer cho WebP).
+ */
+@Service
 public class PdfThumbnailService {
 
-    public void generateThumbnails(File pdfFile, Long fileId) throws Exception {
-        try (PDDocument document = PDDocument.load(pdfFile)) {
-            PDFRenderer pdfRenderer = new PDFRenderer(document);
-            int totalPages = Math.min(document.getNumberOfPages(), 5);
+    private static final Logger logger = LoggerFactory.getLogger(PdfThumbnailService.class);
+
+    // Thư mục thumbnail được phục vụ tĩnh dưới /uploads/thumbnails/
+    private static final String THUMBNAIL_URL_PREFIX = "/uploads/thumbnails/";
+
+    // Trang quá dài (ví dụ bản vẽ) bị cắt chiều cao để không tạo ảnh khổng lồ
+    private static final int MAX_HEIGHT_RATIO = 3;
+
+    private static final float JPEG_QUALITY = 0.8f;
+
+    @Value("${app.thumbnails.dir:src/main/resources/static/uploads/thumbnails}")
+    private String thumbnailDir;
+
+    @Value("${app.thumbnails.max-pages:5}")
+    private int maxPages;
+
+    @Value("${app.thumbnails.widths:160,320,640}")
+    private int[] widths;
+
+    // Ước lượng bộ nhớ cho một lần render trang (ảnh + dữ liệu PDFBox)
+    @Value("${app.thumbnails.render-memory-mb:96}")
+    private int renderMemoryMb;
+
+    @Value("${app.thumbnails.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.thumbnails.poll-interval-ms:30000}")
+    private long pollIntervalMs;
+
+    // Job RUNNING lâu hơn thời gian này coi như node xử lý đã dừng, được đưa lại vào hàng đợi
+    @Value("${app.thumbnails.lease-timeout-minutes:15}")
+    private long leaseTimeoutMinutes;
+
+    @Autowired
+    private ThumbnailJobRepository thumbnailJobRepository;
+
+    private ThreadPoolExecutor workers;
+
+    private ScheduledExecutorService poller;
+
+    private Semaphore renderPermits;
+
+    private int workerCount;
+
+    // Có ImageIO writer cho WebP (vd. plugin TwelveMonkeys) thì ghi thêm bản .webp
+    private boolean webpEnabled;
+
+    @PostConstruct
+    public void init() {
+        workerCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadIndex = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(workerCount * 2), r -> {
+                    Thread thread = new Thread(r, "thumbnail-worker-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+
+        long maxHeapMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+        // Dùng tối đa 1/4 heap cho render
+        int memoryPermits = (int) Math.max(1, maxHeapMb / 4 / Math.max(1, renderMemoryMb));
+        renderPermits = new Semaphore(Math.min(workerCount, memoryPermits), true);
+
+        widths = Arrays.stream(widths).filter(w -> w > 0).sorted().toArray();
+        webpEnabled = ImageIO.getImageWritersByFormatName("webp").hasNext();
+
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "thumbnail-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Thumbnail pipeline: {} workers, {} concurrent renders, widths {}",
+                workerCount, renderPermits.availablePermits(), Arrays.toString(widths));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        poller.scheduleWithFixedDelay(this::dispatchPending, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Tạo job thumbnail cho một file PDF. Gọi trong transaction tạo tài liệu;
+     * job được lưu cùng transaction và bắt đầu xử lý sau khi commit.
+     */
+    public void enqueue(Long fileId, Path pdfPath) {
+        try {
+            ThumbnailJob job = new ThumbnailJob();
+            job.setFileId(fileId);
+            job.setSourcePath(pdfPath.toString());
+            thumbnailJobRepository.save(job);
+        } catch (Exception e) {
+            logger.error("Error enqueueing thumbnail job for file: {}", fileId, e);
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    poller.execute(PdfThumbnailService.this::dispatchPending);
+                }
+            });
+        } else {
+            poller.execute(this::dispatchPending);
+        }
+    }
+
+    /**
+     * Đường dẫn thumbnail của các trang đầu (tên file {fileId}_page{n}_{width}.jpg/.webp) cho trang xem tài liệu:
+     * src là bản nhỏ nhất, srcset liệt kê mọi độ rộng; webpSrcset null nếu không ghi được WebP
+     */
+    public List<ThumbnailSources> getThumbnailSources(Long fileId) {
+        List<ThumbnailSources> pages = new ArrayList<>();
+        if (fileId == null) {
+            return pages;
+        }
+        for (int page = 1; page <= maxPages; page++) {
+            String baseName = THUMBNAIL_URL_PREFIX + fileId + "_page" + page + "_";
+            pages.add(new ThumbnailSources(page, baseName + widths[0] + ".jpg", srcset(baseName, ".jpg"),
+                    webpEnabled ? srcset(baseName, ".webp") : null));
+        }
+        return pages;
+    }
+
+    private String srcset(String baseName, String extension) {
+        StringBuilder srcset = new StringBuilder();
+        for (int width : widths) {
+            if (srcset.length() > 0) {
+                srcset.append(", ");
+            }
+            srcset.append(baseName).append(width).append(extension).append(' ').append(width).append('w');
+        }
+        return srcset.toString();
+    }
+
+    public static class ThumbnailSources {
 
-            Path outputDir = Paths.get("src/main/resources/static/uploads/thumbnails");
-            outputDir.toFile().mkdirs();
+        private final int page;
+        private final String src;
+        private final String srcset;
+        private final String webpSrcset;
+
+        ThumbnailSources(int page, String src, String srcset, String webpSrcset) {
+            this.page = page;
+            this.src = src;
+            this.srcset = srcset;
+            this.webpSrcset = webpSrcset;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public String getSrc() {
+            return src;
+        }
+
+        public String getSrcset() {
+            return srcset;
+        }
+
+        public String getWebpSrcset() {
+            return webpSrcset;
+        }
+    }
+
+    public boolean isPdf(String fileName) {
+        return fileName != null && fileName.toLowerCase().endsWith(".pdf");
+    }
+
+    /**
+     * Lấy job PENDING từ database theo số chỗ trống của pool (chỉ chạy trên thread poller)
+     */
+    private void dispatchPending() {
+        requeueStale();
+        try {
+            int capacity = workerCount + workers.getQueue().remainingCapacity() - workers.getActiveCount();
+            if (capacity <= 0) {
+                return;
+            }
+
+            List<ThumbnailJob> jobs = thumbnailJobRepository.findByStatusOrderByIdAsc(ThumbnailJob.STATUS_PENDING,
+                    PageRequest.of(0, capacity));
+            for (ThumbnailJob job : jobs) {
+                if (thumbnailJobRepository.claim(job.getId()) == 0) {
+                    continue;
+                }
+                try {
+                    workers.execute(() -> runJob(job));
+                } catch (RejectedExecutionException e) {
+                    // Pool đầy: trả job về hàng đợi (không tính lượt thử), lần poll sau sẽ lấy lại
+                    thumbnailJobRepository.release(job.getId());
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error dispatching thumbnail jobs", e);
+        }
+    }
+
+    /**
+     * Đưa lại vào hàng đợi các job RUNNING đã quá hạn (node xử lý dừng giữa chừng, kể cả node này trước khi khởi động lại)
+     */
+    private void requeueStale() {
+        try {
+            int requeued = thumbnailJobRepository.requeueStale(LocalDateTime.now().minusMinutes(leaseTimeoutMinutes));
+            if (requeued > 0) {
+                logger.info("Requeued {} stale thumbnail jobs", requeued);
+            }
+        } catch (Exception e) {
+            logger.error("Error requeueing stale thumbnail jobs", e);
+        }
+    }
+
+    private void runJob(ThumbnailJob job) {
+        try {
+            int pages = generateThumbnails(new File(job.getSourcePath()), job.getFileId());
+            thumbnailJobRepository.finish(job.getId(), ThumbnailJob.STATUS_DONE, pages, null);
+            logger.debug("Generated {} thumbnail pages for file {}", pages, job.getFileId());
+        } catch (Throwable e) {
+            // attempts đã được tăng khi claim
+            int attempts = (job.getAttempts() != null ? job.getAttempts() : 0) + 1;
+            String status = attempts >= maxAttempts ? ThumbnailJob.STATUS_FAILED : ThumbnailJob.STATUS_PENDING;
+            String message = e.getClass().getSimpleName() + ": " + e.getMessage();
+            if (message.length() > 1000) {
+                message = message.substring(0, 1000);
+            }
+            thumbnailJobRepository.finish(job.getId(), status, null, message);
+            logger.warn("Thumbnail job {} for file {} failed (attempt {}): {}",
+                    job.getId(), job.getFileId(), attempts, message);
+        }
+    }
+
+    /**
+     * Render tối đa maxPages trang đầu, trả về số trang đã tạo thumbnail.
+     * PDF được đọc với bộ đệm file tạm (không giữ toàn bộ stream trong heap).
+     */
+    public int generateThumbnails(File pdfFile, Long fileId) throws Exception {
+        Path outputDir = Paths.get(thumbnailDir);
+        outputDir.toFile().mkdirs();
+        int largestWidth = widths[widths.length - 1];
+
+        try (PDDocument document = PDDocument.load(pdfFile, MemoryUsageSetting.setupTempFileOnly())) {
+            PDFRenderer pdfRenderer = new PDFRenderer(document);
+            int totalPages = Math.min(document.getNumberOfPages(), maxPages);
 
             for (int page = 0; page < totalPages; ++page) {
-                BufferedImage bim = pdfRenderer.renderImageWithDPI(page, 100); 
-                String fileName = String.format("%d_page%d.png", fileId, page + 1);
-                File outputFile = outputDir.resolve(fileName).toFile();
-                ImageIO.write(bim, "png", outputFile);
+                PDPage pdPage = document.getPage(page);
+                float pageWidth = pdPage.getCropBox().getWidth();
+                float scale = pageWidth > 0 ? largestWidth / pageWidth : 1f;
+
+                BufferedImage rendered;
+                renderPermits.acquire();
+                try {
+                    rendered = pdfRenderer.renderImage(page, scale, ImageType.RGB);
+                } finally {
+                    renderPermits.release();
+                }
+
+                for (int width : widths) {
+                    BufferedImage image = resize(rendered, width);
+                    String baseName = String.format("%d_page%d_%d", fileId, page + 1, width);
+                    writeJpeg(image, outputDir.resolve(baseName + ".jpg").toFile());
+                    if (webpEnabled) {
+                        ImageIO.write(image, "webp", outputDir.resolve(baseName + ".webp").toFile());
+                    }
+                }
+                rendered.flush();
             }
+            return totalPages;
+        }
+    }
+
+    private BufferedImage resize(BufferedImage source, int width) {
+        int maxHeight = width * MAX_HEIGHT_RATIO;
+        int height = (int) Math.round((double) source.getHeight() * width / source.getWidth());
+        if (width == source.getWidth() && height <= maxHeight) {
+            return source;
+        }
+
+        int cropHeight = Math.min(source.getHeight(),
+                (int) Math.round((double) maxHeight * source.getWidth() / width));
+        height = Math.min(height, maxHeight);
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, 0, 0, source.getWidth(), cropHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private void writeJpeg(BufferedImage image, File outputFile) throws Exception {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        // ImageOutputStream không cắt bớt file cũ nên phải xóa trước khi ghi đè
+        outputFile.delete();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(outputFile)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
         }
     }
 }
@@ -0,0 +1,190 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tra cứu người dùng đang đăng nhập theo username, tối đa một truy vấn cho mỗi request:
+ * - Trong một request, entity User được giữ trong request attribute nên interceptor, ControllerAdvice
+ * và controller dùng chung (chỉ khi entity còn thuộc persistence context hiện tại)
+ * - Giữa các request, UserStatusInterceptor chỉ cần trạng thái/vai trò/khóa nên đọc từ cache ngắn hạn
+ * (PrincipalSnapshot), trang được truy cập nhiều không phải đọc bảng users mỗi lần
+ * Cache bị xóa khi UserService đổi trạng thái, vai trò, khóa hoặc xóa người dùng.
+ */
+@Service
+public class PrincipalCacheService {
+
+    private static final String REQUEST_ATTRIBUTE = PrincipalCacheService.class.getName() + ".users";
+
+    @Value("${app.security.principal-cache-ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${app.security.principal-cache-max-size:10000}")
+    private long maxSize;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private Cache<String, PrincipalSnapshot> snapshots;
+
+    /**
+     * Những gì cần để kiểm tra quyền truy cập; không chứa số dư (số dư luôn đọc từ entity của request)
+     */
+    public record PrincipalSnapshot(Long id, String username, String role, String status, LocalDateTime lockedUntil) {
+
+        static PrincipalSnapshot of(User user) {
+            return new PrincipalSnapshot(user.getId(), user.getUsername(), user.getRole(), user.getStatus(),
+                    user.getLockedUntil());
+        }
+
+        public boolean isLocked() {
+            return lockedUntil != null && lockedUntil.isAfter(LocalDateTime.now());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        snapshots = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "principalSnapshots");
+        }
+    }
+
+    /**
+     * User chưa bị xóa theo username; trong cùng một request chỉ truy vấn database một lần
+     */
+    public Optional<User> findByUsername(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        Map<String, User> requestUsers = requestUsers();
+        if (requestUsers != null) {
+            User cached = requestUsers.get(username);
+            if (cached != null && entityManager.contains(cached)) {
+                return Optional.of(cached);
+            }
+        }
+
+        Optional<User> user = userRepository.findByUsernameAndDeletedAtIsNull(username);
+        if (user.isPresent()) {
+            if (requestUsers != null) {
+                requestUsers.put(username, user.get());
+            }
+            snapshots.put(username, PrincipalSnapshot.of(user.get()));
+        }
+        return user;
+    }
+
+    /**
+     * User của request hiện tại (null nếu chưa đăng nhập)
+     */
+    public User getCurrentUser() {
+        String username = currentUsername();
+        return username != null ? findByUsername(username).orElse(null) : null;
+    }
+
+    /**
+     * Trạng thái của người dùng cho kiểm tra quyền, lấy từ cache nếu còn hạn
+     */
+    public Optional<PrincipalSnapshot> getSnapshot(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        PrincipalSnapshot snapshot = snapshots.getIfPresent(username);
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+        return findByUsername(username).map(PrincipalSnapshot::of);
+    }
+
+    /**
+     * Xóa cache của người dùng (gọi sau khi đổi trạng thái, vai trò, khóa...).
+     * Nếu đang trong transaction thì xóa lại sau khi commit, để request khác không nạp lại dữ liệu cũ
+     */
+    public void evictUser(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        removeUser(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeUser(userId);
+                }
+            });
+        }
+    }
+
+    public void evictAll() {
+        snapshots.invalidateAll();
+        Map<String, User> requestUsers = requestUsers();
+        if (requestUsers != null) {
+            requestUsers.clear();
+        }
+    }
+
+    private void removeUser(Long userId) {
+        snapshots.asMap().values().removeIf(snapshot -> userId.equals(snapshot.id()));
+        Map<String, User> requestUsers = requestUsers();
+        if (requestUsers != null) {
+            requestUsers.values().removeIf(user -> userId.equals(user.getId()));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, User> requestUsers() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, User> users = (Map<String, User>) attributes.getAttribute(REQUEST_ATTRIBUTE,
+                RequestAttributes.SCOPE_REQUEST);
+        if (users == null) {
+            users = new HashMap<>();
+            attributes.setAttribute(REQUEST_ATTRIBUTE, users, RequestAttributes.SCOPE_REQUEST);
+        }
+        return users;
+    }
+
+    private static String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || "anonymousUser".equals(authentication.getName())) {
+            return null;
+        }
+        return authentication.getName();
+    }
+}
@@ -0,0 +1,193 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Comment;
+import com.fpoly.shared_learning_materials.domain.DocumentRatingStats;
+import com.fpoly.shared_learning_materials.repository.DocumentRatingStatsRepository;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lưu tổng hợp đánh giá theo tài liệu (count, sum, histogram 1-5 sao) trong bảng document_rating_stats.
+ * Được cộng/trừ mỗi khi một bình luận bắt đầu hoặc thôi được tính (thêm, ẩn, hiện, xóa),
+ * để trang danh sách chỉ cần một truy vấn cho cả trang thay vì tải toàn bộ bình luận của từng tài liệu.
+ */
+@Service
+public class RatingAggregateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RatingAggregateService.class);
+
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    @Autowired
+    private DocumentRatingStatsRepository documentRatingStatsRepository;
+
+    /**
+     * Lần chạy đầu tiên (bảng trống) thì tính lại toàn bộ từ bảng comments
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void onApplicationReady() {
+        try {
+            if (documentRatingStatsRepository.count() == 0) {
+                rebuildInternal();
+            }
+        } catch (Exception e) {
+            logger.error("Error initializing rating aggregates", e);
+        }
+    }
+
+    /**
+     * Tính lại toàn bộ tổng hợp đánh giá bằng một truy vấn GROUP BY
+     */
+    @Transactional
+    public void rebuild() {
+        rebuildInternal();
+    }
+
+    private void rebuildInternal() {
+        long start = System.currentTimeMillis();
+        documentRatingStatsRepository.deleteAllInBatch();
+
+        List<DocumentRatingStats> rows = new ArrayList<>();
+        for (Object[] row : documentRatingStatsRepository.aggregateActiveComments()) {
+            DocumentRatingStats stats = new DocumentRatingStats();
+            stats.setDocumentId((Long) row[0]);
+            stats.setRatingCount(toLong(row[1]));
+            stats.setRatingSum(toLong(row[2]));
+            stats.setStar1Count(toLong(row[3]));
+            stats.setStar2Count(toLong(row[4]));
+            stats.setStar3Count(toLong(row[5]));
+            stats.setStar4Count(toLong(row[6]));
+            stats.setStar5Count(toLong(row[7]));
+            rows.add(stats);
+        }
+        documentRatingStatsRepository.saveAll(rows);
+        logger.info("Rating aggregates rebuilt for {} documents in {} ms",
+                rows.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Bình luận có được tính vào đánh giá hay không (cùng điều kiện với trang chi tiết)
+     */
+    public static boolean isCounted(String status, LocalDateTime deletedAt) {
+        return "active".equals(status) && deletedAt == null;
+    }
+
+    public static boolean isCounted(Comment comment) {
+        return isCounted(comment.getStatus(), comment.getDeletedAt());
+    }
+
+    /**
+     * Ghi nhận bình luận mới đã lưu
+     */
+    @Transactional
+    public void commentAdded(Comment comment) {
+        if (isCounted(comment)) {
+            applyDelta(comment.getDocument().getId(), comment.getRating(), 1);
+        }
+    }
+
+    /**
+     * Ghi nhận thay đổi trạng thái bình luận; chỉ cập nhật khi bình luận chuyển giữa "được tính" và "không được tính"
+     */
+    @Transactional
+    public void commentChanged(Long documentId, Integer rating, boolean wasCounted, boolean nowCounted) {
+        if (wasCounted == nowCounted) {
+            return;
+        }
+        applyDelta(documentId, rating, nowCounted ? 1 : -1);
+    }
+
+    @Transactional
+    public void deleteStats(Long documentId) {
+        if (documentRatingStatsRepository.existsById(documentId)) {
+            documentRatingStatsRepository.deleteById(documentId);
+        }
+    }
+
+    private void applyDelta(Long documentId, Integer rating, int sign) {
+        if (documentId == null) {
+            return;
+        }
+        long[] stars = new long[6];
+        if (rating != null && rating >= 1 && rating <= 5) {
+            stars[rating] = sign;
+        }
+        long sumDelta = rating != null ? (long) rating * sign : 0L;
+
+        int updated = documentRatingStatsRepository.applyDelta(documentId, sign, sumDelta,
+                stars[1], stars[2], stars[3], stars[4], stars[5]);
+        if (updated == 0 && sign > 0) {
+            // Đánh giá đầu tiên của tài liệu: tạo dòng (an toàn khi đồng thời) rồi cộng lại
+            documentRatingStatsRepository.insertIfMissing(documentId);
+            documentRatingStatsRepository.applyDelta(documentId, sign, sumDelta,
+                    stars[1], stars[2], stars[3], stars[4], stars[5]);
+        }
+    }
+
+    /**
+     * Lấy tổng hợp đánh giá cho cả một trang tài liệu bằng một truy vấn.
+     * Danh sách id dài được chia nhỏ (SQL Server giới hạn 2100 tham số mỗi truy vấn)
+     */
+    public Map<Long, DocumentRatingStats> getStats(Collection<Long> documentIds) {
+        Map<Long, DocumentRatingStats> result = new HashMap<>();
+        if (documentIds == null || documentIds.isEmpty()) {
+            return result;
+        }
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(documentIds));
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+            for (DocumentRatingStats stats : documentRatingStatsRepository.findAllById(chunk)) {
+                result.put(stats.getDocumentId(), stats);
+            }
+        }
+        return result;
+    }
+
+    public DocumentRatingStats getStats(Long documentId) {
+        return documentRatingStatsRepository.findById(documentId).orElse(null);
+    }
+
+    /**
+     * Điểm trung bình làm tròn 1 chữ số (bình luận không chấm điểm tính là 0)
+     */
+    public static double averageRating(DocumentRatingStats stats) {
+        if (stats == null || stats.getRatingCount() <= 0) {
+            return 0.0;
+        }
+        double average = (double) stats.getRatingSum() / stats.getRatingCount();
+        return Math.round(average * 10.0) / 10.0;
+    }
+
+    /**
+     * Phần trăm từng mức sao ("1".."5"), rỗng nếu chưa có đánh giá
+     */
+    public static Map<String, Integer> ratingDistribution(DocumentRatingStats stats) {
+        Map<String, Integer> distribution = new HashMap<>();
+        if (stats == null || stats.getRatingCount() <= 0) {
+            return distribution;
+        }
+        for (int i = 1; i <= 5; i++) {
+            int percentage = (int) Math.round((double) stats.getStarCount(i) / stats.getRatingCount() * 100);
+            distribution.put(String.valueOf(i), percentage);
+        }
+        return distribution;
+    }
+
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+}
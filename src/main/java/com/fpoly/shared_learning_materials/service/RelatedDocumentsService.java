@@ -0,0 +1,344 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Document;
+import com.fpoly.shared_learning_materials.domain.DocumentCategory;
+import com.fpoly.shared_learning_materials.domain.DocumentTag;
+import com.fpoly.shared_learning_materials.repository.DocumentCategoryRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentRepository;
+import com.fpoly.shared_learning_materials.repository.DocumentTagRepository;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục đồng xuất hiện danh mục/tag để tìm tài liệu liên quan mà không quét bảng documents.
+ * Mỗi danh mục/tag là một "feature" mã hóa thành long: danh mục = id << 1, tag = (id << 1) | 1.
+ * Điểm giống nhau giữ nguyên như calculateSimilarityScore: trùng danh mục +3, trùng tag +1.
+ */
+@Service
+public class RelatedDocumentsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelatedDocumentsService.class);
+
+    private static final int CATEGORY_SCORE = 3;
+    private static final int TAG_SCORE = 1;
+
+    // Số tài liệu liên quan được tính sẵn cho mỗi tài liệu
+    private static final int MAX_CACHED_NEIGHBOURS = 20;
+
+    private static final long[] EMPTY = new long[0];
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentCategoryRepository documentCategoryRepository;
+
+    @Autowired
+    private DocumentTagRepository documentTagRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // documentId -> các feature (đã sắp xếp)
+    private final Long2ObjectOpenHashMap<long[]> documentFeatures = new Long2ObjectOpenHashMap<>();
+
+    // feature -> các documentId có feature đó
+    private final Long2ObjectOpenHashMap<LongOpenHashSet> featureDocuments = new Long2ObjectOpenHashMap<>();
+
+    // documentId -> top neighbours đã tính (xóa toàn bộ khi index thay đổi)
+    private final Long2ObjectOpenHashMap<long[]> neighbourCache = new Long2ObjectOpenHashMap<>();
+
+    private volatile boolean ready = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Dựng lại chỉ mục từ các cặp (document, category) và (document, tag) của tài liệu chưa xóa
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            documentFeatures.clear();
+            featureDocuments.clear();
+            clearNeighbourCache();
+
+            Long2ObjectOpenHashMap<LongArrayList> features = new Long2ObjectOpenHashMap<>();
+            for (Long documentId : documentRepository.findActiveDocumentIds()) {
+                features.put(documentId.longValue(), new LongArrayList());
+            }
+            for (Object[] row : documentCategoryRepository.findActiveDocumentCategoryIdPairs()) {
+                LongArrayList list = features.get(((Long) row[0]).longValue());
+                if (list != null) {
+                    list.add(categoryFeature((Long) row[1]));
+                }
+            }
+            for (Object[] row : documentTagRepository.findActiveDocumentTagIdPairs()) {
+                LongArrayList list = features.get(((Long) row[0]).longValue());
+                if (list != null) {
+                    list.add(tagFeature((Long) row[1]));
+                }
+            }
+
+            for (Long2ObjectMap.Entry<LongArrayList> entry : features.long2ObjectEntrySet()) {
+                putInternal(entry.getLongKey(), toSortedArray(entry.getValue()));
+            }
+
+            ready = true;
+            logger.info("Related documents index rebuilt: {} documents, {} features in {} ms",
+                    documentFeatures.size(), featureDocuments.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Error rebuilding related documents index", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cập nhật danh mục/tag của một tài liệu. Gọi bên trong transaction ghi tài liệu;
+     * chỉ áp dụng vào chỉ mục sau khi commit.
+     */
+    public void indexDocument(Long documentId) {
+        try {
+            Document document = documentRepository.findById(documentId).orElse(null);
+            if (document == null || document.getDeletedAt() != null) {
+                removeDocument(documentId);
+                return;
+            }
+
+            LongArrayList list = new LongArrayList();
+            for (DocumentCategory dc : documentCategoryRepository.findByDocumentId(documentId)) {
+                list.add(categoryFeature(dc.getId().getCategoryId()));
+            }
+            for (DocumentTag dt : documentTagRepository.findByDocumentId(documentId)) {
+                list.add(tagFeature(dt.getId().getTagId()));
+            }
+            long[] sortedFeatures = toSortedArray(list);
+
+            runAfterCommit(() -> {
+                lock.writeLock().lock();
+                try {
+                    putInternal(documentId, sortedFeatures);
+                    clearNeighbourCache();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error indexing related documents for document: {}", documentId, e);
+        }
+    }
+
+    public void removeDocument(Long documentId) {
+        runAfterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeInternal(documentId);
+                clearNeighbourCache();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // Gọi khi danh mục bị xóa vĩnh viễn (mọi liên kết DocumentCategory của nó bị xóa)
+    public void removeCategory(Long categoryId) {
+        runAfterCommit(() -> removeFeature(categoryFeature(categoryId)));
+    }
+
+    // Gọi khi tag bị xóa vĩnh viễn (mọi liên kết DocumentTag của nó bị xóa)
+    public void removeTag(Long tagId) {
+        runAfterCommit(() -> removeFeature(tagFeature(tagId)));
+    }
+
+    /**
+     * Lấy id các tài liệu liên quan nhất, sắp xếp theo điểm giảm dần (cùng điểm thì id nhỏ trước).
+     * Tài liệu không có danh mục/tag chung (điểm 0) không được trả về.
+     */
+    public long[] getRelatedDocumentIds(Long documentId, int limit) {
+        if (limit <= 0) {
+            return EMPTY;
+        }
+
+        long[] neighbours;
+        lock.readLock().lock();
+        try {
+            synchronized (neighbourCache) {
+                neighbours = neighbourCache.get(documentId.longValue());
+            }
+            if (neighbours == null || (neighbours.length < limit && limit > MAX_CACHED_NEIGHBOURS)) {
+                neighbours = computeNeighbours(documentId, Math.max(limit, MAX_CACHED_NEIGHBOURS));
+                if (limit <= MAX_CACHED_NEIGHBOURS) {
+                    synchronized (neighbourCache) {
+                        neighbourCache.put(documentId.longValue(), neighbours);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return neighbours.length <= limit ? neighbours : Arrays.copyOf(neighbours, limit);
+    }
+
+    private long[] computeNeighbours(long documentId, int k) {
+        long[] features = documentFeatures.get(documentId);
+        if (features == null || features.length == 0) {
+            return EMPTY;
+        }
+
+        Long2IntOpenHashMap scores = new Long2IntOpenHashMap();
+        for (long feature : features) {
+            LongOpenHashSet docs = featureDocuments.get(feature);
+            if (docs == null) {
+                continue;
+            }
+            int weight = isTagFeature(feature) ? TAG_SCORE : CATEGORY_SCORE;
+            LongIterator it = docs.iterator();
+            while (it.hasNext()) {
+                long other = it.nextLong();
+                if (other != documentId) {
+                    scores.addTo(other, weight);
+                }
+            }
+        }
+
+        // Chọn top-k bằng mảng có thứ tự (k nhỏ nên chèn tuyến tính là đủ nhanh)
+        long[] topIds = new long[k];
+        int[] topScores = new int[k];
+        int size = 0;
+        for (Long2IntMap.Entry entry : scores.long2IntEntrySet()) {
+            long id = entry.getLongKey();
+            int score = entry.getIntValue();
+            if (size == k && !ranksBefore(score, id, topScores[k - 1], topIds[k - 1])) {
+                continue;
+            }
+            int pos = size < k ? size++ : k - 1;
+            while (pos > 0 && ranksBefore(score, id, topScores[pos - 1], topIds[pos - 1])) {
+                topIds[pos] = topIds[pos - 1];
+                topScores[pos] = topScores[pos - 1];
+                pos--;
+            }
+            topIds[pos] = id;
+            topScores[pos] = score;
+        }
+
+        return Arrays.copyOf(topIds, size);
+    }
+
+    private boolean ranksBefore(int score, long id, int otherScore, long otherId) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+
+    private void putInternal(long documentId, long[] features) {
+        removeInternal(documentId);
+        documentFeatures.put(documentId, features);
+        for (long feature : features) {
+            LongOpenHashSet docs = featureDocuments.get(feature);
+            if (docs == null) {
+                docs = new LongOpenHashSet();
+                featureDocuments.put(feature, docs);
+            }
+            docs.add(documentId);
+        }
+    }
+
+    private void removeInternal(long documentId) {
+        long[] features = documentFeatures.remove(documentId);
+        if (features == null) {
+            return;
+        }
+        for (long feature : features) {
+            LongOpenHashSet docs = featureDocuments.get(feature);
+            if (docs != null) {
+                docs.remove(documentId);
+                if (docs.isEmpty()) {
+                    featureDocuments.remove(feature);
+                }
+            }
+        }
+    }
+
+    private void removeFeature(long feature) {
+        lock.writeLock().lock();
+        try {
+            LongOpenHashSet docs = featureDocuments.remove(feature);
+            if (docs == null) {
+                return;
+            }
+            LongIterator it = docs.iterator();
+            while (it.hasNext()) {
+                long documentId = it.nextLong();
+                long[] features = documentFeatures.get(documentId);
+                if (features != null) {
+                    documentFeatures.put(documentId, Arrays.stream(features)
+                            .filter(f -> f != feature)
+                            .toArray());
+                }
+            }
+            clearNeighbourCache();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clearNeighbourCache() {
+        synchronized (neighbourCache) {
+            neighbourCache.clear();
+        }
+    }
+
+    private static long categoryFeature(Long categoryId) {
+        return categoryId << 1;
+    }
+
+    private static long tagFeature(Long tagId) {
+        return (tagId << 1) | 1L;
+    }
+
+    private static boolean isTagFeature(long feature) {
+        return (feature & 1L) == 1L;
+    }
+
+    private static long[] toSortedArray(LongArrayList list) {
+        long[] array = list.toLongArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
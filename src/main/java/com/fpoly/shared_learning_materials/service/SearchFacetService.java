@@ -0,0 +1,221 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.repository.DocumentRatingStatsRepository;
+import com.fpoly.shared_learning_materials.service.CategoryTreeService.CategoryNode;
+import com.fpoly.shared_learning_materials.util.SearchTextUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Đếm facet cho thanh bộ lọc của trang tìm kiếm (định dạng, danh mục, giá, đánh giá, thời gian)
+ * trong một lượt duyệt qua các tài liệu khớp từ khóa của search index.
+ * Số đếm danh mục được cộng dồn lên các danh mục cha (tài liệu thuộc danh mục con cũng được tính cho cha).
+ * Kết quả cache theo từ khóa đã chuẩn hóa và phiên bản của index, nên index thay đổi thì cache tự hết hiệu lực;
+ * đánh giá thay đổi được cập nhật sau TTL.
+ */
+@Service
+public class SearchFacetService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SearchFacetService.class);
+
+    // Vị trí trong mảng đếm của các facet có số nhóm cố định
+    private static final int FREE = 0;
+    private static final int PAID = 1;
+    private static final int RATING_4 = 2;
+    private static final int RATING_3 = 3;
+    private static final int RATED = 4;
+    private static final int WEEK = 5;
+    private static final int MONTH = 6;
+    private static final int YEAR = 7;
+    private static final int TOTAL = 8;
+    private static final int COUNTER_SIZE = 9;
+
+    @Value("${app.search.facet-cache-ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${app.search.facet-cache-max-size:500}")
+    private long maxSize;
+
+    @Autowired
+    private DocumentSearchIndexService documentSearchIndexService;
+
+    @Autowired
+    private CategoryTreeService categoryTreeService;
+
+    @Autowired
+    private DocumentRatingStatsRepository documentRatingStatsRepository;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, SearchFacets> cache;
+
+    /**
+     * Số đếm của từng nhóm facet, khóa trùng với giá trị tham số lọc của trang tìm kiếm
+     */
+    public record SearchFacets(Map<String, Long> formatCounts, Map<String, Long> categoryCounts,
+            Map<String, Long> priceCounts, Map<String, Long> ratingCounts, Map<String, Long> timeCounts) {
+
+        static SearchFacets empty() {
+            return new SearchFacets(Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(),
+                    Collections.emptyMap(), Collections.emptyMap());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "searchFacets");
+        }
+    }
+
+    public SearchFacets getFacets(String q) {
+        if (!documentSearchIndexService.isReady()) {
+            // Index đang dựng lại (lúc khởi động): không cache kết quả rỗng
+            return SearchFacets.empty();
+        }
+        String key = documentSearchIndexService.getVersion() + ":" + normalize(q);
+        return cache.get(key, k -> compute(q));
+    }
+
+    // Token đã bỏ dấu, loại trùng và sắp xếp: "Java  cơ bản" và "co ban java" dùng chung một kết quả
+    private static String normalize(String q) {
+        return String.join(" ", new TreeSet<>(SearchTextUtils.tokenize(q)));
+    }
+
+    private SearchFacets compute(String q) {
+        long start = System.currentTimeMillis();
+        CategoryTreeService.Snapshot tree = categoryTreeService.getSnapshot();
+        Long2DoubleOpenHashMap averageRatings = loadAverageRatings();
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime weekAgo = now.minusDays(7);
+        LocalDateTime monthAgo = now.minusDays(30);
+        LocalDateTime yearAgo = now.minusYears(1);
+
+        Map<String, Long> formatCounts = new HashMap<>();
+        Map<String, Long> categoryCounts = new HashMap<>();
+        // slug -> slug của chính nó và mọi danh mục tổ tiên
+        Map<String, List<String>> ancestorSlugs = new HashMap<>();
+        long[] counters = new long[COUNTER_SIZE];
+
+        boolean visited = documentSearchIndexService.forEachMatch(q, (documentId, format, isFree, createdAt, slugs) -> {
+            counters[TOTAL]++;
+            if (format != null) {
+                formatCounts.merge(format, 1L, Long::sum);
+            }
+            counters[isFree ? FREE : PAID]++;
+
+            if (createdAt != null) {
+                if (!createdAt.isBefore(weekAgo)) {
+                    counters[WEEK]++;
+                }
+                if (!createdAt.isBefore(monthAgo)) {
+                    counters[MONTH]++;
+                }
+                if (!createdAt.isBefore(yearAgo)) {
+                    counters[YEAR]++;
+                }
+            }
+
+            if (averageRatings.containsKey(documentId.longValue())) {
+                double average = averageRatings.get(documentId.longValue());
+                counters[RATED]++;
+                if (average >= 4) {
+                    counters[RATING_4]++;
+                }
+                if (average >= 3) {
+                    counters[RATING_3]++;
+                }
+            }
+
+            if (slugs.size() == 1) {
+                for (String slug : ancestorSlugs.computeIfAbsent(slugs.iterator().next(), s -> pathSlugs(tree, s))) {
+                    categoryCounts.merge(slug, 1L, Long::sum);
+                }
+            } else if (!slugs.isEmpty()) {
+                // Nhiều danh mục chung một nhánh: mỗi danh mục cha chỉ đếm tài liệu một lần
+                Set<String> counted = new HashSet<>();
+                for (String categorySlug : slugs) {
+                    counted.addAll(ancestorSlugs.computeIfAbsent(categorySlug, s -> pathSlugs(tree, s)));
+                }
+                for (String slug : counted) {
+                    categoryCounts.merge(slug, 1L, Long::sum);
+                }
+            }
+        });
+        if (!visited) {
+            return SearchFacets.empty();
+        }
+
+        Map<String, Long> priceCounts = new HashMap<>();
+        priceCounts.put("free", counters[FREE]);
+        priceCounts.put("paid", counters[PAID]);
+
+        Map<String, Long> ratingCounts = new HashMap<>();
+        ratingCounts.put("4", counters[RATING_4]);
+        ratingCounts.put("3", counters[RATING_3]);
+        ratingCounts.put("any", counters[RATED]);
+
+        Map<String, Long> timeCounts = new HashMap<>();
+        timeCounts.put("week", counters[WEEK]);
+        timeCounts.put("month", counters[MONTH]);
+        timeCounts.put("year", counters[YEAR]);
+        timeCounts.put("any", counters[TOTAL]);
+
+        logger.debug("Search facets computed for {} documents in {} ms", counters[TOTAL],
+                System.currentTimeMillis() - start);
+        return new SearchFacets(formatCounts, categoryCounts, priceCounts, ratingCounts, timeCounts);
+    }
+
+    private static List<String> pathSlugs(CategoryTreeService.Snapshot tree, String slug) {
+        CategoryNode category = tree.findBySlug(slug);
+        if (category == null) {
+            return List.of(slug);
+        }
+        List<String> slugs = new ArrayList<>();
+        for (CategoryNode node : tree.getPath(category.id())) {
+            if (node.slug() != null) {
+                slugs.add(node.slug());
+            }
+        }
+        return slugs;
+    }
+
+    // Điểm trung bình của các tài liệu đã có đánh giá (một truy vấn trên bảng tổng hợp)
+    private Long2DoubleOpenHashMap loadAverageRatings() {
+        List<Object[]> rows = documentRatingStatsRepository.findRatedDocuments();
+        Long2DoubleOpenHashMap averages = new Long2DoubleOpenHashMap(rows.size());
+        for (Object[] row : rows) {
+            long count = ((Number) row[1]).longValue();
+            long sum = ((Number) row[2]).longValue();
+            averages.put(((Long) row[0]).longValue(), (double) sum / count);
+        }
+        return averages;
+    }
+}
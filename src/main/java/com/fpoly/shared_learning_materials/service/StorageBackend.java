@@ -0,0 +1,46 @@
+package com.fpoly.shared_learning_materials.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Nơi lưu file (đĩa local, Azure Blob, ...). Mỗi file được định danh bằng URL do store() trả về.
+ * Backend được chọn một lần khi khởi động (StorageConfig) thay vì kiểm tra profile trong từng thao tác
+ */
+public interface StorageBackend {
+
+    /**
+     * Tên hiển thị (health check, log)
+     */
+    String getName();
+
+    /**
+     * URL có thuộc backend này không
+     */
+    boolean handles(String fileUrl);
+
+    /**
+     * Lưu nội dung dưới một tên mới (giữ phần mở rộng của tên gốc), trả về URL của file
+     */
+    String store(InputStream data, long size, String originalFileName, String contentType) throws IOException;
+
+    InputStream open(String fileUrl) throws IOException;
+
+    boolean delete(String fileUrl);
+
+    boolean exists(String fileUrl);
+
+    /**
+     * Kích thước file, -1 nếu không tồn tại
+     */
+    long size(String fileUrl);
+
+    boolean testConnection();
+
+    /**
+     * URL tải có thời hạn (vd. SAS của Azure); backend không hỗ trợ thì trả lại URL gốc
+     */
+    default String secureUrl(String fileUrl, int expirationMinutes) {
+        return fileUrl;
+    }
+}
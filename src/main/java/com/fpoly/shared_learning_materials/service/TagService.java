@@ -28,6 +28,9 @@ public class TagService {
     @Autowired
     private DocumentTagRepository documentTagRepository;
 
+    @Autowired
+    private RelatedDocumentsService relatedDocumentsService;
+
     public List<TagDTO> getFilteredTags(String filter) {
         LocalDateTime startDate = getStartDateForFilter(filter == null ? "month" : filter);
         List<Tag> tags;
@@ -267,6 +270,7 @@ public class TagService {
 
             // Xóa tất cả liên kết với documents trước
             documentTagRepository.deleteByTagId(id);
+            relatedDocumentsService.removeTag(id);
             System.out.println("Deleted all document-tag relationships for tag: " + id);
 
             // Xóa tag khỏi database
@@ -2,11 +2,11 @@ package com.fpoly.shared_learning_materials.service;
 
 import com.fpoly.shared_learning_materials.domain.Transaction;
 import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.domain.UserBalanceLedger;
 import com.fpoly.shared_learning_materials.domain.TransactionDetail;
 import com.fpoly.shared_learning_materials.repository.TransactionRepository;
 import com.fpoly.shared_learning_materials.repository.UserRepository;
 import com.fpoly.shared_learning_materials.repository.TransactionDetailRepository;
-import com.fpoly.shared_learning_materials.service.NotificationService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -19,7 +19,9 @@ import java.util.List;
 import java.util.Optional;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -28,6 +30,9 @@ public class TransactionService {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private CodeGeneratorService codeGeneratorService;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -35,7 +40,14 @@ public class TransactionService {
     private TransactionDetailRepository transactionDetailRepository;
 
     @Autowired
-    private NotificationService notificationService;
+    private BalanceLedgerService balanceLedgerService;
+
+    @Autowired
+    private CoinBalanceService coinBalanceService;
+
+    @Autowired
+    private OutboxService outboxService;
+
 
     /**
      * Lấy tất cả giao dịch với phân trang
@@ -114,7 +126,15 @@ public class TransactionService {
      */
     public Transaction updateTransaction(Transaction transaction) {
         validateTransaction(transaction);
-        return transactionRepository.save(transaction);
+        // Admin có thể đổi cả người dùng: tính lại sổ cái cho người cũ lẫn người mới
+        Set<Long> userIds = new HashSet<>();
+        if (transaction.getId() != null) {
+            addUserId(userIds, transactionRepository.findStoredUserIdById(transaction.getId()));
+        }
+        Transaction saved = transactionRepository.saveAndFlush(transaction);
+        addUserId(userIds, saved.getUser() != null ? saved.getUser().getId() : null);
+        rebuildLedgers(userIds);
+        return saved;
     }
 
     /**
@@ -125,7 +145,8 @@ public class TransactionService {
         if (transactionOpt.isPresent()) {
             Transaction transaction = transactionOpt.get();
             transaction.setDeletedAt(LocalDateTime.now());
-            transactionRepository.save(transaction);
+            transactionRepository.saveAndFlush(transaction);
+            rebuildLedgers(userIdsOf(List.of(transaction)));
         }
     }
 
@@ -135,7 +156,8 @@ public class TransactionService {
     public void deleteTransactions(List<Long> ids) {
         List<Transaction> transactions = transactionRepository.findAllById(ids);
         transactions.forEach(t -> t.setDeletedAt(LocalDateTime.now()));
-        transactionRepository.saveAll(transactions);
+        transactionRepository.saveAllAndFlush(transactions);
+        rebuildLedgers(userIdsOf(transactions));
     }
 
     /**
@@ -144,7 +166,29 @@ public class TransactionService {
     public void updateTransactionsStatus(List<Long> ids, Transaction.TransactionStatus status) {
         List<Transaction> transactions = transactionRepository.findAllById(ids);
         transactions.forEach(t -> t.setStatus(status));
-        transactionRepository.saveAll(transactions);
+        transactionRepository.saveAllAndFlush(transactions);
+        rebuildLedgers(userIdsOf(transactions));
+    }
+
+    // Sửa tay không biết trạng thái trước đó của sổ cái: tính lại từ lịch sử trong cùng transaction
+    private void rebuildLedgers(Set<Long> userIds) {
+        for (Long userId : userIds) {
+            balanceLedgerService.rebuildUser(userId);
+        }
+    }
+
+    private static Set<Long> userIdsOf(List<Transaction> transactions) {
+        Set<Long> userIds = new HashSet<>();
+        for (Transaction transaction : transactions) {
+            addUserId(userIds, transaction.getUser() != null ? transaction.getUser().getId() : null);
+        }
+        return userIds;
+    }
+
+    private static void addUserId(Set<Long> userIds, Long userId) {
+        if (userId != null) {
+            userIds.add(userId);
+        }
     }
 
     /**
@@ -158,14 +202,7 @@ public class TransactionService {
      * Tạo mã giao dịch tự động
      */
     public String generateTransactionCode() {
-        String prefix = "TXN";
-        int counter = 1;
-        String code;
-        do {
-            code = prefix + String.format("%06d", counter);
-            counter++;
-        } while (existsByCode(code));
-        return code;
+        return codeGeneratorService.nextTransactionCode();
     }
 
     /**
@@ -240,47 +277,22 @@ public class TransactionService {
     public Map<String, Object> getBalanceFlowStats(User user) {
         Map<String, Object> stats = new HashMap<>();
 
+        // Một lần đọc sổ cái số dư thay vì 7 truy vấn SUM trên bảng transactions
+        UserBalanceLedger ledger = balanceLedgerService.getLedger(user.getId());
+
         // Tổng nạp xu (PURCHASE - COMPLETED) - chỉ tính từ giao dịch nạp xu có
         // TransactionDetail
-        BigDecimal totalRecharge = getTotalCoinsPurchasedByUser(user.getId());
-        if (totalRecharge == null)
-            totalRecharge = BigDecimal.ZERO;
-
-        // Tổng chi xu (PURCHASE - COMPLETED) - chỉ tính từ giao dịch mua tài liệu không
-        // có TransactionDetail
-        BigDecimal totalSpent = getTotalCoinsSpentOnDocuments(user.getId());
-        if (totalSpent == null)
-            totalSpent = BigDecimal.ZERO;
-
-        // Tổng rút xu (WITHDRAWAL - COMPLETED)
-        BigDecimal totalWithdrawal = getUserTotalByType(user, Transaction.TransactionType.WITHDRAWAL,
-                Transaction.TransactionStatus.COMPLETED);
-        if (totalWithdrawal == null)
-            totalWithdrawal = BigDecimal.ZERO;
-
-        // Tổng rút xu đang chờ (WITHDRAWAL - PENDING)
-        BigDecimal pendingWithdrawal = getUserTotalByType(user, Transaction.TransactionType.WITHDRAWAL,
-                Transaction.TransactionStatus.PENDING);
-        if (pendingWithdrawal == null)
-            pendingWithdrawal = BigDecimal.ZERO;
-
-        // Tổng rút xu đang xử lý (WITHDRAWAL - PROCESSING)
-        BigDecimal processingWithdrawal = getUserTotalByType(user, Transaction.TransactionType.WITHDRAWAL,
-                Transaction.TransactionStatus.PROCESSING);
-        if (processingWithdrawal == null)
-            processingWithdrawal = BigDecimal.ZERO;
-
-        // Tổng rút xu bị từ chối (WITHDRAWAL - FAILED)
-        BigDecimal failedWithdrawal = getUserTotalByType(user, Transaction.TransactionType.WITHDRAWAL,
-                Transaction.TransactionStatus.FAILED);
-        if (failedWithdrawal == null)
-            failedWithdrawal = BigDecimal.ZERO;
-
-        // Tổng rút xu bị hủy (WITHDRAWAL - CANCELLED)
-        BigDecimal cancelledWithdrawal = getUserTotalByType(user, Transaction.TransactionType.WITHDRAWAL,
-                Transaction.TransactionStatus.CANCELLED);
-        if (cancelledWithdrawal == null)
-            cancelledWithdrawal = BigDecimal.ZERO;
+        BigDecimal totalRecharge = ledger.getTotalRecharge();
+
+        // Tổng chi xu (PURCHASE - COMPLETED) - chỉ tính từ giao dịch mua tài liệu
+        BigDecimal totalSpent = ledger.getTotalSpent();
+
+        // Tổng rút xu theo trạng thái (COMPLETED, PENDING, PROCESSING, FAILED, CANCELLED)
+        BigDecimal totalWithdrawal = ledger.getWithdrawalCompleted();
+        BigDecimal pendingWithdrawal = ledger.getWithdrawalPending();
+        BigDecimal processingWithdrawal = ledger.getWithdrawalProcessing();
+        BigDecimal failedWithdrawal = ledger.getWithdrawalFailed();
+        BigDecimal cancelledWithdrawal = ledger.getWithdrawalCancelled();
 
         // Số dư hiện tại
         BigDecimal currentBalance = user.getCoinBalance() != null ? user.getCoinBalance() : BigDecimal.ZERO;
@@ -353,11 +365,8 @@ public class TransactionService {
                 }
             }
 
-            // Update user's coin balance and statistics
-            if (user.getCoinBalance() == null) {
-                user.setCoinBalance(BigDecimal.ZERO);
-            }
-            user.setCoinBalance(user.getCoinBalance().add(totalCoinsReceived));
+            // Update user's coin balance (atomic increment) and statistics
+            coinBalanceService.credit(user.getId(), totalCoinsReceived);
 
             if (user.getTotalSpent() == null) {
                 user.setTotalSpent(BigDecimal.ZERO);
@@ -375,12 +384,13 @@ public class TransactionService {
             transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
             transaction.setUpdatedAt(LocalDateTime.now());
             transactionRepository.save(transaction);
+            balanceLedgerService.recordRecharge(user.getId(), totalCoinsReceived);
 
             // Notify user
             String title = "Nạp xu thành công";
             String message = "Bạn đã nạp thành công " + totalCoinsReceived + " xu. Mã giao dịch: "
                     + transaction.getCode();
-            notificationService.createNotification(user, title, message, "transaction");
+            outboxService.publishNotification(user, title, message, "transaction");
 
         } catch (Exception e) {
             // Rollback transaction status
@@ -0,0 +1,199 @@
+package com.fpoly.shared_learning_materials.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpSessionBindingEvent;
+import jakarta.servlet.http.HttpSessionBindingListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Vùng lưu tạm file của wizard đăng tải tài liệu.
+ * - Bước 1 ghi file multipart thẳng xuống thư mục staging (transferTo, thường chỉ là đổi tên file tạm của multipart),
+ * session chỉ giữ StagedUpload (id, tên file, kích thước) thay vì toàn bộ nội dung file
+ * - Bước 3 chuyển (move) file sang thư mục tài liệu, không đọc lại nội dung; transaction rollback thì trả file về staging
+ * - File bị bỏ dở được xóa khi session hết hạn/bị hủy, và định kỳ theo TTL
+ */
+@Service
+public class UploadStagingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadStagingService.class);
+
+    private static final String STAGED_SUFFIX = ".upload";
+
+    @Value("${app.upload.staging-dir:upload-staging}")
+    private String stagingDir;
+
+    @Value("${app.upload.staging-ttl-minutes:180}")
+    private long ttlMinutes;
+
+    private Path stagingPath;
+
+    /**
+     * File đang chờ ở staging; lưu trong session. Khi bị gỡ khỏi session (reset, ghi đè, session hết hạn)
+     * thì file tạm cũng bị xóa
+     */
+    public static class StagedUpload implements Serializable, HttpSessionBindingListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final String fileName;
+        private final long size;
+        private final String path;
+
+        StagedUpload(String id, String fileName, long size, Path path) {
+            this.id = id;
+            this.fileName = fileName;
+            this.size = size;
+            this.path = path.toString();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        Path getPath() {
+            return Paths.get(path);
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            // Đã được chuyển vào thư mục tài liệu thì file không còn ở đây
+            try {
+                Files.deleteIfExists(getPath());
+            } catch (IOException e) {
+                logger.warn("Could not delete staged upload {}: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        stagingPath = Paths.get(stagingDir).toAbsolutePath().normalize();
+        Files.createDirectories(stagingPath);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        cleanupExpired();
+    }
+
+    /**
+     * Ghi file upload xuống staging. Không đọc nội dung vào bộ nhớ
+     */
+    public StagedUpload stage(MultipartFile file) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path target = stagingPath.resolve(id + STAGED_SUFFIX);
+        // transferTo(File) để servlet container đổi tên file tạm của multipart (transferTo(Path) luôn copy stream)
+        file.transferTo(target.toFile());
+        return new StagedUpload(id, file.getOriginalFilename(), Files.size(target), target);
+    }
+
+    /**
+     * Đưa một file đã có sẵn trên đĩa (vd. file ghép từ các chunk) vào staging bằng cách move
+     */
+    public StagedUpload stage(Path file, String fileName) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path target = stagingPath.resolve(id + STAGED_SUFFIX);
+        move(file, target);
+        return new StagedUpload(id, fileName, Files.size(target), target);
+    }
+
+    /**
+     * File staging còn tồn tại (chưa bị dọn theo TTL hoặc đã được dùng)
+     */
+    public boolean exists(StagedUpload upload) {
+        return upload != null && Files.isRegularFile(upload.getPath());
+    }
+
+    /**
+     * Chuyển file staging tới target. Nếu đang trong transaction và transaction rollback
+     * thì file được trả lại staging để người dùng có thể xuất bản lại
+     */
+    public void moveTo(StagedUpload upload, Path target) throws IOException {
+        Path source = upload.getPath();
+        if (!Files.isRegularFile(source)) {
+            throw new IOException("File tạm đã hết hạn, vui lòng tải lên lại");
+        }
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        move(source, target);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        try {
+                            move(target, source);
+                        } catch (IOException e) {
+                            logger.warn("Could not return staged upload {} after rollback: {}", upload.getId(),
+                                    e.getMessage());
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Xóa các file staging cũ hơn TTL (wizard bị bỏ dở mà session chưa hết hạn, hoặc còn sót sau khi khởi động lại)
+     */
+    @Scheduled(fixedDelayString = "${app.upload.staging-cleanup-ms:600000}")
+    public void cleanupExpired() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(Math.max(1, ttlMinutes)));
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stagingPath, "*" + STAGED_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff) && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.warn("Could not delete expired staged upload {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error cleaning upload staging directory {}", stagingPath, e);
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} expired staged uploads", deleted);
+        }
+    }
+
+    // Cùng ổ đĩa thì chỉ đổi tên; khác ổ đĩa thì Files.move tự copy rồi xóa
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -38,6 +38,9 @@ public class UserService {
     @Autowired
     private PasswordResetTokenRepository passwordResetTokenRepository;
 
+    @Autowired
+    private PrincipalCacheService principalCacheService;
+
     /**
      * Lấy tất cả người dùng
      */
@@ -125,6 +128,7 @@ public class UserService {
         user.setBio(dto.getBio());
 
         userRepository.save(user);
+        principalCacheService.evictUser(id);
     }
 
     public Optional<User> findById(Long id) {
@@ -135,6 +139,7 @@ public class UserService {
         User user = userRepository.findById(id).orElseThrow(() -> new RuntimeException("Người dùng không tồn tại"));
         user.setStatus(status);
         userRepository.save(user);
+        principalCacheService.evictUser(id);
 
         // Nếu khóa tài khoản, log để tracking
         if ("inactive".equals(status)) {
@@ -146,6 +151,7 @@ public class UserService {
         User user = userRepository.findById(id).orElseThrow(() -> new RuntimeException("Người dùng không tồn tại"));
         user.setDeletedAt(LocalDateTime.now());
         userRepository.save(user);
+        principalCacheService.evictUser(id);
     }
 
     public List<User> findAllActiveUsers() {
@@ -185,6 +191,7 @@ public class UserService {
                         user.setStatus("active");
                         user.setUpdatedAt(LocalDateTime.now());
                         userRepository.save(user);
+                        principalCacheService.evictUser(user.getId());
                         return true;
                     }
                     return false; // Trạng thái không phải PENDING
@@ -334,6 +341,7 @@ public class UserService {
             }
             
             userRepository.save(user);
+            principalCacheService.evictUser(user.getId());
         }
     }
     
@@ -355,6 +363,7 @@ public class UserService {
                 user.setLockedUntil(null);
                 user.setFailedLoginAttempts(0);
                 userRepository.save(user);
+                principalCacheService.evictUser(user.getId());
                 System.out.println("DEBUG: Lock expired, reset attempts");
             }
         } else {
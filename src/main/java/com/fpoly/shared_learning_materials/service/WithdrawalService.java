@@ -31,14 +31,20 @@ public class WithdrawalService {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private CodeGeneratorService codeGeneratorService;
+
     @Autowired
     private UserRepository userRepository;
 
-    @Autowired(required = false)
-    private EmailConfigService emailConfigService;
+    @Autowired
+    private BalanceLedgerService balanceLedgerService;
+
+    @Autowired
+    private CoinBalanceService coinBalanceService;
 
-    @Autowired(required = false)
-    private NotificationService notificationService;
+    @Autowired
+    private OutboxService outboxService;
 
     @Value("${promo.withdraw.enabled:false}")
     private boolean promoEnabled;
@@ -197,7 +203,9 @@ public class WithdrawalService {
             withdrawal.setStatus(Transaction.TransactionStatus.PENDING);
         }
 
-        return transactionRepository.save(withdrawal);
+        Transaction saved = transactionRepository.save(withdrawal);
+        recordLedger(saved, null, saved.getStatus());
+        return saved;
     }
 
     /**
@@ -208,7 +216,12 @@ public class WithdrawalService {
         withdrawal.setType(Transaction.TransactionType.WITHDRAWAL);
 
         validateWithdrawal(withdrawal);
-        return transactionRepository.save(withdrawal);
+        Transaction saved = transactionRepository.save(withdrawal);
+        // Admin có thể sửa cả số tiền lẫn trạng thái: tính lại sổ cái của người dùng từ lịch sử
+        if (saved.getUser() != null) {
+            balanceLedgerService.rebuildUser(saved.getUser().getId());
+        }
+        return saved;
     }
 
     /**
@@ -218,8 +231,12 @@ public class WithdrawalService {
         Optional<Transaction> withdrawalOpt = getWithdrawalById(id);
         if (withdrawalOpt.isPresent()) {
             Transaction withdrawal = withdrawalOpt.get();
+            boolean wasCounted = withdrawal.getDeletedAt() == null;
             withdrawal.setDeletedAt(LocalDateTime.now());
             transactionRepository.save(withdrawal);
+            if (wasCounted) {
+                recordLedger(withdrawal, withdrawal.getStatus(), null);
+            }
         }
     }
 
@@ -228,10 +245,14 @@ public class WithdrawalService {
      */
     public void deleteWithdrawals(List<Long> ids) {
         List<Transaction> withdrawals = transactionRepository.findAllById(ids);
+        List<Transaction> removed = withdrawals.stream()
+                .filter(t -> t.getType() == Transaction.TransactionType.WITHDRAWAL && t.getDeletedAt() == null)
+                .collect(Collectors.toList());
         withdrawals.stream()
                 .filter(t -> t.getType() == Transaction.TransactionType.WITHDRAWAL)
                 .forEach(t -> t.setDeletedAt(LocalDateTime.now()));
         transactionRepository.saveAll(withdrawals);
+        removed.forEach(t -> recordLedger(t, t.getStatus(), null));
     }
 
     /**
@@ -239,10 +260,17 @@ public class WithdrawalService {
      */
     public void updateWithdrawalsStatus(List<Long> ids, Transaction.TransactionStatus status) {
         List<Transaction> withdrawals = transactionRepository.findAllById(ids);
+        Map<Transaction, Transaction.TransactionStatus> previousStatuses = new HashMap<>();
         withdrawals.stream()
                 .filter(t -> t.getType() == Transaction.TransactionType.WITHDRAWAL)
-                .forEach(t -> t.setStatus(status));
+                .forEach(t -> {
+                    if (t.getDeletedAt() == null) {
+                        previousStatuses.put(t, t.getStatus());
+                    }
+                    t.setStatus(status);
+                });
         transactionRepository.saveAll(withdrawals);
+        previousStatuses.forEach((t, previous) -> recordLedger(t, previous, status));
     }
 
     /**
@@ -256,14 +284,7 @@ public class WithdrawalService {
      * Tạo mã withdrawal tự động
      */
     public String generateWithdrawalCode() {
-        String prefix = "WD";
-        int counter = 1;
-        String code;
-        do {
-            code = prefix + String.format("%08d", counter);
-            counter++;
-        } while (existsByCode(code));
-        return code;
+        return codeGeneratorService.nextWithdrawalCode();
     }
 
     /**
@@ -544,12 +565,16 @@ public class WithdrawalService {
             throw new IllegalArgumentException("Số dư xu không đủ để thực hiện giao dịch");
         }
 
-        // Trừ coin từ balance
+        // Trừ coin từ balance (UPDATE có điều kiện: số dư đọc ở trên có thể đã cũ)
+        if (!coinBalanceService.debit(user.getId(), totalDeducted)) {
+            throw new IllegalArgumentException("Số dư xu không đủ để thực hiện giao dịch");
+        }
         user.setCoinBalance(userBalance.subtract(totalDeducted));
-        userRepository.save(user);
 
         // Lưu withdrawal
-        return transactionRepository.save(withdrawal);
+        Transaction saved = transactionRepository.save(withdrawal);
+        recordLedger(saved, null, saved.getStatus());
+        return saved;
     }
 
     /**
@@ -564,6 +589,7 @@ public class WithdrawalService {
         }
 
         // Cập nhật status thành COMPLETED
+        Transaction.TransactionStatus previousStatus = withdrawal.getStatus();
         withdrawal.setStatus(Transaction.TransactionStatus.COMPLETED);
 
         // Thêm ghi chú admin
@@ -578,30 +604,19 @@ public class WithdrawalService {
         withdrawal.setUpdatedAt(LocalDateTime.now());
 
         transactionRepository.save(withdrawal);
+        recordLedger(withdrawal, previousStatus, withdrawal.getStatus());
 
-        // Gửi notification nội bộ
-        try {
-            if (notificationService != null) {
-                String title = "Rút tiền hoàn tất";
-                String message = "Giao dịch " + withdrawal.getCode() + " đã hoàn tất. Số tiền: "
-                        + calculateVndAmount(withdrawal.getUser(), withdrawal.getAmount()) + " VND.";
-                notificationService.createNotification(withdrawal.getUser(), title, message, "payout");
-            }
-        } catch (Exception ignored) {
-        }
+        // Gửi notification nội bộ và email qua outbox (gửi ở nền sau khi commit)
+        String title = "Rút tiền hoàn tất";
+        String message = "Giao dịch " + withdrawal.getCode() + " đã hoàn tất. Số tiền: "
+                + calculateVndAmount(withdrawal.getUser(), withdrawal.getAmount()) + " VND.";
+        outboxService.publishNotification(withdrawal.getUser(), title, message, "payout");
 
-        // Gửi email thông báo
-        try {
-            if (emailConfigService != null) {
-                emailConfigService.sendHtmlEmail(
-                        withdrawal.getUser().getEmail(),
-                        "Yêu cầu rút tiền đã được duyệt",
-                        "<p>Xin chào,</p><p>Yêu cầu rút tiền " + withdrawal.getCode() + " của bạn đã được duyệt.</p><p>"
-                                + pi + "</p>");
-            }
-        } catch (Exception ignored) {
-            // Log error but don't fail the transaction
-        }
+        outboxService.publishEmail(
+                withdrawal.getUser().getEmail(),
+                "Yêu cầu rút tiền đã được duyệt",
+                "<p>Xin chào,</p><p>Yêu cầu rút tiền " + withdrawal.getCode() + " của bạn đã được duyệt.</p><p>"
+                        + pi + "</p>");
     }
 
     /**
@@ -616,6 +631,7 @@ public class WithdrawalService {
         }
 
         // Cập nhật status thành FAILED
+        Transaction.TransactionStatus previousStatus = withdrawal.getStatus();
         withdrawal.setStatus(Transaction.TransactionStatus.FAILED);
 
         // Thêm ghi chú reject
@@ -629,29 +645,22 @@ public class WithdrawalService {
         withdrawal.setUpdatedAt(LocalDateTime.now());
 
         transactionRepository.save(withdrawal);
+        recordLedger(withdrawal, previousStatus, withdrawal.getStatus());
 
         // Hoàn lại coin cho user
         User user = withdrawal.getUser();
-        BigDecimal userBalance = user.getCoinBalance() != null ? user.getCoinBalance() : BigDecimal.ZERO;
         BigDecimal withdrawalFee = calculateConsistentFeeForRefund(withdrawal);
         BigDecimal totalRefunded = withdrawal.getAmount().add(withdrawalFee);
 
-        user.setCoinBalance(userBalance.add(totalRefunded));
-        userRepository.save(user);
+        coinBalanceService.credit(user.getId(), totalRefunded);
 
-        // Gửi email thông báo
-        try {
-            if (emailConfigService != null) {
-                emailConfigService.sendHtmlEmail(
-                        withdrawal.getUser().getEmail(),
-                        "Yêu cầu rút tiền bị từ chối",
-                        "<p>Xin chào,</p><p>Rất tiếc, yêu cầu rút tiền " + withdrawal.getCode()
-                                + " của bạn đã bị từ chối.</p><p>Lý do: " + (reason == null ? "" : reason)
-                                + "</p><p>Số xu đã được hoàn lại vào tài khoản (" + totalRefunded + " xu).</p>");
-            }
-        } catch (Exception ignored) {
-            // Log error but don't fail the transaction
-        }
+        // Gửi email thông báo qua outbox (gửi ở nền sau khi commit)
+        outboxService.publishEmail(
+                withdrawal.getUser().getEmail(),
+                "Yêu cầu rút tiền bị từ chối",
+                "<p>Xin chào,</p><p>Rất tiếc, yêu cầu rút tiền " + withdrawal.getCode()
+                        + " của bạn đã bị từ chối.</p><p>Lý do: " + (reason == null ? "" : reason)
+                        + "</p><p>Số xu đã được hoàn lại vào tài khoản (" + totalRefunded + " xu).</p>");
     }
 
     /**
@@ -665,6 +674,7 @@ public class WithdrawalService {
         }
 
         // Cập nhật status thành CANCELLED
+        Transaction.TransactionStatus previousStatus = withdrawal.getStatus();
         withdrawal.setStatus(Transaction.TransactionStatus.CANCELLED);
 
         // Thêm ghi chú cancel
@@ -678,15 +688,26 @@ public class WithdrawalService {
         withdrawal.setUpdatedAt(LocalDateTime.now());
 
         transactionRepository.save(withdrawal);
+        recordLedger(withdrawal, previousStatus, withdrawal.getStatus());
 
         // Hoàn lại coin cho user
         User user = withdrawal.getUser();
-        BigDecimal userBalance = user.getCoinBalance() != null ? user.getCoinBalance() : BigDecimal.ZERO;
         BigDecimal withdrawalFee = calculateConsistentFeeForRefund(withdrawal);
         BigDecimal totalRefunded = withdrawal.getAmount().add(withdrawalFee);
 
-        user.setCoinBalance(userBalance.add(totalRefunded));
-        userRepository.save(user);
+        coinBalanceService.credit(user.getId(), totalRefunded);
+    }
+
+    /**
+     * Ghi thay đổi trạng thái khoản rút vào sổ cái số dư, sau khi đã lưu khoản rút
+     * (nếu người dùng chưa có dòng sổ cái thì dòng được dựng từ lịch sử, đã gồm thay đổi này)
+     */
+    private void recordLedger(Transaction withdrawal, Transaction.TransactionStatus from,
+            Transaction.TransactionStatus to) {
+        if (withdrawal.getUser() == null) {
+            return;
+        }
+        balanceLedgerService.recordWithdrawal(withdrawal.getUser().getId(), withdrawal.getAmount(), from, to);
     }
 
     /**
@@ -0,0 +1,46 @@
+package com.fpoly.shared_learning_materials.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public class SearchTextUtils {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^a-z0-9]+");
+
+    /**
+     * Bỏ dấu tiếng Việt và chuyển về chữ thường
+     * Ví dụ: "Lập Trình Đồ Họa" -> "lap trinh do hoa"
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        // "đ" không tách được bằng NFD nên phải thay thủ công
+        String replaced = text.replace('đ', 'd').replace('Đ', 'D');
+        String normalized = Normalizer.normalize(replaced, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(normalized).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Tách chuỗi thành các token đã bỏ dấu (giữ nguyên thứ tự, có thể trùng lặp)
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String folded = fold(text);
+        if (folded.isEmpty()) {
+            return tokens;
+        }
+
+        for (String token : TOKEN_SEPARATOR.split(folded)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
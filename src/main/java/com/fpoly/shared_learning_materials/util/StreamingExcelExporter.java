@@ -0,0 +1,148 @@
+package com.fpoly.shared_learning_materials.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Xuất Excel dạng stream (SXSSF): chỉ giữ ROW_WINDOW dòng trong bộ nhớ, các dòng cũ được ghi ra file tạm nén.
+ * Dữ liệu được đọc theo từng lô qua BatchLoader (phân trang keyset), độ rộng cột khai báo trước
+ * thay cho autoSizeColumn (phải duyệt lại mọi dòng), file được ghi thẳng vào response.
+ */
+public class StreamingExcelExporter<T> {
+
+	public static final String CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+	// Số dòng giữ trong bộ nhớ trước khi ghi ra file tạm
+	private static final int ROW_WINDOW = 100;
+
+	private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+	/**
+	 * Đọc lô tiếp theo sau dòng cuối của lô trước (null ở lô đầu tiên); trả về danh sách rỗng khi hết dữ liệu
+	 */
+	@FunctionalInterface
+	public interface BatchLoader<T> {
+		List<T> next(T last);
+	}
+
+	private static class Column<T> {
+		final String header;
+		final int width;
+		final Function<T, Object> value;
+
+		Column(String header, int width, Function<T, Object> value) {
+			this.header = header;
+			this.width = width;
+			this.value = value;
+		}
+	}
+
+	private final String sheetName;
+
+	private final List<Column<T>> columns = new ArrayList<>();
+
+	public StreamingExcelExporter(String sheetName) {
+		this.sheetName = sheetName;
+	}
+
+	/**
+	 * Thêm cột; width tính theo số ký tự
+	 */
+	public StreamingExcelExporter<T> column(String header, int width, Function<T, Object> value) {
+		columns.add(new Column<>(header, width, value));
+		return this;
+	}
+
+	/**
+	 * Đặt header tải file rồi ghi workbook vào response. Trả về số dòng dữ liệu đã xuất
+	 */
+	public int export(HttpServletResponse response, String fileName, BatchLoader<T> loader) throws IOException {
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"; filename*=UTF-8''"
+				+ URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"));
+		return write(response.getOutputStream(), loader);
+	}
+
+	public int write(OutputStream out, BatchLoader<T> loader) throws IOException {
+		SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+		workbook.setCompressTempFiles(true);
+		try {
+			SXSSFSheet sheet = workbook.createSheet(sheetName);
+			writeHeaderRow(workbook, sheet);
+
+			int rowCount = 1;
+			T last = null;
+			while (true) {
+				List<T> batch = loader.next(last);
+				if (batch == null || batch.isEmpty()) {
+					break;
+				}
+				for (T item : batch) {
+					Row row = sheet.createRow(rowCount++);
+					for (int i = 0; i < columns.size(); i++) {
+						setCellValue(row.createCell(i), columns.get(i).value.apply(item));
+					}
+				}
+				last = batch.get(batch.size() - 1);
+			}
+
+			workbook.write(out);
+			out.flush();
+			return rowCount - 1;
+		} finally {
+			// Xóa các file tạm của SXSSF
+			workbook.dispose();
+			workbook.close();
+		}
+	}
+
+	private void writeHeaderRow(SXSSFWorkbook workbook, SXSSFSheet sheet) {
+		CellStyle style = workbook.createCellStyle();
+		Font font = workbook.createFont();
+		font.setBold(true);
+		style.setFont(font);
+
+		Row row = sheet.createRow(0);
+		for (int i = 0; i < columns.size(); i++) {
+			Column<T> column = columns.get(i);
+			Cell cell = row.createCell(i);
+			cell.setCellValue(column.header);
+			cell.setCellStyle(style);
+			sheet.setColumnWidth(i, Math.min(255, Math.max(column.width, column.header.length() + 2)) * 256);
+		}
+		sheet.createFreezePane(0, 1);
+	}
+
+	private static void setCellValue(Cell cell, Object value) {
+		if (value == null) {
+			cell.setBlank();
+		} else if (value instanceof BigDecimal) {
+			cell.setCellValue(((BigDecimal) value).doubleValue());
+		} else if (value instanceof Number) {
+			cell.setCellValue(((Number) value).doubleValue());
+		} else if (value instanceof LocalDateTime) {
+			cell.setCellValue(DATE_TIME_FORMAT.format((LocalDateTime) value));
+		} else if (value instanceof Boolean) {
+			cell.setCellValue((Boolean) value);
+		} else {
+			cell.setCellValue(value.toString());
+		}
+	}
+}
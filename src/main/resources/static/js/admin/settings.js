@@ -132,3 +132,31 @@ function showToast(message, type = 'info') {
         }
     }, 5000);
 }
+
+// Import tài liệu: gửi form như bình thường, trong lúc chờ server import xong thì hỏi tiến độ định kỳ
+document.addEventListener('DOMContentLoaded', function() {
+    const importForm = document.getElementById('importForm');
+    const backupFile = document.getElementById('backupFile');
+    const importProgress = document.getElementById('importProgress');
+    if (!importForm || !backupFile || !importProgress) return;
+
+    backupFile.addEventListener('change', function() {
+        if (!backupFile.files.length) return;
+
+        importProgress.style.display = 'block';
+        importProgress.innerHTML = '<i class="fas fa-spinner fa-spin"></i> Đang tải file lên...';
+        importForm.submit();
+
+        // Trang vẫn chạy script cho đến khi server trả về kết quả import
+        setInterval(function() {
+            fetch('/admin/settings/backup/import/progress', { headers: { 'Accept': 'application/json' } })
+                .then(response => response.ok ? response.json() : null)
+                .then(progress => {
+                    if (!progress || !progress.running) return;
+                    importProgress.innerHTML = `<i class="fas fa-spinner fa-spin"></i> Đang import: ${progress.percent}% `
+                        + `(${progress.imported} tài liệu đã import, ${progress.skipped} bị bỏ qua)`;
+                })
+                .catch(() => {});
+        }, 1000);
+    });
+});
@@ -95,7 +95,13 @@ function initDocumentViewer() {
  */
 function loadPdfDocument(pdfPath) {
   const safePath = typeof pdfPath === 'string' ? encodeURI(pdfPath) : pdfPath;
-  const loadingTask = pdfjsLib.getDocument(safePath);
+  // Server hỗ trợ Range: chỉ tải các đoạn (64KB) cần cho trang đang xem thay vì cả file
+  const loadingTask = pdfjsLib.getDocument({
+    url: safePath,
+    rangeChunkSize: 65536,
+    disableAutoFetch: true,
+    disableStream: true
+  });
 
   loadingTask.promise.then(function (pdf) {
     console.log('PDF document loaded successfully!');
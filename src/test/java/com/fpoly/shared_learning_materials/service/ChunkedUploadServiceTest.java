@@ -0,0 +1,230 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.UploadChunk;
+import com.fpoly.shared_learning_materials.domain.UploadChunkId;
+import com.fpoly.shared_learning_materials.domain.UploadSession;
+import com.fpoly.shared_learning_materials.repository.UploadChunkRepository;
+import com.fpoly.shared_learning_materials.repository.UploadSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tải file theo chunk: gửi song song, không theo thứ tự, chunk sai checksum bị từ chối và gửi lại được;
+ * file ghép ra phải giống hệt file gốc. Backend AZURE chỉ chạy khi có Azurite
+ * (AZURITE_CONNECTION_STRING=UseDevelopmentStorage=true)
+ */
+class ChunkedUploadServiceTest {
+
+    private static final long USER_ID = 1L;
+    private static final int CHUNK_SIZE_KB = 64;
+
+    @TempDir
+    Path tempDir;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private final Map<UploadChunkId, UploadChunk> chunks = new ConcurrentHashMap<>();
+
+    private ChunkedUploadService chunkedUploadService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UploadStagingService uploadStagingService = new UploadStagingService();
+        ReflectionTestUtils.setField(uploadStagingService, "stagingDir", tempDir.resolve("staging").toString());
+        uploadStagingService.init();
+
+        chunkedUploadService = new ChunkedUploadService();
+        ReflectionTestUtils.setField(chunkedUploadService, "chunkedDir", tempDir.resolve("chunked").toString());
+        ReflectionTestUtils.setField(chunkedUploadService, "defaultChunkSizeKb", CHUNK_SIZE_KB);
+        ReflectionTestUtils.setField(chunkedUploadService, "maxChunkSizeKb", 1024);
+        ReflectionTestUtils.setField(chunkedUploadService, "maxFileSizeMb", 50L);
+        ReflectionTestUtils.setField(chunkedUploadService, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(chunkedUploadService, "uploadStagingService", uploadStagingService);
+        ReflectionTestUtils.setField(chunkedUploadService, "uploadSessionRepository", sessionRepository());
+        ReflectionTestUtils.setField(chunkedUploadService, "uploadChunkRepository", chunkRepository());
+        chunkedUploadService.init();
+    }
+
+    @Test
+    void parallelOutOfOrderChunksAssembleIntoOriginalFile() throws Exception {
+        byte[] content = randomBytes(CHUNK_SIZE_KB * 1024 * 20 + 12345);
+        UploadSession session = chunkedUploadService.createSession(USER_ID, "tai-lieu.pdf", content.length,
+                "application/pdf", null, UploadSession.BACKEND_LOCAL);
+        assertThat(session.getTotalChunks()).isEqualTo(21);
+
+        uploadAllChunks(session, content);
+
+        assertThat(chunkedUploadService.getStatus(session.getId(), USER_ID).receivedChunks()).hasSize(21);
+        ChunkedUploadService.CompletedUpload completed = chunkedUploadService.complete(session.getId(), USER_ID);
+        assertThat(Files.readAllBytes(stagedPath(completed))).isEqualTo(content);
+        assertThat(sessions).isEmpty();
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test
+    void chunkWithWrongChecksumIsRejectedAndCanBeResent() throws Exception {
+        byte[] content = randomBytes(CHUNK_SIZE_KB * 1024 * 3);
+        UploadSession session = chunkedUploadService.createSession(USER_ID, "slide.pptx", content.length, null,
+                null, UploadSession.BACKEND_LOCAL);
+
+        byte[] corrupted = chunk(session, content, 1);
+        String expected = sha256(corrupted);
+        corrupted[100] ^= 1;
+        assertThatThrownBy(() -> chunkedUploadService.putChunk(session.getId(), USER_ID, 1,
+                new ByteArrayInputStream(corrupted), expected)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> chunkedUploadService.putChunk(session.getId(), USER_ID, 2,
+                new ByteArrayInputStream(new byte[10]), null)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(chunkedUploadService.getStatus(session.getId(), USER_ID).receivedChunks()).isEmpty();
+        assertThatThrownBy(() -> chunkedUploadService.complete(session.getId(), USER_ID))
+                .isInstanceOf(IllegalStateException.class);
+
+        uploadAllChunks(session, content);
+        ChunkedUploadService.CompletedUpload completed = chunkedUploadService.complete(session.getId(), USER_ID);
+        assertThat(Files.readAllBytes(stagedPath(completed))).isEqualTo(content);
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "AZURITE_CONNECTION_STRING", matches = ".+")
+    void azureBlocksAreCommittedInChunkOrder() throws Exception {
+        AzureBlobStorageService azureBlobStorageService = new AzureBlobStorageService();
+        ReflectionTestUtils.setField(azureBlobStorageService, "connectionString",
+                System.getenv("AZURITE_CONNECTION_STRING"));
+        ReflectionTestUtils.setField(azureBlobStorageService, "containerName", "chunked-upload-test");
+        ReflectionTestUtils.setField(chunkedUploadService, "azureBlobStorageService", azureBlobStorageService);
+
+        byte[] content = randomBytes(CHUNK_SIZE_KB * 1024 * 7 + 999);
+        UploadSession session = chunkedUploadService.createSession(USER_ID, "bai-giang.docx", content.length,
+                "application/octet-stream", null, UploadSession.BACKEND_AZURE);
+        uploadAllChunks(session, content);
+
+        String url = chunkedUploadService.complete(session.getId(), USER_ID).fileUrl();
+        ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+        try (InputStream in = azureBlobStorageService.downloadFile(url)) {
+            in.transferTo(downloaded);
+        }
+        assertThat(downloaded.toByteArray()).isEqualTo(content);
+        azureBlobStorageService.deleteFile(url);
+    }
+
+    // Gửi mọi chunk theo thứ tự ngẫu nhiên trên nhiều luồng
+    private void uploadAllChunks(UploadSession session, byte[] content) throws Exception {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < session.getTotalChunks(); i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int index : order) {
+                byte[] data = chunk(session, content, index);
+                futures.add(executor.submit(() -> chunkedUploadService.putChunk(session.getId(), USER_ID, index,
+                        new ByteArrayInputStream(data), sha256(data))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] chunk(UploadSession session, byte[] content, int index) {
+        int from = index * session.getChunkSize();
+        int to = (int) Math.min(content.length, (long) from + session.getChunkSize());
+        byte[] data = new byte[to - from];
+        System.arraycopy(content, from, data, 0, data.length);
+        return data;
+    }
+
+    private static Path stagedPath(ChunkedUploadService.CompletedUpload completed) {
+        return (Path) ReflectionTestUtils.invokeMethod(completed.stagedUpload(), "getPath");
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    private UploadSessionRepository sessionRepository() {
+        UploadSessionRepository repository = mock(UploadSessionRepository.class);
+        when(repository.save(any(UploadSession.class))).thenAnswer(invocation -> {
+            UploadSession session = invocation.getArgument(0);
+            sessions.put(session.getId(), session);
+            return session;
+        });
+        when(repository.findByIdAndUserId(anyString(), anyLong())).thenAnswer(invocation -> Optional
+                .ofNullable(sessions.get(invocation.<String>getArgument(0)))
+                .filter(session -> session.getUserId().equals(invocation.getArgument(1))));
+        when(repository.transition(anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+            UploadSession session = sessions.get(invocation.<String>getArgument(0));
+            if (session == null || !session.getStatus().equals(invocation.getArgument(1))) {
+                return 0;
+            }
+            session.setStatus(invocation.getArgument(2));
+            return 1;
+        });
+        doAnswer(invocation -> sessions.remove(invocation.<String>getArgument(0)))
+                .when(repository).deleteById(anyString());
+        return repository;
+    }
+
+    private UploadChunkRepository chunkRepository() {
+        UploadChunkRepository repository = mock(UploadChunkRepository.class);
+        when(repository.save(any(UploadChunk.class))).thenAnswer(invocation -> {
+            UploadChunk chunk = invocation.getArgument(0);
+            chunks.put(chunk.getId(), chunk);
+            return chunk;
+        });
+        when(repository.findById(any(UploadChunkId.class)))
+                .thenAnswer(invocation -> Optional.ofNullable(chunks.get(invocation.<UploadChunkId>getArgument(0))));
+        when(repository.findChunkIndexes(anyString())).thenAnswer(invocation -> chunks.keySet().stream()
+                .filter(id -> id.getSessionId().equals(invocation.getArgument(0)))
+                .map(UploadChunkId::getChunkIndex)
+                .sorted()
+                .toList());
+        when(repository.deleteBySessionId(anyString())).thenAnswer(invocation -> {
+            String sessionId = invocation.getArgument(0);
+            chunks.keySet().removeIf(id -> id.getSessionId().equals(sessionId));
+            return 0;
+        });
+        doAnswer(invocation -> chunks.remove(invocation.<UploadChunkId>getArgument(0)))
+                .when(repository).deleteById(any(UploadChunkId.class));
+        return repository;
+    }
+}
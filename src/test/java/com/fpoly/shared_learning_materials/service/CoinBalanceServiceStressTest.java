@@ -0,0 +1,149 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test chuyển xu đồng thời trên database thật (cần SQL Server như khi chạy ứng dụng).
+ * Chạy bằng: mvn test -Dtest=CoinBalanceServiceStressTest -Dstress.coins=true
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "stress.coins", matches = "true")
+class CoinBalanceServiceStressTest {
+
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 50;
+
+    private static final BigDecimal PRICE = new BigDecimal("10.00");
+    private static final BigDecimal SELLER_AMOUNT = new BigDecimal("8.50");
+
+    @Autowired
+    private CoinBalanceService coinBalanceService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final List<User> createdUsers = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        userRepository.deleteAll(createdUsers);
+        createdUsers.clear();
+    }
+
+    /**
+     * Nhiều người mua cùng mua của một người bán: không mất xu, không ai bị âm số dư
+     */
+    @Test
+    void hotSellerPurchasesKeepBalancesConsistent() throws Exception {
+        BigDecimal buyerStart = new BigDecimal("500.00");
+        User seller = createUser(BigDecimal.ZERO);
+        List<User> buyers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            buyers.add(createUser(buyerStart));
+        }
+
+        // 800 lượt mua x 10 xu > 8 x 500 xu: một phần phải bị từ chối vì không đủ số dư
+        AtomicInteger succeeded = new AtomicInteger();
+        runConcurrently(() -> {
+            User buyer = buyers.get(ThreadLocalRandom.current().nextInt(buyers.size()));
+            boolean ok = coinBalanceService.executeWithRetry(
+                    () -> coinBalanceService.transfer(buyer.getId(), seller.getId(), PRICE, SELLER_AMOUNT));
+            if (ok) {
+                succeeded.incrementAndGet();
+            }
+        });
+
+        BigDecimal buyersTotal = BigDecimal.ZERO;
+        for (User buyer : buyers) {
+            BigDecimal balance = coinBalanceService.getBalance(buyer.getId());
+            assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            buyersTotal = buyersTotal.add(balance);
+        }
+        BigDecimal spent = buyerStart.multiply(BigDecimal.valueOf(buyers.size())).subtract(buyersTotal);
+
+        assertThat(succeeded.get()).isPositive();
+        assertThat(spent).isEqualByComparingTo(PRICE.multiply(BigDecimal.valueOf(succeeded.get())));
+        assertThat(coinBalanceService.getBalance(seller.getId()))
+                .isEqualByComparingTo(SELLER_AMOUNT.multiply(BigDecimal.valueOf(succeeded.get())));
+    }
+
+    /**
+     * Hai người chuyển xu qua lại liên tục (ngược chiều nhau): không deadlock, tổng xu không đổi
+     */
+    @Test
+    void opposingTransfersDoNotDeadlockOrLoseCoins() throws Exception {
+        BigDecimal start = new BigDecimal("100.00");
+        User first = createUser(start);
+        User second = createUser(start);
+
+        runConcurrently(() -> {
+            boolean forward = ThreadLocalRandom.current().nextBoolean();
+            Long from = forward ? first.getId() : second.getId();
+            Long to = forward ? second.getId() : first.getId();
+            coinBalanceService.executeWithRetry(() -> coinBalanceService.transfer(from, to, PRICE, PRICE));
+        });
+
+        BigDecimal firstBalance = coinBalanceService.getBalance(first.getId());
+        BigDecimal secondBalance = coinBalanceService.getBalance(second.getId());
+        assertThat(firstBalance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+        assertThat(secondBalance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+        assertThat(firstBalance.add(secondBalance)).isEqualByComparingTo(start.add(start));
+    }
+
+    private void runConcurrently(Runnable operation) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startGate = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                try {
+                    startGate.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        operation.run();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+        }
+        startGate.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(2, TimeUnit.MINUTES)).isTrue();
+        assertThat(errors).isEmpty();
+    }
+
+    private User createUser(BigDecimal balance) {
+        String name = "stress_" + UUID.randomUUID().toString().substring(0, 12);
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@stress.test");
+        user.setPasswordHash("-");
+        user.setFullName(name);
+        user.setRole("user");
+        user.setStatus("active");
+        user.setCoinBalance(balance);
+        user = userRepository.save(user);
+        createdUsers.add(user);
+        return user;
+    }
+}
@@ -0,0 +1,165 @@
+package com.fpoly.shared_learning_materials.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Gửi email hàng loạt qua một SMTP server giả chạy trong test: mọi email đều tới nơi
+ * và số kết nối SMTP không vượt quá số worker (kết nối được dùng lại)
+ */
+class MailDeliveryServiceTest {
+
+    private static final int WORKERS = 4;
+
+    private FakeSmtpServer smtpServer;
+
+    private MailDeliveryService mailDeliveryService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtpServer = new FakeSmtpServer();
+
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(smtpServer.getPort());
+
+        mailDeliveryService = new MailDeliveryService();
+        ReflectionTestUtils.setField(mailDeliveryService, "mailSender", sender);
+        ReflectionTestUtils.setField(mailDeliveryService, "workerCount", WORKERS);
+        ReflectionTestUtils.setField(mailDeliveryService, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(mailDeliveryService, "ratePerSecond", 0d);
+        ReflectionTestUtils.setField(mailDeliveryService, "idleTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(mailDeliveryService, "sendTimeoutMs", 30000L);
+        mailDeliveryService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        mailDeliveryService.stop();
+        smtpServer.close();
+    }
+
+    @Test
+    void bulkSendReusesConnections() throws Exception {
+        int count = 500;
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(mailDeliveryService.submit("noreply@test.local", "user" + i + "@test.local",
+                    "Tài liệu mới", "<p>Xin chào</p>"));
+        }
+
+        for (CompletableFuture<Boolean> result : results) {
+            assertThat(result.get(30, TimeUnit.SECONDS)).isTrue();
+        }
+        assertThat(smtpServer.messages.get()).isEqualTo(count);
+        assertThat(smtpServer.connections.get()).isLessThanOrEqualTo(WORKERS);
+    }
+
+    @Test
+    void reconfigureOpensNewConnections() throws Exception {
+        assertThat(mailDeliveryService.send("noreply@test.local", "a@test.local", "Một", "<p>1</p>")).isTrue();
+        mailDeliveryService.reconfigure();
+        assertThat(mailDeliveryService.send("noreply@test.local", "b@test.local", "Hai", "<p>2</p>")).isTrue();
+
+        assertThat(smtpServer.messages.get()).isEqualTo(2);
+        assertThat(smtpServer.connections.get()).isGreaterThanOrEqualTo(2);
+    }
+
+    /**
+     * SMTP server tối giản: chấp nhận mọi lệnh, đếm số kết nối và số email nhận được
+     */
+    private static class FakeSmtpServer {
+
+        final AtomicInteger connections = new AtomicInteger();
+
+        final AtomicInteger messages = new AtomicInteger();
+
+        private final ServerSocket serverSocket;
+
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        FakeSmtpServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+            executor.execute(this::acceptLoop);
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void close() {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+            executor.shutdownNow();
+        }
+
+        private void acceptLoop() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    connections.incrementAndGet();
+                    executor.execute(() -> handle(socket));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(
+                         new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                OutputStream out = socket.getOutputStream();
+                reply(out, "220 localhost ESMTP");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line.toUpperCase();
+                    switch (command) {
+                        case "EHLO", "HELO", "MAIL", "RCPT", "RSET", "NOOP" -> reply(out, "250 OK");
+                        case "DATA" -> {
+                            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                            while ((line = in.readLine()) != null && !line.equals(".")) {
+                                // Bỏ qua nội dung email
+                            }
+                            messages.incrementAndGet();
+                            reply(out, "250 OK");
+                        }
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> reply(out, "500 Unknown command");
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        private static void reply(OutputStream out, String line) throws IOException {
+            out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.fpoly.shared_learning_materials.service;
+
+import com.fpoly.shared_learning_materials.domain.Transaction;
+import com.fpoly.shared_learning_materials.domain.TransactionDetail;
+import com.fpoly.shared_learning_materials.domain.User;
+import com.fpoly.shared_learning_materials.repository.TransactionDetailRepository;
+import com.fpoly.shared_learning_materials.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Admin sửa/xóa giao dịch nạp xu đã hoàn thành thì sổ cái được tính lại ngay, không chờ job kiểm tra.
+ * Cần SQL Server như khi chạy ứng dụng; dữ liệu được rollback sau mỗi test.
+ * Chạy bằng: mvn test -Dtest=TransactionLedgerIntegrationTest -Ddb.tests=true
+ */
+@SpringBootTest
+@Transactional
+@EnabledIfSystemProperty(named = "db.tests", matches = "true")
+class TransactionLedgerIntegrationTest {
+
+    private static final int COINS = 100;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private BalanceLedgerService balanceLedgerService;
+
+    @Autowired
+    private TransactionDetailRepository transactionDetailRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void editingCompletedRechargeRebuildsLedger() {
+        User user = createUser();
+        Transaction recharge = createCompletedRecharge(user);
+        assertThat(balanceLedgerService.getLedger(user.getId()).getTotalRecharge())
+                .isEqualByComparingTo(BigDecimal.valueOf(COINS));
+
+        recharge.setStatus(Transaction.TransactionStatus.CANCELLED);
+        transactionService.updateTransaction(recharge);
+        assertThat(balanceLedgerService.getLedger(user.getId()).getTotalRecharge())
+                .isEqualByComparingTo(BigDecimal.ZERO);
+
+        // Chuyển giao dịch sang người dùng khác: cả hai dòng sổ cái đều được tính lại
+        User other = createUser();
+        recharge.setStatus(Transaction.TransactionStatus.COMPLETED);
+        recharge.setUser(other);
+        transactionService.updateTransaction(recharge);
+        assertThat(balanceLedgerService.getLedger(user.getId()).getTotalRecharge())
+                .isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(balanceLedgerService.getLedger(other.getId()).getTotalRecharge())
+                .isEqualByComparingTo(BigDecimal.valueOf(COINS));
+    }
+
+    @Test
+    void bulkStatusChangeRebuildsLedger() {
+        User user = createUser();
+        Transaction recharge = createCompletedRecharge(user);
+
+        transactionService.updateTransactionsStatus(List.of(recharge.getId()), Transaction.TransactionStatus.FAILED);
+        assertThat(balanceLedgerService.getLedger(user.getId()).getTotalRecharge())
+                .isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    private Transaction createCompletedRecharge(User user) {
+        Transaction transaction = new Transaction();
+        transaction.setType(Transaction.TransactionType.PURCHASE);
+        transaction.setAmount(new BigDecimal("50000"));
+        transaction.setStatus(Transaction.TransactionStatus.COMPLETED);
+        transaction.setUser(user);
+        transaction = transactionService.createTransaction(transaction);
+
+        TransactionDetail detail = new TransactionDetail();
+        detail.setTransaction(transaction);
+        detail.setDetailType("coin_package");
+        detail.setAmount(transaction.getAmount());
+        detail.setCoinsReceived(COINS);
+        transactionDetailRepository.saveAndFlush(detail);
+
+        balanceLedgerService.rebuildUser(user.getId());
+        return transaction;
+    }
+
+    private User createUser() {
+        String name = "ledger_" + UUID.randomUUID().toString().substring(0, 12);
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@ledger.test");
+        user.setPasswordHash("-");
+        user.setFullName(name);
+        user.setRole("user");
+        user.setStatus("active");
+        user.setCoinBalance(BigDecimal.ZERO);
+        return userRepository.save(user);
+    }
+}